@@ -19,6 +19,7 @@
 package nuxeo.ldt.parser.automation;
 
 import java.io.IOException;
+import java.util.List;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
@@ -28,6 +29,7 @@ import org.nuxeo.ecm.automation.core.annotations.Context;
 import org.nuxeo.ecm.automation.core.annotations.Operation;
 import org.nuxeo.ecm.automation.core.annotations.OperationMethod;
 import org.nuxeo.ecm.automation.core.annotations.Param;
+import org.nuxeo.ecm.automation.core.util.StringList;
 import org.nuxeo.ecm.core.api.Blob;
 import org.nuxeo.ecm.core.api.CoreSession;
 import org.nuxeo.ecm.core.api.DocumentModel;
@@ -35,17 +37,19 @@ import org.nuxeo.ecm.core.api.IdRef;
 import org.nuxeo.ecm.core.api.NuxeoException;
 import org.nuxeo.ecm.core.api.impl.blob.JSONBlob;
 
-import com.fasterxml.jackson.core.JacksonException;
-
 import nuxeo.ldt.parser.service.LDTParser;
 import nuxeo.ldt.parser.service.LDTParserService;
-import nuxeo.ldt.parser.service.elements.Record;
+import nuxeo.ldt.parser.service.index.LDTKeyIndex;
+import nuxeo.ldt.parser.service.index.LDTRecordIndex;
 
 @Operation(id = LDTGetRecordJsonOp.ID, category = Constants.CAT_DOCUMENT, label = "LDT: Get JSON record", description = ""
         + "Returns the JSON of a record. Input is a document (optional). If passed, it must have the ldtrecord schema, "
         + "the related LDT document must exist, and current user must have read permission on it. "
         + "Also, if Input is passed, sourceLdtDocId/startOffset/recordSize are ignored. "
-        + "If input is not passed, then sourceLdtDocId/startOffset/recordSize are required.")
+        + "If input is not passed, then sourceLdtDocId/startOffset/recordSize are required, or sourceLdtDocId/recordNumber "
+        + "(the record is then found in the record index of the LDT), or sourceLdtDocId/keyValues (the values of the "
+        + "key fields, in order, for example clientId and month: the first record matching is found in the key index "
+        + "of the LDT, or in the indexName header index if passed. Nothing is returned if none matches).")
 public class LDTGetRecordJsonOp {
 
     public static final String ID = "Services.GetLDTJsonRecord";
@@ -70,41 +74,80 @@ public class LDTGetRecordJsonOp {
     @Param(name = "recordSize", required = false)
     protected Long recordSize;
 
+    // Number of the record in the LDT, starting at 0. Requires the record index (see buildRecordIndex)
+    @Param(name = "recordNumber", required = false)
+    protected Long recordNumber;
+
+    // Values of the key fields (recordIndexKeyFields), in order. Requires the key index (see indexOnly/buildKeyIndex)
+    @Param(name = "keyValues", required = false)
+    protected StringList keyValues;
+
+    // Name of a headerIndex of the configuration: keyValues are then the values of its fields
+    @Param(name = "indexName", required = false)
+    protected String indexName;
+
     @Param(name = "firstPage", required = false)
     protected Long firstPage;
 
     @Param(name = "lastPage", required = false)
     protected Long lastPage;
 
-    protected Blob getRecordJson(String ldtDocId, Long startOffset, Long recordSize) throws JacksonException {
+    protected Blob getRecordJson(String ldtDocId, Long startOffset, Long recordSize) {
 
         if (StringUtils.isBlank(ldtDocId)) {
             throw new IllegalArgumentException("No Source LDT document");
         }
 
-        if (startOffset == null) {
-            throw new IllegalArgumentException("Missing startOffset parameter");
+        boolean byKey = keyValues != null && !keyValues.isEmpty();
+        if (startOffset == null && recordNumber == null && !byKey) {
+            throw new IllegalArgumentException("Missing startOffset (or recordNumber or keyValues) parameter");
         }
 
-        if (recordSize == null) {
+        if (recordSize == null && recordNumber == null && !byKey) {
             throw new IllegalArgumentException("Missing recordSize parameter");
         }
 
         IdRef ref = new IdRef(ldtDocId);
         DocumentModel ldtDoc = session.getDocument(ref);
 
+        LDTParser parser = ldtParserService.newParser(parserName);
+        if ((startOffset == null || recordSize == null) && recordNumber == null) {
+            List<LDTKeyIndex.Entry> entries = parser.findRecords(ldtDoc, indexName, keyValues);
+            if (entries.isEmpty()) {
+                return null;
+            }
+            startOffset = entries.get(0).startOffset;
+            recordSize = entries.get(0).size;
+        } else if (startOffset == null || recordSize == null) {
+            try (LDTRecordIndex index = parser.openRecordIndex(ldtDoc)) {
+                if (index == null) {
+                    throw new NuxeoException("The related LDT document (id " + ref + ") has no record index.");
+                }
+                LDTRecordIndex.Entry entry = index.getEntry(recordNumber);
+                startOffset = entry.startOffset;
+                recordSize = entry.size;
+            } catch (IOException e) {
+                throw new NuxeoException(e);
+            }
+        }
+
         Blob ldtBlob = (Blob) ldtDoc.getPropertyValue("file:content");
         if (ldtBlob == null) {
             throw new NuxeoException("The related LDT document (id " + ref + ") has no blob.");
         }
 
-        LDTParser parser = ldtParserService.newParser(parserName);
-        Record record = parser.getRecord(ldtBlob, startOffset, recordSize);
-        if(firstPage != null && lastPage != null) {
-            record = record.buildForPageRange(firstPage.intValue(), lastPage.intValue());
+        // Identical concurrent requests share the same read and parse
+        String recordJsonStr;
+        if (firstPage != null && lastPage != null) {
+            recordJsonStr = parser.getRecordJson(ldtBlob, startOffset, recordSize, firstPage.intValue(),
+                    lastPage.intValue());
+        } else {
+            recordJsonStr = parser.getRecordJson(ldtBlob, startOffset, recordSize);
+        }
+        if (recordJsonStr == null) {
+            return null;
         }
 
-        String recordJsonStr = record.toJson();
         return new JSONBlob(recordJsonStr);
     }
 
@@ -0,0 +1,132 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.ldt.parser.automation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.ecm.automation.core.Constants;
+import org.nuxeo.ecm.automation.core.annotations.Context;
+import org.nuxeo.ecm.automation.core.annotations.Operation;
+import org.nuxeo.ecm.automation.core.annotations.OperationMethod;
+import org.nuxeo.ecm.automation.core.annotations.Param;
+import org.nuxeo.ecm.automation.core.util.StringList;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.DocumentModelList;
+import org.nuxeo.ecm.core.api.impl.blob.JSONBlob;
+
+import com.fasterxml.jackson.core.JacksonException;
+
+import nuxeo.ldt.parser.service.LDTParserService;
+import nuxeo.ldt.parser.service.elements.Record;
+import nuxeo.ldt.parser.service.elements.RecordHit;
+
+@Operation(id = LDTGetRecordsJsonOp.ID, category = Constants.CAT_DOCUMENT, label = "LDT: Get JSON records", description = ""
+        + "Returns a JSON array with the JSON of several records (null for a record not found), in the order they "
+        + "are requested. Input is a list of documents (optional) with the ldtrecord schema (documents without it, or "
+        + "without their related LDT document, are ignored), current user must have read permission on their LDT documents. If input is not passed, "
+        + "sourceLdtDocId, startOffsets and recordSizes are required (same number of startOffsets and recordSizes). "
+        + "Each LDT document is read once, and its records are fetched with a few coalesced reads.")
+public class LDTGetRecordsJsonOp {
+
+    public static final String ID = "Services.GetLDTJsonRecords";
+
+    private static final Logger log = LogManager.getLogger(LDTGetRecordsJsonOp.class);
+
+    @Context
+    protected CoreSession session;
+
+    @Context
+    protected LDTParserService ldtParserService;
+
+    @Param(name = "parserName", required = false, values = { "default" })
+    protected String parserName = "default";
+
+    @Param(name = "sourceLdtDocId", required = false)
+    protected String sourceLdtDocId;
+
+    @Param(name = "startOffsets", required = false)
+    protected StringList startOffsets;
+
+    @Param(name = "recordSizes", required = false)
+    protected StringList recordSizes;
+
+    protected Blob getRecordsJson(List<RecordHit> hits) throws JacksonException {
+
+        List<Record> records = ldtParserService.getRecords(session, parserName, hits);
+
+        List<String> jsons = new ArrayList<>();
+        for (Record record : records) {
+            jsons.add(record == null ? "null" : record.toJson());
+        }
+
+        return new JSONBlob("[" + String.join(",", jsons) + "]");
+    }
+
+    @OperationMethod
+    public Blob run() throws JacksonException {
+
+        if (StringUtils.isBlank(sourceLdtDocId)) {
+            throw new IllegalArgumentException("No Source LDT document");
+        }
+        if (startOffsets == null || recordSizes == null || startOffsets.size() != recordSizes.size()) {
+            throw new IllegalArgumentException("startOffsets and recordSizes are required, with the same size");
+        }
+
+        List<RecordHit> hits = new ArrayList<>();
+        for (int i = 0; i < startOffsets.size(); i++) {
+            hits.add(new RecordHit(sourceLdtDocId, Long.parseLong(startOffsets.get(i).trim()),
+                    Long.parseLong(recordSizes.get(i).trim())));
+        }
+
+        return getRecordsJson(hits);
+    }
+
+    @OperationMethod
+    public Blob run(DocumentModelList input) throws JacksonException {
+
+        List<RecordHit> hits = new ArrayList<>();
+        for (DocumentModel doc : input) {
+            if (!doc.hasSchema(nuxeo.ldt.parser.service.Constants.SCHEMA_LDTRECORD)) {
+                log.warn(ID + ": document " + doc.getId() + " does not have the ldtrecord schema => ignoring");
+                continue;
+            }
+            String ldtDocId = (String) doc.getPropertyValue(
+                    nuxeo.ldt.parser.service.Constants.XPATH_LDTRECORD_RELATED_LDT_DOC);
+            Long startOffset = (Long) doc.getPropertyValue(
+                    nuxeo.ldt.parser.service.Constants.XPATH_LDTRECORD_STARTOFFSET);
+            Long recordSize = (Long) doc.getPropertyValue(
+                    nuxeo.ldt.parser.service.Constants.XPATH_LDTRECORD_RECORDSIZE);
+            if (StringUtils.isBlank(ldtDocId) || startOffset == null || recordSize == null) {
+                log.warn(ID + ": document " + doc.getId()
+                        + " does not have its related LDT document, startOffset or recordSize => ignoring");
+                continue;
+            }
+            hits.add(new RecordHit(ldtDocId, startOffset, recordSize));
+        }
+
+        return getRecordsJson(hits);
+    }
+
+}
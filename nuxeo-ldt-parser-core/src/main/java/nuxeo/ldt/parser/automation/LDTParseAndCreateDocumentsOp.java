@@ -54,6 +54,18 @@ public class LDTParseAndCreateDocumentsOp {
     @Param(name = "compressLdt", required = false, values = { "false" })
     protected boolean compressLdt = false;
 
+    // 0 => use the parser configuration
+    @Param(name = "commitBatchSize", required = false)
+    protected Integer commitBatchSize = 0;
+
+    // Not set => use the parser configuration
+    @Param(name = "adaptiveCommitBatchSize", required = false)
+    protected Boolean adaptiveCommitBatchSize = null;
+
+    // Resume from the checkpoint stored on the input document, if any
+    @Param(name = "resume", required = false, values = { "false" })
+    protected boolean resume = false;
+
     @OperationMethod
     public DocumentModel run(DocumentModel doc) throws IOException {
 
@@ -70,7 +82,8 @@ public class LDTParseAndCreateDocumentsOp {
         
         LDTParser parser = ldtParserService.newParser(parserName);
         @SuppressWarnings("unused")
-        LDTInfo info = parser.parseAndCreateDocuments(doc, compressLdt);
+        LDTInfo info = parser.parseAndCreateDocuments(doc, compressLdt,
+                commitBatchSize == null ? 0 : commitBatchSize, adaptiveCommitBatchSize, resume);
         
         doc = session.getDocument(doc.getRef());
         
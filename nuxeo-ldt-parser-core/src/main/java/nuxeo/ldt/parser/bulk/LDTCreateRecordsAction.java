@@ -0,0 +1,214 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.ldt.parser.bulk;
+
+import static org.nuxeo.ecm.core.bulk.BulkServiceImpl.DONE_STREAM;
+import static org.nuxeo.ecm.core.bulk.BulkServiceImpl.STATUS_STREAM;
+import static org.nuxeo.lib.stream.computation.AbstractComputation.INPUT_1;
+import static org.nuxeo.lib.stream.computation.AbstractComputation.OUTPUT_1;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.CoreInstance;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.IdRef;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.core.blob.ByteRange;
+import org.nuxeo.ecm.core.bulk.BulkCodecs;
+import org.nuxeo.ecm.core.bulk.BulkService;
+import org.nuxeo.ecm.core.bulk.action.computation.AbstractBulkComputation;
+import org.nuxeo.ecm.core.bulk.message.BulkCommand;
+import org.nuxeo.ecm.core.bulk.message.BulkStatus;
+import org.nuxeo.lib.stream.codec.Codec;
+import org.nuxeo.lib.stream.computation.AbstractComputation;
+import org.nuxeo.lib.stream.computation.ComputationContext;
+import org.nuxeo.lib.stream.computation.Record;
+import org.nuxeo.lib.stream.computation.Topology;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.stream.StreamProcessorTopology;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+
+import nuxeo.ldt.parser.service.Constants;
+import nuxeo.ldt.parser.service.LDTParser;
+import nuxeo.ldt.parser.service.LDTParserService;
+import nuxeo.ldt.parser.service.elements.RecordInfo;
+import nuxeo.ldt.parser.service.utils.LDTParserRecordStream;
+
+/**
+ * Bulk Action creating the {@code recordDocType} documents of an LDT.
+ * <br>
+ * The records are not document ids: they are scrolled from the LDT file by {@link LDTRecordInfoScroll}, then the
+ * buckets are distributed to the workers, which create the documents in parallel (and possibly on several nodes),
+ * each in its own transaction.
+ * <br>
+ * Each worker reads the bytes of its batch with a single (ranged) read, since the records of a bucket are contiguous
+ * in the LDT.
+ * <br>
+ * Once the command is completed, {@code ldt:countRecords} is set on the LDT document.
+ *
+ * @since 2021
+ */
+public class LDTCreateRecordsAction implements StreamProcessorTopology {
+
+    private static final Logger log = LogManager.getLogger(LDTCreateRecordsAction.class);
+
+    public static final String ACTION_NAME = "ldtCreateRecords";
+
+    public static final String ACTION_FULL_NAME = "bulk/" + ACTION_NAME;
+
+    public static final String DONE_COMPUTATION_NAME = "bulk/" + ACTION_NAME + "Done";
+
+    public static final String PARAM_PARSER_NAME = "parserName";
+
+    public static final String PARAM_LDT_DOC_ID = "ldtDocId";
+
+    public static final String PARAM_PARENT_PATH = "parentPath";
+
+    /**
+     * Submits the command creating the records of {@code ldtDoc} in {@code parentPath}. The container must already be
+     * committed, since the workers run in other transactions.
+     *
+     * @param ldtDoc
+     * @param parserName
+     * @param parentPath
+     * @return the command id
+     * @since 2021
+     */
+    public static String submit(DocumentModel ldtDoc, String parserName, String parentPath) {
+
+        CoreSession session = ldtDoc.getCoreSession();
+        String query = LDTRecordInfoScroll.buildQuery(session.getRepositoryName(), ldtDoc.getId(), parserName);
+        BulkCommand command = new BulkCommand.Builder(ACTION_NAME, query,
+                session.getPrincipal().getName()).repository(session.getRepositoryName())
+                                                 .useGenericScroller()
+                                                 .scroller(LDTRecordInfoScroll.SCROLL_NAME)
+                                                 .param(PARAM_PARSER_NAME, parserName)
+                                                 .param(PARAM_LDT_DOC_ID, ldtDoc.getId())
+                                                 .param(PARAM_PARENT_PATH, parentPath)
+                                                 .build();
+
+        return Framework.getService(BulkService.class).submit(command);
+    }
+
+    @Override
+    public Topology getTopology(Map<String, String> options) {
+        return Topology.builder()
+                       .addComputation(CreateRecordsComputation::new,
+                               Arrays.asList(INPUT_1 + ":" + ACTION_FULL_NAME, OUTPUT_1 + ":" + STATUS_STREAM))
+                       .addComputation(CreateRecordsDoneComputation::new,
+                               Collections.singletonList(INPUT_1 + ":" + DONE_STREAM))
+                       .build();
+    }
+
+    public static class CreateRecordsComputation extends AbstractBulkComputation {
+
+        public CreateRecordsComputation() {
+            super(ACTION_FULL_NAME);
+        }
+
+        @Override
+        protected void compute(CoreSession session, List<String> ids, Map<String, Serializable> properties) {
+
+            String parserName = (String) properties.get(PARAM_PARSER_NAME);
+            String ldtDocId = (String) properties.get(PARAM_LDT_DOC_ID);
+            String parentPath = (String) properties.get(PARAM_PARENT_PATH);
+
+            List<RecordRef> refs = ids.stream()
+                                      .map(RecordRef::parse)
+                                      .sorted(Comparator.comparingLong(ref -> ref.startOffset))
+                                      .collect(Collectors.toList());
+            if (refs.isEmpty()) {
+                return;
+            }
+
+            LDTParser parser = Framework.getService(LDTParserService.class).newParser(parserName);
+            DocumentModel ldtDoc = session.getDocument(new IdRef(ldtDocId));
+            Blob blob = (Blob) ldtDoc.getPropertyValue("file:content");
+
+            long spanStart = refs.get(0).startOffset;
+            long spanEnd = refs.get(refs.size() - 1).getEndOffset();
+            if (spanEnd - spanStart > Integer.MAX_VALUE) {
+                throw new NuxeoException("Records batch too big (" + (spanEnd - spanStart) + " bytes), reduce the "
+                        + ACTION_NAME + " batchSize.");
+            }
+
+            byte[] bytes;
+            try (InputStream stream = LDTParserRecordStream.getStream(blob,
+                    ByteRange.inclusive(spanStart, spanEnd - 1))) {
+                bytes = stream.readNBytes((int) (spanEnd - spanStart));
+            } catch (IOException e) {
+                throw new NuxeoException("Error reading the records of " + ldtDocId, e);
+            }
+
+            for (RecordRef ref : refs) {
+                RecordInfo record = parser.parseRecordInfo(bytes, (int) (ref.startOffset - spanStart),
+                        ref.startOffset, ref.size, ref.startLine);
+                parser.createRecordDocument(session, parentPath, ldtDocId, ldtDoc.getTitle(), record,
+                        ref.recordIndex);
+            }
+        }
+    }
+
+    /**
+     * Sets {@code ldt:countRecords} once a command of this action is completed
+     *
+     * @since 2021
+     */
+    public static class CreateRecordsDoneComputation extends AbstractComputation {
+
+        public CreateRecordsDoneComputation() {
+            super(DONE_COMPUTATION_NAME, 1, 0);
+        }
+
+        @Override
+        public void processRecord(ComputationContext context, String inputStreamName, Record record) {
+
+            Codec<BulkStatus> codec = BulkCodecs.getStatusCodec();
+            BulkStatus status = codec.decode(record.getData());
+            if (ACTION_NAME.equals(status.getAction()) && BulkStatus.State.COMPLETED.equals(status.getState())) {
+                BulkCommand command = Framework.getService(BulkService.class).getCommand(status.getId());
+                if (command != null) {
+                    String ldtDocId = command.getParam(PARAM_LDT_DOC_ID);
+                    long count = status.getProcessed() - status.getErrorCount();
+                    TransactionHelper.runInTransaction(() -> {
+                        CoreSession session = CoreInstance.getCoreSessionSystem(command.getRepository());
+                        DocumentModel ldtDoc = session.getDocument(new IdRef(ldtDocId));
+                        ldtDoc.setPropertyValue(Constants.XPATH_LDT_COUNTRECORDS, count);
+                        session.saveDocument(ldtDoc);
+                    });
+                    log.info("Bulk command " + status.getId() + ": " + count + " records created for " + ldtDocId);
+                }
+            }
+            context.askForCheckpoint();
+        }
+    }
+
+}
@@ -0,0 +1,159 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.ldt.parser.bulk;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.CloseableFile;
+import org.nuxeo.ecm.core.api.CoreInstance;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.IdRef;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.core.api.scroll.GenericScrollRequest;
+import org.nuxeo.ecm.core.api.scroll.Scroll;
+import org.nuxeo.ecm.core.api.scroll.ScrollRequest;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+
+import nuxeo.ldt.parser.service.LDTParser;
+import nuxeo.ldt.parser.service.LDTParserService;
+import nuxeo.ldt.parser.service.elements.RecordInfo;
+import nuxeo.ldt.parser.service.utils.LDTRecordScanner;
+
+/**
+ * Generic scroll returning the records of an LDT instead of document ids. Each "id" is
+ * {@code recordIndex:startOffset:size:startLine} (see {@code RecordRef}), so the Bulk Action workers do not scan the
+ * file again.
+ * <br>
+ * The query is {@code repository/ldtDocId/parserName}, see {@code buildQuery}.
+ *
+ * @since 2021
+ */
+public class LDTRecordInfoScroll implements Scroll {
+
+    public static final String SCROLL_NAME = "ldtRecordInfo";
+
+    public static final String QUERY_SEPARATOR = "/";
+
+    protected int size;
+
+    protected CloseableFile closeableFile;
+
+    protected LDTRecordScanner scanner;
+
+    protected Iterator<RecordInfo> records;
+
+    protected long recordIndex = 0;
+
+    public static String buildQuery(String repository, String ldtDocId, String parserName) {
+        return repository + QUERY_SEPARATOR + ldtDocId + QUERY_SEPARATOR + parserName;
+    }
+
+    /**
+     * @param query
+     * @return [repository, ldtDocId, parserName]
+     * @since 2021
+     */
+    public static String[] parseQuery(String query) {
+        String[] parts = query.split(QUERY_SEPARATOR, 3);
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("Invalid query for " + SCROLL_NAME + ": " + query);
+        }
+        return parts;
+    }
+
+    @Override
+    public void init(ScrollRequest request, Map<String, String> options) {
+
+        if (!(request instanceof GenericScrollRequest)) {
+            throw new IllegalArgumentException("Requires a GenericScrollRequest");
+        }
+        GenericScrollRequest genericRequest = (GenericScrollRequest) request;
+        size = genericRequest.getSize();
+
+        String[] parts = parseQuery(genericRequest.getQuery());
+        closeableFile = TransactionHelper.runInTransaction(() -> {
+            CoreSession session = CoreInstance.getCoreSessionSystem(parts[0]);
+            DocumentModel ldtDoc = session.getDocument(new IdRef(parts[1]));
+            Blob blob = (Blob) ldtDoc.getPropertyValue("file:content");
+            if (blob == null) {
+                throw new NuxeoException("No blob in document " + parts[1]);
+            }
+            try {
+                return blob.getCloseableFile();
+            } catch (IOException e) {
+                throw new NuxeoException(e);
+            }
+        });
+
+        LDTParser parser = Framework.getService(LDTParserService.class).newParser(parts[2]);
+        try {
+            scanner = new LDTRecordScanner(parser, closeableFile.getFile());
+        } catch (IOException e) {
+            close();
+            throw new NuxeoException(e);
+        }
+        records = scanner.iterator();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return records.hasNext();
+    }
+
+    @Override
+    public List<String> next() {
+
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        List<String> ids = new ArrayList<>(size);
+        while (ids.size() < size && records.hasNext()) {
+            ids.add(new RecordRef(recordIndex, records.next()).toString());
+            recordIndex += 1;
+        }
+        return ids;
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (scanner != null) {
+                scanner.close();
+            }
+            if (closeableFile != null) {
+                closeableFile.close();
+            }
+        } catch (IOException e) {
+            throw new NuxeoException(e);
+        } finally {
+            scanner = null;
+            closeableFile = null;
+        }
+    }
+
+}
@@ -0,0 +1,70 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.ldt.parser.bulk;
+
+import nuxeo.ldt.parser.service.elements.RecordInfo;
+
+/**
+ * Position of a record in an LDT, serialized as the "document id" handled by the {@code ldtCreateRecords} Bulk Action:
+ * {@code recordIndex:startOffset:size:startLine}
+ *
+ * @since 2021
+ */
+public class RecordRef {
+
+    public static final String SEPARATOR = ":";
+
+    public final long recordIndex;
+
+    public final long startOffset;
+
+    public final long size;
+
+    public final long startLine;
+
+    public RecordRef(long recordIndex, long startOffset, long size, long startLine) {
+        this.recordIndex = recordIndex;
+        this.startOffset = startOffset;
+        this.size = size;
+        this.startLine = startLine;
+    }
+
+    public RecordRef(long recordIndex, RecordInfo record) {
+        this(recordIndex, record.startOffset, record.size, record.startLine);
+    }
+
+    public static RecordRef parse(String value) {
+        String[] parts = value.split(SEPARATOR);
+        if (parts.length != 4) {
+            throw new IllegalArgumentException("Invalid record reference: " + value);
+        }
+        return new RecordRef(Long.parseLong(parts[0]), Long.parseLong(parts[1]), Long.parseLong(parts[2]),
+                Long.parseLong(parts[3]));
+    }
+
+    public long getEndOffset() {
+        return startOffset + size;
+    }
+
+    @Override
+    public String toString() {
+        return recordIndex + SEPARATOR + startOffset + SEPARATOR + size + SEPARATOR + startLine;
+    }
+
+}
@@ -20,11 +20,8 @@
 
 package nuxeo.ldt.parser.converter;
 
-import com.fasterxml.jackson.core.JacksonException;
-
 import nuxeo.ldt.parser.service.LDTParser;
 import nuxeo.ldt.parser.service.LDTParserService;
-import nuxeo.ldt.parser.service.elements.Record;
 
 import org.apache.commons.lang3.StringUtils;
 import org.nuxeo.ecm.core.api.Blob;
@@ -41,7 +38,8 @@ import java.io.Serializable;
 import java.util.Map;
 
 /**
- * Get a record from an LDT file and return it as JSON, with properties based on the XML contribution.
+ * Get a record from an LDT file and return it as JSON, with properties based on the XML contribution. The JSON is
+ * cached, see {@code LDTParser#getRecordJson}.
  * 
  * @since 2021
  */
@@ -77,27 +75,31 @@ public class LDT2JSONConverter implements Converter {
         }
 
         LDTParser parser = Framework.getService(LDTParserService.class).newParser(parserName);
+        String json;
         try {
-            Record record = parser.getRecord(blobHolder.getBlob(), startOffset, recordSize);
             if (firstPage > 0 && lastPage > 0) {
-                record = record.buildForPageRange(firstPage, lastPage);
-            }
-
-            String json = record.toJson();
-            Blob jsonBlob = new JSONBlob(json);
-            if (StringUtils.isBlank(targetfilename)) {
-                targetfilename = "output.json";
+                json = parser.getRecordJson(blobHolder.getBlob(), startOffset, recordSize, firstPage, lastPage);
+            } else {
+                json = parser.getRecordJson(blobHolder.getBlob(), startOffset, recordSize);
             }
-            if (!targetfilename.endsWith(".json")) {
-                targetfilename += ".json";
-            }
-            jsonBlob.setFilename(targetfilename);
-
-            return new SimpleBlobHolder(jsonBlob);
-
-        } catch (NuxeoException | JacksonException e) {
+        } catch (NuxeoException e) {
             throw new ConversionException(e);
         }
+        if (json == null) {
+            throw new ConversionException(
+                    "No record found at startOffset " + startOffset + ", recordSize " + recordSize);
+        }
+
+        Blob jsonBlob = new JSONBlob(json);
+        if (StringUtils.isBlank(targetfilename)) {
+            targetfilename = "output.json";
+        }
+        if (!targetfilename.endsWith(".json")) {
+            targetfilename += ".json";
+        }
+        jsonBlob.setFilename(targetfilename);
+
+        return new SimpleBlobHolder(jsonBlob);
 
     }
 }
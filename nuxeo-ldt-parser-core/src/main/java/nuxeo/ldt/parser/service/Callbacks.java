@@ -45,6 +45,11 @@ import nuxeo.ldt.parser.service.elements.Record;
  * See {@code LDTParserDescriptor} and the ldtparser-service.xml default parser.
  * <br>
  * Also, you can look at the {@codeCallbacksExample} call and the unit tests
+ * <br>
+ * The parser of a configuration is used concurrently (getting records, parallel scan, bulk action, converters, ...),
+ * so it creates one instance of the class per thread: an instance is never called by two threads at the same time,
+ * but it is reused by the next calls in the same thread. A thread safe class can return {@code true} from
+ * {@code isThreadSafe}: a single instance is then shared by all the threads.
  * 
  * @since 2021
  */
@@ -84,4 +89,13 @@ public interface Callbacks {
      */
     Item parseItem(LDTParserDescriptor config, String line);
 
+    /**
+     * @return true if a single instance can be called by several threads at the same time. False by default: the
+     *         parser creates one instance per thread.
+     * @since 2021
+     */
+    default boolean isThreadSafe() {
+        return false;
+    }
+
 }
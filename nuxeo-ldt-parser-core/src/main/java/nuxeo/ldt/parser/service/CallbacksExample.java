@@ -35,6 +35,12 @@ import nuxeo.ldt.parser.service.elements.Record;
  * @since 2021
  */
 public class CallbacksExample implements Callbacks {
+
+    // No state, one instance for all the threads
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
     
     @Override
     public Record parseRecord(LDTParserDescriptor config, List<String> lines) {
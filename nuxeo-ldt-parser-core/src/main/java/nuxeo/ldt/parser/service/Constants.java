@@ -29,6 +29,32 @@ public class Constants {
     public static final String SCHEMA_LDT = "ldt";
     
     public static final String XPATH_LDT_COUNTRECORDS = "ldt:countRecords";
+
+    public static final String XPATH_LDT_RECORDS_BULK_COMMAND_ID = "ldt:recordsBulkCommandId";
+
+    public static final String XPATH_LDT_RECORD_INDEX = "ldt:recordIndex";
+
+    public static final String XPATH_LDT_KEY_INDEX = "ldt:keyIndex";
+
+    public static final String XPATH_LDT_HEADER_INDEXES = "ldt:headerIndexes";
+
+    public static final String HEADER_INDEX_NAME = "name";
+
+    public static final String HEADER_INDEX_CONTENT = "index";
+
+    public static final String XPATH_LDT_BLOOM_FILTERS = "ldt:bloomFilters";
+
+    public static final String BLOOM_FILTER_NAME = "name";
+
+    public static final String BLOOM_FILTER_CONTENT = "filter";
+
+    public static final String XPATH_LDT_RECORDS_CONTAINER_ID = "ldt:recordsContainerId";
+
+    public static final String XPATH_LDT_CHECKPOINT_OFFSET = "ldt:checkpointOffset";
+
+    public static final String XPATH_LDT_CHECKPOINT_LINE = "ldt:checkpointLine";
+
+    public static final String XPATH_LDT_CHECKPOINT_COUNT = "ldt:checkpointCount";
     
     public static final String DOC_TYPE_LDTRECORD = "LDTRecord";
     
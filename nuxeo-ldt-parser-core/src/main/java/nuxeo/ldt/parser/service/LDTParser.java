@@ -20,19 +20,45 @@
 
 package nuxeo.ldt.parser.service;
 
+import com.fasterxml.jackson.core.JacksonException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
+import nuxeo.ldt.parser.bulk.LDTCreateRecordsAction;
+import nuxeo.ldt.parser.service.descriptors.LDTBloomFilterDescriptor;
 import nuxeo.ldt.parser.service.descriptors.LDTHeaderDescriptor;
+import nuxeo.ldt.parser.service.descriptors.LDTHeaderIndexDescriptor;
+import nuxeo.ldt.parser.service.descriptors.LDTItemDescriptor;
 import nuxeo.ldt.parser.service.descriptors.LDTParserDescriptor;
 import nuxeo.ldt.parser.service.elements.HeaderLine;
 import nuxeo.ldt.parser.service.elements.Item;
 import nuxeo.ldt.parser.service.elements.Record;
 import nuxeo.ldt.parser.service.elements.RecordInfo;
+import nuxeo.ldt.parser.service.index.LDTBloomFilter;
+import nuxeo.ldt.parser.service.index.LDTHeaderIndexesWriter;
+import nuxeo.ldt.parser.service.index.LDTKeyIndex;
+import nuxeo.ldt.parser.service.index.LDTKeyIndexWriter;
+import nuxeo.ldt.parser.service.index.LDTRecordIndex;
+import nuxeo.ldt.parser.service.index.LDTRecordIndexWriter;
+import nuxeo.ldt.parser.service.range.RangeCoalescer;
+import nuxeo.ldt.parser.service.range.RangeReaders;
+import nuxeo.ldt.parser.service.utils.CommitBatchSizer;
+import nuxeo.ldt.parser.service.utils.LDTCheckpointTracker;
+import nuxeo.ldt.parser.service.utils.LDTIngestionPipeline;
+import nuxeo.ldt.parser.service.utils.LDTLineDispatcher;
+import nuxeo.ldt.parser.service.utils.LDTParallelDownload;
+import nuxeo.ldt.parser.service.utils.LDTParseSession;
 import nuxeo.ldt.parser.service.utils.LDTParserRecordStream;
+import nuxeo.ldt.parser.service.utils.LDTRecordCache;
+import nuxeo.ldt.parser.service.utils.LDTRecordCursor;
+import nuxeo.ldt.parser.service.utils.LDTRecordExecutors;
+import nuxeo.ldt.parser.service.utils.LDTRecordJsonStore;
+import nuxeo.ldt.parser.service.utils.LDTRecordKey;
+import nuxeo.ldt.parser.service.utils.LDTRecordScanner;
+import nuxeo.ldt.parser.service.utils.LDTSegmentScanTask;
+import nuxeo.ldt.parser.service.utils.LDTSingleFlight;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.LineIterator;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
@@ -44,6 +70,7 @@ import org.nuxeo.ecm.core.api.Blob;
 import org.nuxeo.ecm.core.api.CloseableFile;
 import org.nuxeo.ecm.core.api.CoreSession;
 import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.IdRef;
 import org.nuxeo.ecm.core.api.NuxeoException;
 import org.nuxeo.ecm.core.api.impl.blob.JSONBlob;
 import org.nuxeo.ecm.core.blob.ByteRange;
@@ -52,20 +79,26 @@ import org.nuxeo.runtime.transaction.TransactionHelper;
 
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
-import java.io.FileReader;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Serializable;
 import java.lang.reflect.InvocationTargetException;
 import java.nio.charset.StandardCharsets;
 import java.text.NumberFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.UnaryOperator;
 import java.util.regex.Matcher;
 import java.util.stream.Collectors;
 
@@ -117,26 +150,40 @@ public class LDTParser {
 
     private static final Logger log = LogManager.getLogger(LDTParser.class);
 
-    protected LDTParserDescriptor config;
+    protected final LDTParserDescriptor config;
 
-    protected String name;
+    protected final String name;
 
-    protected String recordStartToken;
+    protected final String recordStartToken;
 
-    protected String recordEndToken;
+    protected final String recordEndToken;
 
-    protected Callbacks callbacks = null;
+    protected final Callbacks callbacks;
 
-    protected int lengthOfEOF;
+    // One instance per thread, unless callbacks is thread safe (see Callbacks#isThreadSafe)
+    protected final ThreadLocal<Callbacks> threadCallbacks;
 
-    protected long totalBytesRead = 0;
+    protected final RangeReaders rangeReaders;
 
-    protected long lineCount = 0;
+    // Which headers/items can match a line, see LDTLineDispatcher
+    protected final LDTLineDispatcher headerDispatcher;
+
+    protected final LDTLineDispatcher itemDispatcher;
+
+    protected static final LDTSingleFlight<LDTRecordKey, String> recordJsonFlights = new LDTSingleFlight<>();
 
     protected static int checkS3BlobProviderClass = -1;
 
     protected static boolean noS3BlobProviderWarnLogged = false;
 
+    /**
+     * Everything is built here (patterns, callbacks, range readers), so the parser can be shared by several threads.
+     * The parser of a configuration is built once by the service, see {@code LDTParserService#newParser}.
+     * <br>
+     * The state of a parsing (bytes and lines read so far) is held by a {@code LDTParseSession}, not by the parser.
+     * 
+     * @param config
+     */
     public LDTParser(LDTParserDescriptor config) {
         super();
 
@@ -145,7 +192,41 @@ public class LDTParser {
         this.recordStartToken = config.getRecordStartToken();
         this.recordEndToken = config.getRecordEndToken();
 
-        loadCallbacksClass();
+        config.compile();
+        callbacks = loadCallbacksClass();
+        threadCallbacks = callbacks == null || callbacks.isThreadSafe() ? null
+                : ThreadLocal.withInitial(this::loadCallbacksClass);
+        rangeReaders = RangeReaders.newInstance(config.getRangeReaders());
+        headerDispatcher = newHeaderDispatcher(config.getHeaders());
+        itemDispatcher = newItemDispatcher(config.getItems());
+    }
+
+    protected static LDTLineDispatcher newHeaderDispatcher(LDTHeaderDescriptor[] headers) {
+        List<String> prefixes = new ArrayList<>();
+        List<Integer> columns = new ArrayList<>();
+        List<String> requiredLiterals = new ArrayList<>();
+        if (headers != null) {
+            for (LDTHeaderDescriptor header : headers) {
+                prefixes.add(header.getLinePrefix());
+                columns.add(header.getTypeColumn());
+                requiredLiterals.add(header.getRequiredLiteral());
+            }
+        }
+        return new LDTLineDispatcher(prefixes, columns, requiredLiterals);
+    }
+
+    protected static LDTLineDispatcher newItemDispatcher(LDTItemDescriptor[] items) {
+        List<String> prefixes = new ArrayList<>();
+        List<Integer> columns = new ArrayList<>();
+        List<String> requiredLiterals = new ArrayList<>();
+        if (items != null) {
+            for (LDTItemDescriptor item : items) {
+                prefixes.add(item.getLinePrefix());
+                columns.add(item.getTypeColumn());
+                requiredLiterals.add(item.getRequiredLiteral());
+            }
+        }
+        return new LDTLineDispatcher(prefixes, columns, requiredLiterals);
     }
 
     protected boolean hasS3BlobProviderClass() {
@@ -166,33 +247,48 @@ public class LDTParser {
         return name;
     }
 
+    /**
+     * @return the readers used to get the bytes of a record, see {@code RangeReaders}
+     * @since 2021
+     */
+    public RangeReaders getRangeReaders() {
+        return rangeReaders;
+    }
+
     /*
-     * Returns the Callbacks object.
+     * Instantiates the Callbacks class. Once in the constructor, and once per thread if the instance is not thread
+     * safe (see getCallbacks).
      * If configuration asks for a callback but there is no getCallbacksClass(), we trhow an error
      */
     protected Callbacks loadCallbacksClass() {
-        if (config.useCallbackForRecord() || config.useCallbackForHeaders() || config.useCallbackForItems()) {
-            if (callbacks == null) {
-                if (config.getCallbacksClass() != null) {
-                    try {
-                        callbacks = (Callbacks) config.getCallbacksClass().getConstructor().newInstance();
-                    } catch (InstantiationException | IllegalAccessException | IllegalArgumentException
-                            | InvocationTargetException | NoSuchMethodException | SecurityException e) {
-                        throw new NuxeoException("Cannot instantiate the callback class", e);
-                    }
-                } else {
-                    throw new NuxeoException("Configuration set to use callbacks, but no callback class set");
-                }
+        if (config.getCallbacksClass() != null) {
+            try {
+                return (Callbacks) config.getCallbacksClass().getConstructor().newInstance();
+            } catch (InstantiationException | IllegalAccessException | IllegalArgumentException
+                    | InvocationTargetException | NoSuchMethodException | SecurityException e) {
+                throw new NuxeoException("Cannot instantiate the callback class", e);
             }
-        } else {
-            callbacks = null;
+        }
+        if (usesCallbacks()) {
+            throw new NuxeoException("Configuration set to use callbacks, but no callback class set");
         }
 
-        return callbacks;
+        return null;
     }
 
     protected Callbacks getCallbacks() {
-        return loadCallbacksClass();
+        if (callbacks == null) {
+            throw new NuxeoException("Configuration set to use callbacks, but no callback class set");
+        }
+        return threadCallbacks == null ? callbacks : threadCallbacks.get();
+    }
+
+    /**
+     * @return true if the configuration uses at least one callback
+     * @since 2021
+     */
+    protected boolean usesCallbacks() {
+        return config.useCallbackForRecord() || config.useCallbackForHeaders() || config.useCallbackForItems();
     }
 
     /**
@@ -237,7 +333,16 @@ public class LDTParser {
             return getCallbacks().parseHeader(config, line, lineNumber);
         }
 
-        for (LDTHeaderDescriptor header : config.getHeaders()) {
+        LDTHeaderDescriptor[] headers = config.getHeaders();
+        for (int idx : headerDispatcher.getCandidates(line)) {
+            LDTHeaderDescriptor header = headers[idx];
+            if (header.hasColumns()) {
+                if (header.matchesLine(line)) {
+                    return new HeaderLine(line, header.getColumns(), header.getFields(), lineNumber,
+                            header.getName());
+                }
+                continue;
+            }
             Matcher m = header.getCompiledPattern().matcher(line);
             if (m.matches()) {
                 return new HeaderLine(m, header.getFields(), lineNumber, header.getName());
@@ -261,8 +366,15 @@ public class LDTParser {
             return getCallbacks().parseHeader(config, line, 0) == null;
         }
 
-        for (LDTHeaderDescriptor header : config.getHeaders()) {
-            Matcher m = header.getCompiledPattern().matcher(line);
+        LDTHeaderDescriptor[] headers = config.getHeaders();
+        for (int idx : headerDispatcher.getCandidates(line)) {
+            if (headers[idx].hasColumns()) {
+                if (headers[idx].matchesLine(line)) {
+                    return true;
+                }
+                continue;
+            }
+            Matcher m = headers[idx].getCompiledPattern().matcher(line);
             if (m.matches()) {
                 return true;
             }
@@ -320,7 +432,7 @@ public class LDTParser {
             return null;
         }
 
-        return new Item(line, config);
+        return new Item(line, config.getItems(), itemDispatcher.getCandidates(line));
     }
 
     /**
@@ -390,6 +502,13 @@ public class LDTParser {
      * @since 2021
      */
     public Record getRecord(Blob blob, long startOffset, long recordSize) {
+        return getRecord(readRecordBytes(blob, startOffset, recordSize), startOffset, recordSize);
+    }
+
+    /*
+     * Reads the bytes of the record with the cheapest RangeReader, see getRangeReaders()
+     */
+    protected byte[] readRecordBytes(Blob blob, long startOffset, long recordSize) {
 
         // a recordsize of 1, or even 10 or 100 is likely an error, but we can't make 100% sure.
         if (startOffset < 0 || Math.abs(recordSize) < 1) {
@@ -397,6 +516,24 @@ public class LDTParser {
                     "getRecord: Invalid startOffest (" + startOffset + ") or recordSize (" + recordSize + ")");
         }
 
+        try {
+            return getRangeReaders().read(blob, startOffset, (int) Math.abs(recordSize));
+        } catch (IOException e) {
+            throw new NuxeoException("Error reading the blob with a ByteRange.", e);
+        }
+    }
+
+    /**
+     * Builds the {@code Record} from its bytes, already read from the LDT (see {@code LDTRecordCursor}).
+     * 
+     * @param recordBytes
+     * @param startOffset used for error messages
+     * @param recordSize negative if the LDT is compressed, see {@code getRecord(Blob, long, long)}
+     * @return a @{code Record} or {@code null} if no record is found
+     * @since 2021
+     */
+    public Record getRecord(byte[] recordBytes, long startOffset, long recordSize) {
+
         // ==================================================
         // Get the String of the record
         // ==================================================
@@ -406,16 +543,14 @@ public class LDTParser {
             isCompressedLdt = true;
             recordSize = Math.abs(recordSize);
         }
-        ByteRange range = ByteRange.inclusive(startOffset, startOffset + recordSize - 1);
-        try (InputStream stream = LDTParserRecordStream.getStream(blob, range)) {
-            byte[] recordBytes = stream.readNBytes((int) recordSize);
+        try {
             if (isCompressedLdt) {
                 recordStr = CompressedLDT.expand(recordBytes);
             } else {
                 recordStr = new String(recordBytes, StandardCharsets.UTF_8);
             }
         } catch (IOException e) {
-            throw new NuxeoException("Error reading the blob with a ByteRange.", e);
+            throw new NuxeoException("Error expanding the record.", e);
         }
 
         // Not found. And no exception => most likely invalid range/size.
@@ -501,6 +636,66 @@ public class LDTParser {
         }
     }
 
+    /**
+     * Gets several records of the same LDT with a few reads: the ranges are sorted, and ranges less than
+     * {@code coalesceMaxGap} bytes apart are read together (up to {@code coalesceMaxReadSize} bytes per read, see
+     * {@code RangeCoalescer}). Each record is then parsed from the bytes of its read.
+     * 
+     * @param blob
+     * @param startOffsets
+     * @param recordSizes same size as {@code startOffsets}. Negative if the LDT is compressed
+     * @return the records, in the order of {@code startOffsets}. An element is null if no record is found
+     * @since 2021
+     */
+    public List<Record> getRecords(Blob blob, List<Long> startOffsets, List<Long> recordSizes) {
+
+        if (startOffsets.size() != recordSizes.size()) {
+            throw new NuxeoException("getRecords: Got " + startOffsets.size() + " startOffsets but "
+                    + recordSizes.size() + " recordSizes, they must be the same");
+        }
+
+        int count = startOffsets.size();
+        long[] starts = new long[count];
+        int[] lengths = new int[count];
+        for (int i = 0; i < count; i++) {
+            starts[i] = startOffsets.get(i);
+            long recordSize = recordSizes.get(i);
+            if (starts[i] < 0 || Math.abs(recordSize) < 1) {
+                throw new NuxeoException(
+                        "getRecords: Invalid startOffest (" + starts[i] + ") or recordSize (" + recordSize + ")");
+            }
+            lengths[i] = (int) Math.abs(recordSize);
+        }
+
+        Record[] records = new Record[count];
+        for (RangeCoalescer.MergedRange read : RangeCoalescer.coalesce(starts, lengths, config.getCoalesceMaxGap(),
+                config.getCoalesceMaxReadSize())) {
+            byte[] buffer;
+            try {
+                buffer = getRangeReaders().read(blob, read.start, read.getLength());
+            } catch (IOException e) {
+                throw new NuxeoException("Error reading the blob with a ByteRange.", e);
+            }
+            for (int i : read.getMembers()) {
+                int from = (int) Math.min(buffer.length, starts[i] - read.start);
+                byte[] recordBytes = Arrays.copyOfRange(buffer, from, Math.min(buffer.length, from + lengths[i]));
+                records[i] = getRecord(recordBytes, starts[i], recordSizes.get(i));
+            }
+        }
+
+        return Arrays.asList(records);
+    }
+
+    /**
+     * @param blob
+     * @return a cursor reading ahead when the records of the blob are requested in file order, see
+     *         {@code LDTRecordCursor}. Must be closed.
+     * @since 2021
+     */
+    public LDTRecordCursor newRecordCursor(Blob blob) {
+        return new LDTRecordCursor(this, blob, config.getReadAheadWindowSize(), config.getReadAheadWindows());
+    }
+
     /**
      * Get a {@code Record} built from pages from a multi-page record.
      * See {@code getRecord(Blob blob, long startOffset, long recordSize)} for details on parameters.
@@ -523,91 +718,235 @@ public class LDTParser {
         return null;
     }
 
-    protected int getEOLLength(CloseableFile closFile) throws IOException {
+    /**
+     * Same as {@code getRecord(Blob, long, long)}, but the record is read and parsed in the executor of the blob
+     * provider (see {@code LDTRecordExecutors}), which caps the number of concurrent reads on the provider. So a caller
+     * can request many records at once without blocking a thread per record.
+     * <br>
+     * Records are parsed concurrently, each thread uses its own callbacks instance (see {@code Callbacks}).
+     * 
+     * @param blob
+     * @param startOffset
+     * @param recordSize
+     * @return the future record (null if no record is found). Completes exceptionally with a {@code NuxeoException}
+     *         if the record cannot be read.
+     * @since 2021
+     */
+    public CompletableFuture<Record> getRecordAsync(Blob blob, long startOffset, long recordSize) {
+        return CompletableFuture.supplyAsync(() -> {
+            byte[] recordBytes = readRecordBytes(blob, startOffset, recordSize);
+            return getRecord(recordBytes, startOffset, recordSize);
+        }, LDTRecordExecutors.getExecutor(blob));
+    }
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(closFile.getFile()))) {
+    /**
+     * See {@code getRecordAsync(Blob, long, long)} and {@code getRecord(Blob, long, long, int, int)}
+     * 
+     * @param blob
+     * @param startOffset
+     * @param recordSize
+     * @param firstPage
+     * @param lastPage
+     * @return the future record
+     * @since 2021
+     */
+    public CompletableFuture<Record> getRecordAsync(Blob blob, long startOffset, long recordSize, int firstPage,
+            int lastPage) {
+        return getRecordAsync(blob, startOffset, recordSize).thenApply(
+                record -> record == null ? null : record.buildForPageRange(firstPage, lastPage));
+    }
 
-            int c;
-            while ((c = reader.read()) != -1) {
-                if (c == '\r') {
-                    c = reader.read();
-                    if (c == '\n') {
-                        return 2;// CRLF;
-                    }
-                    return 1; // CR; // This would be unusual but is technically possible
-                } else if (c == '\n') {
-                    return 1; // LF;
-                }
-            }
+    /**
+     * @return the single-flight of {@code getRecordJson}, for its statistics
+     * @since 2021
+     */
+    public static LDTSingleFlight<LDTRecordKey, String> getRecordJsonFlights() {
+        return recordJsonFlights;
+    }
 
-        } catch (IOException e) {
-            throw new NuxeoException(e);
+    /**
+     * Same as {@code getRecordJson(Blob, long, long, int, int)}, for the whole record
+     * 
+     * @since 2021
+     */
+    public String getRecordJson(Blob blob, long startOffset, long recordSize) {
+        return getRecordJson(blob, startOffset, recordSize, LDTRecordKey.NO_PAGE, LDTRecordKey.NO_PAGE);
+    }
+
+    /**
+     * Gets the record and returns its JSON (see {@code Record#toJson}).
+     * <br>
+     * Concurrent identical requests (same parser, same LDT blob digest, same range and pages, see
+     * {@code LDTRecordKey}) share one read and parse: the first one does the work, the others wait for its JSON (see
+     * {@code LDTSingleFlight}). So, when many users open the same record at the same time, the record is read once.
+     * <br>
+     * The JSON is then kept in the {@code LDTRecordCache}, if enabled, for the next requests, and in the
+     * {@code LDTRecordJsonStore}, if {@code recordJsonKeyValueStore} is configured, for the other nodes of the
+     * cluster.
+     * 
+     * @param blob
+     * @param startOffset
+     * @param recordSize
+     * @param firstPage {@code LDTRecordKey.NO_PAGE} for the whole record
+     * @param lastPage {@code LDTRecordKey.NO_PAGE} for the whole record
+     * @return the JSON of the record, or null if no record is found
+     * @since 2021
+     */
+    public String getRecordJson(Blob blob, long startOffset, long recordSize, int firstPage, int lastPage) {
+
+        LDTRecordKey key = LDTRecordKey.of(name, blob, startOffset, recordSize, firstPage, lastPage);
+        LDTRecordCache cache = key == null ? null : LDTRecordCache.getInstance();
+        if (cache != null) {
+            String json = cache.get(key);
+            if (json != null) {
+                return json;
+            }
         }
 
-        throw new NuxeoException("Cannot determine the type of End of Line (LF, CRLF)");
+        LDTRecordJsonStore store = key == null || StringUtils.isBlank(config.getRecordJsonKeyValueStore()) ? null
+                : LDTRecordJsonStore.getInstance(config.getRecordJsonKeyValueStore());
+        return recordJsonFlights.execute(key, () -> {
+            if (store != null) {
+                String json = store.get(key);
+                if (json != null) {
+                    if (cache != null) {
+                        cache.put(key, json);
+                    }
+                    return json;
+                }
+            }
+            Record record = getRecord(blob, startOffset, recordSize);
+            if (record == null) {
+                return null;
+            }
+            if (firstPage != LDTRecordKey.NO_PAGE && lastPage != LDTRecordKey.NO_PAGE) {
+                record = record.buildForPageRange(firstPage, lastPage);
+            }
+            String json;
+            try {
+                json = record.toJson();
+            } catch (JacksonException e) {
+                throw new NuxeoException("Error building the JSON of the record", e);
+            }
+            if (cache != null) {
+                cache.put(key, json);
+            }
+            if (store != null) {
+                store.put(key, json, config.getRecordJsonKeyValueStoreTTL());
+            }
+            return json;
+        });
     }
 
-    /*
-     * The it parameter MUST be positioned at the beginning of a record
+    /**
+     * Starts a parallel ranged download of the blob if the configuration asks for it, the blob is stored on S3 and is
+     * big enough. Not used when compressing the LDT, since {@code CompressedLDT} reads the blob itself.
+     *
+     * @param blob
+     * @param compressLdt
+     * @return the started download, or null if the blob must be read with {@code getCloseableFile}
+     * @since 2021
      */
-    protected RecordInfo getOneRecordInfo(LineIterator it) throws IOException {
+    protected LDTParallelDownload startParallelDownload(Blob blob, boolean compressLdt) throws IOException {
 
-        if (!it.hasNext()) {
+        if (!config.useParallelDownload() || compressLdt || blob.getLength() < config.getParallelDownloadMinSize()
+                || !LDTParserRecordStream.isS3Blob(blob)) {
             return null;
         }
 
-        long recordStart = totalBytesRead;
-        long lineStart = lineCount;
-
-        String line = it.nextLine();
-        if (!isRecordStart(line)) {
-            throw new NuxeoException("Line should be a Record-Start, and starts with '" + recordStartToken + "'");
+        LDTParallelDownload download = new LDTParallelDownload(blob, config.getParallelDownloadThreads(),
+                config.getParallelDownloadChunkSize());
+        try {
+            download.start();
+        } catch (IOException | RuntimeException e) {
+            download.close();
+            throw e;
         }
-        lineCount += 1;
+        log.info("Downloading " + blob.getFilename() + " with " + config.getParallelDownloadThreads()
+                + " parallel ranged GETs.");
 
-        // If using non ASCII char:
-        // byte[] utf8Bytes = line.getBytes("UTF-8");
-        // totalBytesRead += utf8Bytes.length + lengthOfEOF;
-        totalBytesRead += line.length() + lengthOfEOF;
+        return download;
+    }
 
-        ArrayList<HeaderLine> headers = new ArrayList<HeaderLine>();
-        // Assume we will always have at least one header
-        HeaderLine header = parseRecordHeader(line, 1);
-        if (header == null) {
-            throw new NuxeoException("Malformed header line, no matching Pattern found for <" + line + ">");
-        }
-        headers.add(header);
-
-        // Assume we have no more than 100 header lines...
-        for (int lineNumber = 1; lineNumber < 100; lineNumber++) {
-            line = it.nextLine();
-            lineCount += 1;
-            totalBytesRead += line.length() + lengthOfEOF;
-            header = parseRecordHeader(line, lineNumber);
-            if (header != null) {
-                headers.add(header);
-            } else {
-                break;
-            }
+    /**
+     * @return the local file of the download if not null, else the file of the blob
+     * @since 2021
+     */
+    protected CloseableFile getCloseableFile(Blob blob, LDTParallelDownload download) throws IOException {
+        return download == null ? blob.getCloseableFile() : new CloseableFile(download.getFile(), false);
+    }
+
+    /**
+     * When {@code download} is not null, the scanner waits for the bytes it reads, and maps windows of the size of a
+     * chunk, so scanning starts with the first chunk.
+     *
+     * @since 2021
+     */
+    protected LDTRecordScanner newScanner(File file, LDTParallelDownload download) throws IOException {
+
+        if (download == null) {
+            return new LDTRecordScanner(this, file);
         }
-        // We catched the first itemLine above, but it's ok, there will be at least one item.
 
-        while (it.hasNext()) {
-            String moreLine = it.nextLine();
-            lineCount += 1;
-            // utf8Bytes = moreLine.getBytes("UTF-8");
-            // totalBytesRead += utf8Bytes.length + lengthOfEOF;
-            totalBytesRead += moreLine.length() + lengthOfEOF;
-            if (isRecordEnd(moreLine)) {
-                break;
+        LDTRecordScanner scanner = new LDTRecordScanner(this, file, download.getChunkSize());
+        scanner.setAvailability(download);
+        return scanner;
+    }
+
+    /**
+     * Scans the whole file and returns the {@code RecordInfo} of all its records, in file order.
+     * <br>
+     * If {@code parallelism} is greater than 1, the file is split into {@code parallelism} segments (each split point
+     * moved forward to the start of the next record), each segment is scanned in a {@code ForkJoinPool} and the results
+     * are merged back in file order. Offsets, sizes and line numbers are the same as with a sequential scan.
+     * <br>
+     * <b>WARNING</b>: All the records are held in memory.
+     * 
+     * @param file
+     * @param parallelism
+     * @return the list of {@code RecordInfo}
+     * @throws IOException
+     * @since 2021
+     */
+    public List<RecordInfo> scanRecords(File file, int parallelism) throws IOException {
+
+        List<LDTSegmentScanTask> tasks = new ArrayList<>();
+        try (LDTRecordScanner splitter = new LDTRecordScanner(this, file)) {
+            long fileSize = splitter.getFileSize();
+            long segmentStart = 0;
+            for (int i = 1; i < parallelism && segmentStart < fileSize; i++) {
+                long boundary = splitter.findRecordBoundary(fileSize * i / parallelism);
+                if (boundary > segmentStart) {
+                    tasks.add(new LDTSegmentScanTask(this, file, segmentStart, boundary));
+                    segmentStart = boundary;
+                }
+            }
+            if (segmentStart < fileSize) {
+                tasks.add(new LDTSegmentScanTask(this, file, segmentStart, fileSize));
             }
         }
 
-        long recordSize = totalBytesRead - recordStart;
-        RecordInfo recInfo = new RecordInfo(recordStart, recordSize, lineStart, headers);
-
-        return recInfo;
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, Math.min(parallelism, tasks.size())));
+        try {
+            for (LDTSegmentScanTask task : tasks) {
+                pool.execute(task);
+            }
+            List<RecordInfo> allRecords = new ArrayList<>();
+            long lineOffset = 0;
+            for (LDTSegmentScanTask task : tasks) {
+                // join() rethrows the NuxeoException, if any
+                List<RecordInfo> segmentRecords = task.join();
+                for (RecordInfo record : segmentRecords) {
+                    record.startLine += lineOffset;
+                }
+                allRecords.addAll(segmentRecords);
+                lineOffset += task.getLineCount();
+            }
 
+            return allRecords;
+        } finally {
+            pool.shutdownNow();
+        }
     }
 
     /**
@@ -627,13 +966,44 @@ public class LDTParser {
      * </ul>
      * Caller is in charge of making sure permissions allow for creating content.
      * <br>
-     * <b>WARNING</b>: Assume the file is UTF-8, even pure ASCII (no multibytes char)
+     * The file is scanned at the byte level (see {@code LDTRecordScanner}), so offsets and sizes are exact even with
+     * multibytes chars. Still, the file is assumed to be UTF-8 when decoding the headers.
+     * <br>
+     * If {@code useBulkActionForRecords} is set (and {@code compressLdt} is false), only the container is created, the
+     * records are created by the {@code ldtCreateRecords} Bulk Action (see {@code LDTCreateRecordsAction}), and the
+     * returned {@code LDTInfo} holds the bulk command id.
+     * <br>
+     * Unless {@code compressLdt} is true, a checkpoint is kept while parsing and stored on inputLdtDoc at the end (see
+     * {@code LDTCheckpointTracker}), so the parsing can be resumed after a failure/restart (see
+     * {@code parseAndCreateDocuments(DocumentModel, boolean, int, Boolean, boolean)}).
+     * <br>
+     * If {@code indexOnly} is set, no document is created, the LDT is only indexed (see
+     * {@code indexLDT(DocumentModel, boolean)}).
      * 
      * @param inputLdtDoc, the input document whose file:content contains the LDT to parse
      * @return the @{code LDTInfo}
      * @since 2021
      */
     public LDTInfo parseAndCreateDocuments(DocumentModel inputLdtDoc, boolean compressLdt) {
+        return parseAndCreateDocuments(inputLdtDoc, compressLdt, 0, null, false);
+    }
+
+    /**
+     * See {@code parseAndCreateDocuments(DocumentModel, boolean)}.
+     * 
+     * @param inputLdtDoc
+     * @param compressLdt
+     * @param commitBatchSize if &gt; 0, overrides {@code commitBatchSize} from the configuration (initial size in
+     *            adaptive mode)
+     * @param adaptiveCommitBatchSize if not null, overrides {@code adaptiveCommitBatchSize} from the configuration
+     * @param resume if true and inputLdtDoc has a checkpoint, the records container is reused and the parsing starts
+     *            at the checkpoint (records already created after the checkpoint are skipped). Not compatible with
+     *            {@code compressLdt}.
+     * @return the @{code LDTInfo}
+     * @since 2021
+     */
+    public LDTInfo parseAndCreateDocuments(DocumentModel inputLdtDoc, boolean compressLdt, int commitBatchSize,
+            Boolean adaptiveCommitBatchSize, boolean resume) {
 
         LDTInfo ldtInfo = null;
 
@@ -652,6 +1022,30 @@ public class LDTParser {
             return new LDTInfo(0);
         }
 
+        if (config.isIndexOnly()) {
+            if (resume) {
+                log.info("LDTParser#parseAndCreateStatements: indexOnly mode, resume is ignored.");
+            }
+            return indexLDT(inputLdtDoc, compressLdt);
+        }
+
+        if (resume && compressLdt) {
+            throw new NuxeoException(
+                    "LDTParser#parseAndCreateStatements: Cannot resume the parsing when compressing the LDT");
+        }
+
+        boolean useBulkAction = config.useBulkActionForRecords();
+        if (useBulkAction && compressLdt) {
+            log.warn("LDTParser#parseAndCreateStatements: compressLdt requires a sequential parsing, "
+                    + "useBulkActionForRecords is ignored.");
+            useBulkAction = false;
+        }
+        // The bulk workers do not track a checkpoint: resuming would create all the records again
+        if (resume && useBulkAction) {
+            throw new NuxeoException(
+                    "LDTParser#parseAndCreateStatements: Cannot resume the parsing when useBulkActionForRecords is set");
+        }
+
         // Parse
         int countRecords = 0;
         CoreSession session = inputLdtDoc.getCoreSession();
@@ -659,108 +1053,225 @@ public class LDTParser {
         TransactionHelper.commitOrRollbackTransaction();
         TransactionHelper.startTransaction();
 
-        // Create a folder for the statements
-        DocumentModel docParent = session.getParentDocument(inputLdtDoc.getRef());
-        DocumentModel parent = session.createDocumentModel(docParent.getPathAsString(),
-                inputLdtDoc.getName() + config.getRecordsContainerSuffix(), config.getRecordsContainerDocType());
-        parent.setPropertyValue("dc:title", inputLdtDoc.getTitle() + config.getRecordsContainerSuffix());
-        parent = session.createDocument(parent);
-        String parentPath = parent.getPathAsString();
+        LDTCheckpointTracker checkpointTracker = null;
+        DocumentModel parent = null;
+        if (resume) {
+            parent = getRecordsContainerForResume(inputLdtDoc);
+        }
+        boolean resuming = parent != null;
 
-        totalBytesRead = 0;
-        lineCount = 1;
+        if (resuming) {
+            checkpointTracker = LDTCheckpointTracker.load(inputLdtDoc);
+            log.info("LDTParser#parseAndCreateStatements: Resuming at offset " + checkpointTracker.getOffset() + ", "
+                    + checkpointTracker.getCount() + " records already created.");
+        } else {
+            // Create a folder for the statements
+            DocumentModel docParent = session.getParentDocument(inputLdtDoc.getRef());
+            parent = session.createDocumentModel(docParent.getPathAsString(),
+                    inputLdtDoc.getName() + config.getRecordsContainerSuffix(), config.getRecordsContainerDocType());
+            parent.setPropertyValue("dc:title", inputLdtDoc.getTitle() + config.getRecordsContainerSuffix());
+            parent = session.createDocument(parent);
+
+            inputLdtDoc.setPropertyValue(Constants.XPATH_LDT_RECORDS_CONTAINER_ID, parent.getId());
+            if (!compressLdt && !useBulkAction) {
+                checkpointTracker = new LDTCheckpointTracker(inputLdtDoc.getId(), 0, 0, 1);
+                checkpointTracker.copyTo(inputLdtDoc);
+                // Overwrites the checkpoint of a previous parsing
+                checkpointTracker.save();
+            }
+            inputLdtDoc = session.saveDocument(inputLdtDoc);
+        }
+        String parentPath = parent.getPathAsString();
 
-        boolean hasCustomTitle = config.getRecordTitleFields() != null && config.getRecordTitleFields().size() > 0;
+        if (useBulkAction) {
+            // The container must be committed before the workers create the records
+            session.save();
+            TransactionHelper.commitOrRollbackTransaction();
+            TransactionHelper.startTransaction();
 
-        try (CloseableFile closFile = blob.getCloseableFile();
-                LineIterator it = FileUtils.lineIterator(closFile.getFile(), "UTF-8")) {
+            // Indexes are built with a single scan, before the workers start
+            try (LDTRecordIndexWriter indexWriter = config.buildRecordIndex() ? new LDTRecordIndexWriter() : null;
+                    LDTKeyIndexWriter keyIndexWriter = config.buildKeyIndex() ? new LDTKeyIndexWriter() : null;
+                    LDTHeaderIndexesWriter headerIndexesWriter = newHeaderIndexesWriter()) {
+                if (indexWriter != null || keyIndexWriter != null || headerIndexesWriter != null) {
+                    try (LDTParallelDownload download = startParallelDownload(blob, false);
+                            CloseableFile closFile = getCloseableFile(blob, download)) {
+                        scanAndIndex(closFile.getFile(), download, indexWriter, keyIndexWriter, headerIndexesWriter);
+                    }
+                    setIndexes(inputLdtDoc, blob.getFilename(), indexWriter, keyIndexWriter, headerIndexesWriter);
+                }
+            } catch (IOException e) {
+                throw new NuxeoException(e);
+            }
 
-            long fileSize = closFile.getFile().length();
-            NumberFormat numberFormat = NumberFormat.getInstance(Locale.US);
+            String commandId = LDTCreateRecordsAction.submit(inputLdtDoc, name, parentPath);
+            inputLdtDoc.setPropertyValue(Constants.XPATH_LDT_RECORDS_BULK_COMMAND_ID, commandId);
+            inputLdtDoc = session.saveDocument(inputLdtDoc);
+            session.save();
+            TransactionHelper.commitOrRollbackTransaction();
+            TransactionHelper.startTransaction();
 
-            lengthOfEOF = getEOLLength(closFile);
-            // log.warn("==============================");
-            // log.warn("lengthOfEOF: " + lengthOfEOF);
-            // log.warn("==============================");
+            log.info("parseAndCreateStatementsWithRanges: Bulk command " + commandId + " submitted.");
+            ldtInfo = new LDTInfo(0);
+            ldtInfo.bulkCommandId = commandId;
+            return ldtInfo;
+        }
 
-            CompressedLDT compressedLdt = null;
-            while (it.hasNext()) {
+        LDTParseSession parseSession = new LDTParseSession();
+        LDTIngestionPipeline.PipelineStats pipelineStats = null;
 
-                // Get the whole record
-                RecordInfo record = getOneRecordInfo(it);
+        try (LDTParallelDownload download = startParallelDownload(blob, compressLdt);
+                CloseableFile closFile = getCloseableFile(blob, download);
+                LDTRecordScanner scanner = newScanner(closFile.getFile(), download);
+                LDTRecordIndexWriter indexWriter = config.buildRecordIndex() && !resuming ? new LDTRecordIndexWriter()
+                        : null;
+                LDTKeyIndexWriter keyIndexWriter = config.buildKeyIndex() && !resuming ? new LDTKeyIndexWriter()
+                        : null;
+                LDTHeaderIndexesWriter headerIndexesWriter = resuming ? null : newHeaderIndexesWriter()) {
 
-                // If parsing whent wrong, the log has the info
-                if (record == null) {
-                    continue;
-                }
-                ByteRange range;
-                if (compressLdt) {
-                    if (compressedLdt == null) {
-                        compressedLdt = new CompressedLDT(blob);
-                    }
-                    range = compressedLdt.add(record.startOffset, record.size);
-                    // Realign the values, make record size negative, as flag for "values for compressed file"
-                    // (we do it for recordSize, since sartoffset may be 0)
-                    record.startOffset = range.getStart();
-                    record.size = -range.getLength();
-                }
+            long fileSize = scanner.getFileSize();
+            NumberFormat numberFormat = NumberFormat.getInstance(Locale.US);
 
-                // log.warn(record.toString());
-                // log.warn("totalBytesRead: " + totalBytesRead);
+            Iterator<RecordInfo> records;
+            // Parallel segments would wait for the end of the download
+            int scanParallelism = download == null ? config.getScanParallelism() : 1;
+            Set<Long> existingOffsets = Collections.emptySet();
+            if (resuming) {
+                // Resuming: sequential scan from the checkpoint
+                scanner.seek(checkpointTracker.getOffset(), checkpointTracker.getLine());
+                records = scanner.iterator();
+                countRecords = (int) checkpointTracker.getCount();
+                existingOffsets = getRecordsOffsetsAfter(session, inputLdtDoc.getId(), checkpointTracker.getOffset());
+            } else if (scanParallelism > 1) {
+                records = scanRecords(closFile.getFile(), scanParallelism).iterator();
+            } else {
+                records = scanner.iterator();
+            }
 
-                // Create the document
-                String title;
-                if (hasCustomTitle) {
-                    title = record.getValue(config.getRecordTitleFields().get(0));
-                    for (int i = 1; i < config.getRecordTitleFields().size(); i++) {
-                        title += "-" + record.getValue(config.getRecordTitleFields().get(i));
-                    }
-                } else {
-                    title = inputLdtDoc.getTitle() + "-" + countRecords + 1;
+            CompressedLDT compressedLdt = compressLdt ? new CompressedLDT(blob) : null;
+            int progressLogInterval = config.getProgressLogInterval();
+            CommitBatchSizer commitBatchSizer = new CommitBatchSizer(
+                    commitBatchSize > 0 ? commitBatchSize : config.getCommitBatchSize(),
+                    adaptiveCommitBatchSize != null ? adaptiveCommitBatchSize : config.useAdaptiveCommitBatchSize(),
+                    config.getMaxCommitBatchSize(), config.getCommitTimeBudgetMs());
+
+            // Last record created in this thread, not committed yet when the loop ends
+            RecordInfo lastRecord = null;
+            int writers = config.getIngestionWriters();
+            if (writers > 0) {
+                // The container must be committed before the writers create the records. No transaction in this
+                // thread while scanning, it would time out on big files.
+                session.save();
+                TransactionHelper.commitOrRollbackTransaction();
+
+                LDTIngestionPipeline pipeline = new LDTIngestionPipeline(config.getIngestionQueueSize(), writers,
+                        commitBatchSizer, progressLogInterval);
+                pipeline.setFileSize(fileSize);
+                pipeline.setFirstRecordIndex(countRecords);
+                pipeline.setCheckpointTracker(checkpointTracker);
+                // Compression and index need the records in file order
+                UnaryOperator<RecordInfo> inOrder = null;
+                if (compressedLdt != null || indexWriter != null || keyIndexWriter != null
+                        || headerIndexesWriter != null) {
+                    CompressedLDT finalCompressedLdt = compressedLdt;
+                    inOrder = record -> indexRecord(indexWriter, keyIndexWriter, headerIndexesWriter,
+                            compressRecord(finalCompressedLdt, record));
                 }
+                String ldtDocId = inputLdtDoc.getId();
+                String ldtDocTitle = inputLdtDoc.getTitle();
+                Set<Long> skippedOffsets = existingOffsets;
+                countRecords += (int) pipeline.run(records, inOrder, session.getRepositoryName(),
+                        session.getPrincipal(), (writerSession, recordIndex, record) -> {
+                            if (!skippedOffsets.contains(record.startOffset)) {
+                                createRecordDocument(writerSession, parentPath, ldtDocId, ldtDocTitle, record,
+                                        recordIndex);
+                            }
+                        });
+                TransactionHelper.startTransaction();
+                parseSession.setProgress(pipeline.getStats().getScannedBytes(),
+                        pipeline.getStats().getScannedLines());
+                pipelineStats = pipeline.getStats();
 
-                DocumentModel recordDoc = session.createDocumentModel(parentPath, title, config.getRecordDocType());
-                recordDoc.setPropertyValue("dc:title", title);
-                recordDoc.setPropertyValue(Constants.XPATH_LDTRECORD_RELATED_LDT_DOC, inputLdtDoc.getId());
-                recordDoc.setPropertyValue(Constants.XPATH_LDTRECORD_STARTOFFSET, record.startOffset);
-                recordDoc.setPropertyValue(Constants.XPATH_LDTRECORD_RECORDSIZE, record.size);
-                recordDoc.setPropertyValue(Constants.XPATH_LDTRECORD_STARTLINE, record.startLine);
-                if (config.getRecordFieldsMapping() != null) {
-                    for (Map.Entry<String, String> xpathField : config.getRecordFieldsMapping().entrySet()) {
-                        String fieldInMap = xpathField.getValue();
-                        String fieldValue = record.getValue(fieldInMap);
-                        recordDoc.setPropertyValue(xpathField.getKey(), fieldValue);
+            } else {
+                RecordInfo record = null;
+                while (records.hasNext()) {
+                    // Get the whole record
+                    record = records.next();
+                    parseSession.recordRead(record);
+
+                    indexRecord(indexWriter, keyIndexWriter, headerIndexesWriter,
+                            compressRecord(compressedLdt, record));
+
+                    if (!existingOffsets.contains(record.startOffset)) {
+                        createRecordDocument(session, parentPath, inputLdtDoc.getId(), inputLdtDoc.getTitle(),
+                                record, countRecords);
                     }
-                }
-                recordDoc = session.createDocument(recordDoc);
 
-                countRecords += 1;
-                if ((countRecords % 100) == 0) {
-                    session.save();
-                    TransactionHelper.commitOrRollbackTransaction();
-                    TransactionHelper.startTransaction();
-                }
-                if ((countRecords % 1000) == 0) {
-                    String msg = "LDTParser#parseAndCreateStatements, created/commited: "
-                            + numberFormat.format(countRecords);
-                    msg += "\nlineCount: " + numberFormat.format(lineCount);
-                    msg += "\nBytes Read: " + numberFormat.format(totalBytesRead) + "/" + numberFormat.format(fileSize);
-                    log.info(msg);
+                    countRecords += 1;
+                    if (commitBatchSizer.add()) {
+                        long start = System.nanoTime();
+                        session.save();
+                        commitAndStartTransaction();
+                        commitBatchSizer.committed(System.nanoTime() - start);
+                        if (checkpointTracker != null) {
+                            checkpointTracker.committedUpTo(countRecords - 1, record);
+                        }
+                    }
+                    if ((countRecords % progressLogInterval) == 0) {
+                        String msg = "LDTParser#parseAndCreateStatements, created: "
+                                + numberFormat.format(countRecords);
+                        msg += "\nCommit batch size: " + commitBatchSizer.getBatchSize();
+                        msg += "\nlineCount: " + numberFormat.format(parseSession.getLineCount());
+                        msg += "\nBytes Read: " + numberFormat.format(parseSession.getTotalBytesRead()) + "/"
+                                + numberFormat.format(fileSize);
+                        log.info(msg);
+                    }
                 }
+                lastRecord = record;
             }
 
             ldtInfo = new LDTInfo(countRecords);
             inputLdtDoc.setPropertyValue(Constants.XPATH_LDT_COUNTRECORDS, countRecords);
+            if (checkpointTracker != null) {
+                // The last batch is committed with the LDT document
+                checkpointTracker.copyTo(inputLdtDoc, countRecords - 1, lastRecord);
+            }
 
+            ldtInfo.pipelineStats = pipelineStats;
+            if (resuming) {
+                // The first records were not scanned
+                try (LDTRecordIndexWriter resumeIndexWriter = config.buildRecordIndex() ? new LDTRecordIndexWriter()
+                        : null;
+                        LDTKeyIndexWriter resumeKeyIndexWriter = config.buildKeyIndex() ? new LDTKeyIndexWriter()
+                                : null;
+                        LDTHeaderIndexesWriter resumeHeaderIndexesWriter = newHeaderIndexesWriter()) {
+                    if (resumeIndexWriter != null || resumeKeyIndexWriter != null
+                            || resumeHeaderIndexesWriter != null) {
+                        scanAndIndex(closFile.getFile(), download, resumeIndexWriter, resumeKeyIndexWriter,
+                                resumeHeaderIndexesWriter);
+                    }
+                    setIndexes(inputLdtDoc, blob.getFilename(), resumeIndexWriter, resumeKeyIndexWriter,
+                            resumeHeaderIndexesWriter);
+                }
+            } else {
+                setIndexes(inputLdtDoc, blob.getFilename(), indexWriter, keyIndexWriter, headerIndexesWriter);
+            }
             if (compressedLdt != null) {
                 Blob compressedLdtBlob = compressedLdt.close();
-                inputLdtDoc.setPropertyValue("file:content", (Serializable) compressedLdtBlob);
+                if (countRecords > 0) {
+                    inputLdtDoc.setPropertyValue("file:content", (Serializable) compressedLdtBlob);
+                }
             }
             inputLdtDoc = session.saveDocument(inputLdtDoc);
 
             session.save();
-            TransactionHelper.commitOrRollbackTransaction();
-            TransactionHelper.startTransaction();
+            commitAndStartTransaction();
+            if (checkpointTracker != null) {
+                if (lastRecord != null) {
+                    checkpointTracker.committedUpTo(countRecords - 1, lastRecord);
+                }
+                checkpointTracker.remove();
+            }
 
         } catch (IOException e) {
             throw new NuxeoException(e);
@@ -771,37 +1282,697 @@ public class LDTParser {
     }
 
     /**
-     * By default, we do not compress the LDT file.
-     * See {@code parseAndCreateDocuments(DocumentModel inputLdtDoc, boolean compressLdt} for details
+     * Index-only mode: scans the LDT and stores its record index, its key index and its header indexes (see
+     * {@code LDTKeyIndex}) on inputLdtDoc, without creating any container or record document. The records are then retrieved with
+     * {@code getRecords(DocumentModel, List)}.
+     * <br>
+     * Sets {@code ldt:countRecords}. If {@code compressLdt} is true, the LDT is compressed and the indexes hold the
+     * offsets/sizes in the compressed LDT.
      * 
      * @param inputLdtDoc
-     * @return
+     * @param compressLdt
+     * @return the @{code LDTInfo}
      * @since 2021
      */
-    public LDTInfo parseAndCreateDocuments(DocumentModel inputLdtDoc) {
-        return parseAndCreateDocuments(inputLdtDoc, false);
-    }
+    public LDTInfo indexLDT(DocumentModel inputLdtDoc, boolean compressLdt) {
 
-    /**
-     * This is mainly a helper for debug
-     * 
-     * @param recordDoc
-     * @param parser can be null (will use "default")
-     * @return
-     * @since 2021
-     */
-    public static String documentToJsonString(DocumentModel recordDoc, String parserName) {
-        /*
-         * Map<String, String> fields = new HashMap<String, String>();
-         * fields.put(Constants.XPATH_LDTRECORD_STARTLINE,
-         * "" + recordDoc.getPropertyValue(Constants.XPATH_LDTRECORD_STARTLINE));
-         * fields.put(Constants.XPATH_LDTRECORD_STARTOFFSET,
-         * "" + recordDoc.getPropertyValue(Constants.XPATH_LDTRECORD_STARTOFFSET));
-         * fields.put(Constants.XPATH_LDTRECORD_RECORDSIZE,
-         * "" + recordDoc.getPropertyValue(Constants.XPATH_LDTRECORD_RECORDSIZE));
-         * LDTParserDescriptor desc = Framework.getService(LDTParserService.class).getDescriptor(parser);
-         * List<String> xpaths = desc.getLDTRecordXPaths();
-         * for (String xpath : xpaths) {
+        Blob blob = (Blob) inputLdtDoc.getPropertyValue("file:content");
+        if (blob == null) {
+            log.warn("LDTParser#indexLDT: Input document has no blob.");
+            return new LDTInfo(0);
+        }
+
+        CoreSession session = inputLdtDoc.getCoreSession();
+        // No transaction while scanning, it would time out on big files
+        TransactionHelper.commitOrRollbackTransaction();
+
+        int countRecords = 0;
+        Blob compressedLdtBlob = null;
+        LDTParseSession parseSession = new LDTParseSession();
+        try (LDTParallelDownload download = startParallelDownload(blob, compressLdt);
+                CloseableFile closFile = getCloseableFile(blob, download);
+                LDTRecordIndexWriter indexWriter = new LDTRecordIndexWriter();
+                LDTKeyIndexWriter keyIndexWriter = new LDTKeyIndexWriter();
+                LDTHeaderIndexesWriter headerIndexesWriter = newHeaderIndexesWriter()) {
+
+            Iterator<RecordInfo> records;
+            LDTRecordScanner scanner = null;
+            int scanParallelism = download == null ? config.getScanParallelism() : 1;
+            if (scanParallelism > 1) {
+                records = scanRecords(closFile.getFile(), scanParallelism).iterator();
+            } else {
+                scanner = newScanner(closFile.getFile(), download);
+                records = scanner.iterator();
+            }
+
+            CompressedLDT compressedLdt = compressLdt ? new CompressedLDT(blob) : null;
+            try {
+                while (records.hasNext()) {
+                    RecordInfo record = records.next();
+                    parseSession.recordRead(record);
+                    indexRecord(indexWriter, keyIndexWriter, headerIndexesWriter,
+                            compressRecord(compressedLdt, record));
+                    countRecords += 1;
+                }
+            } finally {
+                if (scanner != null) {
+                    scanner.close();
+                }
+            }
+
+            setIndexes(inputLdtDoc, blob.getFilename(), indexWriter, keyIndexWriter, headerIndexesWriter);
+            if (compressedLdt != null) {
+                compressedLdtBlob = compressedLdt.close();
+            }
+        } catch (IOException e) {
+            throw new NuxeoException(e);
+        } finally {
+            TransactionHelper.startTransaction();
+        }
+
+        inputLdtDoc.setPropertyValue(Constants.XPATH_LDT_COUNTRECORDS, countRecords);
+        if (compressedLdtBlob != null && countRecords > 0) {
+            inputLdtDoc.setPropertyValue("file:content", (Serializable) compressedLdtBlob);
+        }
+        session.saveDocument(inputLdtDoc);
+        session.save();
+        TransactionHelper.commitOrRollbackTransaction();
+        TransactionHelper.startTransaction();
+
+        log.info("LDTParser#indexLDT: Indexing done. " + countRecords + " records indexed.");
+        return new LDTInfo(countRecords);
+    }
+
+    /**
+     * Commits the current transaction and starts a new one. The checkpoint must not move if the commit failed.
+     *
+     * @throws NuxeoException if the transaction was marked rollback only (it is then rolled back)
+     * @since 2021
+     */
+    protected static void commitAndStartTransaction() {
+        boolean rollback = TransactionHelper.isTransactionMarkedRollback();
+        TransactionHelper.commitOrRollbackTransaction();
+        TransactionHelper.startTransaction();
+        if (rollback) {
+            throw new NuxeoException("LDTParser: the transaction was rolled back, the parsing can be resumed");
+        }
+    }
+
+    /**
+     * @param inputLdtDoc
+     * @return the records container stored on inputLdtDoc if it has a checkpoint and the container still exists, else
+     *         null
+     * @since 2021
+     */
+    protected DocumentModel getRecordsContainerForResume(DocumentModel inputLdtDoc) {
+
+        String containerId = (String) inputLdtDoc.getPropertyValue(Constants.XPATH_LDT_RECORDS_CONTAINER_ID);
+        if (StringUtils.isBlank(containerId)
+                || inputLdtDoc.getPropertyValue(Constants.XPATH_LDT_CHECKPOINT_OFFSET) == null) {
+            log.warn("LDTParser#parseAndCreateStatements: No checkpoint found, parsing from the start.");
+            return null;
+        }
+
+        CoreSession session = inputLdtDoc.getCoreSession();
+        IdRef containerRef = new IdRef(containerId);
+        if (!session.exists(containerRef)) {
+            log.warn("LDTParser#parseAndCreateStatements: Records container " + containerId
+                    + " not found, parsing from the start.");
+            return null;
+        }
+
+        return session.getDocument(containerRef);
+    }
+
+
+    /**
+     * With several writers, records after the checkpoint may have been committed before the failure.
+     *
+     * @return the start offsets of the records of the LDT created at or after {@code offset}
+     * @since 2021
+     */
+    protected Set<Long> getRecordsOffsetsAfter(CoreSession session, String ldtDocId, long offset) {
+
+        String nxql = "SELECT " + Constants.XPATH_LDTRECORD_STARTOFFSET + " FROM " + config.getRecordDocType()
+                + " WHERE " + Constants.XPATH_LDTRECORD_RELATED_LDT_DOC + " = '" + ldtDocId + "' AND "
+                + Constants.XPATH_LDTRECORD_STARTOFFSET + " >= " + offset;
+        return session.queryProjection(nxql, 0, 0)
+                      .stream()
+                      .map(result -> ((Number) result.get(Constants.XPATH_LDTRECORD_STARTOFFSET)).longValue())
+                      .collect(Collectors.toSet());
+    }
+
+    /**
+     * Adds the record to the compressed LDT, and realigns its values: record size is negative, as flag for "values for
+     * compressed file" (we do it for recordSize, since startOffset may be 0)
+     * 
+     * @param compressedLdt if null, the record is returned as is
+     * @param record
+     * @return the record
+     * @since 2021
+     */
+    protected RecordInfo compressRecord(CompressedLDT compressedLdt, RecordInfo record) {
+        if (compressedLdt == null) {
+            return record;
+        }
+        try {
+            ByteRange range = compressedLdt.add(record.startOffset, record.size);
+            record.startOffset = range.getStart();
+            record.size = -range.getLength();
+            return record;
+        } catch (IOException e) {
+            throw new NuxeoException(e);
+        }
+    }
+
+    /**
+     * Adds the record to the record index. Records must be added in file order.
+     * 
+     * @param indexWriter if null, the record is returned as is
+     * @param record
+     * @return the record
+     * @since 2021
+     */
+    protected RecordInfo indexRecord(LDTRecordIndexWriter indexWriter, RecordInfo record) {
+        return indexRecord(indexWriter, null, null, record);
+    }
+
+    /**
+     * Adds the record to the record index, to the key index and to the header indexes. Records must be added in file
+     * order.
+     * 
+     * @param indexWriter if null, the record is not added to the record index
+     * @param keyIndexWriter if null, the record is not added to the key index
+     * @param headerIndexesWriter if null, the record is not added to the header indexes
+     * @param record
+     * @return the record
+     * @since 2021
+     */
+    protected RecordInfo indexRecord(LDTRecordIndexWriter indexWriter, LDTKeyIndexWriter keyIndexWriter,
+            LDTHeaderIndexesWriter headerIndexesWriter, RecordInfo record) {
+        if (headerIndexesWriter != null) {
+            headerIndexesWriter.add(record);
+        }
+        if (indexWriter == null && keyIndexWriter == null) {
+            return record;
+        }
+        List<String> keyValues = getKeyValues(record);
+        try {
+            if (indexWriter != null) {
+                indexWriter.add(record.startOffset, record.size, record.startLine, LDTRecordIndex.hashKey(keyValues));
+            }
+            if (keyIndexWriter != null) {
+                keyIndexWriter.add(keyValues, record.startOffset, record.size);
+            }
+            return record;
+        } catch (IOException e) {
+            throw new NuxeoException(e);
+        }
+    }
+
+    /**
+     * @return the header fields used for the key of the record index: {@code recordIndexKeyFields}, or
+     *         {@code recordTitleFields} if not set
+     * @since 2021
+     */
+    public List<String> getRecordIndexKeyFields() {
+        List<String> fields = config.getRecordIndexKeyFields();
+        if (fields == null || fields.isEmpty()) {
+            fields = config.getRecordTitleFields();
+        }
+        return fields == null ? List.of() : fields;
+    }
+
+    /**
+     * @param record
+     * @return the hash of the values of the {@code getRecordIndexKeyFields()} fields of the record
+     * @since 2021
+     */
+    public long computeKeyHash(RecordInfo record) {
+        return LDTRecordIndex.hashKey(getKeyValues(record));
+    }
+
+    /**
+     * @param record
+     * @return the values of the {@code getRecordIndexKeyFields()} fields of the record
+     * @since 2021
+     */
+    public List<String> getKeyValues(RecordInfo record) {
+        return getRecordIndexKeyFields().stream().map(record::getValue).collect(Collectors.toList());
+    }
+
+    /**
+     * Scans the LDT and builds its key index. The LDT must not be compressed.
+     * 
+     * @param ldtFile
+     * @param ldtFilename used to name the index
+     * @return the blob of the index
+     * @throws IOException
+     * @since 2021
+     */
+    public Blob buildKeyIndex(File ldtFile, String ldtFilename) throws IOException {
+        try (LDTKeyIndexWriter keyIndexWriter = new LDTKeyIndexWriter()) {
+            scanAndIndex(ldtFile, null, keyIndexWriter, null);
+            return keyIndexWriter.finish(ldtFilename);
+        }
+    }
+
+    /**
+     * Scans the LDT and builds its header indexes (see {@code headerIndexes} in the configuration). The LDT must not
+     * be compressed.
+     * 
+     * @param ldtFile
+     * @param ldtFilename used to name the indexes
+     * @return the value for {@code ldt:headerIndexes}, empty if no header index is configured
+     * @throws IOException
+     * @since 2021
+     */
+    public List<Map<String, Serializable>> buildHeaderIndexes(File ldtFile, String ldtFilename) throws IOException {
+        try (LDTHeaderIndexesWriter headerIndexesWriter = newHeaderIndexesWriter()) {
+            if (headerIndexesWriter == null || !headerIndexesWriter.hasHeaderIndexes()) {
+                return new ArrayList<>();
+            }
+            scanAndIndex(ldtFile, null, null, headerIndexesWriter);
+            return headerIndexesWriter.finish(ldtFilename);
+        }
+    }
+
+    /**
+     * @return a writer for the {@code headerIndexes} and the {@code bloomFilters} of the configuration, null if there
+     *         is none
+     * @since 2021
+     */
+    protected LDTHeaderIndexesWriter newHeaderIndexesWriter() {
+        List<LDTHeaderIndexDescriptor> headerIndexes = config.getHeaderIndexes();
+        List<LDTBloomFilterDescriptor> bloomFilters = config.getBloomFilters();
+        if ((headerIndexes == null || headerIndexes.isEmpty()) && (bloomFilters == null || bloomFilters.isEmpty())) {
+            return null;
+        }
+        List<String> headerFields = config.getAllHeaderfields();
+        if (headerIndexes != null) {
+            for (LDTHeaderIndexDescriptor headerIndex : headerIndexes) {
+                checkHeaderFields("Header index", headerIndex.getName(), headerIndex.getFields(), headerFields);
+            }
+        }
+        if (bloomFilters != null) {
+            for (LDTBloomFilterDescriptor bloomFilter : bloomFilters) {
+                checkHeaderFields("Bloom filter", bloomFilter.getName(), bloomFilter.getFields(), headerFields);
+            }
+        }
+        return new LDTHeaderIndexesWriter(headerIndexes, bloomFilters);
+    }
+
+    protected void checkHeaderFields(String what, String name, List<String> fields, List<String> headerFields) {
+        for (String field : fields) {
+            if (!headerFields.contains(field)) {
+                log.warn(what + " <" + name + ">: <" + field + "> is not a header field, its value is always empty.");
+            }
+        }
+    }
+
+    /**
+     * Scans the LDT and adds the records to the writers (which can be null)
+     * 
+     * @since 2021
+     */
+    protected void scanAndIndex(File ldtFile, LDTRecordIndexWriter indexWriter, LDTKeyIndexWriter keyIndexWriter,
+            LDTHeaderIndexesWriter headerIndexesWriter) throws IOException {
+        scanAndIndex(ldtFile, null, indexWriter, keyIndexWriter, headerIndexesWriter);
+    }
+
+    /**
+     * Same as {@code scanAndIndex(File, LDTRecordIndexWriter, LDTKeyIndexWriter, LDTHeaderIndexesWriter)}, scanning
+     * while {@code download} (if not null) downloads the file.
+     * 
+     * @since 2021
+     */
+    protected void scanAndIndex(File ldtFile, LDTParallelDownload download, LDTRecordIndexWriter indexWriter,
+            LDTKeyIndexWriter keyIndexWriter, LDTHeaderIndexesWriter headerIndexesWriter) throws IOException {
+        try (LDTRecordScanner scanner = newScanner(ldtFile, download)) {
+            for (RecordInfo record : scanner) {
+                indexRecord(indexWriter, keyIndexWriter, headerIndexesWriter, record);
+            }
+        }
+    }
+
+    /**
+     * Finishes the writers (which can be null) and stores the indexes on ldtDoc. Does not save the document.
+     * 
+     * @since 2021
+     */
+    protected void setIndexes(DocumentModel ldtDoc, String ldtFilename, LDTRecordIndexWriter indexWriter,
+            LDTKeyIndexWriter keyIndexWriter, LDTHeaderIndexesWriter headerIndexesWriter) throws IOException {
+        if (indexWriter != null) {
+            ldtDoc.setPropertyValue(Constants.XPATH_LDT_RECORD_INDEX, (Serializable) indexWriter.finish(ldtFilename));
+        }
+        if (keyIndexWriter != null) {
+            ldtDoc.setPropertyValue(Constants.XPATH_LDT_KEY_INDEX, (Serializable) keyIndexWriter.finish(ldtFilename));
+        }
+        if (headerIndexesWriter != null && headerIndexesWriter.hasHeaderIndexes()) {
+            ldtDoc.setPropertyValue(Constants.XPATH_LDT_HEADER_INDEXES,
+                    (Serializable) headerIndexesWriter.finish(ldtFilename));
+        }
+        if (headerIndexesWriter != null && headerIndexesWriter.hasBloomFilters()) {
+            ldtDoc.setPropertyValue(Constants.XPATH_LDT_BLOOM_FILTERS,
+                    (Serializable) headerIndexesWriter.finishBloomFilters(ldtFilename));
+        }
+    }
+
+    /**
+     * The index is read with positional reads (byte ranges on S3), caller must close it.
+     * 
+     * @param ldtDoc
+     * @return the key index of the LDT, null if it has none
+     * @since 2021
+     */
+    public LDTKeyIndex openKeyIndex(DocumentModel ldtDoc) {
+        Blob indexBlob = getIndexBlob(ldtDoc, null);
+        if (indexBlob == null) {
+            return null;
+        }
+        try {
+            return LDTKeyIndex.open(indexBlob);
+        } catch (IOException e) {
+            throw new NuxeoException(e);
+        }
+    }
+
+    /**
+     * Gets the records whose key fields (see {@code getRecordIndexKeyFields()}) have the given values, using the key
+     * index. No document/query is involved.
+     * 
+     * @param ldtDoc
+     * @param keyValues the values, in the order of the key fields (for example clientId then month)
+     * @return the records, in file order. Empty list if none matches.
+     * @since 2021
+     */
+    public List<Record> getRecords(DocumentModel ldtDoc, List<String> keyValues) {
+        return getRecords(ldtDoc, null, keyValues);
+    }
+
+    /**
+     * The index is read with positional reads (byte ranges on S3), caller must close it.
+     * 
+     * @param ldtDoc
+     * @param indexName name of a {@code headerIndex} of the configuration
+     * @return the header index of the LDT, null if it has none
+     * @since 2021
+     */
+    public LDTKeyIndex openHeaderIndex(DocumentModel ldtDoc, String indexName) {
+        Blob indexBlob = getIndexBlob(ldtDoc, indexName);
+        if (indexBlob == null) {
+            return null;
+        }
+        try {
+            return LDTKeyIndex.open(indexBlob);
+        } catch (IOException e) {
+            throw new NuxeoException(e);
+        }
+    }
+
+    /**
+     * @param ldtDoc
+     * @param indexName name of a {@code headerIndex} of the configuration, or null for the key index
+     * @return the blob of the index, null if the LDT has no such index
+     * @since 2021
+     */
+    @SuppressWarnings("unchecked")
+    public static Blob getIndexBlob(DocumentModel ldtDoc, String indexName) {
+        if (!ldtDoc.hasSchema(Constants.SCHEMA_LDT)) {
+            return null;
+        }
+        if (StringUtils.isBlank(indexName)) {
+            return (Blob) ldtDoc.getPropertyValue(Constants.XPATH_LDT_KEY_INDEX);
+        }
+        List<Map<String, Serializable>> indexes = (List<Map<String, Serializable>>) ldtDoc.getPropertyValue(
+                Constants.XPATH_LDT_HEADER_INDEXES);
+        if (indexes == null) {
+            return null;
+        }
+        return indexes.stream()
+                      .filter(index -> indexName.equals(index.get(Constants.HEADER_INDEX_NAME)))
+                      .map(index -> (Blob) index.get(Constants.HEADER_INDEX_CONTENT))
+                      .findFirst()
+                      .orElse(null);
+    }
+
+    /**
+     * Finds the records using the key index ({@code indexName} null) or a header index. Only the index is read (by
+     * ranges), the LDT itself is not.
+     * 
+     * @param ldtDoc
+     * @param indexName name of a {@code headerIndex} of the configuration, or null for the key index
+     * @param keyValues the values, in the order of the fields of the index
+     * @return the offset/size of the records, in file order. Empty list if none matches.
+     * @since 2021
+     */
+    public List<LDTKeyIndex.Entry> findRecords(DocumentModel ldtDoc, String indexName, List<String> keyValues) {
+        try (LDTKeyIndex index = StringUtils.isBlank(indexName) ? openKeyIndex(ldtDoc)
+                : openHeaderIndex(ldtDoc, indexName)) {
+            if (index == null) {
+                throw new NuxeoException("No " + (StringUtils.isBlank(indexName) ? "key" : "<" + indexName + ">")
+                        + " index for document " + ldtDoc.getId());
+            }
+            return index.find(keyValues);
+        } catch (IOException e) {
+            throw new NuxeoException(e);
+        }
+    }
+
+    /**
+     * Gets the records using the key index ({@code indexName} null) or a header index. No document/query is
+     * involved.
+     * 
+     * @param ldtDoc
+     * @param indexName name of a {@code headerIndex} of the configuration, or null for the key index
+     * @param keyValues the values, in the order of the fields of the index
+     * @return the records, in file order. Empty list if none matches.
+     * @since 2021
+     */
+    public List<Record> getRecords(DocumentModel ldtDoc, String indexName, List<String> keyValues) {
+        List<LDTKeyIndex.Entry> entries = findRecords(ldtDoc, indexName, keyValues);
+        Blob blob = (Blob) ldtDoc.getPropertyValue("file:content");
+        return entries.stream()
+                      .map(entry -> getRecord(blob, entry.startOffset, entry.size))
+                      .collect(Collectors.toList());
+    }
+
+    /**
+     * Checks the {@code filterName} Bloom filter of the LDT (see {@code bloomFilters} in the configuration).
+     * 
+     * @param ldtDoc
+     * @param filterName
+     * @param keyValues the values, in the order of the fields of the filter
+     * @return false if the LDT certainly has no record with these values. True if it may have one, or if the LDT has
+     *         no such filter.
+     * @since 2021
+     */
+    @SuppressWarnings("unchecked")
+    public static boolean mightContain(DocumentModel ldtDoc, String filterName, List<String> keyValues) {
+        if (!ldtDoc.hasSchema(Constants.SCHEMA_LDT)) {
+            return true;
+        }
+        List<Map<String, Serializable>> filters = (List<Map<String, Serializable>>) ldtDoc.getPropertyValue(
+                Constants.XPATH_LDT_BLOOM_FILTERS);
+        if (filters == null) {
+            return true;
+        }
+        Blob filterBlob = filters.stream()
+                                 .filter(filter -> filterName.equals(filter.get(Constants.BLOOM_FILTER_NAME)))
+                                 .map(filter -> (Blob) filter.get(Constants.BLOOM_FILTER_CONTENT))
+                                 .findFirst()
+                                 .orElse(null);
+        if (filterBlob == null) {
+            return true;
+        }
+        try {
+            return LDTBloomFilter.load(filterBlob).mightContain(keyValues);
+        } catch (IOException e) {
+            throw new NuxeoException(e);
+        }
+    }
+
+    /**
+     * Scans the LDT and builds its record index. The LDT must not be compressed.
+     * 
+     * @param ldtFile
+     * @param ldtFilename used to name the index
+     * @return the blob of the index
+     * @throws IOException
+     * @since 2021
+     */
+    public Blob buildRecordIndex(File ldtFile, String ldtFilename) throws IOException {
+        try (LDTRecordIndexWriter indexWriter = new LDTRecordIndexWriter()) {
+            scanAndIndex(ldtFile, indexWriter, null, null);
+            return indexWriter.finish(ldtFilename);
+        }
+    }
+
+    /**
+     * The index is memory-mapped, caller must close it.
+     * 
+     * @param ldtDoc
+     * @return the record index of the LDT, null if it has none
+     * @since 2021
+     */
+    public LDTRecordIndex openRecordIndex(DocumentModel ldtDoc) {
+        if (!ldtDoc.hasSchema(Constants.SCHEMA_LDT)) {
+            return null;
+        }
+        Blob indexBlob = (Blob) ldtDoc.getPropertyValue(Constants.XPATH_LDT_RECORD_INDEX);
+        if (indexBlob == null) {
+            return null;
+        }
+        try {
+            return LDTRecordIndex.open(indexBlob);
+        } catch (IOException e) {
+            throw new NuxeoException(e);
+        }
+    }
+
+    /**
+     * Gets a record from its number in the LDT, using the record index
+     * 
+     * @param ldtDoc
+     * @param recordNumber starts at 0
+     * @return the record
+     * @since 2021
+     */
+    public Record getRecord(DocumentModel ldtDoc, long recordNumber) {
+        LDTRecordIndex.Entry entry;
+        try (LDTRecordIndex index = openRecordIndex(ldtDoc)) {
+            if (index == null) {
+                throw new NuxeoException("No record index for document " + ldtDoc.getId());
+            }
+            entry = index.getEntry(recordNumber);
+        } catch (IOException e) {
+            throw new NuxeoException(e);
+        }
+        return getRecord((Blob) ldtDoc.getPropertyValue("file:content"), entry.startOffset, entry.size);
+    }
+
+    /**
+     * Creates the {@code recordDocType} document of a record, in the {@code parentPath} container. Caller is in charge
+     * of saving the session/committing the transaction.
+     * 
+     * @param session
+     * @param parentPath
+     * @param ldtDocId id of the LDT document holding the record
+     * @param ldtDocTitle title of the LDT document, used for the title of the record if no recordTitleFields is set
+     * @param record
+     * @param recordIndex index of the record in the LDT, starting at 0
+     * @return the created document
+     * @since 2021
+     */
+    public DocumentModel createRecordDocument(CoreSession session, String parentPath, String ldtDocId,
+            String ldtDocTitle, RecordInfo record, long recordIndex) {
+
+        String title;
+        if (config.getRecordTitleFields() != null && config.getRecordTitleFields().size() > 0) {
+            title = record.getValue(config.getRecordTitleFields().get(0));
+            for (int i = 1; i < config.getRecordTitleFields().size(); i++) {
+                title += "-" + record.getValue(config.getRecordTitleFields().get(i));
+            }
+        } else {
+            title = ldtDocTitle + "-" + recordIndex + 1;
+        }
+
+        DocumentModel recordDoc = session.createDocumentModel(parentPath, title, config.getRecordDocType());
+        recordDoc.setPropertyValue("dc:title", title);
+        recordDoc.setPropertyValue(Constants.XPATH_LDTRECORD_RELATED_LDT_DOC, ldtDocId);
+        recordDoc.setPropertyValue(Constants.XPATH_LDTRECORD_STARTOFFSET, record.startOffset);
+        recordDoc.setPropertyValue(Constants.XPATH_LDTRECORD_RECORDSIZE, record.size);
+        recordDoc.setPropertyValue(Constants.XPATH_LDTRECORD_STARTLINE, record.startLine);
+        if (config.getRecordFieldsMapping() != null) {
+            for (Map.Entry<String, String> xpathField : config.getRecordFieldsMapping().entrySet()) {
+                String fieldInMap = xpathField.getValue();
+                String fieldValue = record.getValue(fieldInMap);
+                recordDoc.setPropertyValue(xpathField.getKey(), fieldValue);
+            }
+        }
+
+        return session.createDocument(recordDoc);
+    }
+
+    /**
+     * Parses the headers of a record whose bytes (or at least the bytes of its header lines) are in {@code bytes},
+     * starting at {@code offset}. This is used when the record boundaries are already known (like when creating the
+     * records with a Bulk Action), to get the fields without scanning the whole file again.
+     * 
+     * @param bytes
+     * @param offset start of the record in {@code bytes}
+     * @param startOffset start of the record in the LDT
+     * @param size size of the record in the LDT
+     * @param startLine line of the record in the LDT
+     * @return the {@code RecordInfo}
+     * @since 2021
+     */
+    public RecordInfo parseRecordInfo(byte[] bytes, int offset, long startOffset, long size, long startLine) {
+
+        int length = (int) Math.min(size, bytes.length - offset);
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new ByteArrayInputStream(bytes, offset, length), StandardCharsets.UTF_8))) {
+
+            String line = reader.readLine();
+            if (line == null || !isRecordStart(line)) {
+                throw new NuxeoException("Line should be a Record-Start, and starts with '" + recordStartToken + "'");
+            }
+
+            ArrayList<HeaderLine> headers = new ArrayList<HeaderLine>();
+            HeaderLine header = parseRecordHeader(line, 1);
+            if (header == null) {
+                throw new NuxeoException("Malformed header line, no matching Pattern found for <" + line + ">");
+            }
+            headers.add(header);
+
+            for (int lineNumber = 1; lineNumber < LDTRecordScanner.MAX_HEADER_LINES; lineNumber++) {
+                line = reader.readLine();
+                header = line == null ? null : parseRecordHeader(line, lineNumber);
+                if (header == null) {
+                    break;
+                }
+                headers.add(header);
+            }
+
+            return new RecordInfo(startOffset, size, startLine, headers);
+
+        } catch (IOException e) {
+            throw new NuxeoException(e);
+        }
+    }
+
+    /**
+     * By default, we do not compress the LDT file.
+     * See {@code parseAndCreateDocuments(DocumentModel inputLdtDoc, boolean compressLdt} for details
+     * 
+     * @param inputLdtDoc
+     * @return
+     * @since 2021
+     */
+    public LDTInfo parseAndCreateDocuments(DocumentModel inputLdtDoc) {
+        return parseAndCreateDocuments(inputLdtDoc, false);
+    }
+
+    /**
+     * This is mainly a helper for debug
+     * 
+     * @param recordDoc
+     * @param parser can be null (will use "default")
+     * @return
+     * @since 2021
+     */
+    public static String documentToJsonString(DocumentModel recordDoc, String parserName) {
+        /*
+         * Map<String, String> fields = new HashMap<String, String>();
+         * fields.put(Constants.XPATH_LDTRECORD_STARTLINE,
+         * "" + recordDoc.getPropertyValue(Constants.XPATH_LDTRECORD_STARTLINE));
+         * fields.put(Constants.XPATH_LDTRECORD_STARTOFFSET,
+         * "" + recordDoc.getPropertyValue(Constants.XPATH_LDTRECORD_STARTOFFSET));
+         * fields.put(Constants.XPATH_LDTRECORD_RECORDSIZE,
+         * "" + recordDoc.getPropertyValue(Constants.XPATH_LDTRECORD_RECORDSIZE));
+         * LDTParserDescriptor desc = Framework.getService(LDTParserService.class).getDescriptor(parser);
+         * List<String> xpaths = desc.getLDTRecordXPaths();
+         * for (String xpath : xpaths) {
          * fields.put(xpath, "" + recordDoc.getPropertyValue(xpath));
          * }
          * ObjectMapper objectMapper = new ObjectMapper();
@@ -834,6 +2005,12 @@ public class LDTParser {
 
         public int countRecords = 0;
 
+        // Set when records are created with the Bulk Action, countRecords is then set once the command is done
+        public String bulkCommandId = null;
+
+        // Set when records are created with the ingestion pipeline (see ingestionWriters)
+        public LDTIngestionPipeline.PipelineStats pipelineStats = null;
+
         public LDTInfo(int countRecords) {
             this.countRecords = countRecords;
         }
@@ -1,5 +1,14 @@
 package nuxeo.ldt.parser.service;
 
+import java.util.Calendar;
+import java.util.List;
+
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+
+import nuxeo.ldt.parser.service.elements.Record;
+import nuxeo.ldt.parser.service.elements.RecordHit;
+
 /**
  * Implementors have to provide an {@Code LDTParser}. See the documentation of LDTParser for more details.
  * 
@@ -10,6 +19,7 @@ public interface LDTParserService {
     /**
      * If name is null or "", uses "default"
      * If no "ldtParser" configuration with name (or "default") is found, returns null.
+     * The parser is built once per configuration and shared: it is thread safe and can be used concurrently.
      * See {@code LDTParser}
      * 
      * @param name
@@ -17,4 +27,54 @@ public interface LDTParserService {
      * @since 2021
      */
     LDTParser newParser(String name);
+
+    /**
+     * Lists the parsed LDT documents ({@code LDT} doc type or a subtype, with {@code ldt:countRecords} &gt; 0, no proxy,
+     * version or trashed document) that may hold a record with these values, using their {@code filterName} Bloom
+     * filter (see {@code bloomFilters} in the configuration): LDTs that certainly don't hold it are skipped. LDTs with
+     * no such filter are always returned. The filters are checked in parallel ({@code ldt.search.parallelism}).
+     * 
+     * @param session
+     * @param filterName name of the Bloom filter
+     * @param keyValues the values, in the order of the fields of the filter
+     * @param nxqlCondition optional NXQL condition restricting the LDTs (for example a path or a date range)
+     * @return the candidate LDT documents
+     * @since 2021
+     */
+    List<DocumentModel> getCandidateLDTDocuments(CoreSession session, String filterName, List<String> keyValues,
+            String nxqlCondition);
+
+    /**
+     * Searches the records of several LDTs, using the indexes built when parsing (no query on the records):
+     * <ul>
+     * <li>The LDTs are the parsed LDT documents, within the date range if any (on the {@code ldt.search.dateField}
+     * configuration parameter, {@code dc:created} by default)</li>
+     * <li>If they have a Bloom filter named {@code indexName}, LDTs that certainly don't hold the key are skipped</li>
+     * <li>The index of each remaining LDT is searched, in parallel ({@code ldt.search.parallelism}, 8 by default)</li>
+     * </ul>
+     * LDTs with no such index are ignored.
+     * 
+     * @param session
+     * @param indexName name of a {@code headerIndex} of the configuration, or null for the key index
+     * @param keyValues the values, in the order of the fields of the index
+     * @param from optional, start of the date range (included)
+     * @param to optional, end of the date range (included)
+     * @return the hits, grouped by LDT (in the order of the query, then in file order)
+     * @since 2021
+     */
+    List<RecordHit> searchRecords(CoreSession session, String indexName, List<String> keyValues, Calendar from,
+            Calendar to);
+
+    /**
+     * Gets many records at once (for example the hits of {@code searchRecords}): each LDT document is read once, with
+     * the same parser, and the records of the same LDT are fetched with a few coalesced reads (see
+     * {@code LDTParser#getRecords(Blob, List, List)}).
+     * 
+     * @param session
+     * @param parserName name of the parser, "default" if null or empty
+     * @param hits the records to get
+     * @return the records, in the order of {@code hits}
+     * @since 2021
+     */
+    List<Record> getRecords(CoreSession session, String parserName, List<RecordHit> hits);
 }
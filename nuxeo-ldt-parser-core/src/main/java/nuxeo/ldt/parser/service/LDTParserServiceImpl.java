@@ -1,22 +1,65 @@
 package nuxeo.ldt.parser.service;
 
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.DocumentRef;
+import org.nuxeo.ecm.core.api.IdRef;
 import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.runtime.api.Framework;
 import org.nuxeo.runtime.model.ComponentContext;
 import org.nuxeo.runtime.model.DefaultComponent;
 import org.nuxeo.runtime.model.Extension;
 
 import nuxeo.ldt.parser.service.descriptors.LDTParserDescriptor;
+import nuxeo.ldt.parser.service.elements.Record;
+import nuxeo.ldt.parser.service.elements.RecordHit;
+import nuxeo.ldt.parser.service.index.LDTKeyIndex;
+import nuxeo.ldt.parser.service.utils.LDTRecordCache;
+import nuxeo.ldt.parser.service.utils.LDTRecordExecutors;
 
 public class LDTParserServiceImpl extends DefaultComponent implements LDTParserService {
 
+    private static final Logger log = LogManager.getLogger(LDTParserServiceImpl.class);
+
     protected static final String EXT_POINT = "ldtParser";
 
+    public static final String SEARCH_DATE_FIELD_PARAM = "ldt.search.dateField";
+
+    public static final String DEFAULT_SEARCH_DATE_FIELD = "dc:created";
+
+    public static final String SEARCH_PARALLELISM_PARAM = "ldt.search.parallelism";
+
+    public static final int DEFAULT_SEARCH_PARALLELISM = 8;
+
     protected Map<String, LDTParserDescriptor> contributions = new HashMap<String, LDTParserDescriptor>();
 
+    // One parser per configuration, shared by all the callers (it holds no per-call state)
+    protected Map<String, LDTParser> parsers = new ConcurrentHashMap<>();
+
+    protected ExecutorService searchExecutor = null;
+
     /**
      * Component activated notification.
      * Called when the component is activated. All component dependencies are resolved at that moment.
@@ -39,6 +82,13 @@ public class LDTParserServiceImpl extends DefaultComponent implements LDTParserS
     @Override
     public void deactivate(ComponentContext context) {
         super.deactivate(context);
+        synchronized (this) {
+            if (searchExecutor != null) {
+                searchExecutor.shutdownNow();
+                searchExecutor = null;
+            }
+        }
+        LDTRecordExecutors.shutdown();
     }
 
     /**
@@ -71,14 +121,34 @@ public class LDTParserServiceImpl extends DefaultComponent implements LDTParserS
                 // Sanity check on some items. Just logging the warinng, not throwing an error
                 desc.checkDescriptor(false);
                 contributions.put(desc.getName(), desc);
+                // Build the parser now (patterns compiled, callbacks and range readers instantiated), so a
+                // misconfiguration is logged at startup. A failing one is built (and throws) at newParser()
+                parsers.remove(desc.getName());
+                try {
+                    parsers.put(desc.getName(), new LDTParser(desc));
+                } catch (RuntimeException e) {
+                    log.error("Cannot build the LDT parser <" + desc.getName() + ">", e);
+                }
             }
         }
+
+        // The JSON of the records depends on the configuration
+        clearRecordCache();
     }
 
     @Override
     public void unregisterExtension(Extension extension) {
         super.unregisterExtension(extension);
         contributions = null;
+        parsers.clear();
+        clearRecordCache();
+    }
+
+    protected void clearRecordCache() {
+        LDTRecordCache cache = LDTRecordCache.getInstance();
+        if (cache != null) {
+            cache.clear();
+        }
     }
 
     @Override
@@ -93,6 +163,188 @@ public class LDTParserServiceImpl extends DefaultComponent implements LDTParserS
         if (desc == null) {
             return null;
         }
-        return new LDTParser(contributions.get(name));
+        return parsers.computeIfAbsent(name, k -> new LDTParser(desc));
+    }
+
+    @Override
+    public List<DocumentModel> getCandidateLDTDocuments(CoreSession session, String filterName,
+            List<String> keyValues, String nxqlCondition) {
+
+        List<DocumentModel> ldtDocs = getParsedLDTDocuments(session, nxqlCondition);
+        List<DocumentModel> candidates = runOnLDTs(ldtDocs,
+                ldtDoc -> LDTParser.mightContain(ldtDoc, filterName, keyValues) ? ldtDoc : null);
+        log.debug("getCandidateLDTDocuments: " + candidates.size() + " candidates out of " + ldtDocs.size()
+                + " LDTs");
+        return candidates;
+    }
+
+    /**
+     * The ids are queried, then the documents are fetched at once. Their blobs (Bloom filters, indexes) are not read.
+     *
+     * @param session
+     * @param nxqlCondition optional
+     * @return the parsed LDT documents
+     * @since 2021
+     */
+    protected List<DocumentModel> getParsedLDTDocuments(CoreSession session, String nxqlCondition) {
+
+        String nxql = "SELECT ecm:uuid FROM " + Constants.DOC_TYPE_LDT + " WHERE "
+                + Constants.XPATH_LDT_COUNTRECORDS + " > 0"
+                + " AND ecm:isProxy = 0 AND ecm:isVersion = 0 AND ecm:isTrashed = 0";
+        if (StringUtils.isNotBlank(nxqlCondition)) {
+            nxql += " AND (" + nxqlCondition + ")";
+        }
+        DocumentRef[] refs = session.queryProjection(nxql, 0, 0)
+                                    .stream()
+                                    .map(result -> new IdRef((String) result.get("ecm:uuid")))
+                                    .toArray(DocumentRef[]::new);
+        if (refs.length == 0) {
+            return new ArrayList<>();
+        }
+        return session.getDocuments(refs);
+    }
+
+    /**
+     * Runs the task on each LDT in the search executor, so the blobs of the LDTs (Bloom filter, index) are read in
+     * parallel. The documents must be loaded by the caller: the workers have no session.
+     *
+     * @param ldtDocs
+     * @param task returns null to skip the LDT
+     * @return the non-null results, in the order of ldtDocs
+     * @since 2021
+     */
+    protected <T> List<T> runOnLDTs(List<DocumentModel> ldtDocs, Function<DocumentModel, T> task) {
+
+        List<Future<T>> futures = new ArrayList<>();
+        ExecutorService executor = getSearchExecutor();
+        for (DocumentModel ldtDoc : ldtDocs) {
+            futures.add(executor.submit(() -> task.apply(ldtDoc)));
+        }
+
+        List<T> results = new ArrayList<>();
+        try {
+            for (Future<T> future : futures) {
+                T result = future.get();
+                if (result != null) {
+                    results.add(result);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach(future -> future.cancel(true));
+            throw new NuxeoException(e);
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            Throwable cause = e.getCause();
+            if (cause instanceof NuxeoException) {
+                throw (NuxeoException) cause;
+            }
+            throw new NuxeoException("Error searching the LDTs", cause);
+        }
+
+        return results;
+    }
+
+    protected synchronized ExecutorService getSearchExecutor() {
+        if (searchExecutor == null) {
+            int parallelism = DEFAULT_SEARCH_PARALLELISM;
+            String param = Framework.getProperty(SEARCH_PARALLELISM_PARAM);
+            if (StringUtils.isNotBlank(param)) {
+                parallelism = Math.max(1, Integer.parseInt(param.trim()));
+            }
+            searchExecutor = Executors.newFixedThreadPool(parallelism, runnable -> {
+                Thread thread = new Thread(runnable, "ldt-search");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return searchExecutor;
+    }
+
+    protected static String toNxqlTimestamp(Calendar date) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return "TIMESTAMP '" + format.format(date.getTime()) + "'";
+    }
+
+    @Override
+    public List<RecordHit> searchRecords(CoreSession session, String indexName, List<String> keyValues,
+            Calendar from, Calendar to) {
+
+        String nxqlCondition = null;
+        if (from != null || to != null) {
+            String dateField = Framework.getProperty(SEARCH_DATE_FIELD_PARAM, DEFAULT_SEARCH_DATE_FIELD);
+            List<String> conditions = new ArrayList<>();
+            if (from != null) {
+                conditions.add(dateField + " >= " + toNxqlTimestamp(from));
+            }
+            if (to != null) {
+                conditions.add(dateField + " <= " + toNxqlTimestamp(to));
+            }
+            nxqlCondition = String.join(" AND ", conditions);
+        }
+
+        // Documents are read in this thread, the workers check the Bloom filter and read the index
+        List<DocumentModel> ldtDocs = getParsedLDTDocuments(session, nxqlCondition);
+        // The Bloom filter has the name of the header index (there is none for the key index)
+        String filterName = StringUtils.defaultString(indexName);
+        List<List<RecordHit>> hitsByLdt = runOnLDTs(ldtDocs, ldtDoc -> {
+            if (!LDTParser.mightContain(ldtDoc, filterName, keyValues)) {
+                return null;
+            }
+            Blob indexBlob = LDTParser.getIndexBlob(ldtDoc, indexName);
+            if (indexBlob == null) {
+                log.debug("searchRecords: no index <" + indexName + "> for LDT " + ldtDoc.getId());
+                return null;
+            }
+            try (LDTKeyIndex index = LDTKeyIndex.open(indexBlob)) {
+                return index.find(keyValues)
+                            .stream()
+                            .map(entry -> new RecordHit(ldtDoc.getId(), entry.startOffset, entry.size))
+                            .collect(Collectors.toList());
+            } catch (IOException e) {
+                throw new NuxeoException("Error searching the index of LDT " + ldtDoc.getId(), e);
+            }
+        });
+
+        List<RecordHit> hits = hitsByLdt.stream().flatMap(List::stream).collect(Collectors.toList());
+        log.debug("searchRecords: " + hits.size() + " hits in " + hitsByLdt.size() + " LDTs");
+        return hits;
+    }
+
+    @Override
+    public List<Record> getRecords(CoreSession session, String parserName, List<RecordHit> hits) {
+
+        LDTParser parser = newParser(parserName);
+        if (parser == null) {
+            throw new NuxeoException("No ldtParser configuration named <" + parserName + ">");
+        }
+
+        // LDT => indexes of its hits
+        Map<String, List<Integer>> hitsByLdt = new LinkedHashMap<>();
+        for (int i = 0; i < hits.size(); i++) {
+            hitsByLdt.computeIfAbsent(hits.get(i).ldtDocId, k -> new ArrayList<>()).add(i);
+        }
+
+        Record[] records = new Record[hits.size()];
+        for (Map.Entry<String, List<Integer>> entry : hitsByLdt.entrySet()) {
+            DocumentModel ldtDoc = session.getDocument(new IdRef(entry.getKey()));
+            Blob blob = (Blob) ldtDoc.getPropertyValue("file:content");
+            if (blob == null) {
+                throw new NuxeoException("The LDT document (id " + entry.getKey() + ") has no blob.");
+            }
+            List<Long> startOffsets = new ArrayList<>();
+            List<Long> recordSizes = new ArrayList<>();
+            for (int i : entry.getValue()) {
+                startOffsets.add(hits.get(i).startOffset);
+                recordSizes.add(hits.get(i).size);
+            }
+            List<Record> ldtRecords = parser.getRecords(blob, startOffsets, recordSizes);
+            for (int i = 0; i < ldtRecords.size(); i++) {
+                records[entry.getValue().get(i)] = ldtRecords.get(i);
+            }
+        }
+
+        return Arrays.asList(records);
     }
 }
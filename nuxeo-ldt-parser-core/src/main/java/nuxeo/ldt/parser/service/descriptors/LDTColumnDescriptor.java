@@ -0,0 +1,108 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.ldt.parser.service.descriptors;
+
+import org.nuxeo.common.xmap.annotation.XNode;
+import org.nuxeo.common.xmap.annotation.XObject;
+
+/**
+ * A field at a fixed position in the line, see {@code <columns>} in ldtparser-service.xml.
+ * <br>
+ * {@code start} is the 0-based index of the first char, {@code end} the index after the last one (like
+ * {@code String#substring}). Both are clipped to the line, so a line shorter than {@code end} gives what it has (or
+ * "").
+ * 
+ * @since 2021
+ */
+@XObject("column")
+public class LDTColumnDescriptor {
+
+    @XNode("field")
+    protected String field = null;
+
+    @XNode("start")
+    protected Integer start = 0;
+
+    // null => until the end of the line
+    @XNode("end")
+    protected Integer end = null;
+
+    @XNode("trim")
+    protected Boolean trim = true;
+
+    public LDTColumnDescriptor() {
+    }
+
+    public LDTColumnDescriptor(String field, int start, Integer end, boolean trim) {
+        this.field = field;
+        this.start = start;
+        this.end = end;
+        this.trim = trim;
+    }
+
+    public String getField() {
+        return field;
+    }
+
+    public int getStart() {
+        return start == null ? 0 : start.intValue();
+    }
+
+    public Integer getEnd() {
+        return end;
+    }
+
+    public boolean isTrim() {
+        return trim == null || trim.booleanValue();
+    }
+
+    /**
+     * @return true if start and end are usable
+     * @since 2021
+     */
+    public boolean isValid() {
+        return getStart() >= 0 && (end == null || end.intValue() >= getStart());
+    }
+
+    /**
+     * Extracts the value with index arithmetic: the only allocation is the returned String. Trimming is the same as
+     * {@code String#trim}.
+     * 
+     * @param line
+     * @return the value of the field in the line
+     * @since 2021
+     */
+    public String extract(String line) {
+
+        int length = line.length();
+        int from = Math.min(getStart(), length);
+        int to = end == null ? length : Math.min(end.intValue(), length);
+        if (isTrim()) {
+            while (from < to && line.charAt(from) <= ' ') {
+                from++;
+            }
+            while (to > from && line.charAt(to - 1) <= ' ') {
+                to--;
+            }
+        }
+
+        return from >= to ? "" : line.substring(from, to);
+    }
+
+}
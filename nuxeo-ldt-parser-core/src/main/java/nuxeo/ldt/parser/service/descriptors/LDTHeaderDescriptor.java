@@ -26,6 +26,8 @@ import org.nuxeo.common.xmap.annotation.XNode;
 import org.nuxeo.common.xmap.annotation.XNodeList;
 import org.nuxeo.common.xmap.annotation.XObject;
 
+import nuxeo.ldt.parser.service.utils.LDTLineDispatcher;
+
 /**
  * See description of values in ldtparser-service.xml
  * 
@@ -34,17 +36,28 @@ import org.nuxeo.common.xmap.annotation.XObject;
 @XObject("header")
 public class LDTHeaderDescriptor {
     
-    protected Pattern compiledPattern = null;
+    protected volatile Pattern compiledPattern = null;
    
     @XNode("name")
     protected String name = null;
     
     @XNode("pattern")
     protected String pattern = null;
+
+    @XNode("linePrefix")
+    protected String linePrefix = null;
+
+    @XNode("typeColumn")
+    protected Integer typeColumn = 0;
     
     @XNodeList(value = "fields/field", type = ArrayList.class, componentType = String.class)
     protected List<String> fields = new ArrayList<>();
 
+    @XNodeList(value = "columns/column", type = ArrayList.class, componentType = LDTColumnDescriptor.class)
+    protected List<LDTColumnDescriptor> columns = new ArrayList<>();
+
+    protected volatile List<String> columnFields = null;
+
     public String getName() {
         return name;
     }
@@ -56,13 +69,98 @@ public class LDTHeaderDescriptor {
     public Pattern getCompiledPattern() {
         
         if(compiledPattern == null) {
-            compiledPattern = Pattern.compile(pattern);
+            compile();
         }
         
         return compiledPattern;
     }
+
+    /**
+     * Compiles the pattern now, so an invalid one fails at registration, not at first parsing
+     * 
+     * @since 2021
+     */
+    public void compile() {
+        if (pattern != null) {
+            compiledPattern = Pattern.compile(pattern);
+        }
+    }
     
+    /**
+     * @return the {@code linePrefix} of the configuration, else the leading literal of the pattern ("" if none). Used
+     *         to pre-classify the lines, see {@code LDTLineDispatcher}
+     * @since 2021
+     */
+    public String getLinePrefix() {
+        if (linePrefix != null) {
+            return linePrefix;
+        }
+        return LDTLineDispatcher.getLeadingLiteral(pattern);
+    }
+
+    /**
+     * @return the column of the {@code linePrefix} (0 when the prefix is the leading literal of the pattern)
+     * @since 2021
+     */
+    public int getTypeColumn() {
+        if (linePrefix == null || typeColumn == null) {
+            return 0;
+        }
+        return typeColumn.intValue();
+    }
+
+    /**
+     * @return the literal every line matching the pattern contains ("" if none), see {@code LDTLineDispatcher}
+     * @since 2021
+     */
+    public String getRequiredLiteral() {
+        return LDTLineDispatcher.getRequiredLiteral(pattern);
+    }
+
+    /**
+     * @return true if the fields are extracted from fixed columns instead of the groups of the pattern
+     * @since 2021
+     */
+    public boolean hasColumns() {
+        return columns != null && !columns.isEmpty();
+    }
+
+    public List<LDTColumnDescriptor> getColumns() {
+        return columns;
+    }
+
+    /**
+     * For a descriptor with columns: the line is of this kind if it matches the pattern (if any), else if it has the
+     * linePrefix at typeColumn (if any), else always.
+     * 
+     * @param line
+     * @return true if the line is of this kind
+     * @since 2021
+     */
+    public boolean matchesLine(String line) {
+        if (pattern != null) {
+            return getCompiledPattern().matcher(line).matches();
+        }
+        if (linePrefix != null) {
+            return line.startsWith(linePrefix, getTypeColumn());
+        }
+        return true;
+    }
+
+    /**
+     * @return the fields of the configuration, or the fields of the columns if there are columns
+     */
     public List<String> getFields() {
+        if (hasColumns()) {
+            if (columnFields == null) {
+                List<String> list = new ArrayList<>();
+                for (LDTColumnDescriptor column : columns) {
+                    list.add(column.getField());
+                }
+                columnFields = list;
+            }
+            return columnFields;
+        }
         return fields;
     }
     
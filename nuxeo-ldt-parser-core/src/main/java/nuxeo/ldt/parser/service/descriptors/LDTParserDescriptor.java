@@ -31,8 +31,10 @@ import org.nuxeo.common.xmap.annotation.XNodeList;
 import org.nuxeo.common.xmap.annotation.XNodeMap;
 import org.nuxeo.common.xmap.annotation.XObject;
 import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.runtime.api.Framework;
 
 import nuxeo.ldt.parser.service.Constants;
+import nuxeo.ldt.parser.service.utils.CommitBatchSizer;
 
 /**
  * See description of values in ldtparser-service.xml
@@ -44,6 +46,11 @@ public class LDTParserDescriptor {
 
     private static final Logger log = LogManager.getLogger(LDTParserDescriptor.class);
 
+    public static final String TRANSACTION_TIMEOUT_PARAM = "nuxeo.db.transactiontimeout";
+
+    // Nuxeo default, in seconds
+    public static final long DEFAULT_TRANSACTION_TIMEOUT = 300;
+
     @XNode("name")
     protected String name = null;
 
@@ -82,9 +89,87 @@ public class LDTParserDescriptor {
     @XNode("detailsLineMinSize")
     protected Integer detailsLineMinSize = 0;
 
+    @XNode("scanParallelism")
+    protected Integer scanParallelism = 1;
+
     @XNode("ignoreMalformedLines")
     protected Boolean ignoreMalformedLines = false;
 
+    @XNode("ingestionWriters")
+    protected Integer ingestionWriters = 1;
+
+    @XNode("ingestionQueueSize")
+    protected Integer ingestionQueueSize = 1000;
+
+    @XNode("commitBatchSize")
+    protected Integer commitBatchSize = CommitBatchSizer.DEFAULT_BATCH_SIZE;
+
+    @XNode("adaptiveCommitBatchSize")
+    protected Boolean adaptiveCommitBatchSize = false;
+
+    @XNode("maxCommitBatchSize")
+    protected Integer maxCommitBatchSize = 5000;
+
+    @XNode("commitTimeBudgetMs")
+    protected Long commitTimeBudgetMs = null;
+
+    @XNode("progressLogInterval")
+    protected Integer progressLogInterval = 1000;
+
+    @XNode("buildRecordIndex")
+    protected Boolean buildRecordIndex = true;
+
+    @XNodeList(value = "recordIndexKeyFields/field", type = ArrayList.class, componentType = String.class)
+    protected List<String> recordIndexKeyFields = new ArrayList<>();
+
+    @XNode("useBulkActionForRecords")
+    protected Boolean useBulkActionForRecords = false;
+
+    @XNodeList(value = "headerIndexes/headerIndex", type = ArrayList.class, componentType = LDTHeaderIndexDescriptor.class)
+    protected List<LDTHeaderIndexDescriptor> headerIndexes = new ArrayList<>();
+
+    @XNodeList(value = "bloomFilters/bloomFilter", type = ArrayList.class, componentType = LDTBloomFilterDescriptor.class)
+    protected List<LDTBloomFilterDescriptor> bloomFilters = new ArrayList<>();
+
+    @XNode("indexOnly")
+    protected Boolean indexOnly = false;
+
+    @XNode("buildKeyIndex")
+    protected Boolean buildKeyIndex = false;
+
+    @XNode("parallelDownload")
+    protected Boolean parallelDownload = false;
+
+    @XNode("parallelDownloadThreads")
+    protected Integer parallelDownloadThreads = 8;
+
+    @XNode("parallelDownloadChunkSize")
+    protected Long parallelDownloadChunkSize = 16L * 1024 * 1024;
+
+    @XNode("parallelDownloadMinSize")
+    protected Long parallelDownloadMinSize = 64L * 1024 * 1024;
+
+    @XNodeList(value = "rangeReaders/rangeReader", type = ArrayList.class, componentType = Class.class)
+    protected List<Class<?>> rangeReaders = new ArrayList<>();
+
+    @XNode("readAheadWindowSize")
+    protected Integer readAheadWindowSize = 1024 * 1024;
+
+    @XNode("readAheadWindows")
+    protected Integer readAheadWindows = 4;
+
+    @XNode("coalesceMaxGap")
+    protected Long coalesceMaxGap = 64L * 1024;
+
+    @XNode("coalesceMaxReadSize")
+    protected Long coalesceMaxReadSize = 8L * 1024 * 1024;
+
+    @XNode("recordJsonKeyValueStore")
+    protected String recordJsonKeyValueStore = null;
+
+    @XNode("recordJsonKeyValueStoreTTL")
+    protected Long recordJsonKeyValueStoreTTL = 24L * 3600;
+
     @XNode("recordDocType")
     protected String recordDocType = null;
 
@@ -175,6 +260,21 @@ public class LDTParserDescriptor {
         return items;
     }
 
+    /**
+     * @return the number of segments to scan in parallel when parsing the whole file. 1 (default) means sequential,
+     *         0 or less means the number of available processors.
+     * @since 2021
+     */
+    public int getScanParallelism() {
+        if (scanParallelism == null) {
+            scanParallelism = 1;
+        }
+        if (scanParallelism < 1) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        return scanParallelism.intValue();
+    }
+
     public boolean ignoreMalformedLines() {
         return ignoreMalformedLines.booleanValue();
     }
@@ -190,6 +290,138 @@ public class LDTParserDescriptor {
         return detailsLineMinSize.intValue();
     }
 
+    /**
+     * @return the number of threads creating the records. 0 means records are created in the parsing thread.
+     * @since 2021
+     */
+    public int getIngestionWriters() {
+        return ingestionWriters < 0 ? 0 : ingestionWriters;
+    }
+
+    public int getIngestionQueueSize() {
+        return ingestionQueueSize < 1 ? 1 : ingestionQueueSize;
+    }
+
+    public int getCommitBatchSize() {
+        return commitBatchSize < 1 ? 1 : commitBatchSize;
+    }
+
+    public boolean useAdaptiveCommitBatchSize() {
+        return adaptiveCommitBatchSize.booleanValue();
+    }
+
+    public int getMaxCommitBatchSize() {
+        return maxCommitBatchSize;
+    }
+
+    /**
+     * @return the configured value, else a fifth of the transaction timeout ({@code nuxeo.db.transactiontimeout},
+     *         60000 for the default 300 seconds)
+     */
+    public long getCommitTimeBudgetMs() {
+        if (commitTimeBudgetMs != null && commitTimeBudgetMs > 0) {
+            return commitTimeBudgetMs;
+        }
+        long timeout = DEFAULT_TRANSACTION_TIMEOUT;
+        String param = Framework.getProperty(TRANSACTION_TIMEOUT_PARAM);
+        if (StringUtils.isNotBlank(param)) {
+            try {
+                timeout = Long.parseLong(param.trim());
+            } catch (NumberFormatException e) {
+                log.warn("Invalid " + TRANSACTION_TIMEOUT_PARAM + " (" + param + "), using " + timeout);
+            }
+        }
+        return Math.max(1, timeout) * 1000 / 5;
+    }
+
+    public int getProgressLogInterval() {
+        return progressLogInterval < 1 ? 1000 : progressLogInterval;
+    }
+
+    public boolean buildRecordIndex() {
+        return buildRecordIndex.booleanValue();
+    }
+
+    public List<String> getRecordIndexKeyFields() {
+        return recordIndexKeyFields;
+    }
+
+    public boolean useBulkActionForRecords() {
+        return useBulkActionForRecords.booleanValue();
+    }
+
+    public List<LDTHeaderIndexDescriptor> getHeaderIndexes() {
+        return headerIndexes;
+    }
+
+    /**
+     * @param indexName
+     * @return the header index, null if not found
+     * @since 2021
+     */
+    public LDTHeaderIndexDescriptor getHeaderIndex(String indexName) {
+        return headerIndexes.stream().filter(desc -> desc.getName().equals(indexName)).findFirst().orElse(null);
+    }
+
+    public List<LDTBloomFilterDescriptor> getBloomFilters() {
+        return bloomFilters;
+    }
+
+    public boolean isIndexOnly() {
+        return indexOnly.booleanValue();
+    }
+
+    /**
+     * @return true if the key index must be built. Always true in index-only mode.
+     */
+    public boolean buildKeyIndex() {
+        return buildKeyIndex.booleanValue() || isIndexOnly();
+    }
+
+    public boolean useParallelDownload() {
+        return parallelDownload.booleanValue();
+    }
+
+    public int getParallelDownloadThreads() {
+        return parallelDownloadThreads == null || parallelDownloadThreads < 1 ? 1 : parallelDownloadThreads.intValue();
+    }
+
+    public long getParallelDownloadChunkSize() {
+        return parallelDownloadChunkSize.longValue();
+    }
+
+    public long getParallelDownloadMinSize() {
+        return parallelDownloadMinSize.longValue();
+    }
+
+    public List<Class<?>> getRangeReaders() {
+        return rangeReaders;
+    }
+
+    public int getReadAheadWindowSize() {
+        return readAheadWindowSize.intValue();
+    }
+
+    public int getReadAheadWindows() {
+        return readAheadWindows.intValue();
+    }
+
+    public long getCoalesceMaxGap() {
+        return coalesceMaxGap.longValue();
+    }
+
+    public long getCoalesceMaxReadSize() {
+        return coalesceMaxReadSize.longValue();
+    }
+
+    public String getRecordJsonKeyValueStore() {
+        return recordJsonKeyValueStore;
+    }
+
+    public long getRecordJsonKeyValueStoreTTL() {
+        return recordJsonKeyValueStoreTTL.longValue();
+    }
+
     public String getRecordDocType() {
         if (recordDocType == null) {
             recordDocType = Constants.DOC_TYPE_LDTRECORD;
@@ -240,6 +472,24 @@ public class LDTParserDescriptor {
         return recordJsonTemplate;
     }
 
+    /**
+     * Compiles the patterns of the headers and items (they are otherwise compiled at first use)
+     * 
+     * @since 2021
+     */
+    public void compile() {
+        if (headers != null) {
+            for (LDTHeaderDescriptor header : headers) {
+                header.compile();
+            }
+        }
+        if (items != null) {
+            for (LDTItemDescriptor item : items) {
+                item.compile();
+            }
+        }
+    }
+
     /**
      * Doing simple sanity check on the descriptor
      * 
@@ -268,6 +518,42 @@ public class LDTParserDescriptor {
             }
             log.warn("The configuration has no callbacksClass, while asking to use at least one callback.");
         }
+
+        if (headers != null) {
+            for (LDTHeaderDescriptor header : headers) {
+                if (header.hasColumns()) {
+                    checkColumns("header " + header.getName(), header.getColumns(), thowError);
+                    if (header.getPattern() == null && header.getLinePrefix().isEmpty()) {
+                        checkFailed("The header " + header.getName()
+                                + " has columns but no pattern or linePrefix: every line would be a header.",
+                                thowError);
+                    }
+                }
+            }
+        }
+        if (items != null) {
+            for (LDTItemDescriptor item : items) {
+                if (item.hasColumns()) {
+                    checkColumns("itemLine " + item.getType(), item.getColumns(), thowError);
+                }
+            }
+        }
+    }
+
+    protected void checkColumns(String owner, List<LDTColumnDescriptor> columns, boolean thowError) {
+        for (LDTColumnDescriptor column : columns) {
+            if (StringUtils.isBlank(column.getField()) || !column.isValid()) {
+                checkFailed("The " + owner + " has an invalid column (field: " + column.getField() + ", start: "
+                        + column.getStart() + ", end: " + column.getEnd() + ").", thowError);
+            }
+        }
+    }
+
+    protected void checkFailed(String message, boolean thowError) {
+        if (thowError) {
+            throw new NuxeoException(message);
+        }
+        log.warn(message);
     }
 
 }
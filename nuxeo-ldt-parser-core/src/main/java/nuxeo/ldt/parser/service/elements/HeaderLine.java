@@ -28,6 +28,8 @@ import org.nuxeo.ecm.core.api.NuxeoException;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import nuxeo.ldt.parser.service.descriptors.LDTColumnDescriptor;
+
 /**
  * A MainLine is a line that is, basically, the header(s) of the record.
  * Below a MainLine come n Item.
@@ -70,6 +72,29 @@ public class HeaderLine {
         }
     }
 
+    /**
+     * Extracts the fields at fixed positions in the line, no Regex
+     * 
+     * @param line
+     * @param columns
+     * @param fieldList the fields of the columns, in the same order
+     * @param lineNumber
+     * @param name
+     * @since 2021
+     */
+    public HeaderLine(String line, List<LDTColumnDescriptor> columns, List<String> fieldList, long lineNumber,
+            String name) {
+
+        this.name = name;
+        this.lineNumber = lineNumber;
+
+        this.fieldList = fieldList;
+        fieldsAndValues = new HashMap<String, String>();
+        for (LDTColumnDescriptor column : columns) {
+            fieldsAndValues.put(column.getField(), column.extract(line));
+        }
+    }
+
     public String getValue(String fieldName) {
 
         return fieldsAndValues.get(fieldName);
@@ -34,6 +34,7 @@ import org.nuxeo.ecm.core.api.impl.blob.JSONBlob;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+import nuxeo.ldt.parser.service.descriptors.LDTColumnDescriptor;
 import nuxeo.ldt.parser.service.descriptors.LDTItemDescriptor;
 import nuxeo.ldt.parser.service.descriptors.LDTParserDescriptor;
 import nuxeo.ldt.parser.service.Constants;
@@ -119,10 +120,39 @@ public class Item {
     }
 
     public Item(String line, LDTParserDescriptor config) {
+        this(line, config.getItems(), null);
+    }
+
+    /**
+     * Matches the line against the item descriptors, in order, and uses the first one that matches
+     * 
+     * @param line
+     * @param itemsDesc
+     * @param candidates indexes in {@code itemsDesc} of the descriptors that can match the line (see
+     *            {@code LDTLineDispatcher}), {@code null} to try all of them
+     * @since 2021
+     */
+    public Item(String line, LDTItemDescriptor[] itemsDesc, int[] candidates) {
         this.line = line;
 
-        LDTItemDescriptor[] itemsDesc = config.getItems();
-        for (LDTItemDescriptor oneDesc : itemsDesc) {
+        int count = candidates == null ? itemsDesc.length : candidates.length;
+        for (int idx = 0; idx < count; idx++) {
+            LDTItemDescriptor oneDesc = itemsDesc[candidates == null ? idx : candidates[idx]];
+            if (oneDesc.hasColumns()) {
+                if (oneDesc.matchesLine(line)) {
+                    type = oneDesc.getType();
+                    fieldList = oneDesc.getFields();
+                    fieldsAndValues = new HashMap<String, String>();
+                    for (LDTColumnDescriptor column : oneDesc.getColumns()) {
+                        if (!Constants.IGNORE_ITEM_FIELD_TAG.equals(column.getField())) {
+                            fieldsAndValues.put(column.getField(), column.extract(line));
+                        }
+                    }
+                    this.isEndOfPage = oneDesc.isEndOfPage();
+                    break;
+                }
+                continue;
+            }
             // log.info("Testing with " + oneDesc.getType() + "...");
             Matcher m = oneDesc.getPattern().matcher(line);
             if (m.matches()) {
@@ -0,0 +1,52 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.ldt.parser.service.elements;
+
+/**
+ * A record found when searching several LDTs (see {@code LDTParserService#searchRecords}): the LDT document holding
+ * it, and its retrieval information (as in the {@code ldtrecord} schema: size is negative if the LDT is compressed).
+ * 
+ * @since 2021
+ */
+public class RecordHit {
+
+    public final String ldtDocId;
+
+    public final long startOffset;
+
+    public final long size;
+
+    public RecordHit(String ldtDocId, long startOffset, long size) {
+        this.ldtDocId = ldtDocId;
+        this.startOffset = startOffset;
+        this.size = size;
+    }
+
+    public String toString() {
+
+        String str = "{";
+        str += "\"ldtDocId\": \"" + ldtDocId + "\",";
+        str += "\"startOffset\": " + startOffset + ",";
+        str += "\"size\": " + size;
+        str += "}";
+
+        return str;
+    }
+
+}
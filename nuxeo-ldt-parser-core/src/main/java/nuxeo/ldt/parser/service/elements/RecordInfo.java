@@ -37,6 +37,9 @@ public class RecordInfo {
 
     public long startLine;
 
+    // Number of lines in the record, set when scanning the LDT (0 if unknown)
+    public long lineCount = 0;
+
     ArrayList<HeaderLine> headers;
 
     public RecordInfo(long startOffset, long size, long startLine, ArrayList<HeaderLine> headers) {
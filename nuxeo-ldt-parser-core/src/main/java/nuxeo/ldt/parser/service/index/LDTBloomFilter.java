@@ -0,0 +1,286 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.ldt.parser.service.index;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.Blobs;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.runtime.api.Framework;
+
+/**
+ * Bloom filter over the values of some header fields of the records of an LDT (see {@code bloomFilters} in the
+ * configuration), stored in {@code ldt:bloomFilters}. {@code mightContain} returning false means the LDT certainly has
+ * no record with these values, so it can be skipped when looking for the records of a client in several LDTs.
+ * <br>
+ * The filter is sized once all the records are known (see {@code LDTHeaderIndexesWriter#finishBloomFilters}): about
+ * 10 bits/record for a 1% false positive rate. Hashing uses the {@code LDTRecordIndex#hashKey} of the values, with
+ * double hashing.
+ * <br>
+ * Format (big endian): header, {@code HEADER_SIZE} bytes: magic (int), version (int), number of hash functions
+ * (int), reserved (int), number of bits (long), count of values added (long). Then the bits (longs).
+ * <br>
+ * Filters read from a blob are cached (key is the digest of the blob, see {@code load}), the cache size is set with
+ * the {@code CACHE_SIZE_PARAM} configuration parameter.
+ * <br>
+ * Not thread safe when adding values, thread safe for reading.
+ *
+ * @since 2021
+ */
+public class LDTBloomFilter {
+
+    public static final int MAGIC = 0x4C445442; // "LDTB"
+
+    public static final int VERSION = 1;
+
+    public static final int HEADER_SIZE = 32;
+
+    public static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+
+    public static final int MAX_HASH_COUNT = 30;
+
+    public static final String FILE_EXTENSION = "ldtb";
+
+    public static final String MIMETYPE = "application/ldtb";
+
+    public static final String CACHE_SIZE_PARAM = "ldt.bloomFilters.cacheSize";
+
+    public static final int DEFAULT_CACHE_SIZE = 256;
+
+    protected static Map<String, LDTBloomFilter> cache = null;
+
+    protected long[] bits;
+
+    protected long bitCount;
+
+    protected int hashCount;
+
+    protected long count = 0;
+
+    protected LDTBloomFilter(long bitCount, int hashCount) {
+        if (bitCount > (long) Integer.MAX_VALUE * Long.SIZE) {
+            throw new NuxeoException("Bloom filter too big: " + bitCount + " bits");
+        }
+        this.bitCount = bitCount;
+        this.hashCount = hashCount;
+        bits = new long[(int) ((bitCount + Long.SIZE - 1) / Long.SIZE)];
+    }
+
+    /**
+     * @param expectedCount number of values that will be added
+     * @param falsePositiveRate between 0 and 1 (excluded)
+     * @return an empty filter
+     * @since 2021
+     */
+    public static LDTBloomFilter create(long expectedCount, double falsePositiveRate) {
+        long n = Math.max(1, expectedCount);
+        long bitCount = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        bitCount = Math.max(Long.SIZE, bitCount);
+        int hashCount = (int) Math.round((double) bitCount / n * Math.log(2));
+        hashCount = Math.max(1, Math.min(MAX_HASH_COUNT, hashCount));
+        return new LDTBloomFilter(bitCount, hashCount);
+    }
+
+    /**
+     * Second hash, derived from the first one (splitmix64 finalizer)
+     */
+    protected static long secondHash(long hash) {
+        long h = hash + 0x9E3779B97F4A7C15L;
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        return (h ^ (h >>> 31)) | 1;
+    }
+
+    protected long bitIndex(long hash, long secondHash, int i) {
+        return Long.remainderUnsigned(hash + i * secondHash, bitCount);
+    }
+
+    /**
+     * @param hash the {@code LDTRecordIndex#hashKey} of the values
+     * @since 2021
+     */
+    public void add(long hash) {
+        long second = secondHash(hash);
+        for (int i = 0; i < hashCount; i++) {
+            long index = bitIndex(hash, second, i);
+            bits[(int) (index >>> 6)] |= 1L << index;
+        }
+        count += 1;
+    }
+
+    public void add(List<String> values) {
+        add(LDTRecordIndex.hashKey(values));
+    }
+
+    /**
+     * @param hash the {@code LDTRecordIndex#hashKey} of the values
+     * @return false if the values were certainly not added, true if they probably were
+     * @since 2021
+     */
+    public boolean mightContain(long hash) {
+        long second = secondHash(hash);
+        for (int i = 0; i < hashCount; i++) {
+            long index = bitIndex(hash, second, i);
+            if ((bits[(int) (index >>> 6)] & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean mightContain(List<String> values) {
+        return mightContain(LDTRecordIndex.hashKey(values));
+    }
+
+    public long getBitCount() {
+        return bitCount;
+    }
+
+    public int getHashCount() {
+        return hashCount;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @param ldtFilename the file name of the LDT, used to name the blob
+     * @param filterName
+     * @return the serialized filter
+     * @throws IOException
+     * @since 2021
+     */
+    public Blob toBlob(String ldtFilename, String filterName) throws IOException {
+
+        Blob blob = Blobs.createBlobWithExtension("." + FILE_EXTENSION);
+        try (OutputStream out = Files.newOutputStream(blob.getFile().toPath())) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.putInt(hashCount);
+            header.putInt(0);
+            header.putLong(bitCount);
+            header.putLong(count);
+            out.write(header.array());
+
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            for (long word : bits) {
+                if (!buffer.hasRemaining()) {
+                    out.write(buffer.array(), 0, buffer.position());
+                    buffer.clear();
+                }
+                buffer.putLong(word);
+            }
+            out.write(buffer.array(), 0, buffer.position());
+        }
+
+        String baseName = StringUtils.isNotBlank(ldtFilename) ? FilenameUtils.getBaseName(ldtFilename) : "ldt";
+        blob.setFilename(baseName + "-" + filterName + "." + FILE_EXTENSION);
+        blob.setMimeType(MIMETYPE);
+        return blob;
+    }
+
+    /**
+     * @param blob
+     * @return the filter
+     * @throws IOException
+     * @since 2021
+     */
+    public static LDTBloomFilter read(Blob blob) throws IOException {
+
+        try (InputStream in = blob.getStream()) {
+            ByteBuffer header = ByteBuffer.wrap(in.readNBytes(HEADER_SIZE));
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+                throw new NuxeoException("Not an LDT Bloom filter");
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new NuxeoException("Unsupported LDT Bloom filter version " + version);
+            }
+            int hashCount = header.getInt();
+            header.getInt();
+            LDTBloomFilter filter = new LDTBloomFilter(header.getLong(), hashCount);
+            filter.count = header.getLong();
+
+            ByteBuffer data = ByteBuffer.wrap(in.readNBytes(filter.bits.length * Long.BYTES));
+            if (data.remaining() != filter.bits.length * Long.BYTES) {
+                throw new NuxeoException("Truncated LDT Bloom filter");
+            }
+            data.asLongBuffer().get(filter.bits);
+            return filter;
+        }
+    }
+
+    /**
+     * Same as {@code read}, but the filter is cached (when the blob has a digest)
+     *
+     * @param blob
+     * @return the filter
+     * @throws IOException
+     * @since 2021
+     */
+    public static LDTBloomFilter load(Blob blob) throws IOException {
+
+        String digest = blob.getDigest();
+        if (StringUtils.isBlank(digest)) {
+            return read(blob);
+        }
+
+        Map<String, LDTBloomFilter> filters = getCache();
+        LDTBloomFilter filter = filters.get(digest);
+        if (filter == null) {
+            filter = read(blob);
+            filters.put(digest, filter);
+        }
+        return filter;
+    }
+
+    protected static synchronized Map<String, LDTBloomFilter> getCache() {
+        if (cache == null) {
+            int cacheSize = DEFAULT_CACHE_SIZE;
+            String param = Framework.getProperty(CACHE_SIZE_PARAM);
+            if (StringUtils.isNotBlank(param)) {
+                cacheSize = Integer.parseInt(param.trim());
+            }
+            int maxSize = cacheSize;
+            cache = Collections.synchronizedMap(new LinkedHashMap<String, LDTBloomFilter>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, LDTBloomFilter> eldest) {
+                    return size() > maxSize;
+                }
+            });
+        }
+        return cache;
+    }
+
+}
@@ -0,0 +1,180 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.ldt.parser.service.index;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.nuxeo.ecm.core.api.Blob;
+
+import nuxeo.ldt.parser.service.Constants;
+import nuxeo.ldt.parser.service.descriptors.LDTBloomFilterDescriptor;
+import nuxeo.ldt.parser.service.descriptors.LDTHeaderIndexDescriptor;
+import nuxeo.ldt.parser.service.elements.RecordInfo;
+
+/**
+ * Builds one {@code LDTKeyIndex} per {@code headerIndex} and one {@code LDTBloomFilter} per {@code bloomFilter} of the
+ * configuration. {@code finish} returns the value of the {@code ldt:headerIndexes} field,
+ * {@code finishBloomFilters} the value of the {@code ldt:bloomFilters} field.
+ * <br>
+ * Bloom filters are sized once all the records are known: the hashes of the values are held in memory (8 bytes per
+ * record) until {@code finishBloomFilters}.
+ *
+ * @since 2021
+ */
+public class LDTHeaderIndexesWriter implements Closeable {
+
+    protected List<LDTHeaderIndexDescriptor> descriptors;
+
+    protected List<LDTKeyIndexWriter> writers = new ArrayList<>();
+
+    protected List<LDTBloomFilterDescriptor> bloomFilterDescriptors;
+
+    protected List<long[]> bloomFilterHashes = new ArrayList<>();
+
+    protected int hashCount = 0;
+
+    public LDTHeaderIndexesWriter(List<LDTHeaderIndexDescriptor> descriptors) {
+        this(descriptors, null);
+    }
+
+    public LDTHeaderIndexesWriter(List<LDTHeaderIndexDescriptor> descriptors,
+            List<LDTBloomFilterDescriptor> bloomFilterDescriptors) {
+        this.descriptors = descriptors == null ? List.of() : descriptors;
+        for (int i = 0; i < this.descriptors.size(); i++) {
+            writers.add(new LDTKeyIndexWriter());
+        }
+        this.bloomFilterDescriptors = bloomFilterDescriptors == null ? List.of() : bloomFilterDescriptors;
+        for (int i = 0; i < this.bloomFilterDescriptors.size(); i++) {
+            bloomFilterHashes.add(new long[1024]);
+        }
+    }
+
+    public boolean hasHeaderIndexes() {
+        return !descriptors.isEmpty();
+    }
+
+    public boolean hasBloomFilters() {
+        return !bloomFilterDescriptors.isEmpty();
+    }
+
+    /**
+     * Thread safe, but the order of the calls is the order of records with the same key.
+     *
+     * @param record
+     */
+    public void add(RecordInfo record) {
+        for (int i = 0; i < descriptors.size(); i++) {
+            List<String> values = descriptors.get(i)
+                                             .getFields()
+                                             .stream()
+                                             .map(record::getValue)
+                                             .collect(Collectors.toList());
+            writers.get(i).add(values, record.startOffset, record.size);
+        }
+        if (!bloomFilterDescriptors.isEmpty()) {
+            addBloomFilterHashes(record);
+        }
+    }
+
+    protected synchronized void addBloomFilterHashes(RecordInfo record) {
+        for (int i = 0; i < bloomFilterDescriptors.size(); i++) {
+            List<String> values = bloomFilterDescriptors.get(i)
+                                                       .getFields()
+                                                       .stream()
+                                                       .map(record::getValue)
+                                                       .collect(Collectors.toList());
+            long[] hashes = bloomFilterHashes.get(i);
+            if (hashCount == hashes.length) {
+                hashes = Arrays.copyOf(hashes, hashes.length * 2);
+                bloomFilterHashes.set(i, hashes);
+            }
+            hashes[hashCount] = LDTRecordIndex.hashKey(values);
+        }
+        hashCount += 1;
+    }
+
+    /**
+     * Builds the Bloom filters, sized for the number of records added.
+     *
+     * @param ldtFilename the file name of the LDT, used to name the filters
+     * @return the list of {@code name}/{@code filter} maps, for {@code ldt:bloomFilters}
+     * @throws IOException
+     * @since 2021
+     */
+    public synchronized List<Map<String, Serializable>> finishBloomFilters(String ldtFilename) throws IOException {
+
+        List<Map<String, Serializable>> filters = new ArrayList<>();
+        for (int i = 0; i < bloomFilterDescriptors.size(); i++) {
+            LDTBloomFilterDescriptor desc = bloomFilterDescriptors.get(i);
+            LDTBloomFilter filter = LDTBloomFilter.create(hashCount, desc.getFalsePositiveRate());
+            long[] hashes = bloomFilterHashes.get(i);
+            for (int h = 0; h < hashCount; h++) {
+                filter.add(hashes[h]);
+            }
+
+            Map<String, Serializable> value = new HashMap<>();
+            value.put(Constants.BLOOM_FILTER_NAME, desc.getName());
+            value.put(Constants.BLOOM_FILTER_CONTENT, (Serializable) filter.toBlob(ldtFilename, desc.getName()));
+            filters.add(value);
+        }
+        bloomFilterHashes.clear();
+        return filters;
+    }
+
+    /**
+     * Sorts and writes the indexes.
+     *
+     * @param ldtFilename the file name of the LDT, used to name the indexes
+     * @return the list of {@code name}/{@code index} maps, for {@code ldt:headerIndexes}
+     * @throws IOException
+     */
+    public List<Map<String, Serializable>> finish(String ldtFilename) throws IOException {
+
+        List<Map<String, Serializable>> indexes = new ArrayList<>();
+        for (int i = 0; i < descriptors.size(); i++) {
+            String indexName = descriptors.get(i).getName();
+            Blob blob = writers.get(i).finish(ldtFilename);
+            String baseName = StringUtils.isNotBlank(ldtFilename) ? FilenameUtils.getBaseName(ldtFilename) : "ldt";
+            blob.setFilename(baseName + "-" + indexName + "." + LDTKeyIndex.FILE_EXTENSION);
+
+            Map<String, Serializable> index = new HashMap<>();
+            index.put(Constants.HEADER_INDEX_NAME, indexName);
+            index.put(Constants.HEADER_INDEX_CONTENT, (Serializable) blob);
+            indexes.add(index);
+        }
+        return indexes;
+    }
+
+    @Override
+    public void close() {
+        writers.forEach(LDTKeyIndexWriter::close);
+        bloomFilterHashes.clear();
+    }
+
+}
@@ -0,0 +1,412 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.ldt.parser.service.index;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.NuxeoException;
+
+import nuxeo.ldt.parser.service.range.RangeReaders;
+
+/**
+ * Sorted index of the records of an LDT by key (the values of some header fields of the record: the key fields, see
+ * {@code LDTParser#getRecordIndexKeyFields}, stored in {@code ldt:keyIndex}, or the fields of a
+ * {@code headerIndex}, stored in {@code ldt:headerIndexes}). Records are found by binary search, without any document
+ * or query.
+ * <br>
+ * Format (big endian):
+ * <ul>
+ * <li>Header, {@code HEADER_SIZE} bytes: magic (int), version (int), key width (int), fence interval (int), count of
+ * entries (long), offset of the fence (long)</li>
+ * <li>Then the fixed-width entries, sorted by key (unsigned bytes) then offset: key (UTF-8, {@code keyWidth} bytes,
+ * padded with 0), startOffset (long), size (long)</li>
+ * <li>Then the fence: the key of every {@code fenceInterval}th entry (entries 0, fenceInterval, 2*fenceInterval,
+ * ...)</li>
+ * </ul>
+ * The key is the UTF-8 values of the fields, separated by {@code KEY_SEPARATOR}. Keys longer than
+ * {@code MAX_KEY_WIDTH} bytes are truncated.
+ * <br>
+ * As in the {@code ldtrecord} schema, when the LDT is compressed, startOffset/size are the values in the compressed
+ * LDT and size is negative.
+ * <br>
+ * The index is never loaded/downloaded as a whole, it is read with positional reads (see {@code PositionalReader}),
+ * which are byte ranges when the blob is stored on S3 (see {@code RangeReaders}). A lookup reads the header
+ * and the fence (both once per instance), then the block of {@code fenceInterval} entries holding the key. So, with
+ * the default interval, finding a record in a 5 millions records LDT takes 3 small reads. Version 1 indexes (no fence)
+ * are searched entry by entry.
+ * <br>
+ * Instances are not thread safe.
+ *
+ * @since 2021
+ */
+public class LDTKeyIndex implements Closeable {
+
+    public static final int MAGIC = 0x4C44544B; // "LDTK"
+
+    public static final int VERSION = 2;
+
+    public static final int HEADER_SIZE = 32;
+
+    public static final int MAX_KEY_WIDTH = 256;
+
+    public static final int DEFAULT_FENCE_INTERVAL = 1024;
+
+    public static final byte KEY_SEPARATOR = 0x1F;
+
+    public static final String FILE_EXTENSION = "ldtk";
+
+    public static final String MIMETYPE = "application/ldtk";
+
+    protected PositionalReader reader;
+
+    protected int keyWidth;
+
+    protected int entrySize;
+
+    protected int fenceInterval;
+
+    protected long count;
+
+    protected long fenceOffset;
+
+    protected byte[] fence;
+
+    /**
+     * Reads bytes at a given position of the index.
+     *
+     * @since 2021
+     */
+    public interface PositionalReader extends Closeable {
+
+        /**
+         * @return exactly {@code length} bytes, starting at {@code position}
+         */
+        byte[] read(long position, int length) throws IOException;
+
+        /**
+         * @return the number of reads done so far
+         */
+        long getReadCount();
+
+        @Override
+        default void close() throws IOException {
+        }
+    }
+
+    /**
+     * Positional reads on a blob, with the cheapest {@code RangeReader} for the blob (see {@code RangeReaders})
+     *
+     * @since 2021
+     */
+    public static class BlobPositionalReader implements PositionalReader {
+
+        protected Blob blob;
+
+        protected long readCount = 0;
+
+        public BlobPositionalReader(Blob blob) {
+            this.blob = blob;
+        }
+
+        @Override
+        public byte[] read(long position, int length) throws IOException {
+            readCount += 1;
+            byte[] bytes = RangeReaders.getDefault().read(blob, position, length);
+            if (bytes.length != length) {
+                throw new NuxeoException("Unexpected end of the LDT key index at " + (position + bytes.length));
+            }
+            return bytes;
+        }
+
+        @Override
+        public long getReadCount() {
+            return readCount;
+        }
+    }
+
+    /**
+     * Positional reads on a local file
+     *
+     * @since 2021
+     */
+    public static class FilePositionalReader implements PositionalReader {
+
+        protected FileChannel channel;
+
+        protected long readCount = 0;
+
+        public FilePositionalReader(File file) throws IOException {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        }
+
+        @Override
+        public byte[] read(long position, int length) throws IOException {
+            readCount += 1;
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new NuxeoException(
+                            "Unexpected end of the LDT key index at " + (position + buffer.position()));
+                }
+            }
+            return buffer.array();
+        }
+
+        @Override
+        public long getReadCount() {
+            return readCount;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * A record found in the index
+     *
+     * @since 2021
+     */
+    public static class Entry {
+
+        public final long startOffset;
+
+        public final long size;
+
+        public Entry(long startOffset, long size) {
+            this.startOffset = startOffset;
+            this.size = size;
+        }
+
+        @Override
+        public String toString() {
+            return "{\"startOffset\": " + startOffset + ", \"size\": " + size + "}";
+        }
+    }
+
+    protected LDTKeyIndex(PositionalReader reader) throws IOException {
+
+        this.reader = reader;
+
+        ByteBuffer header = ByteBuffer.wrap(reader.read(0, HEADER_SIZE));
+        if (header.getInt() != MAGIC) {
+            close();
+            throw new NuxeoException("Not an LDT key index");
+        }
+        int version = header.getInt();
+        if (version < 1 || version > VERSION) {
+            close();
+            throw new NuxeoException("Unsupported LDT key index version " + version);
+        }
+        keyWidth = header.getInt();
+        entrySize = keyWidth + 2 * Long.BYTES;
+        // Reserved in version 1
+        fenceInterval = version == 1 ? 0 : header.getInt();
+        header.position(16);
+        count = header.getLong();
+        fenceOffset = version == 1 ? 0 : header.getLong();
+    }
+
+    /**
+     * The index is read by ranges, it is not downloaded.
+     *
+     * @param indexBlob
+     * @return the index, to be closed by the caller
+     * @throws IOException
+     * @since 2021
+     */
+    public static LDTKeyIndex open(Blob indexBlob) throws IOException {
+        return new LDTKeyIndex(new BlobPositionalReader(indexBlob));
+    }
+
+    /**
+     * @param indexFile
+     * @return the index, to be closed by the caller
+     * @throws IOException
+     * @since 2021
+     */
+    public static LDTKeyIndex open(File indexFile) throws IOException {
+        return new LDTKeyIndex(new FilePositionalReader(indexFile));
+    }
+
+    /**
+     * @param reader
+     * @return the index, to be closed by the caller (which closes the reader)
+     * @throws IOException
+     * @since 2021
+     */
+    public static LDTKeyIndex open(PositionalReader reader) throws IOException {
+        return new LDTKeyIndex(reader);
+    }
+
+    /**
+     * @param keyValues
+     * @return the key, as stored in the index (without padding)
+     * @since 2021
+     */
+    public static byte[] encodeKey(List<String> keyValues) {
+        ByteArrayOutputStream key = new ByteArrayOutputStream();
+        for (int i = 0; i < keyValues.size(); i++) {
+            if (i > 0) {
+                key.write(KEY_SEPARATOR);
+            }
+            String value = keyValues.get(i);
+            if (value != null) {
+                key.writeBytes(value.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return key.toByteArray();
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public int getKeyWidth() {
+        return keyWidth;
+    }
+
+    /**
+     * @return the number of positional reads done so far
+     * @since 2021
+     */
+    public long getReadCount() {
+        return reader.getReadCount();
+    }
+
+    /**
+     * Compares the key stored at {@code offset} in {@code bytes} with {@code key}, padded with 0 up to
+     * {@code keyWidth}
+     */
+    protected int compareKey(byte[] bytes, int offset, byte[] key) {
+        for (int i = 0; i < keyWidth; i++) {
+            int storedByte = bytes[offset + i] & 0xff;
+            int keyByte = i < key.length ? key[i] & 0xff : 0;
+            if (storedByte != keyByte) {
+                return storedByte - keyByte;
+            }
+        }
+        return 0;
+    }
+
+    protected byte[] readEntries(long firstEntry, long entryCount) throws IOException {
+        return reader.read(HEADER_SIZE + firstEntry * entrySize, (int) (entryCount * entrySize));
+    }
+
+    /**
+     * @return the first entry that can hold {@code key}: all the entries before it have a smaller key
+     */
+    protected long findFirstCandidate(byte[] key) throws IOException {
+
+        if (fenceInterval > 0) {
+            if (fence == null) {
+                long fenceCount = (count + fenceInterval - 1) / fenceInterval;
+                fence = reader.read(fenceOffset, (int) (fenceCount * keyWidth));
+            }
+            // Number of fence keys < key
+            int low = 0;
+            int high = fence.length / keyWidth;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (compareKey(fence, middle * keyWidth, key) < 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            // Entry (low - 1) * fenceInterval < key
+            return low == 0 ? 0 : (long) (low - 1) * fenceInterval + 1;
+        }
+
+        long low = 0;
+        long high = count;
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            if (compareKey(readEntries(middle, 1), 0, key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @param keyValues values of the fields, in the order of the fields of the index
+     * @return the records whose key is {@code keyValues}, in file order
+     * @throws IOException
+     * @since 2021
+     */
+    public List<Entry> find(List<String> keyValues) throws IOException {
+
+        List<Entry> entries = new ArrayList<>();
+        byte[] key = encodeKey(keyValues);
+        if (key.length > keyWidth) {
+            if (keyWidth < MAX_KEY_WIDTH) {
+                // Longer than all the keys in the index
+                return entries;
+            }
+            // Keys are truncated to MAX_KEY_WIDTH in the index
+            key = Arrays.copyOf(key, MAX_KEY_WIDTH);
+        }
+
+        long blockSize = fenceInterval > 0 ? fenceInterval : 1;
+        long first = findFirstCandidate(key);
+        boolean done = false;
+        while (!done && first < count) {
+            long blockCount = Math.min(blockSize, count - first);
+            byte[] block = readEntries(first, blockCount);
+            for (int i = 0; i < blockCount; i++) {
+                int cmp = compareKey(block, i * entrySize, key);
+                if (cmp > 0) {
+                    done = true;
+                    break;
+                }
+                if (cmp == 0) {
+                    ByteBuffer entry = ByteBuffer.wrap(block, i * entrySize + keyWidth, 2 * Long.BYTES);
+                    entries.add(new Entry(entry.getLong(), entry.getLong()));
+                }
+            }
+            first += blockCount;
+        }
+        return entries;
+    }
+
+    @Override
+    public void close() throws IOException {
+        fence = null;
+        if (reader != null) {
+            reader.close();
+            reader = null;
+        }
+    }
+
+}
@@ -0,0 +1,380 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.ldt.parser.service.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.Blobs;
+import org.nuxeo.ecm.core.api.NuxeoException;
+
+/**
+ * Builds a key index (see {@code LDTKeyIndex} for the format). Entries are held in memory until their estimated size
+ * reaches {@code maxMemorySize}: they are then sorted and written to a temporary file (a run). {@code finish} merges
+ * the runs (or sorts the entries in memory if there is no run) and writes the index.
+ *
+ * @since 2021
+ */
+public class LDTKeyIndexWriter implements Closeable {
+
+    protected static final int BUFFER_SIZE = 64 * 1024;
+
+    public static final long DEFAULT_MAX_MEMORY_SIZE = 32L * 1024 * 1024;
+
+    // Estimated size of a KeyEntry in memory, without its key
+    protected static final int ENTRY_MEMORY_OVERHEAD = 64;
+
+    protected static class KeyEntry {
+
+        final byte[] key;
+
+        final long startOffset;
+
+        final long size;
+
+        KeyEntry(byte[] key, long startOffset, long size) {
+            this.key = key;
+            this.startOffset = startOffset;
+            this.size = size;
+        }
+    }
+
+    protected static final Comparator<KeyEntry> ORDER = (a, b) -> {
+        int cmp = Arrays.compareUnsigned(a.key, b.key);
+        return cmp != 0 ? cmp : Long.compare(Math.abs(a.startOffset), Math.abs(b.startOffset));
+    };
+
+    /**
+     * Sorted entries written to a temporary file: key length (short), key, startOffset, size.
+     */
+    protected static class Run implements Closeable {
+
+        protected final File file;
+
+        protected final long count;
+
+        protected DataInputStream in;
+
+        protected long read = 0;
+
+        protected KeyEntry current;
+
+        protected Run(File file, long count) {
+            this.file = file;
+            this.count = count;
+        }
+
+        protected static Run write(List<KeyEntry> entries) throws IOException {
+            File file = Files.createTempFile("ldt-keyindex-", ".run").toFile();
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE))) {
+                for (KeyEntry entry : entries) {
+                    out.writeShort(entry.key.length);
+                    out.write(entry.key);
+                    out.writeLong(entry.startOffset);
+                    out.writeLong(entry.size);
+                }
+            } catch (IOException e) {
+                Files.deleteIfExists(file.toPath());
+                throw e;
+            }
+            return new Run(file, entries.size());
+        }
+
+        /**
+         * @return false if there is no more entry, else the entry is {@code current}
+         */
+        protected boolean next() throws IOException {
+            if (read == count) {
+                current = null;
+                return false;
+            }
+            if (in == null) {
+                in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+            }
+            byte[] key = new byte[in.readUnsignedShort()];
+            in.readFully(key);
+            current = new KeyEntry(key, in.readLong(), in.readLong());
+            read += 1;
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (in != null) {
+                    in.close();
+                }
+            } finally {
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+    }
+
+    /**
+     * Merges the sorted runs. Read errors are thrown as {@code UncheckedIOException}.
+     */
+    protected static class MergeIterator implements Iterator<KeyEntry> {
+
+        protected final PriorityQueue<Run> queue = new PriorityQueue<>(
+                (a, b) -> ORDER.compare(a.current, b.current));
+
+        protected MergeIterator(List<Run> runs) throws IOException {
+            for (Run run : runs) {
+                if (run.next()) {
+                    queue.add(run);
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !queue.isEmpty();
+        }
+
+        @Override
+        public KeyEntry next() {
+            Run run = queue.poll();
+            if (run == null) {
+                throw new NoSuchElementException();
+            }
+            KeyEntry entry = run.current;
+            try {
+                if (run.next()) {
+                    queue.add(run);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return entry;
+        }
+    }
+
+    protected List<KeyEntry> entries = new ArrayList<>();
+
+    protected long memorySize = 0;
+
+    protected final long maxMemorySize;
+
+    protected List<Run> runs = new ArrayList<>();
+
+    protected long count = 0;
+
+    protected int keyWidth = 1;
+
+    protected int fenceInterval = LDTKeyIndex.DEFAULT_FENCE_INTERVAL;
+
+    protected Blob blob;
+
+    public LDTKeyIndexWriter() {
+        this(LDTKeyIndex.DEFAULT_FENCE_INTERVAL);
+    }
+
+    /**
+     * @param fenceInterval a key of the fence every {@code fenceInterval} entries
+     */
+    public LDTKeyIndexWriter(int fenceInterval) {
+        this(fenceInterval, DEFAULT_MAX_MEMORY_SIZE);
+    }
+
+    /**
+     * @param fenceInterval a key of the fence every {@code fenceInterval} entries
+     * @param maxMemorySize the entries are written to a run when their estimated size reaches this size (bytes)
+     * @since 2021
+     */
+    public LDTKeyIndexWriter(int fenceInterval, long maxMemorySize) {
+        this.fenceInterval = Math.max(1, fenceInterval);
+        this.maxMemorySize = Math.max(1, maxMemorySize);
+    }
+
+    /**
+     * Thread safe, but the order of the calls is the order of records with the same key.
+     *
+     * @param keyValues values of the key fields of the record
+     * @param startOffset
+     * @param size
+     */
+    public synchronized void add(List<String> keyValues, long startOffset, long size) {
+        byte[] key = LDTKeyIndex.encodeKey(keyValues);
+        if (key.length > LDTKeyIndex.MAX_KEY_WIDTH) {
+            key = Arrays.copyOf(key, LDTKeyIndex.MAX_KEY_WIDTH);
+        }
+        keyWidth = Math.max(keyWidth, key.length);
+        entries.add(new KeyEntry(key, startOffset, size));
+        count += 1;
+        memorySize += key.length + ENTRY_MEMORY_OVERHEAD;
+        if (memorySize >= maxMemorySize) {
+            try {
+                writeRun();
+            } catch (IOException e) {
+                throw new NuxeoException("Cannot write the entries of the key index", e);
+            }
+        }
+    }
+
+    protected void writeRun() throws IOException {
+        entries.sort(ORDER);
+        runs.add(Run.write(entries));
+        entries = new ArrayList<>();
+        memorySize = 0;
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * @return the number of runs written so far
+     * @since 2021
+     */
+    public synchronized int getRunCount() {
+        return runs.size();
+    }
+
+    /**
+     * Sorts (or merges the runs) and writes the index, returns its blob.
+     *
+     * @param ldtFilename the file name of the LDT, used to name the index
+     * @return the blob
+     * @throws IOException
+     */
+    public synchronized Blob finish(String ldtFilename) throws IOException {
+
+        try {
+            Iterator<KeyEntry> sorted;
+            if (runs.isEmpty()) {
+                entries.sort(ORDER);
+                sorted = entries.iterator();
+            } else {
+                if (!entries.isEmpty()) {
+                    writeRun();
+                }
+                sorted = new MergeIterator(runs);
+            }
+            blob = write(sorted);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            close();
+        }
+
+        if (StringUtils.isNotBlank(ldtFilename)) {
+            blob.setFilename(FilenameUtils.getBaseName(ldtFilename) + "." + LDTKeyIndex.FILE_EXTENSION);
+        }
+        blob.setMimeType(LDTKeyIndex.MIMETYPE);
+
+        return blob;
+    }
+
+    protected Blob write(Iterator<KeyEntry> sorted) throws IOException {
+
+        Blob indexBlob = Blobs.createBlobWithExtension("." + LDTKeyIndex.FILE_EXTENSION);
+        int entrySize = keyWidth + 2 * Long.BYTES;
+        long fenceOffset = LDTKeyIndex.HEADER_SIZE + count * entrySize;
+        try (RandomAccessFile file = new RandomAccessFile(indexBlob.getFile(), "rw")) {
+            FileChannel channel = file.getChannel();
+
+            ByteBuffer header = ByteBuffer.allocate(LDTKeyIndex.HEADER_SIZE);
+            header.putInt(LDTKeyIndex.MAGIC);
+            header.putInt(LDTKeyIndex.VERSION);
+            header.putInt(keyWidth);
+            header.putInt(fenceInterval);
+            header.putLong(count);
+            header.putLong(fenceOffset);
+            header.flip();
+            channel.write(header);
+
+            ByteBuffer buffer = ByteBuffer.allocate(Math.max(BUFFER_SIZE, entrySize));
+            byte[] padding = new byte[keyWidth];
+            List<byte[]> fence = new ArrayList<>();
+            long index = 0;
+            while (sorted.hasNext()) {
+                KeyEntry entry = sorted.next();
+                if (index % fenceInterval == 0) {
+                    fence.add(entry.key);
+                }
+                index += 1;
+                if (buffer.remaining() < entrySize) {
+                    write(channel, buffer);
+                }
+                buffer.put(entry.key);
+                buffer.put(padding, 0, keyWidth - entry.key.length);
+                buffer.putLong(entry.startOffset);
+                buffer.putLong(entry.size);
+            }
+            for (byte[] key : fence) {
+                if (buffer.remaining() < keyWidth) {
+                    write(channel, buffer);
+                }
+                buffer.put(key);
+                buffer.put(padding, 0, keyWidth - key.length);
+            }
+            write(channel, buffer);
+        }
+        return indexBlob;
+    }
+
+    protected static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Releases the entries and deletes the runs.
+     */
+    @Override
+    public synchronized void close() {
+        entries = new ArrayList<>();
+        memorySize = 0;
+        for (Run run : runs) {
+            try {
+                run.close();
+            } catch (IOException e) {
+                // Ignore, the file is in the temporary directory
+            }
+        }
+        runs = new ArrayList<>();
+    }
+
+}
@@ -0,0 +1,259 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.ldt.parser.service.index;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.CloseableFile;
+import org.nuxeo.ecm.core.api.NuxeoException;
+
+/**
+ * Record index of an LDT (.ldtx), stored next to the LDT ({@code ldt:recordIndex}). It allows getting a record by its
+ * number, counting the records or finding them by key, without scanning the LDT or querying the repository.
+ * <br>
+ * Format (big endian):
+ * <ul>
+ * <li>Header, {@code HEADER_SIZE} bytes: magic (int), version (int), entry size (int), reserved (int), count of
+ * records (long), reserved (long)</li>
+ * <li>Then one fixed-width entry per record, in file order: startOffset (long), size (long), startLine (long), hash
+ * of the key fields (long, see {@code hashKey})</li>
+ * </ul>
+ * As in the {@code ldtrecord} schema, when the LDT is compressed, startOffset/size are the values in the compressed
+ * LDT and size is negative.
+ * <br>
+ * The file is memory-mapped. Instances are not thread safe.
+ *
+ * @since 2021
+ */
+public class LDTRecordIndex implements Closeable {
+
+    public static final int MAGIC = 0x4C445458; // "LDTX"
+
+    public static final int VERSION = 1;
+
+    public static final int HEADER_SIZE = 32;
+
+    public static final int ENTRY_SIZE = 32;
+
+    public static final String FILE_EXTENSION = "ldtx";
+
+    public static final String MIMETYPE = "application/ldtx";
+
+    // Multiple of ENTRY_SIZE, so an entry is never split between 2 mappings
+    protected static final long CHUNK_SIZE = 1L << 30;
+
+    protected static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    protected static final long FNV_PRIME = 0x100000001b3L;
+
+    protected CloseableFile closeableFile;
+
+    protected FileChannel channel;
+
+    protected MappedByteBuffer[] chunks;
+
+    protected long count;
+
+    /**
+     * A record of the index
+     *
+     * @since 2021
+     */
+    public static class Entry {
+
+        public final long recordNumber;
+
+        public final long startOffset;
+
+        public final long size;
+
+        public final long startLine;
+
+        public final long keyHash;
+
+        public Entry(long recordNumber, long startOffset, long size, long startLine, long keyHash) {
+            this.recordNumber = recordNumber;
+            this.startOffset = startOffset;
+            this.size = size;
+            this.startLine = startLine;
+            this.keyHash = keyHash;
+        }
+
+        @Override
+        public String toString() {
+            return "{\"recordNumber\": " + recordNumber + ", \"startOffset\": " + startOffset + ", \"size\": " + size
+                    + ", \"startLine\": " + startLine + "}";
+        }
+    }
+
+    protected LDTRecordIndex(CloseableFile closeableFile) throws IOException {
+
+        this.closeableFile = closeableFile;
+        channel = FileChannel.open(closeableFile.getFile().toPath(), StandardOpenOption.READ);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining() && channel.read(header, header.position()) > 0) {
+            // Reading the header
+        }
+        header.flip();
+        if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+            close();
+            throw new NuxeoException("Not an LDT record index");
+        }
+        int version = header.getInt();
+        int entrySize = header.getInt();
+        if (version != VERSION || entrySize != ENTRY_SIZE) {
+            close();
+            throw new NuxeoException("Unsupported LDT record index version " + version);
+        }
+        header.getInt();
+        count = header.getLong();
+
+        long dataSize = count * ENTRY_SIZE;
+        if (HEADER_SIZE + dataSize > channel.size()) {
+            close();
+            throw new NuxeoException("Truncated LDT record index");
+        }
+        int chunkCount = (int) ((dataSize + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        chunks = new MappedByteBuffer[chunkCount];
+        for (int i = 0; i < chunkCount; i++) {
+            long start = i * CHUNK_SIZE;
+            chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + start,
+                    Math.min(CHUNK_SIZE, dataSize - start));
+        }
+    }
+
+    /**
+     * @param indexBlob
+     * @return the index, to be closed by the caller
+     * @throws IOException
+     * @since 2021
+     */
+    public static LDTRecordIndex open(Blob indexBlob) throws IOException {
+        return new LDTRecordIndex(indexBlob.getCloseableFile());
+    }
+
+    /**
+     * Hash of the values of the key fields (FNV-1a, 64 bits). A null value is handled as an empty string.
+     *
+     * @param values
+     * @return the hash
+     * @since 2021
+     */
+    public static long hashKey(List<String> values) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                // Separator, so ("ab", "c") and ("a", "bc") are different
+                hash ^= 0xff;
+                hash *= FNV_PRIME;
+            }
+            String value = values.get(i);
+            if (value != null) {
+                for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+                    hash ^= (b & 0xff);
+                    hash *= FNV_PRIME;
+                }
+            }
+        }
+        return hash;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    protected long getLong(long recordNumber, int field) {
+        if (recordNumber < 0 || recordNumber >= count) {
+            throw new IndexOutOfBoundsException("Record " + recordNumber + ", count is " + count);
+        }
+        long position = recordNumber * ENTRY_SIZE + field * Long.BYTES;
+        return chunks[(int) (position / CHUNK_SIZE)].getLong((int) (position % CHUNK_SIZE));
+    }
+
+    public long getStartOffset(long recordNumber) {
+        return getLong(recordNumber, 0);
+    }
+
+    public long getSize(long recordNumber) {
+        return getLong(recordNumber, 1);
+    }
+
+    public long getStartLine(long recordNumber) {
+        return getLong(recordNumber, 2);
+    }
+
+    public long getKeyHash(long recordNumber) {
+        return getLong(recordNumber, 3);
+    }
+
+    /**
+     * @param recordNumber starts at 0
+     * @return the entry
+     * @since 2021
+     */
+    public Entry getEntry(long recordNumber) {
+        return new Entry(recordNumber, getStartOffset(recordNumber), getSize(recordNumber),
+                getStartLine(recordNumber), getKeyHash(recordNumber));
+    }
+
+    /**
+     * Scans the index for the records whose key hash is {@code keyHash}. As for any hash, caller must check the values
+     * of the returned records if collisions are not acceptable.
+     *
+     * @param keyHash
+     * @return the entries, in file order
+     * @since 2021
+     */
+    public List<Entry> findByKeyHash(long keyHash) {
+        List<Entry> entries = new ArrayList<>();
+        for (long i = 0; i < count; i++) {
+            if (getKeyHash(i) == keyHash) {
+                entries.add(getEntry(i));
+            }
+        }
+        return entries;
+    }
+
+    @Override
+    public void close() throws IOException {
+        chunks = null;
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } finally {
+            channel = null;
+            if (closeableFile != null) {
+                closeableFile.close();
+                closeableFile = null;
+            }
+        }
+    }
+
+}
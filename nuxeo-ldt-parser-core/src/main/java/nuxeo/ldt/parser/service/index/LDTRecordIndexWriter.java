@@ -0,0 +1,129 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.ldt.parser.service.index;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.Blobs;
+
+/**
+ * Writes a record index (.ldtx), see {@code LDTRecordIndex} for the format. Records must be added in file order, the
+ * record number is the order of the calls to {@code add}.
+ *
+ * @since 2021
+ */
+public class LDTRecordIndexWriter implements Closeable {
+
+    protected static final int BUFFER_SIZE = 64 * 1024;
+
+    protected Blob blob;
+
+    protected RandomAccessFile file;
+
+    protected FileChannel channel;
+
+    protected ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    protected long count = 0;
+
+    public LDTRecordIndexWriter() throws IOException {
+
+        blob = Blobs.createBlobWithExtension("." + LDTRecordIndex.FILE_EXTENSION);
+        file = new RandomAccessFile(blob.getFile(), "rw");
+        channel = file.getChannel();
+
+        // Header, count is set when finishing
+        channel.write(header(0), 0);
+        channel.position(LDTRecordIndex.HEADER_SIZE);
+    }
+
+    protected static ByteBuffer header(long count) {
+        ByteBuffer header = ByteBuffer.allocate(LDTRecordIndex.HEADER_SIZE);
+        header.putInt(LDTRecordIndex.MAGIC);
+        header.putInt(LDTRecordIndex.VERSION);
+        header.putInt(LDTRecordIndex.ENTRY_SIZE);
+        header.putInt(0);
+        header.putLong(count);
+        header.putLong(0);
+        header.flip();
+        return header;
+    }
+
+    public void add(long startOffset, long size, long startLine, long keyHash) throws IOException {
+
+        if (buffer.remaining() < LDTRecordIndex.ENTRY_SIZE) {
+            flush();
+        }
+        buffer.putLong(startOffset);
+        buffer.putLong(size);
+        buffer.putLong(startLine);
+        buffer.putLong(keyHash);
+        count += 1;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    protected void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Writes the pending entries and the header, and returns the blob of the index.
+     *
+     * @param ldtFilename the file name of the LDT, used to name the index
+     * @return the blob
+     * @throws IOException
+     */
+    public Blob finish(String ldtFilename) throws IOException {
+
+        flush();
+        channel.write(header(count), 0);
+        close();
+
+        if (StringUtils.isNotBlank(ldtFilename)) {
+            blob.setFilename(FilenameUtils.getBaseName(ldtFilename) + "." + LDTRecordIndex.FILE_EXTENSION);
+        }
+        blob.setMimeType(LDTRecordIndex.MIMETYPE);
+
+        return blob;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (file != null) {
+            file.close();
+            file = null;
+            channel = null;
+        }
+    }
+
+}
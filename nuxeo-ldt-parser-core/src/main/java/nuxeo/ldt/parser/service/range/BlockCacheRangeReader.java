@@ -0,0 +1,60 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.ldt.parser.service.range;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.blob.ByteRange;
+import org.nuxeo.ecm.core.blob.ManagedBlob;
+
+import nuxeo.ldt.parser.service.utils.LDTParserRecordStream;
+
+/**
+ * Reads the ranges of S3 blobs through the {@code LDTBlockCache}, when it is enabled. Missing blocks are fetched with
+ * one ranged GET each, directly with the S3 client (see {@code LDTParserRecordStream}), so they are not also stored
+ * in the cache of the provider. Fetches go through the {@code LDTBulkhead} of the provider.
+ *
+ * @since 2021
+ */
+public class BlockCacheRangeReader implements RangeReader {
+
+    @Override
+    public Cost getCost(Blob blob) {
+        return LDTBlockCache.isEnabled() && LDTParserRecordStream.isS3Blob(blob) ? Cost.CACHED : null;
+    }
+
+    @Override
+    public byte[] read(Blob blob, long position, int length) throws IOException {
+        return LDTBlockCache.getInstance()
+                            .read(((ManagedBlob) blob).getKey(), blob.getLength(), position, length,
+                                    (start, size) -> fetch(blob, start, size));
+    }
+
+    protected byte[] fetch(Blob blob, long position, int length) throws IOException {
+        return LDTBulkhead.get(blob).call(() -> {
+            try (InputStream stream = LDTParserRecordStream.getStreamWithByteRangeOnS3(blob,
+                    ByteRange.inclusive(position, position + length - 1))) {
+                return stream.readNBytes(length);
+            }
+        });
+    }
+
+}
@@ -0,0 +1,69 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.ldt.parser.service.range;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.blob.BlobManager;
+import org.nuxeo.ecm.core.blob.BlobProvider;
+import org.nuxeo.ecm.core.blob.ManagedBlob;
+import org.nuxeo.runtime.api.Framework;
+
+import nuxeo.ldt.parser.service.utils.LDTParserRecordStream;
+
+/**
+ * Positional reads on the copy of an S3 blob found in the local cache of the Nuxeo blob provider. The copy can be
+ * evicted between {@code getCost} and {@code read}, the read then fails and {@code RangeReaders} falls back to the
+ * next cheapest reader.
+ *
+ * @since 2021
+ */
+public class CachedRangeReader extends FileRangeReader {
+
+    @Override
+    public Cost getCost(Blob blob) {
+        return LDTParserRecordStream.isS3Blob(blob) && getLocalFile(blob) != null ? Cost.CACHED : null;
+    }
+
+    @Override
+    protected File getLocalFile(Blob blob) {
+
+        if (!(blob instanceof ManagedBlob)) {
+            return null;
+        }
+        BlobProvider blobProvider = Framework.getService(BlobManager.class).getBlobProvider(blob);
+        File file = blobProvider == null ? null : blobProvider.getFile((ManagedBlob) blob);
+
+        return file != null && file.exists() ? file : null;
+    }
+
+    @Override
+    public byte[] read(Blob blob, long position, int length) throws IOException {
+
+        File file = getLocalFile(blob);
+        if (file == null) {
+            throw new IOException("The blob " + blob.getFilename() + " is not in the cache anymore");
+        }
+
+        return read(file, position, length);
+    }
+
+}
@@ -0,0 +1,100 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.ldt.parser.service.range;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.impl.blob.FileBlob;
+import org.nuxeo.ecm.core.blob.BlobManager;
+import org.nuxeo.ecm.core.blob.BlobProvider;
+import org.nuxeo.ecm.core.blob.ManagedBlob;
+import org.nuxeo.runtime.api.Framework;
+
+import nuxeo.ldt.parser.service.utils.LDTParserRecordStream;
+
+/**
+ * Positional reads ({@code FileChannel#read(ByteBuffer, long)}) on the local file of a blob: a {@code FileBlob}, or a
+ * blob stored by a local provider (the provider returns its file).
+ *
+ * @since 2021
+ */
+public class FileRangeReader implements RangeReader {
+
+    @Override
+    public Cost getCost(Blob blob) {
+
+        if (blob instanceof FileBlob) {
+            return Cost.LOCAL;
+        }
+        if (blob instanceof ManagedBlob && !LDTParserRecordStream.isS3Blob(blob) && getLocalFile(blob) != null) {
+            return Cost.LOCAL;
+        }
+
+        return null;
+    }
+
+    /**
+     * @return the file of the blob if it is stored locally, null otherwise
+     */
+    protected File getLocalFile(Blob blob) {
+
+        if (blob instanceof FileBlob) {
+            return blob.getFile();
+        }
+        if (blob instanceof ManagedBlob) {
+            BlobProvider blobProvider = Framework.getService(BlobManager.class).getBlobProvider(blob);
+            if (blobProvider != null) {
+                return blobProvider.getFile((ManagedBlob) blob);
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public byte[] read(Blob blob, long position, int length) throws IOException {
+
+        File file = getLocalFile(blob);
+        if (file == null) {
+            throw new IOException("No local file for the blob " + blob.getFilename());
+        }
+
+        return read(file, position, length);
+    }
+
+    protected byte[] read(File file, long position, int length) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    return Arrays.copyOf(buffer.array(), buffer.position());
+                }
+            }
+            return buffer.array();
+        }
+    }
+
+}
@@ -0,0 +1,51 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.ldt.parser.service.range;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.impl.blob.ByteArrayBlob;
+import org.nuxeo.ecm.core.api.impl.blob.StringBlob;
+
+/**
+ * Reads the ranges of blobs held in memory ({@code ByteArrayBlob}, {@code StringBlob})
+ *
+ * @since 2021
+ */
+public class InMemoryRangeReader implements RangeReader {
+
+    @Override
+    public Cost getCost(Blob blob) {
+        return blob instanceof ByteArrayBlob || blob instanceof StringBlob ? Cost.MEMORY : null;
+    }
+
+    @Override
+    public byte[] read(Blob blob, long position, int length) throws IOException {
+
+        byte[] bytes = blob.getByteArray();
+        if (position >= bytes.length) {
+            return new byte[0];
+        }
+
+        return Arrays.copyOfRange(bytes, (int) position, (int) Math.min(bytes.length, position + length));
+    }
+
+}
@@ -0,0 +1,381 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.ldt.parser.service.range;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.common.Environment;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.runtime.api.Framework;
+
+import nuxeo.ldt.parser.service.utils.LDTSingleFlight;
+
+/**
+ * A disk cache of aligned blocks of LDTs stored remotely. A range is read as the blocks holding it, each block is
+ * fetched once and stored in a local file, keyed by (blob key, block index). So adjacent records, and records read
+ * again, share the same fetch, instead of one exact range (and one cache entry) per record. Concurrent misses on the
+ * same block share a single fetch too.
+ * <br>
+ * Blocks are evicted in LRU order when the cache is bigger than its disk budget. Hits, misses, evictions and fetched
+ * bytes are counted, see {@code Stats}.
+ * <br>
+ * Configuration parameters (read once, at first use of {@code getInstance()}):
+ * <ul>
+ * <li>{@code ldt.blockCache.enabled}: default false</li>
+ * <li>{@code ldt.blockCache.blockSize}: in bytes, default 1MB (from 64KB to 64MB)</li>
+ * <li>{@code ldt.blockCache.maxDiskSize}: in bytes, default 1GB</li>
+ * <li>{@code ldt.blockCache.dir}: default {@code ldt-block-cache} in the temporary directory of the server. Emptied when
+ * the cache is created, since the blocks of a previous run are not indexed.</li>
+ * </ul>
+ * See {@code BlockCacheRangeReader}.
+ *
+ * @since 2021
+ */
+public class LDTBlockCache {
+
+    private static final Logger log = LogManager.getLogger(LDTBlockCache.class);
+
+    public static final String ENABLED_PARAM = "ldt.blockCache.enabled";
+
+    public static final String BLOCK_SIZE_PARAM = "ldt.blockCache.blockSize";
+
+    public static final String MAX_DISK_SIZE_PARAM = "ldt.blockCache.maxDiskSize";
+
+    public static final String DIR_PARAM = "ldt.blockCache.dir";
+
+    public static final String DEFAULT_DIR_NAME = "ldt-block-cache";
+
+    public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+
+    public static final int MIN_BLOCK_SIZE = 64 * 1024;
+
+    public static final int MAX_BLOCK_SIZE = 64 * 1024 * 1024;
+
+    public static final long DEFAULT_MAX_DISK_SIZE = 1024L * 1024 * 1024;
+
+    protected static LDTBlockCache instance = null;
+
+    protected static volatile Boolean enabled = null;
+
+    protected final Path dir;
+
+    protected final int blockSize;
+
+    protected final long maxDiskSize;
+
+    // Access order: the first entry is the least recently used. Value is the size of the block
+    protected final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    protected long diskSize = 0;
+
+    protected final AtomicLong hits = new AtomicLong();
+
+    protected final AtomicLong misses = new AtomicLong();
+
+    protected final AtomicLong evictions = new AtomicLong();
+
+    protected final AtomicLong fetchedBytes = new AtomicLong();
+
+    protected final LDTSingleFlight<String, byte[]> blockFetches = new LDTSingleFlight<>();
+
+    /**
+     * Fetches the bytes of a block from the remote storage
+     *
+     * @since 2021
+     */
+    public interface BlockFetcher {
+
+        /**
+         * @return exactly {@code length} bytes, starting at {@code position}
+         */
+        byte[] fetch(long position, int length) throws IOException;
+    }
+
+    /**
+     * Cache statistics, since the cache was created
+     *
+     * @since 2021
+     */
+    public static class Stats {
+
+        public final long hits;
+
+        public final long misses;
+
+        public final long evictions;
+
+        public final long fetchedBytes;
+
+        public final long diskSize;
+
+        public final int blockCount;
+
+        protected Stats(long hits, long misses, long evictions, long fetchedBytes, long diskSize, int blockCount) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.fetchedBytes = fetchedBytes;
+            this.diskSize = diskSize;
+            this.blockCount = blockCount;
+        }
+
+        public double getHitRatio() {
+            return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+        }
+
+        @Override
+        public String toString() {
+            return "{\"hits\": " + hits + ", \"misses\": " + misses + ", \"evictions\": " + evictions
+                    + ", \"fetchedBytes\": " + fetchedBytes + ", \"diskSize\": " + diskSize + ", \"blockCount\": "
+                    + blockCount + "}";
+        }
+    }
+
+    public LDTBlockCache(Path dir, int blockSize, long maxDiskSize) {
+        this.dir = dir;
+        this.blockSize = Math.max(MIN_BLOCK_SIZE, Math.min(blockSize, MAX_BLOCK_SIZE));
+        this.maxDiskSize = maxDiskSize;
+    }
+
+    /**
+     * @return true if the {@code ldt.blockCache.enabled} configuration parameter is true
+     * @since 2021
+     */
+    public static boolean isEnabled() {
+        if (enabled == null) {
+            enabled = Boolean.parseBoolean(Framework.getProperty(ENABLED_PARAM, "false"));
+        }
+        return enabled.booleanValue();
+    }
+
+    /**
+     * @return the cache configured with the {@code ldt.blockCache.*} configuration parameters
+     * @since 2021
+     */
+    public static synchronized LDTBlockCache getInstance() {
+
+        if (instance == null) {
+            int blockSize = DEFAULT_BLOCK_SIZE;
+            long maxDiskSize = DEFAULT_MAX_DISK_SIZE;
+            String param = Framework.getProperty(BLOCK_SIZE_PARAM);
+            if (StringUtils.isNotBlank(param)) {
+                blockSize = Integer.parseInt(param.trim());
+            }
+            param = Framework.getProperty(MAX_DISK_SIZE_PARAM);
+            if (StringUtils.isNotBlank(param)) {
+                maxDiskSize = Long.parseLong(param.trim());
+            }
+            Path dir;
+            param = Framework.getProperty(DIR_PARAM);
+            if (StringUtils.isNotBlank(param)) {
+                dir = Path.of(param.trim());
+            } else {
+                dir = Environment.getDefault().getTemp().toPath().resolve(DEFAULT_DIR_NAME);
+            }
+            try {
+                Files.createDirectories(dir);
+                deleteFiles(dir);
+            } catch (IOException e) {
+                throw new NuxeoException("Cannot create the directory of the LDT block cache", e);
+            }
+            instance = new LDTBlockCache(dir, blockSize, maxDiskSize);
+        }
+
+        return instance;
+    }
+
+    // The blocks of a previous run
+    protected static void deleteFiles(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (Files.isRegularFile(file)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public long getMaxDiskSize() {
+        return maxDiskSize;
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(hits.get(), misses.get(), evictions.get(), fetchedBytes.get(), diskSize, entries.size());
+    }
+
+    /**
+     * @param blobKey unique key of the blob content (the key of a {@code ManagedBlob})
+     * @param blobLength
+     * @param position
+     * @param length
+     * @param fetcher used for the blocks not in the cache
+     * @return the {@code length} bytes starting at {@code position}, less if the end of the blob is reached
+     * @throws IOException
+     * @since 2021
+     */
+    public byte[] read(String blobKey, long blobLength, long position, int length, BlockFetcher fetcher)
+            throws IOException {
+
+        long end = Math.min(position + length, blobLength);
+        if (position >= end) {
+            return new byte[0];
+        }
+
+        byte[] result = new byte[(int) (end - position)];
+        long firstBlock = position / blockSize;
+        long lastBlock = (end - 1) / blockSize;
+        for (long blockIndex = firstBlock; blockIndex <= lastBlock; blockIndex++) {
+            long blockStart = blockIndex * blockSize;
+            int blockLength = (int) Math.min(blockSize, blobLength - blockStart);
+            byte[] block = getBlock(blobKey, blockIndex, blockStart, blockLength, fetcher);
+
+            long from = Math.max(position, blockStart);
+            long to = Math.min(end, blockStart + blockLength);
+            System.arraycopy(block, (int) (from - blockStart), result, (int) (from - position), (int) (to - from));
+        }
+
+        return result;
+    }
+
+    protected byte[] getBlock(String blobKey, long blockIndex, long blockStart, int blockLength,
+            BlockFetcher fetcher) throws IOException {
+
+        String key = blobKey + "#" + blockSize + "#" + blockIndex;
+        Path path = getBlockPath(key);
+
+        boolean cached;
+        synchronized (this) {
+            cached = entries.get(key) != null;
+        }
+        if (cached) {
+            try {
+                byte[] block = Files.readAllBytes(path);
+                if (block.length == blockLength) {
+                    hits.incrementAndGet();
+                    return block;
+                }
+            } catch (NoSuchFileException e) {
+                // Evicted meanwhile
+            }
+        }
+
+        try {
+            return blockFetches.execute(key, () -> {
+                try {
+                    return fetchBlock(key, path, blobKey, blockIndex, blockStart, blockLength, fetcher);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    protected byte[] fetchBlock(String key, Path path, String blobKey, long blockIndex, long blockStart,
+            int blockLength, BlockFetcher fetcher) throws IOException {
+
+        misses.incrementAndGet();
+        byte[] block = fetcher.fetch(blockStart, blockLength);
+        if (block.length != blockLength) {
+            throw new IOException("Block " + blockIndex + " of " + blobKey + ": got " + block.length
+                    + " bytes, expected " + blockLength);
+        }
+        fetchedBytes.addAndGet(blockLength);
+        store(key, path, block);
+
+        return block;
+    }
+
+    // Blob keys can hold chars not allowed in a file name
+    protected Path getBlockPath(String key) {
+        return dir.resolve(UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8)).toString());
+    }
+
+    protected void store(String key, Path path, byte[] block) throws IOException {
+
+        // Written aside then moved, so a concurrent read never gets a partial block
+        Path tmp = Files.createTempFile(dir, "block-", ".tmp");
+        try {
+            Files.write(tmp, block);
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+
+        List<Path> evicted = new ArrayList<>();
+        synchronized (this) {
+            Long previous = entries.put(key, (long) block.length);
+            diskSize += block.length - (previous == null ? 0 : previous);
+            Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+            while (diskSize > maxDiskSize && it.hasNext()) {
+                Map.Entry<String, Long> eldest = it.next();
+                if (eldest.getKey().equals(key)) {
+                    continue;
+                }
+                it.remove();
+                diskSize -= eldest.getValue();
+                evictions.incrementAndGet();
+                evicted.add(getBlockPath(eldest.getKey()));
+            }
+        }
+        for (Path file : evicted) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Removes all the blocks. Statistics are kept.
+     *
+     * @since 2021
+     */
+    public synchronized void clear() {
+        for (String key : entries.keySet()) {
+            try {
+                Files.deleteIfExists(getBlockPath(key));
+            } catch (IOException e) {
+                log.warn("Cannot delete a block of the LDT block cache", e);
+            }
+        }
+        entries.clear();
+        diskSize = 0;
+    }
+
+}
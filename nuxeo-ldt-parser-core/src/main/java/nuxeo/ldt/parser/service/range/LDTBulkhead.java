@@ -0,0 +1,277 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.ldt.parser.service.range;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.runtime.api.Framework;
+
+import nuxeo.ldt.parser.service.utils.LDTRecordExecutors;
+
+/**
+ * Limits the number of range reads in progress on a blob provider, so a spike of record requests can't take all the
+ * connections of the provider (for example the connection pool of the {@code S3BlobProvider}, used by the rest of the
+ * repository). There is one bulkhead per provider (see {@code LDTRecordExecutors#getProviderId}), used by the readers
+ * opening a connection to the storage ({@code S3RangeReader}, {@code StreamRangeReader} and the fetches of
+ * {@code BlockCacheRangeReader}).
+ * <br>
+ * A read runs at once if less than {@code maxConcurrent} reads are in progress. Else it waits, up to
+ * {@code timeout} ms, unless {@code maxWaiting} reads are already waiting: it then fails at once. A read that fails
+ * this way throws a {@code NuxeoException} with a 503 status, so callers get an error quickly instead of piling up.
+ * <br>
+ * Configuration parameters (read when the bulkhead of a provider is created), each can be set for one provider with a
+ * {@code .<providerId>} suffix (for example {@code ldt.bulkhead.maxConcurrent.default}):
+ * <ul>
+ * <li>{@code ldt.bulkhead.maxConcurrent}: default 32, 0 for no limit</li>
+ * <li>{@code ldt.bulkhead.maxWaiting}: default 256</li>
+ * <li>{@code ldt.bulkhead.timeout}: in ms, default 5000</li>
+ * </ul>
+ * Calls, rejections, timeouts and wait times are counted, see {@code Stats}.
+ *
+ * @since 2021
+ */
+public class LDTBulkhead {
+
+    private static final Logger log = LogManager.getLogger(LDTBulkhead.class);
+
+    public static final String MAX_CONCURRENT_PARAM = "ldt.bulkhead.maxConcurrent";
+
+    public static final String MAX_WAITING_PARAM = "ldt.bulkhead.maxWaiting";
+
+    public static final String TIMEOUT_PARAM = "ldt.bulkhead.timeout";
+
+    public static final int DEFAULT_MAX_CONCURRENT = 32;
+
+    public static final int DEFAULT_MAX_WAITING = 256;
+
+    public static final long DEFAULT_TIMEOUT_MS = 5000;
+
+    public static final int SC_SERVICE_UNAVAILABLE = 503;
+
+    protected static final Map<String, LDTBulkhead> bulkheads = new ConcurrentHashMap<>();
+
+    protected final String providerId;
+
+    protected final int maxConcurrent;
+
+    protected final int maxWaiting;
+
+    protected final long timeoutMs;
+
+    // null when there is no limit
+    protected final Semaphore permits;
+
+    protected final AtomicInteger inFlight = new AtomicInteger();
+
+    protected final AtomicInteger waiting = new AtomicInteger();
+
+    protected final AtomicInteger maxInFlight = new AtomicInteger();
+
+    protected final AtomicLong calls = new AtomicLong();
+
+    protected final AtomicLong rejected = new AtomicLong();
+
+    protected final AtomicLong timedOut = new AtomicLong();
+
+    protected final AtomicLong waitTimeNanos = new AtomicLong();
+
+    /**
+     * A read done within the bulkhead
+     *
+     * @since 2021
+     */
+    public interface Task<T> {
+
+        T run() throws IOException;
+    }
+
+    /**
+     * Bulkhead statistics, since it was created
+     *
+     * @since 2021
+     */
+    public static class Stats {
+
+        public final long calls;
+
+        public final long rejected;
+
+        public final long timedOut;
+
+        public final int inFlight;
+
+        public final int waiting;
+
+        public final int maxInFlight;
+
+        public final long waitTimeMs;
+
+        protected Stats(long calls, long rejected, long timedOut, int inFlight, int waiting, int maxInFlight,
+                long waitTimeMs) {
+            this.calls = calls;
+            this.rejected = rejected;
+            this.timedOut = timedOut;
+            this.inFlight = inFlight;
+            this.waiting = waiting;
+            this.maxInFlight = maxInFlight;
+            this.waitTimeMs = waitTimeMs;
+        }
+
+        @Override
+        public String toString() {
+            return "{\"calls\": " + calls + ", \"rejected\": " + rejected + ", \"timedOut\": " + timedOut
+                    + ", \"inFlight\": " + inFlight + ", \"waiting\": " + waiting + ", \"maxInFlight\": "
+                    + maxInFlight + ", \"waitTimeMs\": " + waitTimeMs + "}";
+        }
+    }
+
+    public LDTBulkhead(String providerId, int maxConcurrent, int maxWaiting, long timeoutMs) {
+        this.providerId = providerId;
+        this.maxConcurrent = Math.max(0, maxConcurrent);
+        this.maxWaiting = Math.max(0, maxWaiting);
+        this.timeoutMs = Math.max(0, timeoutMs);
+        permits = this.maxConcurrent > 0 ? new Semaphore(this.maxConcurrent, true) : null;
+    }
+
+    /**
+     * @param blob
+     * @return the bulkhead of the provider of the blob
+     * @since 2021
+     */
+    public static LDTBulkhead get(Blob blob) {
+        return get(LDTRecordExecutors.getProviderId(blob));
+    }
+
+    /**
+     * @param providerId
+     * @return the bulkhead of the provider, configured with the {@code ldt.bulkhead.*} configuration parameters
+     * @since 2021
+     */
+    public static LDTBulkhead get(String providerId) {
+        return bulkheads.computeIfAbsent(providerId,
+                id -> new LDTBulkhead(id, (int) getParam(MAX_CONCURRENT_PARAM, id, DEFAULT_MAX_CONCURRENT),
+                        (int) getParam(MAX_WAITING_PARAM, id, DEFAULT_MAX_WAITING),
+                        getParam(TIMEOUT_PARAM, id, DEFAULT_TIMEOUT_MS)));
+    }
+
+    protected static long getParam(String name, String providerId, long defaultValue) {
+        String param = Framework.getProperty(name + "." + providerId);
+        if (StringUtils.isBlank(param)) {
+            param = Framework.getProperty(name);
+        }
+        return StringUtils.isBlank(param) ? defaultValue : Long.parseLong(param.trim());
+    }
+
+    /**
+     * Runs the task when a read is allowed on the provider.
+     *
+     * @param task
+     * @return the result of the task
+     * @throws IOException
+     * @throws NuxeoException with a 503 status if too many reads are waiting, or if no read was allowed within the
+     *             timeout
+     * @since 2021
+     */
+    public <T> T call(Task<T> task) throws IOException {
+
+        calls.incrementAndGet();
+        if (permits == null) {
+            return run(task);
+        }
+
+        if (!permits.tryAcquire()) {
+            acquire();
+        }
+        try {
+            return run(task);
+        } finally {
+            permits.release();
+        }
+    }
+
+    protected void acquire() {
+
+        if (waiting.incrementAndGet() > maxWaiting) {
+            waiting.decrementAndGet();
+            rejected.incrementAndGet();
+            log.debug("Too many LDT range reads waiting on provider " + providerId + ", rejecting the read");
+            throw new NuxeoException("Too many LDT range reads on provider " + providerId, SC_SERVICE_UNAVAILABLE);
+        }
+
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS)) {
+                timedOut.incrementAndGet();
+                log.debug("No LDT range read allowed on provider " + providerId + " within " + timeoutMs + " ms");
+                throw new NuxeoException("Timeout waiting for an LDT range read on provider " + providerId,
+                        SC_SERVICE_UNAVAILABLE);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NuxeoException(e);
+        } finally {
+            waiting.decrementAndGet();
+            waitTimeNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    protected <T> T run(Task<T> task) throws IOException {
+        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        try {
+            return task.run();
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    public String getProviderId() {
+        return providerId;
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    public Stats getStats() {
+        return new Stats(calls.get(), rejected.get(), timedOut.get(), inFlight.get(), waiting.get(),
+                maxInFlight.get(), TimeUnit.NANOSECONDS.toMillis(waitTimeNanos.get()));
+    }
+
+    /**
+     * @return the statistics of the bulkheads of all the providers, by provider id
+     * @since 2021
+     */
+    public static Map<String, Stats> getAllStats() {
+        Map<String, Stats> stats = new ConcurrentHashMap<>();
+        bulkheads.forEach((id, bulkhead) -> stats.put(id, bulkhead.getStats()));
+        return stats;
+    }
+
+}
@@ -0,0 +1,119 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.ldt.parser.service.range;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Merges ranges that are close to each other into a few bigger reads. Ranges are sorted by start, then a range is
+ * merged into the current read if it starts less than {@code maxGap} bytes after its end, and the read stays smaller
+ * than {@code maxReadSize} bytes (a single range bigger than this is read alone). Overlapping and duplicate ranges
+ * are merged.
+ *
+ * @since 2021
+ */
+public class RangeCoalescer {
+
+    /**
+     * A read covering one or several ranges
+     *
+     * @since 2021
+     */
+    public static class MergedRange {
+
+        public final long start;
+
+        protected long end;
+
+        // Indexes of the ranges in the input arrays, by start
+        protected final List<Integer> members = new ArrayList<>();
+
+        protected MergedRange(long start, long end, int member) {
+            this.start = start;
+            this.end = end;
+            members.add(member);
+        }
+
+        /**
+         * @return the end of the read (excluded)
+         */
+        public long getEnd() {
+            return end;
+        }
+
+        public int getLength() {
+            return (int) (end - start);
+        }
+
+        public List<Integer> getMembers() {
+            return members;
+        }
+
+        @Override
+        public String toString() {
+            return "{\"start\": " + start + ", \"end\": " + end + ", \"members\": " + members + "}";
+        }
+    }
+
+    private RangeCoalescer() {
+        // Static methods only
+    }
+
+    /**
+     * @param starts start of each range
+     * @param lengths length of each range
+     * @param maxGap
+     * @param maxReadSize
+     * @return the reads, by start
+     */
+    public static List<MergedRange> coalesce(long[] starts, int[] lengths, long maxGap, long maxReadSize) {
+
+        if (starts.length != lengths.length) {
+            throw new IllegalArgumentException(
+                    "Got " + starts.length + " starts but " + lengths.length + " lengths, they must be the same");
+        }
+
+        Integer[] order = new Integer[starts.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong(i -> starts[i]));
+
+        List<MergedRange> reads = new ArrayList<>();
+        MergedRange current = null;
+        for (int i : order) {
+            long start = starts[i];
+            long end = start + lengths[i];
+            if (current != null && start - current.end <= maxGap
+                    && Math.max(end, current.end) - current.start <= maxReadSize) {
+                current.end = Math.max(end, current.end);
+                current.members.add(i);
+            } else {
+                current = new MergedRange(start, end, i);
+                reads.add(current);
+            }
+        }
+
+        return reads;
+    }
+
+}
@@ -0,0 +1,88 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.ldt.parser.service.range;
+
+import java.io.IOException;
+
+import org.nuxeo.ecm.core.api.Blob;
+
+/**
+ * Reads a range of bytes of a blob (a record in an LDT, a block of an index, ...) without reading the bytes before it
+ * when the storage allows it.
+ * <br>
+ * Each implementation tells if it can read a given blob and at which cost (see {@code Cost}). {@code RangeReaders}
+ * uses the cheapest one. Other implementations can be added to a parser with the {@code rangeReaders} option of the
+ * {@code ldtParser} contribution. They must have a public no-args constructor and be thread safe.
+ *
+ * @since 2021
+ */
+public interface RangeReader {
+
+    /**
+     * Cost characteristics of a reader for a blob, from the cheapest to the most expensive.
+     *
+     * @since 2021
+     */
+    enum Cost {
+
+        /** The bytes are already in memory */
+        MEMORY(false),
+
+        /** One positional read on a local file */
+        LOCAL(false),
+
+        /** One positional read on a local copy that can be evicted at any time (the reader may then fail) */
+        CACHED(false),
+
+        /** One remote request per read, its cost does not depend on the position */
+        REMOTE(false),
+
+        /** All the bytes before the position are read (and skipped) */
+        SEQUENTIAL(true);
+
+        protected final boolean proportionalToPosition;
+
+        Cost(boolean proportionalToPosition) {
+            this.proportionalToPosition = proportionalToPosition;
+        }
+
+        /**
+         * @return true if reading at position N reads the N bytes before it
+         */
+        public boolean isProportionalToPosition() {
+            return proportionalToPosition;
+        }
+    }
+
+    /**
+     * @param blob
+     * @return the cost of reading a range of {@code blob}, or null if this reader cannot read it
+     */
+    Cost getCost(Blob blob);
+
+    /**
+     * @param blob
+     * @param position
+     * @param length
+     * @return the {@code length} bytes starting at {@code position}, less if the end of the blob is reached
+     * @throws IOException
+     */
+    byte[] read(Blob blob, long position, int length) throws IOException;
+
+}
@@ -0,0 +1,163 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.ldt.parser.service.range;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.NuxeoException;
+
+/**
+ * An ordered list of {@code RangeReader}s. A read uses the cheapest reader for the blob (the first one in the list
+ * for the same cost), and falls back to the next cheapest if it fails.
+ * <br>
+ * {@code getDefault()} holds the readers of this plugin. {@code LDTParser} adds the readers of its configuration (the
+ * {@code rangeReaders} option) before them.
+ *
+ * @since 2021
+ */
+public class RangeReaders {
+
+    private static final Logger log = LogManager.getLogger(RangeReaders.class);
+
+    protected static final RangeReaders DEFAULT = new RangeReaders(null);
+
+    protected List<RangeReader> readers = new ArrayList<>();
+
+    /**
+     * @param readers added before the default ones (can be null)
+     */
+    public RangeReaders(List<RangeReader> readers) {
+        if (readers != null) {
+            this.readers.addAll(readers);
+        }
+        this.readers.add(new InMemoryRangeReader());
+        this.readers.add(new FileRangeReader());
+        this.readers.add(new CachedRangeReader());
+        this.readers.add(new BlockCacheRangeReader());
+        this.readers.add(new S3RangeReader());
+        this.readers.add(new StreamRangeReader());
+    }
+
+    public static RangeReaders getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @param readerClasses classes of {@code RangeReader} with a public no-args constructor
+     * @return the readers, added before the default ones
+     */
+    public static RangeReaders newInstance(List<Class<?>> readerClasses) {
+
+        if (readerClasses == null || readerClasses.isEmpty()) {
+            return DEFAULT;
+        }
+
+        List<RangeReader> readers = new ArrayList<>();
+        for (Class<?> readerClass : readerClasses) {
+            try {
+                readers.add((RangeReader) readerClass.getConstructor().newInstance());
+            } catch (ReflectiveOperationException | ClassCastException e) {
+                throw new NuxeoException("Cannot instantiate the RangeReader " + readerClass.getName(), e);
+            }
+        }
+
+        return new RangeReaders(readers);
+    }
+
+    /**
+     * @param blob
+     * @return the readers that can read the blob, from the cheapest to the most expensive
+     */
+    public List<RangeReader> getReaders(Blob blob) {
+
+        List<RangeReader> candidates = new ArrayList<>();
+        List<RangeReader.Cost> costs = new ArrayList<>();
+        for (RangeReader reader : readers) {
+            RangeReader.Cost cost = reader.getCost(blob);
+            if (cost != null) {
+                // Stable insertion: same cost => order of the list
+                int idx = costs.size();
+                while (idx > 0 && costs.get(idx - 1).compareTo(cost) > 0) {
+                    idx -= 1;
+                }
+                candidates.add(idx, reader);
+                costs.add(idx, cost);
+            }
+        }
+
+        return Collections.unmodifiableList(candidates);
+    }
+
+    /**
+     * @param blob
+     * @return the cheapest reader for the blob
+     */
+    public RangeReader getCheapest(Blob blob) {
+
+        List<RangeReader> candidates = getReaders(blob);
+        if (candidates.isEmpty()) {
+            throw new NuxeoException("No RangeReader for the blob " + blob.getFilename());
+        }
+
+        return candidates.get(0);
+    }
+
+    /**
+     * Reads with the cheapest reader, falls back to the next ones in case of {@code IOException}.
+     *
+     * @param blob
+     * @param position
+     * @param length
+     * @return the {@code length} bytes starting at {@code position}, less if the end of the blob is reached. Empty if
+     *         {@code length} is 0 or less (no reader is called).
+     * @throws IOException if all the readers failed
+     */
+    public byte[] read(Blob blob, long position, int length) throws IOException {
+
+        if (length <= 0) {
+            return new byte[0];
+        }
+
+        IOException error = null;
+        for (RangeReader reader : getReaders(blob)) {
+            try {
+                return reader.read(blob, position, length);
+            } catch (IOException e) {
+                log.debug("Error reading with " + reader.getClass().getSimpleName() + ", trying the next reader", e);
+                if (error == null) {
+                    error = e;
+                } else {
+                    error.addSuppressed(e);
+                }
+            }
+        }
+        if (error == null) {
+            throw new NuxeoException("No RangeReader for the blob " + blob.getFilename());
+        }
+
+        throw error;
+    }
+
+}
@@ -0,0 +1,197 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.ldt.parser.service.range;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.NuxeoException;
+
+import nuxeo.ldt.parser.service.utils.LDTRecordExecutors;
+
+/**
+ * Reads ranges of one blob, prefetching the next bytes when the ranges are read in ascending order.
+ * <br>
+ * As long as the reads are not sequential, each one is a direct read (see {@code RangeReaders}). Once a read starts
+ * at the end of the previous one (or less than {@code windowSize} bytes after it), the blob is read by aligned
+ * windows of {@code windowSize} bytes: the window holding the current position and the next ones, up to
+ * {@code maxWindows}, are fetched asynchronously, in parallel, and the reads are served from them. So the buffer
+ * holds at most {@code maxWindows * windowSize} bytes. A read before the previous one (or too far after it) drops the
+ * windows and goes back to direct reads.
+ * <br>
+ * The windows are fetched by the executor of the blob provider (see {@code LDTRecordExecutors}), shared with the
+ * asynchronous record reads, so the prefetch of all the cursors is capped by the concurrency of the provider.
+ * <br>
+ * Not thread safe: a reader is used by one thread, typically to walk the records of an LDT in file order (see
+ * {@code LDTRecordCursor}).
+ *
+ * @since 2021
+ */
+public class ReadAheadRangeReader implements Closeable {
+
+    protected final Blob blob;
+
+    protected final RangeReaders readers;
+
+    protected final int windowSize;
+
+    protected final int maxWindows;
+
+    protected final long blobLength;
+
+    protected final ExecutorService executor;
+
+    // Window index => bytes of the window
+    protected final TreeMap<Long, Future<byte[]>> windows = new TreeMap<>();
+
+    protected long lastEnd = -1;
+
+    protected boolean sequential = false;
+
+    protected long directReads = 0;
+
+    protected long windowReads = 0;
+
+    public ReadAheadRangeReader(Blob blob, RangeReaders readers, int windowSize, int maxWindows) {
+        this.blob = blob;
+        this.readers = readers;
+        this.windowSize = Math.max(1, windowSize);
+        this.maxWindows = Math.max(1, maxWindows);
+        blobLength = blob.getLength();
+        executor = LDTRecordExecutors.getExecutor(blob);
+    }
+
+    /**
+     * @param position
+     * @param length
+     * @return the {@code length} bytes starting at {@code position}, less if the end of the blob is reached
+     * @throws IOException
+     * @since 2021
+     */
+    public byte[] read(long position, int length) throws IOException {
+
+        boolean ascending = lastEnd >= 0 && position >= lastEnd && position - lastEnd < windowSize;
+        lastEnd = position + length;
+        if (!ascending) {
+            sequential = false;
+            dropWindows(Long.MAX_VALUE);
+            directReads += 1;
+            return readers.read(blob, position, length);
+        }
+        sequential = true;
+
+        long end = Math.min(position + length, blobLength);
+        long firstWindow = position / windowSize;
+        dropWindows(firstWindow);
+        prefetch(firstWindow);
+
+        ByteArrayOutputStream result = new ByteArrayOutputStream((int) Math.max(0, end - position));
+        for (long idx = firstWindow; idx * windowSize < end; idx++) {
+            if (idx >= firstWindow + maxWindows) {
+                // Bigger than the buffer: slide it
+                dropWindows(idx);
+                prefetch(idx);
+            }
+            byte[] window = getWindow(idx);
+            long windowStart = idx * windowSize;
+            long from = Math.max(position, windowStart);
+            long to = Math.min(end, windowStart + window.length);
+            if (to > from) {
+                result.write(window, (int) (from - windowStart), (int) (to - from));
+            }
+        }
+
+        return result.toByteArray();
+    }
+
+    protected void prefetch(long firstWindow) {
+        for (long idx = firstWindow; idx < firstWindow + maxWindows && idx * windowSize < blobLength; idx++) {
+            if (!windows.containsKey(idx)) {
+                long windowStart = idx * windowSize;
+                windows.put(idx, executor.submit(() -> readers.read(blob, windowStart, windowSize)));
+                windowReads += 1;
+            }
+        }
+    }
+
+    protected byte[] getWindow(long idx) throws IOException {
+
+        Future<byte[]> future = windows.get(idx);
+        if (future == null) {
+            prefetch(idx);
+            future = windows.get(idx);
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NuxeoException("Interrupted while reading ahead", e);
+        } catch (ExecutionException e) {
+            windows.remove(idx);
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new NuxeoException("Error reading ahead", e.getCause());
+        }
+    }
+
+    // Drops (and cancels) the windows before beforeWindow
+    protected void dropWindows(long beforeWindow) {
+        Map<Long, Future<byte[]>> dropped = windows.headMap(beforeWindow);
+        for (Future<byte[]> future : dropped.values()) {
+            future.cancel(true);
+        }
+        dropped.clear();
+    }
+
+    /**
+     * @return true if the last read was served by the read-ahead windows
+     */
+    public boolean isSequential() {
+        return sequential;
+    }
+
+    /**
+     * @return the number of reads done directly (not sequential)
+     */
+    public long getDirectReads() {
+        return directReads;
+    }
+
+    /**
+     * @return the number of windows fetched
+     */
+    public long getWindowReads() {
+        return windowReads;
+    }
+
+    @Override
+    public void close() {
+        // The executor is shared
+        dropWindows(Long.MAX_VALUE);
+    }
+
+}
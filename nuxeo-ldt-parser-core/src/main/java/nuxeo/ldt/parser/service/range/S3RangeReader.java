@@ -0,0 +1,67 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.ldt.parser.service.range;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.blob.BlobManager;
+import org.nuxeo.ecm.core.blob.BlobProvider;
+import org.nuxeo.ecm.core.blob.ByteRange;
+import org.nuxeo.ecm.core.blob.ManagedBlob;
+import org.nuxeo.runtime.api.Framework;
+
+import nuxeo.ldt.parser.service.utils.LDTParserRecordStream;
+
+/**
+ * One ranged GET per read on an S3 blob. If the provider allows byte ranges, the read goes through the provider (so
+ * it uses its cache), else the S3 client is called directly (see {@code LDTParserRecordStream}), instead of
+ * downloading the whole blob. Reads go through the {@code LDTBulkhead} of the provider.
+ *
+ * @since 2021
+ */
+public class S3RangeReader implements RangeReader {
+
+    @Override
+    public Cost getCost(Blob blob) {
+        return LDTParserRecordStream.isS3Blob(blob) ? Cost.REMOTE : null;
+    }
+
+    @Override
+    public byte[] read(Blob blob, long position, int length) throws IOException {
+        return LDTBulkhead.get(blob).call(() -> readRange(blob, position, length));
+    }
+
+    protected byte[] readRange(Blob blob, long position, int length) throws IOException {
+
+        ByteRange range = ByteRange.inclusive(position, position + length - 1);
+        BlobProvider blobProvider = Framework.getService(BlobManager.class).getBlobProvider(blob);
+        if (blobProvider.allowByteRange()) {
+            try (InputStream stream = blobProvider.getStream(((ManagedBlob) blob).getKey(), range)) {
+                return stream.readNBytes(length);
+            }
+        }
+
+        try (InputStream stream = LDTParserRecordStream.getStreamWithByteRangeOnS3(blob, range)) {
+            return stream.readNBytes(length);
+        }
+    }
+
+}
@@ -0,0 +1,64 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.ldt.parser.service.range;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.blob.BlobManager;
+import org.nuxeo.ecm.core.blob.BlobProvider;
+import org.nuxeo.ecm.core.blob.ByteRange;
+import org.nuxeo.runtime.api.Framework;
+
+import nuxeo.ldt.parser.service.utils.LDTParserRecordStream;
+
+/**
+ * Reads any blob with {@code LDTParserRecordStream#getStream}. Used when no other reader can read the blob: unless
+ * the provider allows byte ranges, the bytes before the position are read and skipped. Reads go through the
+ * {@code LDTBulkhead} of the provider.
+ *
+ * @since 2021
+ */
+public class StreamRangeReader implements RangeReader {
+
+    @Override
+    public Cost getCost(Blob blob) {
+
+        BlobProvider blobProvider = Framework.getService(BlobManager.class).getBlobProvider(blob);
+        if (blobProvider != null && blobProvider.allowByteRange()) {
+            return Cost.REMOTE;
+        }
+
+        return Cost.SEQUENTIAL;
+    }
+
+    @Override
+    public byte[] read(Blob blob, long position, int length) throws IOException {
+        return LDTBulkhead.get(blob).call(() -> readRange(blob, position, length));
+    }
+
+    protected byte[] readRange(Blob blob, long position, int length) throws IOException {
+        try (InputStream stream = LDTParserRecordStream.getStream(blob,
+                ByteRange.inclusive(position, position + length - 1))) {
+            return stream.readNBytes(length);
+        }
+    }
+
+}
@@ -0,0 +1,154 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.ldt.parser.service.utils;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Decides when to commit while creating records. Not thread safe, use one instance per thread (see {@code copy()}).
+ * <br>
+ * With a fixed size, a commit is done every {@code batchSize} records.
+ * <br>
+ * In adaptive mode, the batch size is adjusted after each commit, from the measured time spent creating the records
+ * and the commit latency:
+ * <ul>
+ * <li>It grows so the commit takes at most {@code TARGET_COMMIT_RATIO} of the batch time (when commits are slow, like
+ * round-trips to a remote database, bigger batches amortize them)</li>
+ * <li>But a batch (creating the records + commit) must fit in {@code timeBudgetMs}, which must be lower than the
+ * transaction timeout</li>
+ * <li>It changes by a factor of 2 at most at each commit, and stays in [{@code MIN_ADAPTIVE_BATCH_SIZE},
+ * {@code maxBatchSize}]</li>
+ * </ul>
+ * Usage:
+ *
+ * <pre>
+ * if (sizer.add()) {
+ *     long start = System.nanoTime();
+ *     // ...commit...
+ *     sizer.committed(System.nanoTime() - start);
+ * }
+ * </pre>
+ *
+ * @since 2021
+ */
+public class CommitBatchSizer {
+
+    private static final Logger log = LogManager.getLogger(CommitBatchSizer.class);
+
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    public static final int MIN_ADAPTIVE_BATCH_SIZE = 10;
+
+    public static final double TARGET_COMMIT_RATIO = 0.1;
+
+    protected final boolean adaptive;
+
+    protected final int maxBatchSize;
+
+    protected final long timeBudgetNanos;
+
+    protected int batchSize;
+
+    protected int inBatch = 0;
+
+    protected long batchStartNanos = 0;
+
+    /**
+     * @param batchSize the initial batch size (the fixed one if not {@code adaptive})
+     * @param adaptive
+     * @param maxBatchSize ignored if not {@code adaptive}
+     * @param timeBudgetMs ignored if not {@code adaptive}
+     */
+    public CommitBatchSizer(int batchSize, boolean adaptive, int maxBatchSize, long timeBudgetMs) {
+        this.batchSize = Math.max(1, batchSize);
+        this.adaptive = adaptive;
+        this.maxBatchSize = Math.max(this.batchSize, maxBatchSize);
+        this.timeBudgetNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, timeBudgetMs));
+    }
+
+    /**
+     * @return a new instance with the same configuration and the current batch size
+     * @since 2021
+     */
+    public CommitBatchSizer copy() {
+        return new CommitBatchSizer(batchSize, adaptive, maxBatchSize, TimeUnit.NANOSECONDS.toMillis(timeBudgetNanos));
+    }
+
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * To be called after a record was created
+     *
+     * @return true if the caller must commit now
+     * @since 2021
+     */
+    public boolean add() {
+        if (inBatch == 0) {
+            batchStartNanos = System.nanoTime();
+        }
+        inBatch += 1;
+        if (inBatch >= batchSize) {
+            return true;
+        }
+        // Slower than measured so far: do not wait for the transaction timeout
+        return adaptive && System.nanoTime() - batchStartNanos >= timeBudgetNanos / 2;
+    }
+
+    /**
+     * To be called once the batch is committed. Adjusts the batch size in adaptive mode.
+     *
+     * @param commitNanos the commit latency
+     * @since 2021
+     */
+    public void committed(long commitNanos) {
+
+        if (adaptive && inBatch > 0) {
+            long workNanos = Math.max(1, System.nanoTime() - batchStartNanos - commitNanos);
+            double perRecordNanos = (double) workNanos / inBatch;
+
+            // Commit should be at most TARGET_COMMIT_RATIO of the batch
+            double target = commitNanos / (TARGET_COMMIT_RATIO * perRecordNanos);
+            // Records + commit must fit in the budget
+            double maxInBudget = (timeBudgetNanos - commitNanos) / perRecordNanos;
+            target = Math.min(target, maxInBudget);
+            // No big jumps
+            target = Math.max(batchSize / 2.0, Math.min(batchSize * 2.0, target));
+
+            int newSize = (int) Math.max(MIN_ADAPTIVE_BATCH_SIZE, Math.min(maxBatchSize, target));
+            if (newSize != batchSize) {
+                log.debug("Commit batch size: " + batchSize + " => " + newSize + " (" + inBatch + " records in "
+                        + TimeUnit.NANOSECONDS.toMillis(workNanos) + " ms, commit "
+                        + TimeUnit.NANOSECONDS.toMillis(commitNanos) + " ms)");
+                batchSize = newSize;
+            }
+        }
+
+        inBatch = 0;
+    }
+
+}
@@ -0,0 +1,254 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.ldt.parser.service.utils;
+
+import java.io.Serializable;
+import java.util.TreeMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.kv.KeyValueService;
+import org.nuxeo.runtime.kv.KeyValueStore;
+import org.nuxeo.runtime.kv.MemKeyValueStore;
+
+import nuxeo.ldt.parser.service.Constants;
+import nuxeo.ldt.parser.service.elements.RecordInfo;
+
+/**
+ * Tracks the records committed while creating the records of an LDT, to store a checkpoint:
+ * {@code offset}/{@code line} are the start of the first record not committed yet, {@code count} is the number of
+ * records before it. All the records before the checkpoint are committed, parsing can be resumed from there.
+ * <br>
+ * With several writers, records are committed out of order: the checkpoint only moves when all the records before are
+ * committed. Records after the checkpoint may already exist when resuming, the caller must skip them.
+ * <br>
+ * While parsing, the checkpoint is stored in a {@code KeyValueStore}, at most every {@code SAVE_INTERVAL_MS}: saving
+ * the LDT document with each commit would fire events, audit and reindexing, and the writers would contend on it. It
+ * is copied to the {@code ldt} schema of the LDT document at the end of the parsing (see {@code copyTo}).
+ * <br>
+ * The store is the {@code KV_STORE_PARAM} configuration parameter ({@code default} by default). It must be persistent
+ * (MongoDB, SQL, Redis...): with an in-memory store, the checkpoint is lost on restart and resuming starts again at
+ * the checkpoint stored on the LDT document (the beginning of the file for a first parsing). A warning is logged then.
+ * <br>
+ * Thread safe.
+ *
+ * @since 2021
+ */
+public class LDTCheckpointTracker {
+
+    private static final Logger log = LogManager.getLogger(LDTCheckpointTracker.class);
+
+    public static final String KV_STORE_PARAM = "ldt.checkpoint.keyValueStore";
+
+    public static final String DEFAULT_KV_STORE_NAME = "default";
+
+    public static final String KEY_PREFIX = "ldtcheckpoint:";
+
+    public static final long SAVE_INTERVAL_MS = 1000;
+
+    // A checkpoint of an abandoned parsing is useless after this delay
+    public static final long TTL_SECONDS = 7L * 24 * 3600;
+
+    // The warning about an in-memory store is logged once
+    protected static volatile boolean inMemoryStoreLogged = false;
+
+    protected final String ldtDocId;
+
+    protected long count;
+
+    protected long offset;
+
+    protected long line;
+
+    protected long savedCount = -1;
+
+    protected long lastSaveMs = 0;
+
+    // recordIndex => [next offset, next line]
+    protected final TreeMap<Long, long[]> pending = new TreeMap<>();
+
+    /**
+     * @param ldtDocId
+     * @param count number of records already committed (0 when starting)
+     * @param offset start of the first record not committed yet (0 when starting)
+     * @param line line of the first record not committed yet (1 when starting)
+     */
+    public LDTCheckpointTracker(String ldtDocId, long count, long offset, long line) {
+        this.ldtDocId = ldtDocId;
+        this.count = count;
+        this.offset = offset;
+        this.line = line;
+    }
+
+    /**
+     * @param ldtDoc
+     * @return a tracker at the last checkpoint of ldtDoc: the one in the {@code KeyValueStore} if the parsing was
+     *         interrupted, else the one stored on the document
+     * @since 2021
+     */
+    public static LDTCheckpointTracker load(DocumentModel ldtDoc) {
+
+        String value = getStore().getString(KEY_PREFIX + ldtDoc.getId());
+        if (value != null) {
+            String[] parts = value.split(",");
+            return new LDTCheckpointTracker(ldtDoc.getId(), Long.parseLong(parts[0]), Long.parseLong(parts[1]),
+                    Long.parseLong(parts[2]));
+        }
+        return new LDTCheckpointTracker(ldtDoc.getId(), getLong(ldtDoc, Constants.XPATH_LDT_CHECKPOINT_COUNT, 0),
+                getLong(ldtDoc, Constants.XPATH_LDT_CHECKPOINT_OFFSET, 0),
+                getLong(ldtDoc, Constants.XPATH_LDT_CHECKPOINT_LINE, 1));
+    }
+
+    protected static long getLong(DocumentModel doc, String xpath, long defaultValue) {
+        Serializable value = doc.getPropertyValue(xpath);
+        return value == null ? defaultValue : ((Number) value).longValue();
+    }
+
+    protected static KeyValueStore getStore() {
+        String storeName = Framework.getProperty(KV_STORE_PARAM, DEFAULT_KV_STORE_NAME);
+        KeyValueStore store = Framework.getService(KeyValueService.class).getKeyValueStore(storeName);
+        if (store instanceof MemKeyValueStore && !inMemoryStoreLogged) {
+            inMemoryStoreLogged = true;
+            log.warn("The checkpoints of the LDT parsings are stored in memory (KeyValueStore <" + storeName
+                    + ">), they are lost on restart. Set " + KV_STORE_PARAM + " to a persistent KeyValueStore.");
+        }
+        return store;
+    }
+
+    /**
+     * To be called once the transaction creating the record is committed. Record indexes start at 0 in the file.
+     * Record must hold its values in the LDT (not in a compressed LDT).
+     *
+     * @param recordIndex
+     * @param record
+     * @since 2021
+     */
+    public synchronized void committed(long recordIndex, RecordInfo record) {
+        pending.put(recordIndex, new long[] { record.startOffset + record.size, record.startLine + record.lineCount });
+        while (!pending.isEmpty() && pending.firstKey() == count) {
+            long[] next = pending.pollFirstEntry().getValue();
+            offset = next[0];
+            line = next[1];
+            count += 1;
+        }
+        saveIfNeeded();
+    }
+
+    /**
+     * To be called once the transaction creating the records is committed, when the records are created in order: all
+     * the records up to recordIndex are committed.
+     *
+     * @param recordIndex
+     * @param record the record at recordIndex
+     * @since 2021
+     */
+    public synchronized void committedUpTo(long recordIndex, RecordInfo record) {
+        if (recordIndex < count) {
+            return;
+        }
+        pending.headMap(recordIndex, true).clear();
+        offset = record.startOffset + record.size;
+        line = record.startLine + record.lineCount;
+        count = recordIndex + 1;
+        saveIfNeeded();
+    }
+
+    protected void saveIfNeeded() {
+        long now = System.currentTimeMillis();
+        if (count != savedCount && now - lastSaveMs >= SAVE_INTERVAL_MS) {
+            save();
+            lastSaveMs = now;
+        }
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized long getOffset() {
+        return offset;
+    }
+
+    public synchronized long getLine() {
+        return line;
+    }
+
+    /**
+     * Stores the current checkpoint in the {@code KeyValueStore}. A failure is logged, the parsing goes on: if it is
+     * interrupted, it will resume from an older checkpoint.
+     *
+     * @since 2021
+     */
+    public synchronized void save() {
+        try {
+            getStore().put(KEY_PREFIX + ldtDocId, count + "," + offset + "," + line, TTL_SECONDS);
+            savedCount = count;
+        } catch (RuntimeException e) {
+            log.warn("Cannot store the checkpoint of LDT document " + ldtDocId, e);
+        }
+    }
+
+    /**
+     * Sets the current checkpoint in the {@code ldt} schema of ldtDoc. The caller is in charge of saving the document.
+     * Once it is saved, call {@code remove}.
+     *
+     * @param ldtDoc
+     * @since 2021
+     */
+    public synchronized void copyTo(DocumentModel ldtDoc) {
+        setCheckpoint(ldtDoc, count, offset, line);
+    }
+
+    /**
+     * Sets in the {@code ldt} schema of ldtDoc the checkpoint once the records up to recordIndex are committed, when
+     * they are committed with ldtDoc. The tracker does not move: call {@code committedUpTo} once the transaction is
+     * committed.
+     *
+     * @param ldtDoc
+     * @param recordIndex
+     * @param record the record at recordIndex, null if all the records are already committed
+     * @since 2021
+     */
+    public synchronized void copyTo(DocumentModel ldtDoc, long recordIndex, RecordInfo record) {
+        if (record == null || recordIndex < count) {
+            copyTo(ldtDoc);
+        } else {
+            setCheckpoint(ldtDoc, recordIndex + 1, record.startOffset + record.size,
+                    record.startLine + record.lineCount);
+        }
+    }
+
+    protected static void setCheckpoint(DocumentModel ldtDoc, long count, long offset, long line) {
+        ldtDoc.setPropertyValue(Constants.XPATH_LDT_CHECKPOINT_OFFSET, offset);
+        ldtDoc.setPropertyValue(Constants.XPATH_LDT_CHECKPOINT_LINE, line);
+        ldtDoc.setPropertyValue(Constants.XPATH_LDT_CHECKPOINT_COUNT, count);
+    }
+
+    /**
+     * Removes the checkpoint from the {@code KeyValueStore}, once it is stored on the LDT document.
+     *
+     * @since 2021
+     */
+    public void remove() {
+        getStore().put(KEY_PREFIX + ldtDocId, (String) null);
+    }
+
+}
@@ -0,0 +1,516 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.ldt.parser.service.utils;
+
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.ecm.core.api.CoreInstance;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.core.api.NuxeoPrincipal;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+
+import nuxeo.ldt.parser.service.elements.RecordInfo;
+
+/**
+ * Creates the records of an LDT with stages connected by bounded queues, so parsing does not wait on the repository
+ * and the repository does not wait on I/O:
+ * <ul>
+ * <li>scan: the calling thread scans the file (bytes + headers, see {@code LDTRecordScanner})</li>
+ * <li>transform (optional): one thread, records are handled in file order (used to compress the LDT)</li>
+ * <li>write: a pool of writers, each with its own {@code CoreSession} and transactions (see
+ * {@code CommitBatchSizer})</li>
+ * </ul>
+ * When a queue is full, the stage feeding it waits (backpressure). Time spent waiting is measured ("stall") for each
+ * stage, with the number of records handled and the max depth of each queue, see {@code PipelineStats}.
+ * <br>
+ * If a stage fails, the others stop and {@code run} throws a {@code NuxeoException}. Records already committed are
+ * kept.
+ *
+ * @since 2021
+ */
+public class LDTIngestionPipeline {
+
+    private static final Logger log = LogManager.getLogger(LDTIngestionPipeline.class);
+
+    protected static final long POLL_TIMEOUT_MS = 100;
+
+    protected static final Entry END = new Entry(-1, null);
+
+    /**
+     * Creates the document of a record
+     *
+     * @since 2021
+     */
+    @FunctionalInterface
+    public interface RecordWriter {
+        void write(CoreSession session, long recordIndex, RecordInfo record);
+    }
+
+    protected static class Entry {
+
+        final long recordIndex;
+
+        RecordInfo record;
+
+        Entry(long recordIndex, RecordInfo record) {
+            this.recordIndex = recordIndex;
+            this.record = record;
+        }
+    }
+
+    /**
+     * Statistics of a stage. Values are cumulated for all the threads of the stage.
+     *
+     * @since 2021
+     */
+    public static class StageStats {
+
+        protected final String name;
+
+        protected final AtomicLong records = new AtomicLong();
+
+        protected final AtomicLong stallNanos = new AtomicLong();
+
+        protected volatile long startNanos;
+
+        protected volatile long endNanos;
+
+        public StageStats(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getRecords() {
+            return records.get();
+        }
+
+        public long getStallMs() {
+            return TimeUnit.NANOSECONDS.toMillis(stallNanos.get());
+        }
+
+        public long getElapsedMs() {
+            long end = endNanos == 0 ? System.nanoTime() : endNanos;
+            return startNanos == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(end - startNanos);
+        }
+
+        /**
+         * @return the number of records per second
+         * @since 2021
+         */
+        public double getThroughput() {
+            long elapsed = getElapsedMs();
+            return elapsed == 0 ? 0 : getRecords() * 1000.0 / elapsed;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s: %d records, %.1f records/s, stalled %d ms (elapsed %d ms)", name,
+                    getRecords(), getThroughput(), getStallMs(), getElapsedMs());
+        }
+    }
+
+    /**
+     * Statistics of a bounded queue
+     *
+     * @since 2021
+     */
+    public static class QueueStats {
+
+        protected final String name;
+
+        protected final BlockingQueue<?> queue;
+
+        protected final AtomicInteger maxDepth = new AtomicInteger();
+
+        public QueueStats(String name, BlockingQueue<?> queue) {
+            this.name = name;
+            this.queue = queue;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getDepth() {
+            return queue.size();
+        }
+
+        public int getMaxDepth() {
+            return maxDepth.get();
+        }
+
+        public int getCapacity() {
+            return queue.size() + queue.remainingCapacity();
+        }
+
+        protected void update() {
+            int depth = queue.size();
+            maxDepth.accumulateAndGet(depth, Math::max);
+        }
+
+        @Override
+        public String toString() {
+            return name + ": depth " + getDepth() + ", max " + getMaxDepth() + "/" + getCapacity();
+        }
+    }
+
+    /**
+     * Statistics of the whole pipeline, can be read while it is running
+     *
+     * @since 2021
+     */
+    public static class PipelineStats {
+
+        protected final List<StageStats> stages = new ArrayList<>();
+
+        protected final List<QueueStats> queues = new ArrayList<>();
+
+        protected volatile long scannedBytes;
+
+        protected volatile long scannedLines;
+
+        public List<StageStats> getStages() {
+            return stages;
+        }
+
+        public List<QueueStats> getQueues() {
+            return queues;
+        }
+
+        /**
+         * @return the end offset of the last scanned record
+         * @since 2021
+         */
+        public long getScannedBytes() {
+            return scannedBytes;
+        }
+
+        /**
+         * @return the start line of the last scanned record
+         * @since 2021
+         */
+        public long getScannedLines() {
+            return scannedLines;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            stages.forEach(stage -> sb.append("\n  ").append(stage));
+            queues.forEach(queue -> sb.append("\n  ").append(queue));
+            return sb.toString();
+        }
+    }
+
+    protected final int queueSize;
+
+    protected final int writers;
+
+    protected final CommitBatchSizer commitBatchSizer;
+
+    protected final int progressLogInterval;
+
+    protected final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    protected final PipelineStats stats = new PipelineStats();
+
+    protected long fileSize = 0;
+
+    protected long firstRecordIndex = 0;
+
+    protected LDTCheckpointTracker checkpointTracker = null;
+
+    /**
+     * @param queueSize capacity of each queue
+     * @param writers number of writer threads
+     * @param commitBatchSizer decides when a writer commits. Each writer uses its own copy.
+     * @param progressLogInterval the progress is logged every {@code progressLogInterval} records
+     */
+    public LDTIngestionPipeline(int queueSize, int writers, CommitBatchSizer commitBatchSizer,
+            int progressLogInterval) {
+        this.queueSize = Math.max(1, queueSize);
+        this.writers = Math.max(1, writers);
+        this.commitBatchSizer = commitBatchSizer;
+        this.progressLogInterval = Math.max(1, progressLogInterval);
+    }
+
+    /**
+     * Only used for logging the progress
+     */
+    public void setFileSize(long fileSize) {
+        this.fileSize = fileSize;
+    }
+
+    /**
+     * When resuming, index of the first record
+     */
+    public void setFirstRecordIndex(long firstRecordIndex) {
+        this.firstRecordIndex = firstRecordIndex;
+    }
+
+    /**
+     * If set, writers update the checkpoint once their batch is committed
+     */
+    public void setCheckpointTracker(LDTCheckpointTracker checkpointTracker) {
+        this.checkpointTracker = checkpointTracker;
+    }
+
+    public PipelineStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Runs the pipeline and returns once all the records are committed.
+     *
+     * @param records the records, iterated in the calling thread
+     * @param transform optional, applied in file order before the record is written
+     * @param repository
+     * @param principal the writers create the documents with this principal
+     * @param writer
+     * @return the number of records written
+     */
+    public long run(Iterator<RecordInfo> records, UnaryOperator<RecordInfo> transform, String repository,
+            NuxeoPrincipal principal, RecordWriter writer) {
+
+        StageStats scanStats = new StageStats("scan");
+        StageStats transformStats = transform == null ? null : new StageStats("transform");
+        StageStats writeStats = new StageStats("write");
+
+        BlockingQueue<Entry> scannedQueue = new ArrayBlockingQueue<>(queueSize);
+        BlockingQueue<Entry> writeQueue = transform == null ? scannedQueue : new ArrayBlockingQueue<>(queueSize);
+        QueueStats scannedQueueStats = new QueueStats("scanned", scannedQueue);
+        QueueStats writeQueueStats = transform == null ? scannedQueueStats : new QueueStats("toWrite", writeQueue);
+
+        stats.stages.add(scanStats);
+        stats.queues.add(scannedQueueStats);
+        if (transform != null) {
+            stats.stages.add(transformStats);
+            stats.queues.add(writeQueueStats);
+        }
+        stats.stages.add(writeStats);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "LDTIngestion-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(writers + (transform == null ? 0 : 1),
+                threadFactory);
+        try {
+            if (transform != null) {
+                executor.execute(() -> runTransform(transform, scannedQueue, scannedQueueStats, writeQueue,
+                        writeQueueStats, transformStats));
+            }
+            writeStats.startNanos = System.nanoTime();
+            for (int i = 0; i < writers; i++) {
+                executor.execute(
+                        () -> runWriter(repository, principal, writer, writeQueue, writeQueueStats, writeStats));
+            }
+
+            runScan(records, scannedQueue, scannedQueueStats, scanStats, transform == null ? writers : 1);
+
+            executor.shutdown();
+            while (!executor.awaitTermination(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                // Waiting for the writers
+            }
+            writeStats.endNanos = System.nanoTime();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure.compareAndSet(null, e);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        log.info("LDTIngestionPipeline done:" + stats);
+
+        Throwable error = failure.get();
+        if (error != null) {
+            if (error instanceof NuxeoException) {
+                throw (NuxeoException) error;
+            }
+            throw new NuxeoException("Error creating the records", error);
+        }
+
+        return writeStats.getRecords();
+    }
+
+    protected void runScan(Iterator<RecordInfo> records, BlockingQueue<Entry> queue, QueueStats queueStats,
+            StageStats scanStats, int endMarkers) {
+
+        scanStats.startNanos = System.nanoTime();
+        try {
+            long recordIndex = firstRecordIndex;
+            while (records.hasNext()) {
+                RecordInfo record = records.next();
+                stats.scannedBytes = record.startOffset + record.size;
+                stats.scannedLines = record.startLine;
+                put(queue, queueStats, new Entry(recordIndex, record), scanStats);
+                scanStats.records.incrementAndGet();
+                recordIndex += 1;
+            }
+            for (int i = 0; i < endMarkers; i++) {
+                put(queue, queueStats, END, scanStats);
+            }
+        } catch (CancellationException e) {
+            // Another stage failed
+        } catch (Throwable t) { // NOSONAR
+            failure.compareAndSet(null, t);
+        } finally {
+            scanStats.endNanos = System.nanoTime();
+        }
+    }
+
+    protected void runTransform(UnaryOperator<RecordInfo> transform, BlockingQueue<Entry> inQueue,
+            QueueStats inQueueStats, BlockingQueue<Entry> outQueue, QueueStats outQueueStats,
+            StageStats transformStats) {
+
+        transformStats.startNanos = System.nanoTime();
+        try {
+            Entry entry;
+            while ((entry = take(inQueue, inQueueStats, transformStats)) != END) {
+                entry.record = transform.apply(entry.record);
+                transformStats.records.incrementAndGet();
+                put(outQueue, outQueueStats, entry, transformStats);
+            }
+            for (int i = 0; i < writers; i++) {
+                put(outQueue, outQueueStats, END, transformStats);
+            }
+        } catch (CancellationException e) {
+            // Another stage failed
+        } catch (Throwable t) { // NOSONAR
+            failure.compareAndSet(null, t);
+        } finally {
+            transformStats.endNanos = System.nanoTime();
+        }
+    }
+
+    protected void runWriter(String repository, NuxeoPrincipal principal, RecordWriter writer,
+            BlockingQueue<Entry> queue, QueueStats queueStats, StageStats writeStats) {
+
+        NumberFormat numberFormat = NumberFormat.getInstance(Locale.US);
+        CommitBatchSizer sizer = commitBatchSizer.copy();
+        List<Entry> batch = new ArrayList<>();
+        TransactionHelper.startTransaction();
+        try {
+            CoreSession session = CoreInstance.getCoreSession(repository, principal);
+            Entry entry;
+            while ((entry = take(queue, queueStats, writeStats)) != END) {
+                writer.write(session, entry.recordIndex, entry.record);
+                batch.add(entry);
+                if (sizer.add()) {
+                    long start = System.nanoTime();
+                    commit(session, batch);
+                    TransactionHelper.startTransaction();
+                    sizer.committed(System.nanoTime() - start);
+                }
+
+                long count = writeStats.records.incrementAndGet();
+                if ((count % progressLogInterval) == 0) {
+                    String msg = "LDTIngestionPipeline, created: " + numberFormat.format(count);
+                    msg += "\nlineCount: " + numberFormat.format(stats.scannedLines);
+                    msg += "\nBytes Read: " + numberFormat.format(stats.scannedBytes) + "/"
+                            + numberFormat.format(fileSize);
+                    msg += "\nCommit batch size: " + sizer.getBatchSize();
+                    msg += stats;
+                    log.info(msg);
+                }
+            }
+            commit(session, batch);
+        } catch (CancellationException e) {
+            // Another stage failed, keep what was created in this batch
+        } catch (Throwable t) { // NOSONAR
+            failure.compareAndSet(null, t);
+            TransactionHelper.setTransactionRollbackOnly();
+        } finally {
+            TransactionHelper.commitOrRollbackTransaction();
+        }
+    }
+
+    protected void commit(CoreSession session, List<Entry> batch) {
+        session.save();
+        boolean rollback = TransactionHelper.isTransactionMarkedRollback();
+        TransactionHelper.commitOrRollbackTransaction();
+        if (rollback) {
+            // The batch is not committed, the checkpoint must not move
+            throw new NuxeoException("LDTIngestionPipeline: the transaction was rolled back");
+        }
+        if (checkpointTracker != null) {
+            batch.forEach(committed -> checkpointTracker.committed(committed.recordIndex, committed.record));
+        }
+        batch.clear();
+    }
+
+    protected void put(BlockingQueue<Entry> queue, QueueStats queueStats, Entry entry, StageStats stageStats) {
+        long start = System.nanoTime();
+        try {
+            while (!queue.offer(entry, POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                checkFailure();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NuxeoException(e);
+        }
+        stageStats.stallNanos.addAndGet(System.nanoTime() - start);
+        queueStats.update();
+    }
+
+    protected Entry take(BlockingQueue<Entry> queue, QueueStats queueStats, StageStats stageStats) {
+        long start = System.nanoTime();
+        Entry entry;
+        try {
+            while ((entry = queue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS)) == null) {
+                checkFailure();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NuxeoException(e);
+        }
+        stageStats.stallNanos.addAndGet(System.nanoTime() - start);
+        return entry;
+    }
+
+    protected void checkFailure() {
+        if (failure.get() != null) {
+            throw new CancellationException();
+        }
+    }
+
+}
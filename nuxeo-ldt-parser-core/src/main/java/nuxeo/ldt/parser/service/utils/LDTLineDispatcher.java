@@ -0,0 +1,387 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.ldt.parser.service.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Pre-classifies a line, so it is matched only against the patterns (headers or items) that can match it, instead of
+ * trying every pattern in turn.
+ * <br>
+ * Each pattern has an optional literal prefix: the explicit {@code <linePrefix>} of the descriptor (found at
+ * {@code <typeColumn>}, 0 by default), else the leading literal of the Regex (see {@code getLeadingLiteral}). The
+ * candidates of a line are the patterns whose prefix is in the line, plus the ones without prefix, always in the
+ * order of the configuration, so the first match is the same as when trying all the patterns.
+ * <br>
+ * A pattern can also have a required literal, a text every matching line contains (like "CLOSING BALANCE" in
+ * {@code ^([0-9]*) *([0-9]{2}/[0-9]{2}) *CLOSING BALANCE *([0-9]*.[0-9]{2}-?) *}, see {@code getRequiredLiteral}).
+ * Looking for it is much cheaper than a failed match of the Regex, so a line not containing it is not a candidate.
+ * <br>
+ * Immutable, thread safe.
+ *
+ * @since 2021
+ */
+public class LDTLineDispatcher {
+
+    protected static final String REGEX_META_CHARS = ".[]()|{}*+?^$";
+
+    protected final String[] prefixes;
+
+    protected final int[] columns;
+
+    protected final String[] requiredLiterals;
+
+    // Inline flags (case insensitive, comments, ...) change what a literal matches
+    protected static final Pattern INLINE_FLAGS = Pattern.compile("\\(\\?[a-zA-Z-]*[a-zA-Z][a-zA-Z-]*[):]");
+
+    // First char => candidates (patterns with a prefix at column 0 starting with this char, and all the others)
+    protected final Map<Character, int[]> candidatesByFirstChar = new HashMap<>();
+
+    // Candidates when the first char of the line starts no prefix at column 0
+    protected final int[] otherCandidates;
+
+    /**
+     * @param prefixes the literal prefix of each pattern, in the order of the configuration (null or "" for none)
+     * @param columns the column of each prefix (null means 0 for all)
+     */
+    public LDTLineDispatcher(List<String> prefixes, List<Integer> columns) {
+        this(prefixes, columns, null);
+    }
+
+    /**
+     * @param prefixes the literal prefix of each pattern, in the order of the configuration (null or "" for none)
+     * @param columns the column of each prefix (null means 0 for all)
+     * @param requiredLiterals the required literal of each pattern (null or "" for none, null means none for all)
+     * @since 2021
+     */
+    public LDTLineDispatcher(List<String> prefixes, List<Integer> columns, List<String> requiredLiterals) {
+
+        int count = prefixes.size();
+        this.prefixes = new String[count];
+        this.columns = new int[count];
+        this.requiredLiterals = new String[count];
+        for (int i = 0; i < count; i++) {
+            this.prefixes[i] = StringUtils.isEmpty(prefixes.get(i)) ? null : prefixes.get(i);
+            Integer column = columns == null ? null : columns.get(i);
+            this.columns[i] = column == null ? 0 : Math.max(0, column);
+            String literal = requiredLiterals == null ? null : requiredLiterals.get(i);
+            // Already checked when it is the prefix
+            if (StringUtils.isEmpty(literal) || (this.prefixes[i] != null && this.prefixes[i].contains(literal))) {
+                literal = null;
+            }
+            this.requiredLiterals[i] = literal;
+        }
+
+        List<Integer> others = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            if (!isKeyedByFirstChar(i)) {
+                others.add(i);
+            }
+        }
+        otherCandidates = others.stream().mapToInt(Integer::intValue).toArray();
+
+        for (int i = 0; i < count; i++) {
+            if (isKeyedByFirstChar(i)) {
+                char first = this.prefixes[i].charAt(0);
+                candidatesByFirstChar.computeIfAbsent(first, k -> {
+                    List<Integer> candidates = new ArrayList<>();
+                    for (int j = 0; j < count; j++) {
+                        if (!isKeyedByFirstChar(j) || this.prefixes[j].charAt(0) == k) {
+                            candidates.add(j);
+                        }
+                    }
+                    return candidates.stream().mapToInt(Integer::intValue).toArray();
+                });
+            }
+        }
+    }
+
+    protected boolean isKeyedByFirstChar(int index) {
+        return prefixes[index] != null && columns[index] == 0;
+    }
+
+    /**
+     * @param line
+     * @return the indexes of the patterns that can match the line, in the order of the configuration
+     */
+    public int[] getCandidates(String line) {
+
+        int[] candidates = otherCandidates;
+        if (!line.isEmpty()) {
+            candidates = candidatesByFirstChar.getOrDefault(line.charAt(0), otherCandidates);
+        }
+
+        int[] filtered = null;
+        int count = 0;
+        for (int i = 0; i < candidates.length; i++) {
+            int index = candidates[i];
+            boolean possible = (prefixes[index] == null || line.startsWith(prefixes[index], columns[index]))
+                    && (requiredLiterals[index] == null || line.contains(requiredLiterals[index]));
+            if (!possible && filtered == null) {
+                // First rejected candidate: copy the ones before it
+                filtered = Arrays.copyOf(candidates, candidates.length);
+                count = i;
+            } else if (possible && filtered != null) {
+                filtered[count++] = index;
+            }
+        }
+
+        return filtered == null ? candidates : Arrays.copyOf(filtered, count);
+    }
+
+    /**
+     * Returns the literal every line matching the Regex starts with. For example, {@code \$12345ABCD\$} for
+     * {@code ^\$12345ABCD\$ *TYPE=(BANK.{4})}, and "" for {@code ^([0-9]*) *CLOSING BALANCE}.
+     * <br>
+     * Conservative: stops at the first construct that is not a literal (escaped or not), drops a literal made
+     * optional by a quantifier, and returns "" if the Regex has an alternation outside of a group.
+     *
+     * @param regex
+     * @return the leading literal, "" if none
+     */
+    public static String getLeadingLiteral(String regex) {
+
+        if (StringUtils.isEmpty(regex) || hasTopLevelAlternation(regex)) {
+            return "";
+        }
+
+        StringBuilder literal = new StringBuilder();
+        int i = regex.charAt(0) == '^' ? 1 : 0;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            int next;
+            if (c == '\\') {
+                if (i + 1 >= regex.length() || Character.isLetterOrDigit(regex.charAt(i + 1))) {
+                    // \d, \s, \Q, back reference, ...
+                    break;
+                }
+                c = regex.charAt(i + 1);
+                next = i + 2;
+            } else if (REGEX_META_CHARS.indexOf(c) >= 0) {
+                break;
+            } else {
+                next = i + 1;
+            }
+
+            if (next < regex.length()) {
+                char quantifier = regex.charAt(next);
+                if (quantifier == '?' || quantifier == '*' || quantifier == '{') {
+                    // This char can be absent
+                    break;
+                }
+                if (quantifier == '+') {
+                    // Present at least once, but what follows is not at a fixed position
+                    literal.append(c);
+                    break;
+                }
+            }
+            literal.append(c);
+            i = next;
+        }
+
+        return literal.toString();
+    }
+
+    /**
+     * Returns the longest literal every line matching the Regex contains. For example, "CLOSING BALANCE" for
+     * {@code ^([0-9]*) *([0-9]{2}/[0-9]{2}) *CLOSING BALANCE *([0-9]*.[0-9]{2}-?) *}.
+     * <br>
+     * Only the literals outside of groups and character classes are considered. Conservative: a literal made
+     * optional by a quantifier is dropped, scanning stops at an escape that is not fully understood, and "" is
+     * returned if the Regex has an alternation outside of a group or inline flags.
+     *
+     * @param regex
+     * @return the required literal, "" if none
+     * @since 2021
+     */
+    public static String getRequiredLiteral(String regex) {
+
+        if (StringUtils.isEmpty(regex) || hasTopLevelAlternation(regex) || INLINE_FLAGS.matcher(regex).find()) {
+            return "";
+        }
+
+        String best = "";
+        StringBuilder run = new StringBuilder();
+        // True when the last atom read is the last char of run (so a quantifier applies to it)
+        boolean lastIsLiteral = false;
+        int i = 0;
+        int len = regex.length();
+        while (i < len) {
+            char c = regex.charAt(i);
+            switch (c) {
+            case '\\':
+                if (i + 1 >= len) {
+                    return longest(best, run);
+                }
+                char escaped = regex.charAt(i + 1);
+                if (!Character.isLetterOrDigit(escaped)) {
+                    run.append(escaped);
+                    lastIsLiteral = true;
+                    i += 2;
+                } else if ("dDsSwWbBhHvVRXAzZG".indexOf(escaped) >= 0) {
+                    // Character class or boundary, 2 chars
+                    best = longest(best, run);
+                    run.setLength(0);
+                    lastIsLiteral = false;
+                    i += 2;
+                } else {
+                    // Hex or unicode char, property, named or numbered back reference, ...: stop here
+                    return longest(best, run);
+                }
+                break;
+
+            case '(':
+            case '[':
+                int end = skipGroupOrClass(regex, i);
+                if (end < 0) {
+                    return longest(best, run);
+                }
+                best = longest(best, run);
+                run.setLength(0);
+                lastIsLiteral = false;
+                i = end;
+                break;
+
+            case '.':
+            case '^':
+            case '$':
+                best = longest(best, run);
+                run.setLength(0);
+                lastIsLiteral = false;
+                i += 1;
+                break;
+
+            case '?':
+            case '*':
+            case '+':
+            case '{':
+                if (lastIsLiteral) {
+                    if (c == '+') {
+                        // At least once, but what follows is not adjacent
+                        best = longest(best, run);
+                    } else {
+                        run.setLength(run.length() - 1);
+                        best = longest(best, run);
+                    }
+                }
+                run.setLength(0);
+                lastIsLiteral = false;
+                if (c == '{') {
+                    i = regex.indexOf('}', i);
+                    if (i < 0) {
+                        return best;
+                    }
+                }
+                i += 1;
+                // Lazy or possessive quantifier
+                if (i < len && (regex.charAt(i) == '?' || regex.charAt(i) == '+')) {
+                    i += 1;
+                }
+                break;
+
+            default:
+                run.append(c);
+                lastIsLiteral = true;
+                i += 1;
+                break;
+            }
+        }
+
+        return longest(best, run);
+    }
+
+    protected static String longest(String best, StringBuilder run) {
+        return run.length() > best.length() ? run.toString() : best;
+    }
+
+    /**
+     * @return the index after the group or class starting at {@code start}, -1 if not found
+     */
+    protected static int skipGroupOrClass(String regex, int start) {
+
+        int depth = 0;
+        int classDepth = 0;
+        for (int i = start; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                if (i + 1 < regex.length() && regex.charAt(i + 1) == 'Q') {
+                    return -1;
+                }
+                i++;
+            } else if (c == '[') {
+                classDepth++;
+            } else if (classDepth > 0) {
+                // A ']' first in the class is a literal
+                boolean first = regex.charAt(i - 1) == '['
+                        || (regex.charAt(i - 1) == '^' && i >= 2 && regex.charAt(i - 2) == '[');
+                if (c == ']' && !first) {
+                    classDepth--;
+                }
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            }
+            if (depth == 0 && classDepth == 0) {
+                return i + 1;
+            }
+        }
+
+        return -1;
+    }
+
+    protected static boolean hasTopLevelAlternation(String regex) {
+
+        if (regex.contains("\\Q")) {
+            // Quoted text can hold anything, assume the worst
+            return true;
+        }
+
+        int depth = 0;
+        int classDepth = 0;
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '[') {
+                classDepth++;
+            } else if (classDepth > 0) {
+                if (c == ']') {
+                    classDepth--;
+                }
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == '|' && depth == 0) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+}
@@ -0,0 +1,258 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.ldt.parser.service.utils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.core.blob.ByteRange;
+
+/**
+ * Downloads an LDT stored on S3 to a local temp file with parallel ranged GETs (using the S3 client of the
+ * {@code TransferManager} of the {@code S3BlobProvider}, see {@code LDTParserRecordStream}), instead of a single
+ * stream as {@code Blob#getCloseableFile} does.
+ * <br>
+ * The file is created with its final size, then chunks are downloaded by {@code threads} threads, in file order, and
+ * written at their position. {@code awaitAvailable} blocks until all the bytes before a position are downloaded, so
+ * the file can be scanned while the next chunks are downloading (see {@code LDTRecordScanner#setAvailability}). A
+ * chunk is retried {@code MAX_ATTEMPTS} times.
+ * <br>
+ * Usage:
+ *
+ * <pre>
+ * try (LDTParallelDownload download = new LDTParallelDownload(blob, 8, 16 * 1024 * 1024)) {
+ *     download.start();
+ *     try (LDTRecordScanner scanner = new LDTRecordScanner(parser, download.getFile(), download.getChunkSize())) {
+ *         scanner.setAvailability(download);
+ *         . . .
+ *     }
+ * }
+ * </pre>
+ *
+ * The temp file is deleted on {@code close}.
+ *
+ * @since 2021
+ */
+public class LDTParallelDownload implements Closeable, LDTRecordScanner.ByteAvailability {
+
+    private static final Logger log = LogManager.getLogger(LDTParallelDownload.class);
+
+    public static final int MAX_ATTEMPTS = 3;
+
+    public static final long MIN_CHUNK_SIZE = 64 * 1024;
+
+    protected Blob blob;
+
+    protected int threads;
+
+    protected long chunkSize;
+
+    protected long fileSize;
+
+    protected File file;
+
+    protected FileChannel channel;
+
+    protected ExecutorService executor;
+
+    protected boolean[] chunksDone;
+
+    // All the bytes before this offset are downloaded
+    protected long available = 0;
+
+    protected Throwable failure = null;
+
+    protected long startTime;
+
+    public LDTParallelDownload(Blob blob, int threads, long chunkSize) {
+        this.blob = blob;
+        this.threads = Math.max(1, threads);
+        this.chunkSize = Math.max(MIN_CHUNK_SIZE, Math.min(chunkSize, Integer.MAX_VALUE));
+        fileSize = blob.getLength();
+    }
+
+    /**
+     * Creates the temp file and starts the download. Returns immediately.
+     *
+     * @throws IOException
+     * @since 2021
+     */
+    public void start() throws IOException {
+
+        file = Files.createTempFile("ldt-download-", ".ldt").toFile();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(fileSize);
+        }
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+
+        int chunkCount = (int) ((fileSize + chunkSize - 1) / chunkSize);
+        chunksDone = new boolean[chunkCount];
+        startTime = System.currentTimeMillis();
+        if (chunkCount == 0) {
+            return;
+        }
+
+        executor = Executors.newFixedThreadPool(Math.min(threads, chunkCount), runnable -> {
+            Thread thread = new Thread(runnable, "ldt-download");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Submitted in file order, so the first chunks are available first
+        for (int i = 0; i < chunkCount; i++) {
+            int chunk = i;
+            executor.execute(() -> downloadChunk(chunk));
+        }
+        executor.shutdown();
+    }
+
+    protected void downloadChunk(int chunk) {
+
+        long start = chunk * chunkSize;
+        long end = Math.min(start + chunkSize, fileSize);
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            if (isFailed() || Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            try (InputStream stream = openRange(start, end)) {
+                long position = start;
+                byte[] bytes = new byte[64 * 1024];
+                int count;
+                while (position < end
+                        && (count = stream.read(bytes, 0, (int) Math.min(bytes.length, end - position))) > 0) {
+                    ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, count);
+                    while (buffer.hasRemaining()) {
+                        position += channel.write(buffer, position);
+                    }
+                }
+                if (position != end) {
+                    throw new IOException("Chunk " + chunk + ": got " + (position - start) + " bytes, expected "
+                            + (end - start));
+                }
+                chunkDone(chunk);
+                return;
+            } catch (IOException | RuntimeException e) {
+                if (attempt == MAX_ATTEMPTS) {
+                    failed(e);
+                } else {
+                    log.warn("Error downloading chunk " + chunk + " (attempt " + attempt + "), retrying", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return a stream on the bytes from {@code start} (included) to {@code end} (excluded) of the blob
+     * @since 2021
+     */
+    protected InputStream openRange(long start, long end) throws IOException {
+        return LDTParserRecordStream.getStreamWithByteRangeOnS3(blob, ByteRange.inclusive(start, end - 1));
+    }
+
+    protected synchronized void chunkDone(int chunk) {
+        chunksDone[chunk] = true;
+        int next = (int) (available / chunkSize);
+        while (next < chunksDone.length && chunksDone[next]) {
+            next += 1;
+        }
+        available = Math.min((long) next * chunkSize, fileSize);
+        if (available == fileSize) {
+            long duration = Math.max(1, System.currentTimeMillis() - startTime);
+            log.info("LDTParallelDownload: " + fileSize + " bytes downloaded in " + duration + " ms ("
+                    + (fileSize / 1024 * 1000 / duration) + " KB/s)");
+        }
+        notifyAll();
+    }
+
+    protected synchronized void failed(Throwable e) {
+        if (failure == null) {
+            failure = e;
+        }
+        notifyAll();
+    }
+
+    protected synchronized boolean isFailed() {
+        return failure != null;
+    }
+
+    /**
+     * Blocks until all the bytes before {@code end} are downloaded.
+     *
+     * @throws NuxeoException if the download failed or the thread is interrupted
+     */
+    @Override
+    public synchronized void awaitAvailable(long end) {
+        long target = Math.min(end, fileSize);
+        while (available < target) {
+            if (failure != null) {
+                throw new NuxeoException("Error downloading the LDT", failure);
+            }
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new NuxeoException("Interrupted while downloading the LDT", e);
+            }
+        }
+    }
+
+    /**
+     * @return the local file. Only the bytes before {@code getAvailable()} can be read.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    public long getChunkSize() {
+        return chunkSize;
+    }
+
+    public synchronized long getAvailable() {
+        return available;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } finally {
+            if (file != null) {
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+    }
+
+}
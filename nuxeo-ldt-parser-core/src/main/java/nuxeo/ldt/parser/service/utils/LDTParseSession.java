@@ -0,0 +1,67 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.ldt.parser.service.utils;
+
+import nuxeo.ldt.parser.service.elements.RecordInfo;
+
+/**
+ * The state of one parsing of an LDT (see {@code LDTParser#parseAndCreateDocuments} and {@code LDTParser#indexLDT}):
+ * bytes and lines read so far. It is not held by the {@code LDTParser}, which is shared by all the callers of the
+ * same configuration.
+ * <br>
+ * Not thread safe: used by the thread scanning the LDT.
+ *
+ * @since 2021
+ */
+public class LDTParseSession {
+
+    protected long totalBytesRead = 0;
+
+    protected long lineCount = 1;
+
+    /**
+     * Called for each record, in file order
+     *
+     * @param record
+     * @since 2021
+     */
+    public void recordRead(RecordInfo record) {
+        totalBytesRead = record.startOffset + record.size;
+        lineCount = record.startLine;
+    }
+
+    /**
+     * @param totalBytesRead
+     * @param lineCount
+     * @since 2021
+     */
+    public void setProgress(long totalBytesRead, long lineCount) {
+        this.totalBytesRead = totalBytesRead;
+        this.lineCount = lineCount;
+    }
+
+    public long getTotalBytesRead() {
+        return totalBytesRead;
+    }
+
+    public long getLineCount() {
+        return lineCount;
+    }
+
+}
@@ -90,6 +90,19 @@ public class LDTParserRecordStream {
         return checkS3BlobProviderClass == 1;
     }
 
+    /**
+     * @param blob
+     * @return true if the blob is stored by an {@code S3BlobProvider}
+     * @since 2021
+     */
+    public static boolean isS3Blob(Blob blob) {
+        if (!(blob instanceof ManagedBlob) || !hasS3BlobProviderClass()) {
+            return false;
+        }
+        BlobManager blobManager = Framework.getService(BlobManager.class);
+        return blobManager.getBlobProvider(blob) instanceof S3BlobProvider;
+    }
+
     /**
      * @param blob
      * @param range
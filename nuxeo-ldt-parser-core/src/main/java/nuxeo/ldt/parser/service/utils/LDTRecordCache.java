@@ -0,0 +1,244 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.ldt.parser.service.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.nuxeo.runtime.api.Framework;
+
+/**
+ * An in-memory cache of the JSON of records (see {@code LDTParser#getRecordJson}), keyed by {@code LDTRecordKey}
+ * (parser, blob digest, range and pages). A viewer requesting the same record several times, while its pages render,
+ * then reads and parses it once.
+ * <br>
+ * The JSON is cached rather than the {@code Record}: it is what the callers return, it is immutable, and it is more
+ * compact than the parsed lines.
+ * <br>
+ * Entries expire {@code ttl} seconds after they were added, and are evicted in LRU order when the size of the cache
+ * (2 bytes per character of JSON) is bigger than {@code maxSize}. Hits, misses, evictions and expirations are counted,
+ * see {@code Stats}.
+ * <br>
+ * Configuration parameters (read once, at first use of {@code getInstance()}):
+ * <ul>
+ * <li>{@code ldt.recordCache.enabled}: default true</li>
+ * <li>{@code ldt.recordCache.maxSize}: in bytes, default 64MB</li>
+ * <li>{@code ldt.recordCache.ttl}: in seconds, default 600</li>
+ * </ul>
+ * Thread safe.
+ *
+ * @since 2021
+ */
+public class LDTRecordCache {
+
+    public static final String ENABLED_PARAM = "ldt.recordCache.enabled";
+
+    public static final String MAX_SIZE_PARAM = "ldt.recordCache.maxSize";
+
+    public static final String TTL_PARAM = "ldt.recordCache.ttl";
+
+    public static final long DEFAULT_MAX_SIZE = 64L * 1024 * 1024;
+
+    public static final long DEFAULT_TTL_SECONDS = 600;
+
+    protected static LDTRecordCache instance = null;
+
+    protected final long maxSize;
+
+    protected final long ttlMs;
+
+    // Access order: the first entry is the least recently used
+    protected final LinkedHashMap<LDTRecordKey, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    protected long size = 0;
+
+    protected long hits = 0;
+
+    protected long misses = 0;
+
+    protected long evictions = 0;
+
+    protected long expirations = 0;
+
+    protected static class Entry {
+
+        protected final String json;
+
+        protected final long expiration;
+
+        protected Entry(String json, long expiration) {
+            this.json = json;
+            this.expiration = expiration;
+        }
+
+        protected long getSize() {
+            return 2L * json.length();
+        }
+    }
+
+    /**
+     * Cache statistics, since the cache was created
+     *
+     * @since 2021
+     */
+    public static class Stats {
+
+        public final long hits;
+
+        public final long misses;
+
+        public final long evictions;
+
+        public final long expirations;
+
+        public final long size;
+
+        public final int entryCount;
+
+        protected Stats(long hits, long misses, long evictions, long expirations, long size, int entryCount) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.expirations = expirations;
+            this.size = size;
+            this.entryCount = entryCount;
+        }
+
+        public double getHitRatio() {
+            return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+        }
+
+        @Override
+        public String toString() {
+            return "{\"hits\": " + hits + ", \"misses\": " + misses + ", \"evictions\": " + evictions
+                    + ", \"expirations\": " + expirations + ", \"size\": " + size + ", \"entryCount\": " + entryCount
+                    + "}";
+        }
+    }
+
+    /**
+     * @param maxSize in bytes, 2 bytes per character of JSON
+     * @param ttlMs time to live of the entries, in ms
+     */
+    public LDTRecordCache(long maxSize, long ttlMs) {
+        this.maxSize = maxSize;
+        this.ttlMs = ttlMs;
+    }
+
+    /**
+     * @return the cache configured with the {@code ldt.recordCache.*} configuration parameters, or null if it is
+     *         disabled
+     * @since 2021
+     */
+    public static synchronized LDTRecordCache getInstance() {
+
+        if (instance == null) {
+            if (!Boolean.parseBoolean(Framework.getProperty(ENABLED_PARAM, "true"))) {
+                return null;
+            }
+            long maxSize = DEFAULT_MAX_SIZE;
+            long ttlSeconds = DEFAULT_TTL_SECONDS;
+            String param = Framework.getProperty(MAX_SIZE_PARAM);
+            if (StringUtils.isNotBlank(param)) {
+                maxSize = Long.parseLong(param.trim());
+            }
+            param = Framework.getProperty(TTL_PARAM);
+            if (StringUtils.isNotBlank(param)) {
+                ttlSeconds = Long.parseLong(param.trim());
+            }
+            instance = new LDTRecordCache(maxSize, ttlSeconds * 1000);
+        }
+
+        return instance;
+    }
+
+    /**
+     * @param key
+     * @return the JSON of the record, or null if it is not in the cache (or expired)
+     * @since 2021
+     */
+    public synchronized String get(LDTRecordKey key) {
+
+        Entry entry = entries.get(key);
+        if (entry != null && entry.expiration <= System.currentTimeMillis()) {
+            entries.remove(key);
+            size -= entry.getSize();
+            expirations += 1;
+            entry = null;
+        }
+        if (entry == null) {
+            misses += 1;
+            return null;
+        }
+
+        hits += 1;
+        return entry.json;
+    }
+
+    /**
+     * Adds the JSON of the record, then evicts the least recently used entries if the cache is too big. A JSON bigger
+     * than the cache is not added.
+     *
+     * @param key
+     * @param json
+     * @since 2021
+     */
+    public synchronized void put(LDTRecordKey key, String json) {
+
+        Entry entry = new Entry(json, System.currentTimeMillis() + ttlMs);
+        if (entry.getSize() > maxSize) {
+            return;
+        }
+
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            size -= previous.getSize();
+        }
+        size += entry.getSize();
+
+        Iterator<Map.Entry<LDTRecordKey, Entry>> it = entries.entrySet().iterator();
+        while (size > maxSize && it.hasNext()) {
+            Entry eldest = it.next().getValue();
+            it.remove();
+            size -= eldest.getSize();
+            evictions += 1;
+        }
+    }
+
+    /**
+     * Removes all the entries (statistics are kept)
+     *
+     * @since 2021
+     */
+    public synchronized void clear() {
+        entries.clear();
+        size = 0;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(hits, misses, evictions, expirations, size, entries.size());
+    }
+
+}
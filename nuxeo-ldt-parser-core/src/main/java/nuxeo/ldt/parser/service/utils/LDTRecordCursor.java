@@ -0,0 +1,96 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.ldt.parser.service.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.NuxeoException;
+
+import nuxeo.ldt.parser.service.LDTParser;
+import nuxeo.ldt.parser.service.elements.Record;
+import nuxeo.ldt.parser.service.range.ReadAheadRangeReader;
+
+/**
+ * Gets records of one LDT, reading ahead when they are requested in ascending offset order (exports, re-rendering,
+ * ...), see {@code ReadAheadRangeReader}. Random access works too, with one direct read per record, as
+ * {@code LDTParser#getRecord} does.
+ * <br>
+ * Usage:
+ *
+ * <pre>
+ * try (LDTRecordCursor cursor = parser.newRecordCursor(blob)) {
+ *     for (LDTRecordIndex.Entry entry : entries) {
+ *         Record record = cursor.getRecord(entry.startOffset, entry.size);
+ *         . . .
+ *     }
+ * }
+ * </pre>
+ *
+ * Not thread safe.
+ *
+ * @since 2021
+ */
+public class LDTRecordCursor implements Closeable {
+
+    protected LDTParser parser;
+
+    protected ReadAheadRangeReader reader;
+
+    public LDTRecordCursor(LDTParser parser, Blob blob, int windowSize, int maxWindows) {
+        this.parser = parser;
+        reader = new ReadAheadRangeReader(blob, parser.getRangeReaders(), windowSize, maxWindows);
+    }
+
+    /**
+     * See {@code LDTParser#getRecord(Blob, long, long)}
+     *
+     * @param startOffset
+     * @param recordSize negative if the LDT is compressed
+     * @return a @{code Record} or {@code null} if no record is found
+     * @since 2021
+     */
+    public Record getRecord(long startOffset, long recordSize) {
+
+        if (startOffset < 0 || Math.abs(recordSize) < 1) {
+            throw new NuxeoException(
+                    "getRecord: Invalid startOffest (" + startOffset + ") or recordSize (" + recordSize + ")");
+        }
+
+        byte[] recordBytes;
+        try {
+            recordBytes = reader.read(startOffset, (int) Math.abs(recordSize));
+        } catch (IOException e) {
+            throw new NuxeoException("Error reading the blob with a ByteRange.", e);
+        }
+
+        return parser.getRecord(recordBytes, startOffset, recordSize);
+    }
+
+    public ReadAheadRangeReader getReader() {
+        return reader;
+    }
+
+    @Override
+    public void close() {
+        reader.close();
+    }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.ldt.parser.service.utils;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang3.StringUtils;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.blob.ManagedBlob;
+import org.nuxeo.runtime.api.Framework;
+
+/**
+ * The executors of the asynchronous record reads (see {@code LDTParser#getRecordAsync}), one per blob provider. Each
+ * executor has a fixed number of threads, so no more than this number of records of the same provider are read at the
+ * same time, whatever the number of callers, and a burst of requests waits in the queue of the executor instead of
+ * opening as many connections to the storage.
+ * <br>
+ * Configuration parameters (read when the executor of a provider is created):
+ * <ul>
+ * <li>{@code ldt.async.maxConcurrency}: default 16</li>
+ * <li>{@code ldt.async.maxConcurrency.<providerId>}: for a given provider, default {@code ldt.async.maxConcurrency}</li>
+ * </ul>
+ * Blobs that are not managed by a provider (for example a {@code FileBlob}) share the {@code LOCAL_PROVIDER}
+ * executor.
+ *
+ * @since 2021
+ */
+public class LDTRecordExecutors {
+
+    public static final String MAX_CONCURRENCY_PARAM = "ldt.async.maxConcurrency";
+
+    public static final int DEFAULT_MAX_CONCURRENCY = 16;
+
+    public static final String LOCAL_PROVIDER = "local";
+
+    protected static final Map<String, ExecutorService> executors = new ConcurrentHashMap<>();
+
+    private LDTRecordExecutors() {
+        // Static methods only
+    }
+
+    /**
+     * @param blob
+     * @return the id of the provider of the blob, or {@code LOCAL_PROVIDER}
+     * @since 2021
+     */
+    public static String getProviderId(Blob blob) {
+        if (blob instanceof ManagedBlob) {
+            String providerId = ((ManagedBlob) blob).getProviderId();
+            if (StringUtils.isNotBlank(providerId)) {
+                return providerId;
+            }
+        }
+        return LOCAL_PROVIDER;
+    }
+
+    /**
+     * @param providerId
+     * @return the maximum number of concurrent reads for the provider, from the configuration
+     * @since 2021
+     */
+    public static int getMaxConcurrency(String providerId) {
+        String param = Framework.getProperty(MAX_CONCURRENCY_PARAM + "." + providerId);
+        if (StringUtils.isBlank(param)) {
+            param = Framework.getProperty(MAX_CONCURRENCY_PARAM);
+        }
+        return StringUtils.isBlank(param) ? DEFAULT_MAX_CONCURRENCY : Math.max(1, Integer.parseInt(param.trim()));
+    }
+
+    /**
+     * @param blob
+     * @return the executor of the provider of the blob
+     * @since 2021
+     */
+    public static ExecutorService getExecutor(Blob blob) {
+        return executors.computeIfAbsent(getProviderId(blob), LDTRecordExecutors::newExecutor);
+    }
+
+    protected static ExecutorService newExecutor(String providerId) {
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(getMaxConcurrency(providerId), runnable -> {
+            Thread thread = new Thread(runnable, "ldt-async-" + providerId + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Stops all the executors. Reads already submitted are still run.
+     *
+     * @since 2021
+     */
+    public static void shutdown() {
+        executors.values().forEach(ExecutorService::shutdown);
+        executors.clear();
+    }
+
+}
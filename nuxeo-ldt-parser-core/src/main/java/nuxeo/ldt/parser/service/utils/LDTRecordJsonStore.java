@@ -0,0 +1,184 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.ldt.parser.service.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.kv.KeyValueService;
+import org.nuxeo.runtime.kv.KeyValueStore;
+
+/**
+ * Second-level cache of the JSON of records (after {@code LDTRecordCache}), stored in a {@code KeyValueStore} (see
+ * {@code recordJsonKeyValueStore} in the configuration). With a store shared by the nodes of the cluster (Redis,
+ * MongoDB, ...), a record parsed by one node serves all the nodes, and the cache survives a restart.
+ * <br>
+ * Keys are {@code KEY_PREFIX} + the {@code LDTRecordKey}, values are the JSON, GZIP-compressed, stored with a TTL.
+ * <br>
+ * The store is a cache: errors reading or writing it are logged and counted, they never fail the request (the record
+ * is then read from the LDT).
+ *
+ * @since 2021
+ */
+public class LDTRecordJsonStore {
+
+    private static final Logger log = LogManager.getLogger(LDTRecordJsonStore.class);
+
+    public static final String KEY_PREFIX = "ldtjson:";
+
+    protected static final Map<String, LDTRecordJsonStore> instances = new ConcurrentHashMap<>();
+
+    protected final String storeName;
+
+    protected final AtomicLong hits = new AtomicLong();
+
+    protected final AtomicLong misses = new AtomicLong();
+
+    protected final AtomicLong puts = new AtomicLong();
+
+    protected final AtomicLong errors = new AtomicLong();
+
+    /**
+     * Statistics, since the first use of the store
+     *
+     * @since 2021
+     */
+    public static class Stats {
+
+        public final long hits;
+
+        public final long misses;
+
+        public final long puts;
+
+        public final long errors;
+
+        protected Stats(long hits, long misses, long puts, long errors) {
+            this.hits = hits;
+            this.misses = misses;
+            this.puts = puts;
+            this.errors = errors;
+        }
+
+        @Override
+        public String toString() {
+            return "{\"hits\": " + hits + ", \"misses\": " + misses + ", \"puts\": " + puts + ", \"errors\": "
+                    + errors + "}";
+        }
+    }
+
+    protected LDTRecordJsonStore(String storeName) {
+        this.storeName = storeName;
+    }
+
+    /**
+     * @param storeName name of the {@code KeyValueStore}
+     * @return the cache using this store
+     * @since 2021
+     */
+    public static LDTRecordJsonStore getInstance(String storeName) {
+        return instances.computeIfAbsent(storeName, LDTRecordJsonStore::new);
+    }
+
+    protected KeyValueStore getStore() {
+        return Framework.getService(KeyValueService.class).getKeyValueStore(storeName);
+    }
+
+    /**
+     * @param key
+     * @return the JSON of the record, or null if it is not in the store (or expired, or the store failed)
+     * @since 2021
+     */
+    public String get(LDTRecordKey key) {
+
+        try {
+            byte[] compressed = getStore().get(KEY_PREFIX + key);
+            if (compressed == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+            hits.incrementAndGet();
+            return expand(compressed);
+        } catch (IOException | RuntimeException e) {
+            errors.incrementAndGet();
+            log.warn("Cannot read the JSON of record " + key + " from the key/value store " + storeName, e);
+            return null;
+        }
+    }
+
+    /**
+     * @param key
+     * @param json
+     * @param ttlSeconds time to live of the entry
+     * @since 2021
+     */
+    public void put(LDTRecordKey key, String json, long ttlSeconds) {
+
+        try {
+            getStore().put(KEY_PREFIX + key, compress(json), ttlSeconds);
+            puts.incrementAndGet();
+        } catch (IOException | RuntimeException e) {
+            errors.incrementAndGet();
+            log.warn("Cannot store the JSON of record " + key + " in the key/value store " + storeName, e);
+        }
+    }
+
+    /**
+     * @param json
+     * @return the GZIP-compressed UTF-8 bytes of the JSON
+     * @since 2021
+     */
+    public static byte[] compress(String json) throws IOException {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(byteArrayOutputStream)) {
+            gzipOutputStream.write(json.getBytes(StandardCharsets.UTF_8));
+        }
+        return byteArrayOutputStream.toByteArray();
+    }
+
+    /**
+     * @param compressed
+     * @return the JSON, see {@code compress}
+     * @since 2021
+     */
+    public static String expand(byte[] compressed) throws IOException {
+        try (GZIPInputStream gzipInputStream = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            return new String(gzipInputStream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    public String getStoreName() {
+        return storeName;
+    }
+
+    public Stats getStats() {
+        return new Stats(hits.get(), misses.get(), puts.get(), errors.get());
+    }
+
+}
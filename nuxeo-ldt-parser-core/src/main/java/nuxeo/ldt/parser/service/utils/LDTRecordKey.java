@@ -0,0 +1,98 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.ldt.parser.service.utils;
+
+import java.util.Objects;
+
+import org.apache.commons.lang3.StringUtils;
+import org.nuxeo.ecm.core.api.Blob;
+
+/**
+ * Identifies the result of getting a record: the same parser, on the same LDT (the digest of its blob), at the same
+ * range, for the same pages, always gives the same record. Used to share the work of identical requests (see
+ * {@code LDTSingleFlight}).
+ * <br>
+ * {@code firstPage}/{@code lastPage} are {@code NO_PAGE} when the whole record is requested.
+ *
+ * @since 2021
+ */
+public class LDTRecordKey {
+
+    public static final int NO_PAGE = -1;
+
+    public final String parserName;
+
+    public final String digest;
+
+    public final long startOffset;
+
+    public final long recordSize;
+
+    public final int firstPage;
+
+    public final int lastPage;
+
+    public LDTRecordKey(String parserName, String digest, long startOffset, long recordSize, int firstPage,
+            int lastPage) {
+        this.parserName = parserName;
+        this.digest = digest;
+        this.startOffset = startOffset;
+        this.recordSize = recordSize;
+        this.firstPage = firstPage;
+        this.lastPage = lastPage;
+    }
+
+    /**
+     * @return the key, or null if the blob has no digest (the LDT can't be identified)
+     * @since 2021
+     */
+    public static LDTRecordKey of(String parserName, Blob blob, long startOffset, long recordSize, int firstPage,
+            int lastPage) {
+        String digest = blob.getDigest();
+        if (StringUtils.isBlank(digest)) {
+            return null;
+        }
+        return new LDTRecordKey(parserName, digest, startOffset, recordSize, firstPage, lastPage);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof LDTRecordKey)) {
+            return false;
+        }
+        LDTRecordKey other = (LDTRecordKey) obj;
+        return startOffset == other.startOffset && recordSize == other.recordSize && firstPage == other.firstPage
+                && lastPage == other.lastPage && digest.equals(other.digest)
+                && Objects.equals(parserName, other.parserName);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(parserName, digest, startOffset, recordSize, firstPage, lastPage);
+    }
+
+    @Override
+    public String toString() {
+        return parserName + "/" + digest + "/" + startOffset + "/" + recordSize + "/" + firstPage + "-" + lastPage;
+    }
+
+}
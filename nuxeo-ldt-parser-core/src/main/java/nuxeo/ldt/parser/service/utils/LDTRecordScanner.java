@@ -0,0 +1,492 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.ldt.parser.service.utils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.apache.commons.lang3.StringUtils;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.runtime.api.Framework;
+
+import nuxeo.ldt.parser.service.LDTParser;
+import nuxeo.ldt.parser.service.elements.HeaderLine;
+import nuxeo.ldt.parser.service.elements.RecordInfo;
+
+/**
+ * Scans an LDT file at the byte level and returns one {@code RecordInfo} per record, with exact byte offsets.
+ * <br>
+ * The file is memory-mapped ({@code FileChannel#map}) by windows, the start/end tokens and the end of lines are looked
+ * for directly in the bytes. Only the header lines are decoded to {@code String}, so they can be parsed by the
+ * {@code LDTParser}. Item lines are never decoded.
+ * <br>
+ * Offsets and sizes are in bytes, whatever the content of the lines (multibytes UTF-8 chars are correctly counted).
+ * End of lines can be LF, CRLF or CR, and can even be mixed in the same file.
+ * <br>
+ * The optional {@code ldt.parser.scanner.mapping.size} configuration parameter can be used to set the size of each
+ * mapped window, in bytes. Default is 256MB. A window is always remapped at the start of the current line, so it is
+ * extended if a line is bigger than the window.
+ * <br>
+ * Usage:
+ *
+ * <pre>
+ * try (LDTRecordScanner scanner = new LDTRecordScanner(parser, file)) {
+ *     for (RecordInfo recordInfo : scanner) {
+ *         . . .
+ *     }
+ * }
+ * </pre>
+ *
+ * @since 2021
+ */
+public class LDTRecordScanner implements Closeable, Iterable<RecordInfo> {
+
+    public static final String MAPPING_SIZE_CONFIGURATION_PARAM = "ldt.parser.scanner.mapping.size";
+
+    public static final long DEFAULT_MAPPING_SIZE = 256L * 1024 * 1024;
+
+    // Same as in LDTParser#getOneRecordInfo before this scanner: we assume no more than 100 header lines
+    public static final int MAX_HEADER_LINES = 100;
+
+    protected LDTParser parser;
+
+    protected FileChannel channel;
+
+    protected long fileSize;
+
+    // Scanning stops at this offset (fileSize by default). Must be the start of a line
+    protected long limit;
+
+    protected long mappingSize;
+
+    protected MappedByteBuffer buffer;
+
+    protected long bufferStart = 0;
+
+    protected long bufferLength = 0;
+
+    protected byte[] startToken;
+
+    protected byte[] endToken;
+
+    protected byte[] lineBytes = new byte[512];
+
+    // Current position in the file, in bytes: start of the next line to read
+    protected long position = 0;
+
+    // Line number of the next line to read, starts at 1
+    protected long lineNumber = 1;
+
+    // Current line: start (included) and end (excluded, EOL not included)
+    protected long lineStart = 0;
+
+    protected long lineEnd = 0;
+
+    // null when the whole file is available
+    protected ByteAvailability availability = null;
+
+    /**
+     * Used when the file is still being written (see {@code LDTParallelDownload}): the scanner waits for the bytes
+     * before mapping them.
+     *
+     * @since 2021
+     */
+    public interface ByteAvailability {
+
+        /**
+         * Blocks until all the bytes before {@code end} can be read.
+         */
+        void awaitAvailable(long end);
+    }
+
+    public LDTRecordScanner(LDTParser parser, File file) throws IOException {
+        this(parser, file, getConfiguredMappingSize());
+    }
+
+    public LDTRecordScanner(LDTParser parser, File file, long mappingSize) throws IOException {
+
+        this.parser = parser;
+        this.mappingSize = mappingSize > 0 ? Math.min(mappingSize, Integer.MAX_VALUE) : DEFAULT_MAPPING_SIZE;
+
+        startToken = parser.getDescriptor().getRecordStartToken().getBytes(StandardCharsets.UTF_8);
+        endToken = parser.getDescriptor().getRecordEndToken().getBytes(StandardCharsets.UTF_8);
+
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        fileSize = channel.size();
+        limit = fileSize;
+    }
+
+    protected static long getConfiguredMappingSize() {
+
+        String mappingSizeStr = Framework.getProperty(MAPPING_SIZE_CONFIGURATION_PARAM);
+        if (StringUtils.isNotBlank(mappingSizeStr)) {
+            try {
+                return Long.parseLong(mappingSizeStr);
+            } catch (NumberFormatException e) {
+                return DEFAULT_MAPPING_SIZE;
+            }
+        }
+
+        return DEFAULT_MAPPING_SIZE;
+    }
+
+    /**
+     * The file must already have its final size.
+     *
+     * @param availability
+     * @since 2021
+     */
+    public void setAvailability(ByteAvailability availability) {
+        this.availability = availability;
+    }
+
+    /**
+     * @return the size of the file, in bytes
+     * @since 2021
+     */
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * @return the count of bytes already scanned, which also is the start offset of the next record
+     * @since 2021
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * @return the line number of the next line to read (starts at 1)
+     * @since 2021
+     */
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * Moves the scanner to the start of a line. Caller is in charge of making sure {@code offset} is the start of a
+     * line whose number is {@code lineNumber}.
+     *
+     * @param offset
+     * @param lineNumber
+     * @since 2021
+     */
+    public void seek(long offset, long lineNumber) {
+        if (offset < 0 || offset > fileSize) {
+            throw new NuxeoException("Cannot seek to " + offset + ", file size is " + fileSize);
+        }
+        this.position = offset;
+        this.lineNumber = lineNumber;
+    }
+
+    /**
+     * Restricts the scan to [{@code start}, {@code end}). Both must be the start of a record (or {@code end} is the
+     * size of the file), see {@code findRecordBoundary}. Line numbers of the records are relative to {@code start},
+     * and start at 1.
+     *
+     * @param start
+     * @param end
+     * @since 2021
+     */
+    public void setRange(long start, long end) {
+        if (start < 0 || end > fileSize || start > end) {
+            throw new NuxeoException("Invalid range [" + start + ", " + end + "], file size is " + fileSize);
+        }
+        seek(start, 1);
+        limit = end;
+    }
+
+    /**
+     * @return {@code true} if there is at least one more byte to scan
+     * @since 2021
+     */
+    public boolean hasNext() {
+        return position < limit;
+    }
+
+    /**
+     * Returns the offset of the first record starting at or after {@code from}. A record starts on a line starting
+     * with the recordStartToken <i>and</i> following a line containing the recordEndToken, so the first line of every
+     * page of a multi-pages record is not considered as the start of a record.
+     * <br>
+     * The scanner is moved, caller must {@code seek} or {@code setRange} before reading records.
+     *
+     * @param from
+     * @return the offset of the start of the record, or the size of the file if there is no more record
+     * @throws IOException
+     * @since 2021
+     */
+    public long findRecordBoundary(long from) throws IOException {
+
+        if (from <= 0) {
+            return 0;
+        }
+        if (from >= fileSize) {
+            return fileSize;
+        }
+
+        seek(from, 1);
+        limit = fileSize;
+        // We may be in the middle of a line, always skip it
+        nextLine();
+        boolean previousLineIsRecordEnd = false;
+        while (nextLine()) {
+            if (previousLineIsRecordEnd && lineStartsWith(startToken)) {
+                return lineStart;
+            }
+            previousLineIsRecordEnd = lineContains(endToken);
+        }
+
+        return fileSize;
+    }
+
+    /**
+     * Reads the next record. The scanner <i>must</i> be positioned at the beginning of a record.
+     *
+     * @return the {@code RecordInfo} or {@code null} if the end of the file is reached
+     * @throws IOException
+     * @since 2021
+     */
+    public RecordInfo nextRecord() throws IOException {
+
+        if (!nextLine()) {
+            return null;
+        }
+
+        long recordStart = lineStart;
+        long lineStartInLDT = lineNumber - 1;
+
+        if (!lineStartsWith(startToken)) {
+            throw new NuxeoException(
+                    "Line should be a Record-Start, and starts with '" + parser.getDescriptor().getRecordStartToken()
+                            + "'");
+        }
+
+        ArrayList<HeaderLine> headers = new ArrayList<HeaderLine>();
+        // Assume we will always have at least one header
+        String line = decodeLine();
+        HeaderLine header = parser.parseRecordHeader(line, 1);
+        if (header == null) {
+            throw new NuxeoException("Malformed header line, no matching Pattern found for <" + line + ">");
+        }
+        headers.add(header);
+
+        for (int headerLineNumber = 1; headerLineNumber < MAX_HEADER_LINES; headerLineNumber++) {
+            if (!nextLine()) {
+                break;
+            }
+            header = parser.parseRecordHeader(decodeLine(), headerLineNumber);
+            if (header != null) {
+                headers.add(header);
+            } else {
+                break;
+            }
+        }
+        // We catched the first item line above, but it's ok, there will be at least one item.
+
+        while (nextLine()) {
+            if (lineContains(endToken)) {
+                break;
+            }
+        }
+
+        RecordInfo record = new RecordInfo(recordStart, position - recordStart, lineStartInLDT, headers);
+        record.lineCount = lineNumber - lineStartInLDT;
+        return record;
+    }
+
+    /**
+     * Iterates over the remaining records. {@code IOException}s are wrapped in a {@code NuxeoException}
+     *
+     * @since 2021
+     */
+    @Override
+    public Iterator<RecordInfo> iterator() {
+
+        return new Iterator<RecordInfo>() {
+
+            protected RecordInfo next = null;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null) {
+                    try {
+                        next = nextRecord();
+                    } catch (IOException e) {
+                        throw new NuxeoException(e);
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public RecordInfo next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                RecordInfo record = next;
+                next = null;
+                return record;
+            }
+        };
+    }
+
+    /*
+     * Reads the next line, sets lineStart/lineEnd and moves position after the EOL.
+     * Returns false if the end of the file is reached.
+     */
+    protected boolean nextLine() throws IOException {
+
+        if (position >= limit) {
+            return false;
+        }
+
+        lineStart = position;
+        long pos = position;
+        int eolLength = 0;
+        while (pos < fileSize) {
+            byte b = byteAt(pos);
+            if (b == '\n') {
+                eolLength = 1;
+                break;
+            }
+            if (b == '\r') {
+                eolLength = 1;
+                if (pos + 1 < fileSize && byteAt(pos + 1) == '\n') {
+                    eolLength = 2;
+                }
+                break;
+            }
+            pos += 1;
+        }
+
+        lineEnd = pos;
+        position = pos + eolLength;
+        lineNumber += 1;
+
+        return true;
+    }
+
+    protected byte byteAt(long pos) throws IOException {
+
+        long relative = pos - bufferStart;
+        if (buffer == null || relative < 0 || relative >= bufferLength) {
+            remap(pos);
+            relative = pos - bufferStart;
+        }
+
+        return buffer.get((int) relative);
+    }
+
+    /*
+     * Always map from the start of the current line, so a line is never split between 2 windows.
+     */
+    protected void remap(long pos) throws IOException {
+
+        long from = Math.min(lineStart, pos);
+        long size = mappingSize;
+        while (from + size <= pos) {
+            size *= 2;
+        }
+        size = Math.min(size, fileSize - from);
+        if (size > Integer.MAX_VALUE) {
+            throw new NuxeoException("Line starting at offset " + from + " is too big to be mapped");
+        }
+        if (availability != null) {
+            availability.awaitAvailable(from + size);
+        }
+
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, from, size);
+        bufferStart = from;
+        bufferLength = size;
+    }
+
+    protected boolean lineStartsWith(byte[] token) throws IOException {
+
+        if (lineEnd - lineStart < token.length) {
+            return false;
+        }
+        for (int i = 0; i < token.length; i++) {
+            if (byteAt(lineStart + i) != token[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    protected boolean lineContains(byte[] token) throws IOException {
+
+        if (token.length == 0) {
+            return true;
+        }
+        long last = lineEnd - token.length;
+        byte first = token[0];
+        for (long pos = lineStart; pos <= last; pos++) {
+            if (byteAt(pos) != first) {
+                continue;
+            }
+            int i = 1;
+            while (i < token.length && byteAt(pos + i) == token[i]) {
+                i += 1;
+            }
+            if (i == token.length) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    protected String decodeLine() throws IOException {
+
+        int length = (int) (lineEnd - lineStart);
+        if (length == 0) {
+            return "";
+        }
+        if (lineBytes.length < length) {
+            lineBytes = new byte[Math.max(length, lineBytes.length * 2)];
+        }
+        // Make sure the whole line is in the current window (it always is after nextLine())
+        byteAt(lineStart);
+        byteAt(lineEnd - 1);
+        ByteBuffer view = buffer.duplicate();
+        view.position((int) (lineStart - bufferStart));
+        view.get(lineBytes, 0, length);
+
+        return new String(lineBytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer = null;
+        channel.close();
+    }
+
+}
@@ -0,0 +1,97 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.ldt.parser.service.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+import org.nuxeo.ecm.core.api.NuxeoException;
+
+import nuxeo.ldt.parser.service.LDTParser;
+import nuxeo.ldt.parser.service.elements.RecordInfo;
+
+/**
+ * Scans one segment of an LDT file, [{@code start}, {@code end}), in a {@code ForkJoinPool}.
+ * Both bounds must be record boundaries (see {@code LDTRecordScanner#findRecordBoundary}).
+ * <br>
+ * The line numbers of the returned {@code RecordInfo} are relative to the segment (first line of the segment is 1).
+ * Once the task is done, {@code getLineCount()} returns the number of lines in the segment, so the caller can realign
+ * the line numbers when merging the segments in file order.
+ *
+ * @since 2021
+ */
+public class LDTSegmentScanTask extends RecursiveTask<List<RecordInfo>> {
+
+    private static final long serialVersionUID = 1L;
+
+    protected transient LDTParser parser;
+
+    protected File file;
+
+    protected long start;
+
+    protected long end;
+
+    protected long lineCount = 0;
+
+    public LDTSegmentScanTask(LDTParser parser, File file, long start, long end) {
+        this.parser = parser;
+        this.file = file;
+        this.start = start;
+        this.end = end;
+    }
+
+    @Override
+    protected List<RecordInfo> compute() {
+
+        List<RecordInfo> records = new ArrayList<>();
+        try (LDTRecordScanner scanner = new LDTRecordScanner(parser, file)) {
+            scanner.setRange(start, end);
+            RecordInfo record;
+            while ((record = scanner.nextRecord()) != null) {
+                records.add(record);
+            }
+            lineCount = scanner.getLineNumber() - 1;
+        } catch (IOException e) {
+            throw new NuxeoException("Error scanning the segment [" + start + ", " + end + "]", e);
+        }
+
+        return records;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    /**
+     * @return the number of lines in the segment. Valid only once the task is done.
+     * @since 2021
+     */
+    public long getLineCount() {
+        return lineCount;
+    }
+
+}
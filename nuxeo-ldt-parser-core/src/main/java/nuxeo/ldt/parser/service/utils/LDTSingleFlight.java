@@ -0,0 +1,121 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.ldt.parser.service.utils;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.nuxeo.ecm.core.api.NuxeoException;
+
+/**
+ * Shares the work of identical concurrent calls: the first call for a key runs the supplier, the calls for the same
+ * key arriving while it runs wait for its result (or its exception) instead of running the supplier again. Once the
+ * result is available, the next call for the key runs the supplier again: nothing is cached.
+ * <br>
+ * Typically, at month start, many users (and their retries) request the same records at the same time, they share one
+ * read and parse (see {@code LDTParser#getRecordJson}).
+ * <br>
+ * Thread safe.
+ *
+ * @since 2021
+ */
+public class LDTSingleFlight<K, V> {
+
+    protected final Map<K, CompletableFuture<V>> flights = new ConcurrentHashMap<>();
+
+    protected final AtomicLong calls = new AtomicLong();
+
+    protected final AtomicLong sharedCalls = new AtomicLong();
+
+    /**
+     * @param key if null, the supplier is always run
+     * @param supplier
+     * @return the value returned by the supplier, for this call or for the call in flight for the same key
+     * @since 2021
+     */
+    public V execute(K key, Supplier<V> supplier) {
+
+        calls.incrementAndGet();
+        if (key == null) {
+            return supplier.get();
+        }
+
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> inFlight = flights.putIfAbsent(key, flight);
+        if (inFlight != null) {
+            sharedCalls.incrementAndGet();
+            return await(inFlight);
+        }
+
+        try {
+            V value = supplier.get();
+            flight.complete(value);
+            return value;
+        } catch (Throwable e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            flights.remove(key, flight);
+        }
+    }
+
+    protected V await(CompletableFuture<V> flight) {
+        try {
+            return flight.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new NuxeoException(cause);
+        }
+    }
+
+    /**
+     * @return the number of calls to {@code execute}
+     * @since 2021
+     */
+    public long getCalls() {
+        return calls.get();
+    }
+
+    /**
+     * @return the number of calls that got the result of a call in flight, without running the supplier
+     * @since 2021
+     */
+    public long getSharedCalls() {
+        return sharedCalls.get();
+    }
+
+    /**
+     * @return the number of keys in flight
+     * @since 2021
+     */
+    public int getInFlight() {
+        return flights.size();
+    }
+
+}
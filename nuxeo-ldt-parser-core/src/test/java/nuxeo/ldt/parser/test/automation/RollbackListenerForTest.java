@@ -0,0 +1,53 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.ldt.parser.test.automation;
+
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.event.Event;
+import org.nuxeo.ecm.core.event.EventListener;
+import org.nuxeo.ecm.core.event.impl.DocumentEventContext;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+
+import nuxeo.ldt.parser.service.Constants;
+
+/**
+ * When {@code failNextLdtCommit} is set, marks the transaction rollback only when the LDT document is saved at the end
+ * of the parsing (with its {@code ldt:countRecords}), so the last commit of the parsing fails. Resets
+ * {@code failNextLdtCommit}.
+ *
+ * @since 2021
+ */
+public class RollbackListenerForTest implements EventListener {
+
+    public static volatile boolean failNextLdtCommit = false;
+
+    @Override
+    public void handleEvent(Event event) {
+        if (!failNextLdtCommit || !(event.getContext() instanceof DocumentEventContext)) {
+            return;
+        }
+
+        DocumentModel doc = ((DocumentEventContext) event.getContext()).getSourceDocument();
+        if (doc.hasSchema(Constants.SCHEMA_LDT) && doc.getPropertyValue(Constants.XPATH_LDT_COUNTRECORDS) != null) {
+            failNextLdtCommit = false;
+            TransactionHelper.setTransactionRollbackOnly();
+        }
+    }
+
+}
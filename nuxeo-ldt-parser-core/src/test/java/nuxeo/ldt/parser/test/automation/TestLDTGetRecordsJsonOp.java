@@ -0,0 +1,185 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.ldt.parser.test.automation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Inject;
+
+import org.json.JSONArray;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.automation.AutomationService;
+import org.nuxeo.ecm.automation.OperationContext;
+import org.nuxeo.ecm.automation.core.util.StringList;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.DocumentModelList;
+import org.nuxeo.ecm.core.test.DefaultRepositoryInit;
+import org.nuxeo.ecm.core.test.annotations.Granularity;
+import org.nuxeo.ecm.core.test.annotations.RepositoryConfig;
+import org.nuxeo.ecm.platform.test.PlatformFeature;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+import org.nuxeo.runtime.test.runner.TransactionalFeature;
+
+import nuxeo.ldt.parser.automation.LDTGetRecordsJsonOp;
+import nuxeo.ldt.parser.service.LDTParser;
+import nuxeo.ldt.parser.service.LDTParserService;
+import nuxeo.ldt.parser.service.elements.Record;
+import nuxeo.ldt.parser.service.elements.RecordHit;
+import nuxeo.ldt.parser.test.TestUtils;
+
+/**
+ * See TestUtils for the expected values in test.LDT
+ *
+ * @since 2021
+ */
+@RunWith(FeaturesRunner.class)
+@Features({ PlatformFeature.class })
+@RepositoryConfig(init = DefaultRepositoryInit.class, cleanup = Granularity.METHOD)
+@Deploy({ "org.nuxeo.ecm.default.config", "org.nuxeo.ecm.platform.types", "org.nuxeo.ecm.platform.tag",
+        "org.nuxeo.ecm.automation.core", "org.nuxeo.ecm.automation.scripting" })
+@Deploy("nuxeo.ldt.parser.nuxeo-ldt-parser-core")
+public class TestLDTGetRecordsJsonOp {
+
+    @Inject
+    protected CoreSession coreSession;
+
+    @Inject
+    protected TransactionalFeature transactionalFeature;
+
+    @Inject
+    protected AutomationService automationService;
+
+    @Inject
+    protected LDTParserService ldtParserService;
+
+    protected DocumentModel createLdtDoc() {
+
+        DocumentModel ldtDoc = coreSession.createDocumentModel("/", "Test",
+                nuxeo.ldt.parser.service.Constants.DOC_TYPE_LDT);
+        Blob blob = TestUtils.getSimpleTestFileBlob();
+        ldtDoc.setPropertyValue("file:content", (Serializable) blob);
+        ldtDoc = coreSession.createDocument(ldtDoc);
+        coreSession.save();
+        transactionalFeature.nextTransaction();
+
+        return ldtDoc;
+    }
+
+    @Test
+    public void shouldGetRecordsInRequestedOrder() throws Exception {
+
+        DocumentModel ldtDoc = createLdtDoc();
+
+        // Record #3, #2 and #3 again
+        OperationContext ctx = new OperationContext(coreSession);
+        Map<String, Object> params = new HashMap<>();
+        params.put("sourceLdtDocId", ldtDoc.getId());
+        params.put("startOffsets", new StringList(List.of(String.valueOf(TestUtils.SIMPLELDT_RECORD3_STARTOFFSET),
+                String.valueOf(TestUtils.SIMPLELDT_RECORD2_STARTOFFSET),
+                String.valueOf(TestUtils.SIMPLELDT_RECORD3_STARTOFFSET))));
+        params.put("recordSizes", new StringList(List.of(String.valueOf(TestUtils.SIMPLELDT_RECORD3_RECORDSIZE),
+                String.valueOf(TestUtils.SIMPLELDT_RECORD2_RECORDSIZE),
+                String.valueOf(TestUtils.SIMPLELDT_RECORD3_RECORDSIZE))));
+        Blob jsonBlob = (Blob) automationService.run(ctx, LDTGetRecordsJsonOp.ID, params);
+        assertNotNull(jsonBlob);
+
+        JSONArray array = new JSONArray(jsonBlob.getString());
+        assertEquals(3, array.length());
+        assertEquals("9874567890ABC12", array.getJSONObject(1).getJSONObject("record").getString("clientId"));
+        assertEquals(TestUtils.SIMPLELDT_RECORD2_ITEMS_COUNT,
+                array.getJSONObject(1).getJSONObject("record").getJSONArray("items").length());
+        assertEquals(array.getJSONObject(0).toString(), array.getJSONObject(2).toString());
+    }
+
+    @Test
+    public void shouldGetRecordsOfRecordDocuments() throws Exception {
+
+        DocumentModel ldtDoc = createLdtDoc();
+        LDTParser parser = ldtParserService.newParser(null);
+        parser.parseAndCreateDocuments(ldtDoc);
+        transactionalFeature.nextTransaction();
+
+        DocumentModelList records = coreSession.query("SELECT * FROM LDTRecord ORDER BY "
+                + nuxeo.ldt.parser.service.Constants.XPATH_LDTRECORD_STARTOFFSET + " DESC");
+        assertEquals(TestUtils.SIMPLELDT_STATEMENT_COUNT, records.size());
+
+        OperationContext ctx = new OperationContext(coreSession);
+        ctx.setInput(records);
+        Blob jsonBlob = (Blob) automationService.run(ctx, LDTGetRecordsJsonOp.ID);
+        JSONArray array = new JSONArray(jsonBlob.getString());
+        assertEquals(3, array.length());
+        // Same order as the input
+        assertEquals("9874567890ABC12", array.getJSONObject(1).getJSONObject("record").getString("clientId"));
+    }
+
+    @Test
+    public void shouldIgnoreRecordDocumentsWithoutLdt() throws Exception {
+
+        DocumentModel ldtDoc = createLdtDoc();
+        LDTParser parser = ldtParserService.newParser(null);
+        parser.parseAndCreateDocuments(ldtDoc);
+        transactionalFeature.nextTransaction();
+
+        DocumentModelList records = coreSession.query("SELECT * FROM LDTRecord ORDER BY "
+                + nuxeo.ldt.parser.service.Constants.XPATH_LDTRECORD_STARTOFFSET);
+        assertEquals(TestUtils.SIMPLELDT_STATEMENT_COUNT, records.size());
+        records.get(0).setPropertyValue(nuxeo.ldt.parser.service.Constants.XPATH_LDTRECORD_RELATED_LDT_DOC, null);
+
+        OperationContext ctx = new OperationContext(coreSession);
+        ctx.setInput(records);
+        Blob jsonBlob = (Blob) automationService.run(ctx, LDTGetRecordsJsonOp.ID);
+        JSONArray array = new JSONArray(jsonBlob.getString());
+        assertEquals(2, array.length());
+        assertEquals("9874567890ABC12", array.getJSONObject(0).getJSONObject("record").getString("clientId"));
+    }
+
+    @Test
+    public void shouldGetRecordsWithTheService() throws Exception {
+
+        DocumentModel ldtDoc = createLdtDoc();
+        Blob blob = (Blob) ldtDoc.getPropertyValue("file:content");
+        LDTParser parser = ldtParserService.newParser(null);
+
+        List<RecordHit> hits = List.of(new RecordHit(ldtDoc.getId(), 0, TestUtils.SIMPLELDT_RECORD2_STARTOFFSET),
+                new RecordHit(ldtDoc.getId(), TestUtils.SIMPLELDT_RECORD2_STARTOFFSET,
+                        TestUtils.SIMPLELDT_RECORD2_RECORDSIZE),
+                new RecordHit(ldtDoc.getId(), TestUtils.SIMPLELDT_RECORD3_STARTOFFSET,
+                        TestUtils.SIMPLELDT_RECORD3_RECORDSIZE));
+        List<Record> records = ldtParserService.getRecords(coreSession, null, hits);
+        assertEquals(3, records.size());
+        for (int i = 0; i < hits.size(); i++) {
+            Record expected = parser.getRecord(blob, hits.get(i).startOffset, hits.get(i).size);
+            assertTrue(records.get(i) != null);
+            assertEquals(expected.toJson(), records.get(i).toJson());
+        }
+    }
+
+}
@@ -20,20 +20,26 @@ package nuxeo.ldt.parser.test.automation;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.File;
 import java.io.Serializable;
 import java.util.Arrays;
 import java.util.List;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.nuxeo.common.utils.FileUtils;
 import org.nuxeo.ecm.automation.AutomationService;
 import org.nuxeo.ecm.automation.OperationContext;
 import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.Blobs;
 import org.nuxeo.ecm.core.api.CoreSession;
 import org.nuxeo.ecm.core.api.DocumentModel;
 import org.nuxeo.ecm.core.api.DocumentModelList;
+import org.nuxeo.ecm.core.api.NuxeoException;
 import org.nuxeo.ecm.core.api.PathRef;
 import org.nuxeo.ecm.core.test.DefaultRepositoryInit;
 import org.nuxeo.ecm.core.test.annotations.Granularity;
@@ -48,6 +54,10 @@ import nuxeo.ldt.parser.automation.LDTParseAndCreateDocumentsOp;
 import nuxeo.ldt.parser.service.descriptors.LDTParserDescriptor;
 import nuxeo.ldt.parser.test.TestUtils;
 import nuxeo.ldt.parser.service.LDTParser;
+import nuxeo.ldt.parser.service.LDTParser.LDTInfo;
+import nuxeo.ldt.parser.service.elements.RecordInfo;
+import nuxeo.ldt.parser.service.utils.LDTCheckpointTracker;
+import nuxeo.ldt.parser.service.utils.LDTIngestionPipeline;
 import nuxeo.ldt.parser.service.LDTParserService;
 
 import javax.inject.Inject;
@@ -61,6 +71,7 @@ import javax.inject.Inject;
 @Deploy({ "org.nuxeo.ecm.default.config", "org.nuxeo.ecm.platform.types", "org.nuxeo.ecm.platform.tag",
         "org.nuxeo.ecm.automation.core", "org.nuxeo.ecm.automation.scripting" })
 @Deploy("nuxeo.ldt.parser.nuxeo-ldt-parser-core")
+@Deploy("nuxeo.ldt.parser.nuxeo-ldt-parser-core:ldt-parsers-test-contrib.xml")
 public class TestLDTParserOnDocument {
 
     protected final List<String> events = Arrays.asList("documentCreated");
@@ -142,4 +153,194 @@ public class TestLDTParserOnDocument {
         assertEquals(1, docs.size());
 
     }
+
+    @Test
+    public void shouldCreateStatementsWithSeveralWriters() throws Exception {
+
+        File file = FileUtils.getResourceFileFromContext("test-bigger.LDT");
+        Blob blob = Blobs.createBlob(file);
+        blob.setFilename(file.getName());
+
+        DocumentModel doc = coreSession.createDocumentModel("/", "test-bigger",
+                nuxeo.ldt.parser.service.Constants.DOC_TYPE_LDT);
+        doc.setPropertyValue("file:content", (Serializable) blob);
+        doc = coreSession.createDocument(doc);
+        coreSession.save();
+        transactionalFeature.nextTransaction();
+
+        // 4 writers, queues of 10 records
+        LDTParser parser = ldtParserService.newParser("test-writers");
+        LDTParserDescriptor desc = parser.getDescriptor();
+        LDTInfo info = parser.parseAndCreateDocuments(doc, false);
+        transactionalFeature.nextTransaction();
+
+        assertEquals(648, info.countRecords);
+        assertNotNull(info.pipelineStats);
+        for (LDTIngestionPipeline.StageStats stage : info.pipelineStats.getStages()) {
+            assertEquals(648, stage.getRecords());
+        }
+        assertTrue(info.pipelineStats.getQueues().get(0).getMaxDepth() <= 10);
+
+        String nxql = "SELECT * FROM " + desc.getRecordDocType() + " WHERE "
+                + nuxeo.ldt.parser.service.Constants.XPATH_LDTRECORD_RELATED_LDT_DOC + " = '" + doc.getId() + "'";
+        assertEquals(648, coreSession.query(nxql).size());
+    }
+
+    @Test
+    public void shouldResumeFromCheckpoint() throws Exception {
+
+        File file = FileUtils.getResourceFileFromContext("test-bigger.LDT");
+        Blob blob = Blobs.createBlob(file);
+        blob.setFilename(file.getName());
+
+        DocumentModel doc = coreSession.createDocumentModel("/", "test-bigger",
+                nuxeo.ldt.parser.service.Constants.DOC_TYPE_LDT);
+        doc.setPropertyValue("file:content", (Serializable) blob);
+        doc = coreSession.createDocument(doc);
+        coreSession.save();
+        transactionalFeature.nextTransaction();
+
+        LDTParser parser = ldtParserService.newParser(null);
+        LDTInfo info = parser.parseAndCreateDocuments(doc, false);
+        assertEquals(648, info.countRecords);
+        transactionalFeature.nextTransaction();
+
+        doc = coreSession.getDocument(doc.getRef());
+        assertEquals(648L, doc.getPropertyValue(nuxeo.ldt.parser.service.Constants.XPATH_LDT_CHECKPOINT_COUNT));
+        assertEquals(file.length(),
+                doc.getPropertyValue(nuxeo.ldt.parser.service.Constants.XPATH_LDT_CHECKPOINT_OFFSET));
+
+        // Simulate a failure after record #300 was committed. Record #301 was also committed (another writer)
+        List<RecordInfo> records = parser.scanRecords(file, 1);
+        RecordInfo checkpoint = records.get(300);
+        String recordsNxql = "SELECT * FROM " + parser.getDescriptor().getRecordDocType() + " WHERE "
+                + nuxeo.ldt.parser.service.Constants.XPATH_LDTRECORD_RELATED_LDT_DOC + " = '" + doc.getId() + "'";
+        DocumentModelList toDelete = coreSession.query(recordsNxql + " AND "
+                + nuxeo.ldt.parser.service.Constants.XPATH_LDTRECORD_STARTOFFSET + " >= " + checkpoint.startOffset
+                + " AND " + nuxeo.ldt.parser.service.Constants.XPATH_LDTRECORD_STARTOFFSET + " <> "
+                + records.get(301).startOffset);
+        assertEquals(647 - 300, toDelete.size());
+        toDelete.forEach(record -> coreSession.removeDocument(record.getRef()));
+        doc.setPropertyValue(nuxeo.ldt.parser.service.Constants.XPATH_LDT_CHECKPOINT_OFFSET, checkpoint.startOffset);
+        doc.setPropertyValue(nuxeo.ldt.parser.service.Constants.XPATH_LDT_CHECKPOINT_LINE, checkpoint.startLine);
+        doc.setPropertyValue(nuxeo.ldt.parser.service.Constants.XPATH_LDT_CHECKPOINT_COUNT, 300L);
+        doc.setPropertyValue(nuxeo.ldt.parser.service.Constants.XPATH_LDT_COUNTRECORDS, null);
+        doc = coreSession.saveDocument(doc);
+        coreSession.save();
+        transactionalFeature.nextTransaction();
+
+        info = parser.parseAndCreateDocuments(doc, false, 0, null, true);
+        transactionalFeature.nextTransaction();
+
+        assertEquals(648, info.countRecords);
+        assertEquals(648, coreSession.query(recordsNxql).size());
+        // No new container
+        String containersNxql = "SELECT * FROM " + parser.getDescriptor().getRecordsContainerDocType()
+                + " WHERE ecm:name LIKE 'test-bigger%'";
+        assertEquals(1, coreSession.query(containersNxql).size());
+        // Same values as the first parsing
+        DocumentModelList last = coreSession.query(recordsNxql + " AND "
+                + nuxeo.ldt.parser.service.Constants.XPATH_LDTRECORD_STARTOFFSET + " = " + records.get(647).startOffset);
+        assertEquals(1, last.size());
+        assertEquals(records.get(647).startLine,
+                last.get(0).getPropertyValue(nuxeo.ldt.parser.service.Constants.XPATH_LDTRECORD_STARTLINE));
+    }
+
+    @Test
+    public void shouldResumeFromKeyValueStoreCheckpoint() throws Exception {
+
+        File file = FileUtils.getResourceFileFromContext("test-bigger.LDT");
+        Blob blob = Blobs.createBlob(file);
+        blob.setFilename(file.getName());
+
+        DocumentModel doc = coreSession.createDocumentModel("/", "test-bigger",
+                nuxeo.ldt.parser.service.Constants.DOC_TYPE_LDT);
+        doc.setPropertyValue("file:content", (Serializable) blob);
+        doc = coreSession.createDocument(doc);
+        coreSession.save();
+        transactionalFeature.nextTransaction();
+
+        LDTParser parser = ldtParserService.newParser(null);
+        parser.parseAndCreateDocuments(doc, false);
+        transactionalFeature.nextTransaction();
+
+        // Simulate a parsing interrupted after record #300 was committed: the checkpoint is in the KeyValueStore,
+        // the one of the document is older than the last parsing (it would skip records)
+        List<RecordInfo> records = parser.scanRecords(file, 1);
+        RecordInfo checkpoint = records.get(300);
+        String recordsNxql = "SELECT * FROM " + parser.getDescriptor().getRecordDocType() + " WHERE "
+                + nuxeo.ldt.parser.service.Constants.XPATH_LDTRECORD_RELATED_LDT_DOC + " = '" + doc.getId() + "'";
+        coreSession.query(recordsNxql + " AND " + nuxeo.ldt.parser.service.Constants.XPATH_LDTRECORD_STARTOFFSET
+                + " >= " + checkpoint.startOffset).forEach(record -> coreSession.removeDocument(record.getRef()));
+        doc = coreSession.getDocument(doc.getRef());
+        doc.setPropertyValue(nuxeo.ldt.parser.service.Constants.XPATH_LDT_CHECKPOINT_OFFSET,
+                records.get(600).startOffset);
+        doc.setPropertyValue(nuxeo.ldt.parser.service.Constants.XPATH_LDT_CHECKPOINT_LINE,
+                records.get(600).startLine);
+        doc.setPropertyValue(nuxeo.ldt.parser.service.Constants.XPATH_LDT_CHECKPOINT_COUNT, 600L);
+        doc = coreSession.saveDocument(doc);
+        coreSession.save();
+        transactionalFeature.nextTransaction();
+        new LDTCheckpointTracker(doc.getId(), 300, checkpoint.startOffset, checkpoint.startLine).save();
+
+        LDTCheckpointTracker loaded = LDTCheckpointTracker.load(doc);
+        assertEquals(300, loaded.getCount());
+        assertEquals(checkpoint.startOffset, loaded.getOffset());
+        assertEquals(checkpoint.startLine, loaded.getLine());
+
+        LDTInfo info = parser.parseAndCreateDocuments(doc, false, 0, null, true);
+        transactionalFeature.nextTransaction();
+
+        assertEquals(648, info.countRecords);
+        assertEquals(648, coreSession.query(recordsNxql).size());
+        // Stored on the document at the end
+        doc = coreSession.getDocument(doc.getRef());
+        assertEquals(648L, LDTCheckpointTracker.load(doc).getCount());
+    }
+
+    @Test
+    @Deploy("nuxeo.ldt.parser.nuxeo-ldt-parser-core:rollback-listener-test-contrib.xml")
+    public void shouldResumeAfterFailedLastCommit() throws Exception {
+
+        File file = FileUtils.getResourceFileFromContext("test-bigger.LDT");
+        Blob blob = Blobs.createBlob(file);
+        blob.setFilename(file.getName());
+
+        DocumentModel doc = coreSession.createDocumentModel("/", "test-bigger",
+                nuxeo.ldt.parser.service.Constants.DOC_TYPE_LDT);
+        doc.setPropertyValue("file:content", (Serializable) blob);
+        doc = coreSession.createDocument(doc);
+        coreSession.save();
+        transactionalFeature.nextTransaction();
+
+        // A commit every 100 records: the last 48 records are committed with the LDT document, which fails
+        LDTParser parser = ldtParserService.newParser("test-sequential");
+        RollbackListenerForTest.failNextLdtCommit = true;
+        try {
+            parser.parseAndCreateDocuments(doc, false);
+            fail("The last commit should have failed");
+        } catch (NuxeoException e) {
+            // Expected
+        } finally {
+            RollbackListenerForTest.failNextLdtCommit = false;
+        }
+        transactionalFeature.nextTransaction();
+
+        String recordsNxql = "SELECT * FROM " + parser.getDescriptor().getRecordDocType() + " WHERE "
+                + nuxeo.ldt.parser.service.Constants.XPATH_LDTRECORD_RELATED_LDT_DOC + " = '" + doc.getId() + "'";
+        assertEquals(600, coreSession.query(recordsNxql).size());
+        doc = coreSession.getDocument(doc.getRef());
+        assertNull(doc.getPropertyValue(nuxeo.ldt.parser.service.Constants.XPATH_LDT_COUNTRECORDS));
+
+        // The checkpoint did not move past the committed records
+        LDTInfo info = parser.parseAndCreateDocuments(doc, false, 0, null, true);
+        transactionalFeature.nextTransaction();
+
+        assertEquals(648, info.countRecords);
+        assertEquals(648, coreSession.query(recordsNxql).size());
+        doc = coreSession.getDocument(doc.getRef());
+        assertEquals(648L, doc.getPropertyValue(nuxeo.ldt.parser.service.Constants.XPATH_LDT_CHECKPOINT_COUNT));
+        assertEquals(file.length(),
+                doc.getPropertyValue(nuxeo.ldt.parser.service.Constants.XPATH_LDT_CHECKPOINT_OFFSET));
+    }
 }
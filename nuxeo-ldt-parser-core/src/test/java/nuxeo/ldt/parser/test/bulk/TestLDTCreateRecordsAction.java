@@ -0,0 +1,117 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.ldt.parser.test.bulk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.Serializable;
+import java.time.Duration;
+
+import javax.inject.Inject;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.common.utils.FileUtils;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.Blobs;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.DocumentModelList;
+import org.nuxeo.ecm.core.bulk.BulkService;
+import org.nuxeo.ecm.core.bulk.CoreBulkFeature;
+import org.nuxeo.ecm.core.bulk.message.BulkStatus;
+import org.nuxeo.ecm.platform.test.PlatformFeature;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+import org.nuxeo.runtime.test.runner.TransactionalFeature;
+
+import nuxeo.ldt.parser.service.Constants;
+import nuxeo.ldt.parser.service.LDTParser;
+import nuxeo.ldt.parser.service.LDTParser.LDTInfo;
+import nuxeo.ldt.parser.service.LDTParserService;
+import nuxeo.ldt.parser.service.descriptors.LDTParserDescriptor;
+import nuxeo.ldt.parser.service.elements.RecordInfo;
+
+/**
+ * test-bigger.LDT has 648 records
+ *
+ * @since 2021
+ */
+@RunWith(FeaturesRunner.class)
+@Features({ PlatformFeature.class, CoreBulkFeature.class })
+@Deploy("nuxeo.ldt.parser.nuxeo-ldt-parser-core")
+@Deploy("nuxeo.ldt.parser.nuxeo-ldt-parser-core:ldt-parsers-test-contrib.xml")
+public class TestLDTCreateRecordsAction {
+
+    @Inject
+    protected CoreSession session;
+
+    @Inject
+    protected TransactionalFeature transactionalFeature;
+
+    @Inject
+    protected BulkService bulkService;
+
+    @Inject
+    protected LDTParserService ldtParserService;
+
+    @Test
+    public void shouldCreateRecordsWithBulkAction() throws Exception {
+
+        File file = FileUtils.getResourceFileFromContext("test-bigger.LDT");
+        Blob blob = Blobs.createBlob(file);
+        blob.setFilename(file.getName());
+
+        DocumentModel doc = session.createDocumentModel("/", "test-bigger", Constants.DOC_TYPE_LDT);
+        doc.setPropertyValue("file:content", (Serializable) blob);
+        doc = session.createDocument(doc);
+        transactionalFeature.nextTransaction();
+
+        LDTParser parser = ldtParserService.newParser("test-bulk");
+        LDTParserDescriptor desc = parser.getDescriptor();
+        LDTInfo info = parser.parseAndCreateDocuments(doc, false);
+        assertNotNull(info.bulkCommandId);
+
+        assertTrue(bulkService.await(info.bulkCommandId, Duration.ofSeconds(60)));
+        BulkStatus status = bulkService.getStatus(info.bulkCommandId);
+        assertEquals(BulkStatus.State.COMPLETED, status.getState());
+        assertEquals(648, status.getProcessed());
+        assertEquals(0, status.getErrorCount());
+        transactionalFeature.nextTransaction();
+
+        doc = session.getDocument(doc.getRef());
+        assertEquals(info.bulkCommandId, doc.getPropertyValue(Constants.XPATH_LDT_RECORDS_BULK_COMMAND_ID));
+        assertEquals(648L, doc.getPropertyValue(Constants.XPATH_LDT_COUNTRECORDS));
+
+        // Same values as a sequential scan
+        RecordInfo last = parser.scanRecords(file, 1).get(647);
+        DocumentModelList records = session.query("SELECT * FROM " + desc.getRecordDocType() + " WHERE "
+                + Constants.XPATH_LDTRECORD_RELATED_LDT_DOC + " = '" + doc.getId() + "' AND "
+                + Constants.XPATH_LDTRECORD_STARTOFFSET + " = " + last.startOffset);
+        assertEquals(1, records.size());
+        DocumentModel record = records.get(0);
+        assertEquals(last.size, record.getPropertyValue(Constants.XPATH_LDTRECORD_RECORDSIZE));
+        assertEquals(last.startLine, record.getPropertyValue(Constants.XPATH_LDTRECORD_STARTLINE));
+    }
+
+}
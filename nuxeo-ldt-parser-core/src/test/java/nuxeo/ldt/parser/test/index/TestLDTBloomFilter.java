@@ -0,0 +1,209 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.ldt.parser.test.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Calendar;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import javax.inject.Inject;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.Blobs;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.platform.test.PlatformFeature;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+import org.nuxeo.runtime.test.runner.TransactionalFeature;
+
+import nuxeo.ldt.parser.service.Constants;
+import nuxeo.ldt.parser.service.LDTParser;
+import nuxeo.ldt.parser.service.LDTParserService;
+import nuxeo.ldt.parser.service.elements.RecordHit;
+import nuxeo.ldt.parser.service.index.LDTBloomFilter;
+import nuxeo.ldt.parser.test.TestUtils;
+
+/**
+ * Bloom filters, and searching several LDTs (which uses them)
+ *
+ * @since 2021
+ */
+@RunWith(FeaturesRunner.class)
+@Features({ PlatformFeature.class })
+@Deploy("nuxeo.ldt.parser.nuxeo-ldt-parser-core")
+@Deploy("nuxeo.ldt.parser.nuxeo-ldt-parser-core:ldt-parsers-test-contrib.xml")
+public class TestLDTBloomFilter {
+
+    protected static final String OTHER_CLIENT_ID = "1111111111ABC12";
+
+    @Inject
+    protected CoreSession session;
+
+    @Inject
+    protected TransactionalFeature transactionalFeature;
+
+    @Inject
+    protected LDTParserService ldtParserService;
+
+    @Test
+    public void shouldHaveNoFalseNegativeAndFewFalsePositives() throws Exception {
+
+        LDTBloomFilter filter = LDTBloomFilter.create(10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            filter.add(List.of("client-" + i));
+        }
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(filter.mightContain(List.of("client-" + i)));
+        }
+        int falsePositives = 0;
+        for (int i = 10000; i < 110000; i++) {
+            if (filter.mightContain(List.of("client-" + i))) {
+                falsePositives++;
+            }
+        }
+        // 1% expected
+        assertTrue("False positives: " + falsePositives, falsePositives < 2000);
+
+        Blob blob = filter.toBlob("test.LDT", "clientId");
+        assertEquals("test-clientId." + LDTBloomFilter.FILE_EXTENSION, blob.getFilename());
+        LDTBloomFilter read = LDTBloomFilter.read(blob);
+        assertEquals(filter.getBitCount(), read.getBitCount());
+        assertEquals(filter.getHashCount(), read.getHashCount());
+        assertEquals(10000, read.getCount());
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(read.mightContain(List.of("client-" + i)));
+        }
+    }
+
+    protected DocumentModel createAndParseLdt(LDTParser parser, String name, File file) {
+        Blob blob = Blobs.createBlob(file);
+        blob.setFilename(name + ".LDT");
+        DocumentModel doc = session.createDocumentModel("/", name, Constants.DOC_TYPE_LDT);
+        doc.setPropertyValue("file:content", (Serializable) blob);
+        doc = session.createDocument(doc);
+        transactionalFeature.nextTransaction();
+
+        parser.parseAndCreateDocuments(doc, false);
+        transactionalFeature.nextTransaction();
+        return session.getDocument(doc.getRef());
+    }
+
+    protected File createOtherLdtFile() throws Exception {
+        // Same as test.LDT, but record #2 is for another client
+        String content = Files.readString(TestUtils.getSimpleTestFile().toPath(), StandardCharsets.UTF_8);
+        content = content.replace(TestUtils.SIMPLELDT_RECORD2_VALUES_MAP.get("clientId"), OTHER_CLIENT_ID);
+        File otherFile = Files.createTempFile("test-other", ".LDT").toFile();
+        otherFile.deleteOnExit();
+        Files.writeString(otherFile.toPath(), content, StandardCharsets.UTF_8);
+        return otherFile;
+    }
+
+    @Test
+    public void shouldListCandidateLdts() throws Exception {
+
+        File otherFile = createOtherLdtFile();
+
+        // Bloom filter on clientId only
+        LDTParser parser = ldtParserService.newParser("test-index-only");
+        DocumentModel ldtDoc = createAndParseLdt(parser, "test", TestUtils.getSimpleTestFile());
+        DocumentModel otherLdtDoc = createAndParseLdt(parser, "other", otherFile);
+
+        List<String> record2Client = List.of(TestUtils.SIMPLELDT_RECORD2_VALUES_MAP.get("clientId"));
+        assertTrue(LDTParser.mightContain(ldtDoc, "clientId", record2Client));
+        assertFalse(LDTParser.mightContain(otherLdtDoc, "clientId", record2Client));
+        // No such filter => cannot tell
+        assertTrue(LDTParser.mightContain(otherLdtDoc, "taxId", record2Client));
+
+        List<String> ids = ldtParserService.getCandidateLDTDocuments(session, "clientId", record2Client, null)
+                                           .stream()
+                                           .map(DocumentModel::getId)
+                                           .collect(Collectors.toList());
+        assertEquals(List.of(ldtDoc.getId()), ids);
+
+        ids = ldtParserService.getCandidateLDTDocuments(session, "clientId", List.of(OTHER_CLIENT_ID), null)
+                              .stream()
+                              .map(DocumentModel::getId)
+                              .collect(Collectors.toList());
+        assertEquals(List.of(otherLdtDoc.getId()), ids);
+
+        // Record #1 is in both
+        List<String> record1Client = List.of(parser.scanRecords(TestUtils.getSimpleTestFile(), 1)
+                                                   .get(0)
+                                                   .getValue("clientId"));
+        assertEquals(2, ldtParserService.getCandidateLDTDocuments(session, "clientId", record1Client, null).size());
+        assertEquals(1, ldtParserService.getCandidateLDTDocuments(session, "clientId", record1Client,
+                "ecm:name = 'other'").size());
+    }
+
+    @Test
+    public void shouldSearchSeveralLdts() throws Exception {
+
+        File otherFile = createOtherLdtFile();
+
+        // Header index and Bloom filter on clientId
+        LDTParser parser = ldtParserService.newParser("test-index-only");
+        DocumentModel ldtDoc = createAndParseLdt(parser, "test", TestUtils.getSimpleTestFile());
+        DocumentModel otherLdtDoc = createAndParseLdt(parser, "other", otherFile);
+
+        List<String> record2Client = List.of(TestUtils.SIMPLELDT_RECORD2_VALUES_MAP.get("clientId"));
+        List<RecordHit> hits = ldtParserService.searchRecords(session, "clientId", record2Client, null, null);
+        assertEquals(1, hits.size());
+        assertEquals(ldtDoc.getId(), hits.get(0).ldtDocId);
+        assertEquals(TestUtils.SIMPLELDT_RECORD2_STARTOFFSET, hits.get(0).startOffset);
+        assertEquals(TestUtils.SIMPLELDT_RECORD2_RECORDSIZE, hits.get(0).size);
+
+        // Record #1 is in both
+        List<String> record1Client = List.of(parser.scanRecords(TestUtils.getSimpleTestFile(), 1)
+                                                   .get(0)
+                                                   .getValue("clientId"));
+        hits = ldtParserService.searchRecords(session, "clientId", record1Client, null, null);
+        assertEquals(2, hits.size());
+        assertTrue(hits.stream().allMatch(hit -> hit.startOffset == 0));
+        assertTrue(hits.stream().anyMatch(hit -> hit.ldtDocId.equals(otherLdtDoc.getId())));
+
+        // Date range
+        Calendar tomorrow = Calendar.getInstance();
+        tomorrow.add(Calendar.DAY_OF_MONTH, 1);
+        assertTrue(ldtParserService.searchRecords(session, "clientId", record1Client, tomorrow, null).isEmpty());
+        Calendar yesterday = Calendar.getInstance();
+        yesterday.add(Calendar.DAY_OF_MONTH, -1);
+        assertEquals(2,
+                ldtParserService.searchRecords(session, "clientId", record1Client, yesterday, tomorrow).size());
+
+        // Key index (clientId, taxId), built in index-only mode. No Bloom filter.
+        List<String> record2Key = List.of(TestUtils.SIMPLELDT_RECORD2_VALUES_MAP.get("clientId"),
+                TestUtils.SIMPLELDT_RECORD2_VALUES_MAP.get("taxId"));
+        hits = ldtParserService.searchRecords(session, null, record2Key, null, null);
+        assertEquals(1, hits.size());
+        assertEquals(ldtDoc.getId(), hits.get(0).ldtDocId);
+    }
+
+}
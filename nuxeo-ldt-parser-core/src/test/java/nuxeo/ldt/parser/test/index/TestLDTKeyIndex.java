@@ -0,0 +1,292 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.ldt.parser.test.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.List;
+
+import javax.inject.Inject;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.common.utils.FileUtils;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.Blobs;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.platform.test.PlatformFeature;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+import org.nuxeo.runtime.test.runner.TransactionalFeature;
+
+import nuxeo.ldt.parser.service.Constants;
+import nuxeo.ldt.parser.service.LDTParser;
+import nuxeo.ldt.parser.service.LDTParser.LDTInfo;
+import nuxeo.ldt.parser.service.LDTParserService;
+import nuxeo.ldt.parser.service.elements.Record;
+import nuxeo.ldt.parser.service.elements.RecordInfo;
+import nuxeo.ldt.parser.service.index.LDTKeyIndex;
+import nuxeo.ldt.parser.service.index.LDTKeyIndexWriter;
+import nuxeo.ldt.parser.test.TestUtils;
+
+/**
+ * test-bigger.LDT is test.LDT repeated 216 times (648 records). Default key fields are clientId and taxId.
+ *
+ * @since 2021
+ */
+@RunWith(FeaturesRunner.class)
+@Features({ PlatformFeature.class })
+@Deploy("nuxeo.ldt.parser.nuxeo-ldt-parser-core")
+@Deploy("nuxeo.ldt.parser.nuxeo-ldt-parser-core:ldt-parsers-test-contrib.xml")
+public class TestLDTKeyIndex {
+
+    @Inject
+    protected CoreSession session;
+
+    @Inject
+    protected TransactionalFeature transactionalFeature;
+
+    @Inject
+    protected LDTParserService ldtParserService;
+
+    protected static List<String> getRecord2Key() {
+        return List.of(TestUtils.SIMPLELDT_RECORD2_VALUES_MAP.get("clientId"),
+                TestUtils.SIMPLELDT_RECORD2_VALUES_MAP.get("taxId"));
+    }
+
+    protected DocumentModel createLdtDocument(File file) {
+        Blob blob = Blobs.createBlob(file);
+        blob.setFilename(file.getName());
+
+        DocumentModel doc = session.createDocumentModel("/", file.getName(), Constants.DOC_TYPE_LDT);
+        doc.setPropertyValue("file:content", (Serializable) blob);
+        doc = session.createDocument(doc);
+        transactionalFeature.nextTransaction();
+        return doc;
+    }
+
+    @Test
+    public void shouldBuildAndSearchIndex() throws Exception {
+
+        File file = FileUtils.getResourceFileFromContext("test-bigger.LDT");
+        LDTParser parser = ldtParserService.newParser(null);
+        List<RecordInfo> records = parser.scanRecords(file, 1);
+
+        Blob indexBlob = parser.buildKeyIndex(file, file.getName());
+        assertEquals("test-bigger." + LDTKeyIndex.FILE_EXTENSION, indexBlob.getFilename());
+
+        try (LDTKeyIndex index = LDTKeyIndex.open(indexBlob)) {
+            assertEquals(648, index.getCount());
+
+            // Same client every 3 records, found in file order
+            List<LDTKeyIndex.Entry> entries = index.find(getRecord2Key());
+            assertEquals(216, entries.size());
+            for (int i = 0; i < entries.size(); i++) {
+                RecordInfo record = records.get(i * 3 + 1);
+                assertEquals(record.startOffset, entries.get(i).startOffset);
+                assertEquals(record.size, entries.get(i).size);
+            }
+
+            assertTrue(index.find(List.of("DOES-NOT-EXIST", "12")).isEmpty());
+            assertTrue(index.find(List.of(TestUtils.SIMPLELDT_RECORD2_VALUES_MAP.get("clientId"))).isEmpty());
+        }
+    }
+
+    @Test
+    public void shouldIndexOnly() throws Exception {
+
+        DocumentModel doc = createLdtDocument(FileUtils.getResourceFileFromContext("test-bigger.LDT"));
+
+        LDTParser parser = ldtParserService.newParser("test-index-only");
+        LDTInfo info = parser.parseAndCreateDocuments(doc, false);
+        assertEquals(648, info.countRecords);
+        transactionalFeature.nextTransaction();
+
+        // No container, no record
+        doc = session.getDocument(doc.getRef());
+        assertNull(doc.getPropertyValue(Constants.XPATH_LDT_RECORDS_CONTAINER_ID));
+        assertEquals(0, session.query("SELECT * FROM " + parser.getDescriptor().getRecordDocType()).size());
+        assertEquals(648L, ((Number) doc.getPropertyValue(Constants.XPATH_LDT_COUNTRECORDS)).longValue());
+        assertNotNull(doc.getPropertyValue(Constants.XPATH_LDT_RECORD_INDEX));
+        assertNotNull(doc.getPropertyValue(Constants.XPATH_LDT_KEY_INDEX));
+
+        List<Record> found = parser.getRecords(doc, getRecord2Key());
+        assertEquals(216, found.size());
+        TestUtils.checkSimpleTestFileRecord2Values(found.get(0));
+        TestUtils.checkSimpleTestFileRecord2Values(found.get(215));
+    }
+
+    @Test
+    public void shouldIndexOnlyCompressedLdt() throws Exception {
+
+        DocumentModel doc = createLdtDocument(TestUtils.getSimpleTestFile());
+
+        LDTParser parser = ldtParserService.newParser("test-index-only");
+        LDTInfo info = parser.parseAndCreateDocuments(doc, true);
+        assertEquals(TestUtils.SIMPLELDT_STATEMENT_COUNT, info.countRecords);
+        transactionalFeature.nextTransaction();
+
+        doc = session.getDocument(doc.getRef());
+        try (LDTKeyIndex index = parser.openKeyIndex(doc)) {
+            List<LDTKeyIndex.Entry> entries = index.find(getRecord2Key());
+            assertEquals(1, entries.size());
+            // Compressed values
+            assertTrue(entries.get(0).size < 0);
+        }
+
+        List<Record> found = parser.getRecords(doc, getRecord2Key());
+        assertEquals(1, found.size());
+        TestUtils.checkSimpleTestFileRecord2Values(found.get(0));
+    }
+
+    @Test
+    public void shouldSearchWithFewReads() throws Exception {
+
+        File file = FileUtils.getResourceFileFromContext("test-bigger.LDT");
+        LDTParser parser = ldtParserService.newParser(null);
+        List<RecordInfo> records = parser.scanRecords(file, 1);
+
+        // Small fence interval => many blocks, the 216 entries span several of them
+        Blob indexBlob;
+        try (LDTKeyIndexWriter writer = new LDTKeyIndexWriter(16)) {
+            for (RecordInfo record : records) {
+                writer.add(List.of(record.getValue("clientId")), record.startOffset, record.size);
+            }
+            indexBlob = writer.finish(file.getName());
+        }
+
+        try (LDTKeyIndex index = LDTKeyIndex.open(indexBlob.getFile())) {
+            for (int i = 0; i < 3; i++) {
+                List<LDTKeyIndex.Entry> entries = index.find(List.of(records.get(i).getValue("clientId")));
+                assertEquals(216, entries.size());
+                assertEquals(records.get(i).startOffset, entries.get(0).startOffset);
+                assertEquals(records.get(645 + i).startOffset, entries.get(215).startOffset);
+            }
+            assertTrue(index.find(List.of("")).isEmpty());
+            assertTrue(index.find(List.of("ZZZZZZZZZZ")).isEmpty());
+        }
+
+        // Default interval: header + fence + one block
+        try (LDTKeyIndex index = LDTKeyIndex.open(parser.buildKeyIndex(file, file.getName()))) {
+            assertEquals(216, index.find(getRecord2Key()).size());
+            assertEquals(3, index.getReadCount());
+            // Header and fence are read once
+            assertEquals(216, index.find(getRecord2Key()).size());
+            assertEquals(4, index.getReadCount());
+        }
+    }
+
+    @Test
+    public void shouldMergeSortedRuns() throws Exception {
+
+        File file = FileUtils.getResourceFileFromContext("test-bigger.LDT");
+        LDTParser parser = ldtParserService.newParser(null);
+        List<RecordInfo> records = parser.scanRecords(file, 1);
+
+        Blob inMemoryBlob;
+        try (LDTKeyIndexWriter writer = new LDTKeyIndexWriter(16)) {
+            for (RecordInfo record : records) {
+                writer.add(List.of(record.getValue("clientId")), record.startOffset, record.size);
+            }
+            assertEquals(0, writer.getRunCount());
+            inMemoryBlob = writer.finish(file.getName());
+        }
+
+        // A small memory size => the entries are written to several runs, merged by finish
+        Blob mergedBlob;
+        try (LDTKeyIndexWriter writer = new LDTKeyIndexWriter(16, 1000)) {
+            for (RecordInfo record : records) {
+                writer.add(List.of(record.getValue("clientId")), record.startOffset, record.size);
+            }
+            assertTrue(writer.getRunCount() > 1);
+            mergedBlob = writer.finish(file.getName());
+        }
+
+        assertTrue(org.apache.commons.io.FileUtils.contentEquals(inMemoryBlob.getFile(), mergedBlob.getFile()));
+        try (LDTKeyIndex index = LDTKeyIndex.open(mergedBlob)) {
+            assertEquals(records.size(), index.getCount());
+            List<LDTKeyIndex.Entry> entries = index.find(List.of(records.get(1).getValue("clientId")));
+            assertEquals(216, entries.size());
+            assertEquals(records.get(1).startOffset, entries.get(0).startOffset);
+        }
+    }
+
+    @Test
+    public void shouldNotFindLongerKeys() throws Exception {
+
+        String longValue = "L".repeat(LDTKeyIndex.MAX_KEY_WIDTH + 10);
+        Blob indexBlob;
+        try (LDTKeyIndexWriter writer = new LDTKeyIndexWriter()) {
+            writer.add(List.of("CLIENT0001"), 0, 100);
+            writer.add(List.of("CLIENT0002"), 100, 100);
+            indexBlob = writer.finish("short-keys");
+        }
+        try (LDTKeyIndex index = LDTKeyIndex.open(indexBlob)) {
+            assertEquals(1, index.find(List.of("CLIENT0001")).size());
+            // Longer than the keys of the index, even when truncated to MAX_KEY_WIDTH
+            assertTrue(index.find(List.of("CLIENT0001" + longValue)).isEmpty());
+            assertTrue(index.find(List.of("CLIENT0001X")).isEmpty());
+        }
+
+        // Keys longer than MAX_KEY_WIDTH are truncated in the index
+        try (LDTKeyIndexWriter writer = new LDTKeyIndexWriter()) {
+            writer.add(List.of(longValue), 0, 100);
+            writer.add(List.of("CLIENT0002"), 100, 100);
+            indexBlob = writer.finish("long-keys");
+        }
+        try (LDTKeyIndex index = LDTKeyIndex.open(indexBlob)) {
+            assertEquals(LDTKeyIndex.MAX_KEY_WIDTH, index.getKeyWidth());
+            assertEquals(1, index.find(List.of(longValue)).size());
+            assertEquals(1, index.find(List.of(longValue + "more")).size());
+            assertTrue(index.find(List.of("CLIENT0002" + longValue)).isEmpty());
+        }
+    }
+
+    @Test
+    public void shouldBuildHeaderIndexes() throws Exception {
+
+        DocumentModel doc = createLdtDocument(FileUtils.getResourceFileFromContext("test-bigger.LDT"));
+
+        // Header indexes on clientId and on taxId
+        LDTParser parser = ldtParserService.newParser("test-index-only");
+        parser.parseAndCreateDocuments(doc, false);
+        transactionalFeature.nextTransaction();
+
+        doc = session.getDocument(doc.getRef());
+        List<LDTKeyIndex.Entry> entries = parser.findRecords(doc, "clientId",
+                List.of(TestUtils.SIMPLELDT_RECORD2_VALUES_MAP.get("clientId")));
+        assertEquals(216, entries.size());
+        assertEquals(TestUtils.SIMPLELDT_RECORD2_STARTOFFSET, entries.get(0).startOffset);
+
+        List<Record> found = parser.getRecords(doc, "taxId",
+                List.of(TestUtils.SIMPLELDT_RECORD2_VALUES_MAP.get("taxId")));
+        assertEquals(216, found.size());
+        TestUtils.checkSimpleTestFileRecord2Values(found.get(0));
+
+        assertNull(parser.openHeaderIndex(doc, "customRef"));
+    }
+
+}
@@ -0,0 +1,147 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.ldt.parser.test.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.List;
+
+import javax.inject.Inject;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.common.utils.FileUtils;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.platform.test.PlatformFeature;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+import org.nuxeo.runtime.test.runner.TransactionalFeature;
+
+import nuxeo.ldt.parser.service.Constants;
+import nuxeo.ldt.parser.service.LDTParser;
+import nuxeo.ldt.parser.service.LDTParserService;
+import nuxeo.ldt.parser.service.elements.Record;
+import nuxeo.ldt.parser.service.elements.RecordInfo;
+import nuxeo.ldt.parser.service.index.LDTRecordIndex;
+import nuxeo.ldt.parser.test.TestUtils;
+
+/**
+ * test-bigger.LDT is test.LDT repeated 216 times (648 records)
+ *
+ * @since 2021
+ */
+@RunWith(FeaturesRunner.class)
+@Features({ PlatformFeature.class })
+@Deploy("nuxeo.ldt.parser.nuxeo-ldt-parser-core")
+public class TestLDTRecordIndex {
+
+    @Inject
+    protected CoreSession session;
+
+    @Inject
+    protected TransactionalFeature transactionalFeature;
+
+    @Inject
+    protected LDTParserService ldtParserService;
+
+    @Test
+    public void shouldBuildAndReadIndex() throws Exception {
+
+        File file = FileUtils.getResourceFileFromContext("test-bigger.LDT");
+        LDTParser parser = ldtParserService.newParser(null);
+        List<RecordInfo> records = parser.scanRecords(file, 1);
+
+        Blob indexBlob = parser.buildRecordIndex(file, file.getName());
+        assertEquals("test-bigger." + LDTRecordIndex.FILE_EXTENSION, indexBlob.getFilename());
+        assertEquals(LDTRecordIndex.HEADER_SIZE + 648 * LDTRecordIndex.ENTRY_SIZE, indexBlob.getLength());
+
+        try (LDTRecordIndex index = LDTRecordIndex.open(indexBlob)) {
+            assertEquals(648, index.getCount());
+            for (int i = 0; i < records.size(); i++) {
+                RecordInfo record = records.get(i);
+                assertEquals(record.startOffset, index.getStartOffset(i));
+                assertEquals(record.size, index.getSize(i));
+                assertEquals(record.startLine, index.getStartLine(i));
+                assertEquals(parser.computeKeyHash(record), index.getKeyHash(i));
+            }
+
+            // Same client every 3 records
+            List<LDTRecordIndex.Entry> entries = index.findByKeyHash(parser.computeKeyHash(records.get(1)));
+            assertEquals(216, entries.size());
+            assertEquals(1, entries.get(0).recordNumber);
+            assertEquals(TestUtils.SIMPLELDT_RECORD2_STARTOFFSET, entries.get(0).startOffset);
+        }
+    }
+
+    @Test
+    public void shouldStoreIndexWhenParsing() throws Exception {
+
+        DocumentModel doc = session.createDocumentModel("/", "Test", Constants.DOC_TYPE_LDT);
+        doc.setPropertyValue("file:content", (Serializable) TestUtils.getSimpleTestFileBlob());
+        doc = session.createDocument(doc);
+        session.save();
+        transactionalFeature.nextTransaction();
+
+        LDTParser parser = ldtParserService.newParser(null);
+        parser.parseAndCreateDocuments(doc, false);
+        transactionalFeature.nextTransaction();
+
+        doc = session.getDocument(doc.getRef());
+        assertNotNull(doc.getPropertyValue(Constants.XPATH_LDT_RECORD_INDEX));
+        try (LDTRecordIndex index = parser.openRecordIndex(doc)) {
+            assertEquals(TestUtils.SIMPLELDT_STATEMENT_COUNT, index.getCount());
+            assertEquals(TestUtils.SIMPLELDT_RECORD3_STARTOFFSET, index.getStartOffset(2));
+        }
+
+        Record record = parser.getRecord(doc, 1);
+        TestUtils.checkSimpleTestFileRecord2Values(record);
+    }
+
+    @Test
+    public void shouldIndexCompressedLdt() throws Exception {
+
+        DocumentModel doc = session.createDocumentModel("/", "Test", Constants.DOC_TYPE_LDT);
+        doc.setPropertyValue("file:content", (Serializable) TestUtils.getSimpleTestFileBlob());
+        doc = session.createDocument(doc);
+        session.save();
+        transactionalFeature.nextTransaction();
+
+        LDTParser parser = ldtParserService.newParser(null);
+        parser.parseAndCreateDocuments(doc, true);
+        transactionalFeature.nextTransaction();
+
+        doc = session.getDocument(doc.getRef());
+        try (LDTRecordIndex index = parser.openRecordIndex(doc)) {
+            assertEquals(TestUtils.SIMPLELDT_STATEMENT_COUNT, index.getCount());
+            // Compressed values
+            assertTrue(index.getSize(1) < 0);
+        }
+
+        Record record = parser.getRecord(doc, 1);
+        TestUtils.checkSimpleTestFileRecord2Values(record);
+    }
+
+}
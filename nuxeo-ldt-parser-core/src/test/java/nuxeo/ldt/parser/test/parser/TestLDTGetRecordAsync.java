@@ -0,0 +1,166 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.ldt.parser.test.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.inject.Inject;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.common.utils.FileUtils;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.core.api.impl.blob.FileBlob;
+import org.nuxeo.ecm.platform.test.PlatformFeature;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+
+import nuxeo.ldt.parser.service.LDTParser;
+import nuxeo.ldt.parser.service.LDTParserService;
+import nuxeo.ldt.parser.service.elements.Record;
+import nuxeo.ldt.parser.service.elements.RecordInfo;
+import nuxeo.ldt.parser.service.range.FileRangeReader;
+import nuxeo.ldt.parser.service.utils.LDTRecordExecutors;
+import nuxeo.ldt.parser.test.TestUtils;
+
+/**
+ * test-bigger.LDT has 648 records
+ *
+ * @since 2021
+ */
+@RunWith(FeaturesRunner.class)
+@Features({ PlatformFeature.class })
+@Deploy("nuxeo.ldt.parser.nuxeo-ldt-parser-core")
+@Deploy("nuxeo.ldt.parser.nuxeo-ldt-parser-core:ldt-parsers-test-contrib.xml")
+public class TestLDTGetRecordAsync {
+
+    @Inject
+    protected LDTParserService ldtParserService;
+
+    // Slow reads, counting the reads in progress. Used by the "test-slow-reader" parser
+    public static class SlowRangeReader extends FileRangeReader {
+
+        protected static final AtomicInteger inFlight = new AtomicInteger();
+
+        protected static final AtomicInteger maxInFlight = new AtomicInteger();
+
+        @Override
+        public byte[] read(Blob blob, long position, int length) throws IOException {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(2);
+                return super.read(blob, position, length);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+
+    @Test
+    public void shouldGetRecordAsync() throws Exception {
+
+        Blob blob = TestUtils.getSimpleTestFileBlob();
+        LDTParser parser = ldtParserService.newParser(null);
+        CompletableFuture<Record> future = parser.getRecordAsync(blob, TestUtils.SIMPLELDT_RECORD2_STARTOFFSET,
+                TestUtils.SIMPLELDT_RECORD2_RECORDSIZE);
+
+        TestUtils.checkSimpleTestFileRecord2Values(future.get());
+    }
+
+    @Test
+    public void shouldGetPagesAsync() throws Exception {
+
+        Blob blob = TestUtils.getSimpleTestFileBlob();
+        LDTParser parser = ldtParserService.newParser(null);
+        Record expected = parser.getRecord(blob, TestUtils.SIMPLELDT_RECORD3_STARTOFFSET,
+                TestUtils.SIMPLELDT_RECORD3_RECORDSIZE, 2, 3);
+        Record record = parser.getRecordAsync(blob, TestUtils.SIMPLELDT_RECORD3_STARTOFFSET,
+                TestUtils.SIMPLELDT_RECORD3_RECORDSIZE, 2, 3).get();
+
+        assertNotNull(record);
+        assertEquals(expected.toJson(), record.toJson());
+    }
+
+    @Test
+    public void shouldReturnNullWhenNotFound() throws Exception {
+
+        Blob blob = TestUtils.getSimpleTestFileBlob();
+        LDTParser parser = ldtParserService.newParser(null);
+
+        assertNull(parser.getRecordAsync(blob, 90000000, 10000).get());
+    }
+
+    @Test
+    public void shouldFailWithInvalidRange() throws Exception {
+
+        Blob blob = TestUtils.getSimpleTestFileBlob();
+        LDTParser parser = ldtParserService.newParser(null);
+        try {
+            parser.getRecordAsync(blob, -1, 10000).get();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof NuxeoException);
+            return;
+        }
+        throw new AssertionError("Should have failed");
+    }
+
+    @Test
+    public void shouldCapConcurrentReads() throws Exception {
+
+        File file = FileUtils.getResourceFileFromContext("test-bigger.LDT");
+        Blob blob = new FileBlob(file);
+
+        LDTParser parser = ldtParserService.newParser("test-slow-reader");
+
+        List<RecordInfo> infos = parser.scanRecords(file, 1);
+        assertEquals(648, infos.size());
+
+        List<CompletableFuture<Record>> futures = new ArrayList<>();
+        for (RecordInfo info : infos) {
+            futures.add(parser.getRecordAsync(blob, info.startOffset, info.size));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get();
+
+        for (int i = 0; i < infos.size(); i++) {
+            Record expected = parser.getRecord(blob, infos.get(i).startOffset, infos.get(i).size);
+            assertEquals(expected.toJson(), futures.get(i).get().toJson());
+        }
+
+        int maxConcurrency = LDTRecordExecutors.getMaxConcurrency(LDTRecordExecutors.LOCAL_PROVIDER);
+        assertTrue(SlowRangeReader.maxInFlight.get() > 1);
+        assertTrue(SlowRangeReader.maxInFlight.get() <= maxConcurrency);
+    }
+
+}
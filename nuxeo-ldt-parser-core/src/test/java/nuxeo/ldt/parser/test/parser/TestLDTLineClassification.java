@@ -0,0 +1,100 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.ldt.parser.test.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.regex.Matcher;
+
+import javax.inject.Inject;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.common.utils.FileUtils;
+import org.nuxeo.ecm.platform.test.PlatformFeature;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+
+import nuxeo.ldt.parser.service.LDTParser;
+import nuxeo.ldt.parser.service.LDTParserService;
+import nuxeo.ldt.parser.service.descriptors.LDTHeaderDescriptor;
+import nuxeo.ldt.parser.service.descriptors.LDTParserDescriptor;
+import nuxeo.ldt.parser.service.elements.Item;
+
+/**
+ * Checks the pre-classification of the lines (see {@code LDTLineDispatcher}) gives the same items as trying all the
+ * patterns, on every line of test-bigger.LDT.
+ * 
+ * @since 2021
+ */
+@RunWith(FeaturesRunner.class)
+@Features({ PlatformFeature.class })
+@Deploy("nuxeo.ldt.parser.nuxeo-ldt-parser-core")
+public class TestLDTLineClassification {
+
+    @Inject
+    protected LDTParserService ldtParserService;
+
+    @Test
+    public void shouldParseItemsLikeTryingAllPatterns() throws Exception {
+
+        File file = FileUtils.getResourceFileFromContext("test-bigger.LDT");
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.ISO_8859_1);
+        LDTParser parser = ldtParserService.newParser(null);
+        LDTParserDescriptor config = parser.getDescriptor();
+
+        int itemCount = 0;
+        for (String line : lines) {
+            Item expected = parseItemTryingAllPatterns(config, line);
+            Item item = parser.parseItem(line);
+            if (expected == null) {
+                assertNull(line, item);
+            } else {
+                assertNotNull(line, item);
+                assertEquals(line, expected.getType(), item.getType());
+                assertEquals(line, expected.getFieldsAndValues(), item.getFieldsAndValues());
+                assertEquals(line, expected.isEndOfPage(), item.isEndOfPage());
+                itemCount += 1;
+            }
+        }
+        assertEquals(22464, itemCount);
+    }
+
+    // What LDTParser#parseItem did before the pre-classification
+    protected Item parseItemTryingAllPatterns(LDTParserDescriptor config, String line) {
+
+        if (config.getDetailsLineMinSize() > 0 && line.length() < config.getDetailsLineMinSize()) {
+            return null;
+        }
+        for (LDTHeaderDescriptor header : config.getHeaders()) {
+            Matcher m = header.getCompiledPattern().matcher(line);
+            if (m.matches()) {
+                return null;
+            }
+        }
+        return new Item(line, config);
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.ldt.parser.test.parser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import nuxeo.ldt.parser.service.utils.LDTLineDispatcher;
+
+public class TestLDTLineDispatcher {
+
+    @Test
+    public void shouldGetLeadingLiteral() {
+        assertEquals("$12345ABCD$",
+                LDTLineDispatcher.getLeadingLiteral("^\\$12345ABCD\\$ *TYPE=(BANK.{4}) *CLIENT TYPE: *([a-zA-Z])"));
+        assertEquals("", LDTLineDispatcher.getLeadingLiteral("^([0-9]*) *([0-9]{2}/[0-9]{2}) *OPENING BALANCE"));
+        assertEquals("TOTAL", LDTLineDispatcher.getLeadingLiteral("TOTAL *(\\d+)"));
+        assertEquals("TOTA", LDTLineDispatcher.getLeadingLiteral("TOTAL?(\\d+)"));
+        assertEquals("AB", LDTLineDispatcher.getLeadingLiteral("AB+C"));
+        assertEquals("12.", LDTLineDispatcher.getLeadingLiteral("12\\.\\d"));
+        assertEquals("", LDTLineDispatcher.getLeadingLiteral("ABC|XYZ"));
+        assertEquals("AB", LDTLineDispatcher.getLeadingLiteral("AB(C|D)"));
+        assertEquals("AB", LDTLineDispatcher.getLeadingLiteral("AB[|]C"));
+        assertEquals("", LDTLineDispatcher.getLeadingLiteral("(?i)ABC"));
+        assertEquals("", LDTLineDispatcher.getLeadingLiteral("\\QAB|C\\E"));
+        assertEquals("", LDTLineDispatcher.getLeadingLiteral(null));
+    }
+
+    @Test
+    public void shouldGetRequiredLiteral() {
+        assertEquals("CLOSING BALANCE", LDTLineDispatcher.getRequiredLiteral(
+                "^([0-9]*) *([0-9]{2}/[0-9]{2}) *CLOSING BALANCE *([0-9]*.[0-9]{2}-?) *"));
+        assertEquals("$12345ABCD$", LDTLineDispatcher.getRequiredLiteral("^\\$12345ABCD\\$ *TYPE=(BANK.{4})"));
+        assertEquals(" TOTA", LDTLineDispatcher.getRequiredLiteral("(\\d+) TOTAL?S (\\d+)"));
+        assertEquals(" TOTAL", LDTLineDispatcher.getRequiredLiteral("[A-Z]+ TOTAL+ (.*)"));
+        assertEquals("LABEL: ", LDTLineDispatcher.getRequiredLiteral("\\d{2}LABEL: \\w{2,4}?X"));
+        assertEquals("ABC", LDTLineDispatcher.getRequiredLiteral("[]a)]ABC"));
+        assertEquals("", LDTLineDispatcher.getRequiredLiteral("(\\d+) TOTAL|(\\d+) SUM"));
+        assertEquals("", LDTLineDispatcher.getRequiredLiteral("(?i)(\\d+) TOTAL"));
+        assertEquals("AB", LDTLineDispatcher.getRequiredLiteral("AB\\x41CDEF"));
+        assertEquals("", LDTLineDispatcher.getRequiredLiteral("(\\d+)"));
+    }
+
+    @Test
+    public void shouldKeepTheOrderOfTheConfiguration() {
+        // 0: no prefix, 1: "CL", 2: "OP", 3: "X" at column 3, 4: "CLOSE"
+        LDTLineDispatcher dispatcher = new LDTLineDispatcher(Arrays.asList(null, "CL", "OP", "X", "CLOSE"),
+                Arrays.asList(0, 0, 0, 3, 0));
+
+        assertArrayEquals(new int[] { 0, 1, 4 }, dispatcher.getCandidates("CLOSE 12"));
+        assertArrayEquals(new int[] { 0, 1, 3 }, dispatcher.getCandidates("CL X 12"));
+        assertArrayEquals(new int[] { 0, 2 }, dispatcher.getCandidates("OPEN 12"));
+        assertArrayEquals(new int[] { 0 }, dispatcher.getCandidates("O"));
+        assertArrayEquals(new int[] { 0, 3 }, dispatcher.getCandidates("123X"));
+        assertArrayEquals(new int[] { 0 }, dispatcher.getCandidates(""));
+    }
+
+    @Test
+    public void shouldFindTheSameFirstMatch() {
+        List<String> regexes = List.of("^\\$12345ABCD\\$ *TYPE=(BANK.{4}).*", "^([0-9]*) *OPENING BALANCE *(.*)",
+                "TOTAL *(\\d+)", "TOTAL(.*)", "([0-9]*) *CLOSING BALANCE *(.*)",
+                "^([0-9]*) *(\\d{2}/\\d{2}) *(.*?) *(\\d+\\.\\d{2}-?) *([A-Z0-9]*)",
+                "(.*)");
+        List<Pattern> patterns = new ArrayList<>();
+        List<String> prefixes = new ArrayList<>();
+        List<String> requiredLiterals = new ArrayList<>();
+        for (String regex : regexes) {
+            patterns.add(Pattern.compile(regex));
+            prefixes.add(LDTLineDispatcher.getLeadingLiteral(regex));
+            requiredLiterals.add(LDTLineDispatcher.getRequiredLiteral(regex));
+        }
+        LDTLineDispatcher dispatcher = new LDTLineDispatcher(prefixes, null, requiredLiterals);
+
+        List<String> lines = List.of("$12345ABCD$ TYPE=BANK1234 CLIENT", "   OPENING BALANCE 12.00", "TOTAL 12",
+                "TOTAL ABC", "12 CLOSING BALANCE 12.00", "12 12/03  CLOSING BALANCE 12.00",
+                "01 12/03  Some label  12.50- AB12", "anything", "");
+        for (String line : lines) {
+            assertEquals(line, firstMatch(patterns, null, line),
+                    firstMatch(patterns, dispatcher.getCandidates(line), line));
+        }
+    }
+
+    protected int firstMatch(List<Pattern> patterns, int[] candidates, String line) {
+        int count = candidates == null ? patterns.size() : candidates.length;
+        for (int i = 0; i < count; i++) {
+            int idx = candidates == null ? i : candidates[i];
+            if (patterns.get(idx).matcher(line).matches()) {
+                return idx;
+            }
+        }
+        return -1;
+    }
+}
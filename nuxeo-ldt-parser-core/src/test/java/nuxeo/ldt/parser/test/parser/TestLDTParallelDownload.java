@@ -0,0 +1,151 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.ldt.parser.test.parser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.inject.Inject;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.common.utils.FileUtils;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.Blobs;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.platform.test.PlatformFeature;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+
+import nuxeo.ldt.parser.service.LDTParser;
+import nuxeo.ldt.parser.service.LDTParserService;
+import nuxeo.ldt.parser.service.elements.RecordInfo;
+import nuxeo.ldt.parser.service.utils.LDTParallelDownload;
+import nuxeo.ldt.parser.service.utils.LDTRecordScanner;
+
+/**
+ * The ranges are read from the local file (no S3 in unit tests), slowly, so the scanner has to wait for the chunks.
+ *
+ * @since 2021
+ */
+@RunWith(FeaturesRunner.class)
+@Features({ PlatformFeature.class })
+@Deploy("nuxeo.ldt.parser.nuxeo-ldt-parser-core")
+public class TestLDTParallelDownload {
+
+    @Inject
+    protected LDTParserService ldtParserService;
+
+    protected static class LocalParallelDownload extends LDTParallelDownload {
+
+        protected byte[] content;
+
+        protected long failingChunkStart = -1;
+
+        public LocalParallelDownload(Blob blob, byte[] content, int threads, long chunkSize) {
+            super(blob, threads, chunkSize);
+            this.content = content;
+        }
+
+        @Override
+        protected InputStream openRange(long start, long end) throws IOException {
+            if (start == failingChunkStart) {
+                throw new IOException("Simulated error");
+            }
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new ByteArrayInputStream(Arrays.copyOfRange(content, (int) start, (int) end));
+        }
+    }
+
+    @Test
+    public void shouldScanWhileDownloading() throws Exception {
+
+        File file = FileUtils.getResourceFileFromContext("test-bigger.LDT");
+        assertNotNull(file);
+        Blob blob = Blobs.createBlob(file);
+        byte[] content = Files.readAllBytes(file.toPath());
+
+        LDTParser parser = ldtParserService.newParser(null);
+        List<RecordInfo> expected = parser.scanRecords(file, 1);
+        assertEquals(648, expected.size());
+
+        List<RecordInfo> records = new ArrayList<>();
+        try (LDTParallelDownload download = new LocalParallelDownload(blob, content, 4,
+                LDTParallelDownload.MIN_CHUNK_SIZE)) {
+            download.start();
+            try (LDTRecordScanner scanner = new LDTRecordScanner(parser, download.getFile(),
+                    download.getChunkSize())) {
+                scanner.setAvailability(download);
+                for (RecordInfo record : scanner) {
+                    records.add(record);
+                }
+            }
+            assertEquals(content.length, download.getAvailable());
+            assertArrayEquals(content, Files.readAllBytes(download.getFile().toPath()));
+
+            download.close();
+            assertFalse(download.getFile().exists());
+        }
+
+        assertEquals(expected.size(), records.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).startOffset, records.get(i).startOffset);
+            assertEquals(expected.get(i).size, records.get(i).size);
+            assertEquals(expected.get(i).startLine, records.get(i).startLine);
+        }
+    }
+
+    @Test
+    public void shouldFailWhenAChunkCannotBeDownloaded() throws Exception {
+
+        File file = FileUtils.getResourceFileFromContext("test-bigger.LDT");
+        Blob blob = Blobs.createBlob(file);
+        byte[] content = Files.readAllBytes(file.toPath());
+
+        try (LocalParallelDownload download = new LocalParallelDownload(blob, content, 2,
+                LDTParallelDownload.MIN_CHUNK_SIZE)) {
+            download.failingChunkStart = 2 * download.getChunkSize();
+            download.start();
+            try {
+                download.awaitAvailable(content.length);
+                fail("The download should have failed");
+            } catch (NuxeoException e) {
+                assertEquals("Simulated error", e.getCause().getMessage());
+            }
+        }
+    }
+
+}
@@ -295,6 +295,23 @@ public class TestLDTParser {
 
     }
 
+    @Test
+    public void testGetRecordJson() throws JacksonException {
+
+        Blob blob = TestUtils.getSimpleTestFileBlob();
+        LDTParser parser = ldtParserService.newParser(null);
+        String jsonStr = parser.getRecordJson(blob, TestUtils.SIMPLELDT_RECORD2_STARTOFFSET,
+                TestUtils.SIMPLELDT_RECORD2_RECORDSIZE);
+        TestUtils.checkSimpleTestFileRecord2Values(jsonStr);
+
+        Record record = parser.getRecord(blob, TestUtils.SIMPLELDT_RECORD3_STARTOFFSET,
+                TestUtils.SIMPLELDT_RECORD3_RECORDSIZE, 2, 3);
+        assertEquals(record.toJson(), parser.getRecordJson(blob, TestUtils.SIMPLELDT_RECORD3_STARTOFFSET,
+                TestUtils.SIMPLELDT_RECORD3_RECORDSIZE, 2, 3));
+
+        assertNull(parser.getRecordJson(blob, 90000000, 10000));
+    }
+
     @Test
     public void testRecordObject2JsonNoRoot() throws JacksonException {
 
@@ -0,0 +1,138 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.ldt.parser.test.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import javax.inject.Inject;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.common.utils.FileUtils;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.platform.test.PlatformFeature;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+
+import nuxeo.ldt.parser.service.LDTParser;
+import nuxeo.ldt.parser.service.LDTParserService;
+import nuxeo.ldt.parser.service.descriptors.LDTColumnDescriptor;
+import nuxeo.ldt.parser.service.descriptors.LDTHeaderDescriptor;
+import nuxeo.ldt.parser.service.elements.HeaderLine;
+import nuxeo.ldt.parser.service.elements.Item;
+import nuxeo.ldt.parser.service.elements.Record;
+import nuxeo.ldt.parser.test.TestUtils;
+
+/**
+ * The "test-columns" parser (see ldt-parsers-test-contrib.xml) reads the fields at fixed columns, it must give the
+ * same values as the Regex of the default parser.
+ * 
+ * @since 2021
+ */
+@RunWith(FeaturesRunner.class)
+@Features({ PlatformFeature.class })
+@Deploy("nuxeo.ldt.parser.nuxeo-ldt-parser-core")
+@Deploy("nuxeo.ldt.parser.nuxeo-ldt-parser-core:ldt-parsers-test-contrib.xml")
+public class TestLDTParserColumns {
+
+    protected static final String COLUMNS_PARSER = "test-columns";
+
+    @Inject
+    protected LDTParserService ldtParserService;
+
+    @Test
+    public void shouldExtractColumns() {
+        String line = "2   01/03     OPENING BALANCE";
+
+        assertEquals("01/03", new LDTColumnDescriptor("date", 4, 14, true).extract(line));
+        assertEquals("01/03     ", new LDTColumnDescriptor("date", 4, 14, false).extract(line));
+        assertEquals("OPENING BALANCE", new LDTColumnDescriptor("label", 14, null, true).extract(line));
+        // Clipped to the line
+        assertEquals("BALANCE", new LDTColumnDescriptor("label", 22, 60, true).extract(line));
+        assertEquals("", new LDTColumnDescriptor("amount", 60, null, true).extract(line));
+    }
+
+    @Test
+    public void shouldParseRecordWithColumns() throws Exception {
+
+        Blob blob = TestUtils.getSimpleTestFileBlob();
+        LDTParser parser = ldtParserService.newParser(COLUMNS_PARSER);
+
+        Record record = parser.getRecord(blob, TestUtils.SIMPLELDT_RECORD2_STARTOFFSET,
+                TestUtils.SIMPLELDT_RECORD2_RECORDSIZE);
+        TestUtils.checkSimpleTestFileRecord2Values(record);
+
+        Item item = record.getItems().get(0);
+        assertEquals("OpeningBalance", item.getType());
+        assertEquals("999.77", item.getValue("amount"));
+
+        record = parser.getRecord(blob, TestUtils.SIMPLELDT_RECORD3_STARTOFFSET,
+                TestUtils.SIMPLELDT_RECORD3_RECORDSIZE);
+        assertEquals(TestUtils.SIMPLELDT_RECORD3_PAGE_COUNT, record.getPageCount());
+    }
+
+    @Test
+    public void shouldGiveTheSameValuesAsTheRegex() throws Exception {
+
+        File file = FileUtils.getResourceFileFromContext("test-bigger.LDT");
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.ISO_8859_1);
+        LDTParser regexParser = ldtParserService.newParser(null);
+        LDTParser columnsParser = ldtParserService.newParser(COLUMNS_PARSER);
+
+        int headerCount = 0;
+        int itemCount = 0;
+        for (String line : lines) {
+            HeaderLine expectedHeader = regexParser.parseRecordHeader(line, 1);
+            HeaderLine header = columnsParser.parseRecordHeader(line, 1);
+            if (expectedHeader != null) {
+                assertNotNull(line, header);
+                for (LDTHeaderDescriptor headerDesc : regexParser.getDescriptor().getHeaders()) {
+                    for (String field : headerDesc.getFields()) {
+                        assertEquals(line, expectedHeader.getValue(field), header.getValue(field));
+                    }
+                }
+                headerCount += 1;
+                continue;
+            }
+            assertNull(line, header);
+
+            Item expected = regexParser.parseItem(line);
+            Item item = columnsParser.parseItem(line);
+            if (expected == null) {
+                assertNull(line, item);
+            } else {
+                assertNotNull(line, item);
+                assertEquals(line, expected.getType(), item.getType());
+                assertEquals(line, expected.getFieldsAndValues(), item.getFieldsAndValues());
+                assertEquals(line, expected.isEndOfPage(), item.isEndOfPage());
+                itemCount += 1;
+            }
+        }
+        assertEquals(2160, headerCount);
+        assertEquals(22464, itemCount);
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.ldt.parser.test.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import javax.inject.Inject;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.platform.test.PlatformFeature;
+import org.nuxeo.runtime.kv.KeyValueService;
+import org.nuxeo.runtime.kv.KeyValueStore;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+
+import nuxeo.ldt.parser.service.LDTParser;
+import nuxeo.ldt.parser.service.LDTParserService;
+import nuxeo.ldt.parser.service.utils.LDTRecordCache;
+import nuxeo.ldt.parser.service.utils.LDTRecordJsonStore;
+import nuxeo.ldt.parser.service.utils.LDTRecordKey;
+import nuxeo.ldt.parser.test.TestUtils;
+
+/**
+ * The in-memory cache is cleared before each call, so the JSON comes from the key/value store.
+ *
+ * @since 2021
+ */
+@RunWith(FeaturesRunner.class)
+@Features({ PlatformFeature.class })
+@Deploy("org.nuxeo.runtime.kv")
+@Deploy("nuxeo.ldt.parser.nuxeo-ldt-parser-core")
+@Deploy("nuxeo.ldt.parser.nuxeo-ldt-parser-core:ldt-parsers-test-contrib.xml")
+public class TestLDTRecordJsonStore {
+
+    // recordJsonKeyValueStore of the "test-json-store" parser
+    protected static final String STORE_NAME = "ldtRecordJsonTest";
+
+    protected static final String PARSER_NAME = "test-json-store";
+
+    @Inject
+    protected LDTParserService ldtParserService;
+
+    @Inject
+    protected KeyValueService keyValueService;
+
+    @Before
+    public void setUp() {
+        clearRecordCache();
+    }
+
+    @After
+    public void tearDown() {
+        clearRecordCache();
+    }
+
+    protected void clearRecordCache() {
+        LDTRecordCache cache = LDTRecordCache.getInstance();
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
+    protected Blob getBlob(String digest) {
+        Blob blob = TestUtils.getSimpleTestFileBlob();
+        blob.setDigest(digest);
+        return blob;
+    }
+
+    @Test
+    public void shouldStoreTheJsonCompressed() throws Exception {
+
+        Blob blob = getBlob("digest-store");
+        LDTParser parser = ldtParserService.newParser(PARSER_NAME);
+        String json = parser.getRecordJson(blob, TestUtils.SIMPLELDT_RECORD2_STARTOFFSET,
+                TestUtils.SIMPLELDT_RECORD2_RECORDSIZE);
+        TestUtils.checkSimpleTestFileRecord2Values(json);
+
+        LDTRecordKey key = LDTRecordKey.of(parser.getName(), blob, TestUtils.SIMPLELDT_RECORD2_STARTOFFSET,
+                TestUtils.SIMPLELDT_RECORD2_RECORDSIZE, LDTRecordKey.NO_PAGE, LDTRecordKey.NO_PAGE);
+        byte[] stored = keyValueService.getKeyValueStore(STORE_NAME).get(LDTRecordJsonStore.KEY_PREFIX + key);
+        assertNotNull(stored);
+        assertEquals(json, LDTRecordJsonStore.expand(stored));
+        assertTrue(stored.length < json.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    @Test
+    public void shouldGetTheJsonFromTheStore() throws Exception {
+
+        Blob blob = getBlob("digest-get");
+        LDTParser parser = ldtParserService.newParser(PARSER_NAME);
+        LDTRecordJsonStore store = LDTRecordJsonStore.getInstance(STORE_NAME);
+
+        // Another node parsed the record and stored its JSON
+        LDTRecordKey key = LDTRecordKey.of(parser.getName(), blob, 0, 10, LDTRecordKey.NO_PAGE,
+                LDTRecordKey.NO_PAGE);
+        store.put(key, "{\"fromStore\": true}", 60);
+        long hits = store.getStats().hits;
+
+        assertEquals("{\"fromStore\": true}", parser.getRecordJson(blob, 0, 10));
+        assertEquals(hits + 1, store.getStats().hits);
+    }
+
+    @Test
+    public void shouldIgnoreInvalidValues() throws Exception {
+
+        Blob blob = getBlob("digest-invalid");
+        LDTParser parser = ldtParserService.newParser(PARSER_NAME);
+        LDTRecordJsonStore store = LDTRecordJsonStore.getInstance(STORE_NAME);
+
+        LDTRecordKey key = LDTRecordKey.of(parser.getName(), blob, TestUtils.SIMPLELDT_RECORD2_STARTOFFSET,
+                TestUtils.SIMPLELDT_RECORD2_RECORDSIZE, LDTRecordKey.NO_PAGE, LDTRecordKey.NO_PAGE);
+        KeyValueStore kvStore = keyValueService.getKeyValueStore(STORE_NAME);
+        kvStore.put(LDTRecordJsonStore.KEY_PREFIX + key, "not gzip".getBytes(StandardCharsets.UTF_8));
+        long errors = store.getStats().errors;
+
+        // Read from the LDT, and stored again
+        String json = parser.getRecordJson(blob, TestUtils.SIMPLELDT_RECORD2_STARTOFFSET,
+                TestUtils.SIMPLELDT_RECORD2_RECORDSIZE);
+        TestUtils.checkSimpleTestFileRecord2Values(json);
+        assertEquals(errors + 1, store.getStats().errors);
+        assertEquals(json, LDTRecordJsonStore.expand(kvStore.get(LDTRecordJsonStore.KEY_PREFIX + key)));
+    }
+
+}
@@ -0,0 +1,145 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.ldt.parser.test.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import javax.inject.Inject;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.common.utils.FileUtils;
+import org.nuxeo.ecm.platform.test.PlatformFeature;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+
+import nuxeo.ldt.parser.service.LDTParser;
+import nuxeo.ldt.parser.service.LDTParserService;
+import nuxeo.ldt.parser.service.elements.RecordInfo;
+import nuxeo.ldt.parser.service.utils.LDTRecordScanner;
+import nuxeo.ldt.parser.test.TestUtils;
+
+/**
+ * See TestUtils for the expected values in test.LDT
+ *
+ * @since 2021
+ */
+@RunWith(FeaturesRunner.class)
+@Features({ PlatformFeature.class })
+@Deploy("nuxeo.ldt.parser.nuxeo-ldt-parser-core")
+public class TestLDTRecordScanner {
+
+    @Inject
+    protected LDTParserService ldtParserService;
+
+    protected void checkSimpleTestFile(File file, long mappingSize) throws IOException {
+
+        LDTParser parser = ldtParserService.newParser(null);
+        try (LDTRecordScanner scanner = new LDTRecordScanner(parser, file, mappingSize)) {
+
+            RecordInfo record1 = scanner.nextRecord();
+            assertNotNull(record1);
+            assertEquals(0, record1.startOffset);
+            assertEquals(TestUtils.SIMPLELDT_RECORD2_STARTOFFSET, record1.size);
+            assertEquals(1, record1.startLine);
+
+            RecordInfo record2 = scanner.nextRecord();
+            assertNotNull(record2);
+            assertEquals(TestUtils.SIMPLELDT_RECORD2_STARTOFFSET, record2.startOffset);
+            assertEquals(TestUtils.SIMPLELDT_RECORD2_RECORDSIZE, record2.size);
+            assertEquals(27, record2.startLine);
+            assertEquals(TestUtils.SIMPLELDT_RECORD2_VALUES_MAP.get("clientId"), record2.getValue("clientId"));
+            assertEquals(TestUtils.SIMPLELDT_RECORD2_VALUES_MAP.get("clientName"), record2.getValue("clientName"));
+
+            RecordInfo record3 = scanner.nextRecord();
+            assertNotNull(record3);
+            assertEquals(TestUtils.SIMPLELDT_RECORD3_STARTOFFSET, record3.startOffset);
+            assertEquals(TestUtils.SIMPLELDT_RECORD3_RECORDSIZE, record3.size);
+            assertEquals(54, record3.startLine);
+
+            assertNull(scanner.nextRecord());
+            assertEquals(file.length(), scanner.getPosition());
+        }
+    }
+
+    @Test
+    public void shouldScanSimpleTestFile() throws IOException {
+        checkSimpleTestFile(TestUtils.getSimpleTestFile(), LDTRecordScanner.DEFAULT_MAPPING_SIZE);
+    }
+
+    @Test
+    public void shouldScanWithSmallMappingWindows() throws IOException {
+        // Smaller than a line => windows are remapped and extended all along the file
+        checkSimpleTestFile(TestUtils.getSimpleTestFile(), 50);
+    }
+
+    @Test
+    public void shouldGetExactOffsetsWithMultibytesChars() throws IOException {
+
+        // "é" is 2 bytes in UTF-8: record #2 is one byte bigger, record #3 starts one byte later
+        String content = Files.readString(TestUtils.getSimpleTestFile().toPath(), StandardCharsets.UTF_8);
+        content = content.replace("Ah Que Coucou ", "Ah Que Coucoué");
+        File file = Files.createTempFile("test-utf8", ".LDT").toFile();
+        file.deleteOnExit();
+        Files.writeString(file.toPath(), content, StandardCharsets.UTF_8);
+
+        LDTParser parser = ldtParserService.newParser(null);
+        try (LDTRecordScanner scanner = new LDTRecordScanner(parser, file)) {
+            scanner.nextRecord();
+            RecordInfo record2 = scanner.nextRecord();
+            assertEquals(TestUtils.SIMPLELDT_RECORD2_RECORDSIZE + 1, record2.size);
+            assertEquals("Ah Que Coucoué", record2.getValue("clientName"));
+
+            RecordInfo record3 = scanner.nextRecord();
+            assertEquals(TestUtils.SIMPLELDT_RECORD3_STARTOFFSET + 1, record3.startOffset);
+            assertEquals(TestUtils.SIMPLELDT_RECORD3_RECORDSIZE, record3.size);
+        }
+    }
+
+    @Test
+    public void shouldScanInParallelWithSameResults() throws IOException {
+
+        File file = FileUtils.getResourceFileFromContext("test-bigger.LDT");
+        assertNotNull(file);
+
+        LDTParser parser = ldtParserService.newParser(null);
+        List<RecordInfo> sequential = parser.scanRecords(file, 1);
+        assertEquals(648, sequential.size());
+
+        for (int parallelism : new int[] { 2, 3, 8, 1000 }) {
+            List<RecordInfo> parallel = parser.scanRecords(file, parallelism);
+            assertEquals(sequential.size(), parallel.size());
+            for (int i = 0; i < sequential.size(); i++) {
+                assertEquals(sequential.get(i).startOffset, parallel.get(i).startOffset);
+                assertEquals(sequential.get(i).size, parallel.get(i).size);
+                assertEquals(sequential.get(i).startLine, parallel.get(i).startLine);
+            }
+        }
+    }
+
+}
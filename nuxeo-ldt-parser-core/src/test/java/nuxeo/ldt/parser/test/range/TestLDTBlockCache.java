@@ -0,0 +1,192 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.ldt.parser.test.range;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.inject.Inject;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.common.utils.FileUtils;
+import org.nuxeo.ecm.platform.test.PlatformFeature;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+
+import nuxeo.ldt.parser.service.LDTParser;
+import nuxeo.ldt.parser.service.LDTParserService;
+import nuxeo.ldt.parser.service.elements.RecordInfo;
+import nuxeo.ldt.parser.service.range.LDTBlockCache;
+
+/**
+ * The blocks are fetched from the local file (no S3 in unit tests), counting the fetches.
+ *
+ * @since 2021
+ */
+@RunWith(FeaturesRunner.class)
+@Features({ PlatformFeature.class })
+@Deploy("nuxeo.ldt.parser.nuxeo-ldt-parser-core")
+public class TestLDTBlockCache {
+
+    @Inject
+    protected LDTParserService ldtParserService;
+
+    protected static class CountingFetcher implements LDTBlockCache.BlockFetcher {
+
+        protected byte[] content;
+
+        protected AtomicInteger fetchCount = new AtomicInteger();
+
+        public CountingFetcher(byte[] content) {
+            this.content = content;
+        }
+
+        @Override
+        public byte[] fetch(long position, int length) {
+            fetchCount.incrementAndGet();
+            return Arrays.copyOfRange(content, (int) position, (int) position + length);
+        }
+    }
+
+    @Test
+    public void shouldShareBlocksBetweenAdjacentRecords() throws Exception {
+
+        File file = FileUtils.getResourceFileFromContext("test-bigger.LDT");
+        byte[] content = Files.readAllBytes(file.toPath());
+        LDTParser parser = ldtParserService.newParser(null);
+        List<RecordInfo> records = parser.scanRecords(file, 1);
+
+        LDTBlockCache cache = new LDTBlockCache(Files.createTempDirectory("test-block-cache"),
+                LDTBlockCache.MIN_BLOCK_SIZE, 100L * 1024 * 1024);
+        CountingFetcher fetcher = new CountingFetcher(content);
+        try {
+            for (RecordInfo record : records) {
+                byte[] bytes = cache.read("test-bigger", content.length, record.startOffset, (int) record.size,
+                        fetcher);
+                assertArrayEquals(Arrays.copyOfRange(content, (int) record.startOffset,
+                        (int) (record.startOffset + record.size)), bytes);
+            }
+            // One fetch per block, whatever the number of records
+            int blockCount = (content.length + LDTBlockCache.MIN_BLOCK_SIZE - 1) / LDTBlockCache.MIN_BLOCK_SIZE;
+            assertEquals(blockCount, fetcher.fetchCount.get());
+
+            LDTBlockCache.Stats stats = cache.getStats();
+            assertEquals(blockCount, stats.misses);
+            assertTrue(stats.hits > records.size() - blockCount);
+            assertEquals(content.length, stats.fetchedBytes);
+            assertEquals(content.length, stats.diskSize);
+            assertEquals(0, stats.evictions);
+
+            // Reading again: no fetch
+            cache.read("test-bigger", content.length, 0, content.length, fetcher);
+            assertEquals(blockCount, fetcher.fetchCount.get());
+        } finally {
+            cache.clear();
+        }
+    }
+
+    @Test
+    public void shouldEvictUnderTheDiskBudget() throws Exception {
+
+        File file = FileUtils.getResourceFileFromContext("test-bigger.LDT");
+        byte[] content = Files.readAllBytes(file.toPath());
+        int blockSize = LDTBlockCache.MIN_BLOCK_SIZE;
+
+        // Room for 3 blocks
+        LDTBlockCache cache = new LDTBlockCache(Files.createTempDirectory("test-block-cache"), blockSize,
+                3L * blockSize);
+        CountingFetcher fetcher = new CountingFetcher(content);
+        try {
+            for (int block = 0; block < 5; block++) {
+                cache.read("test-bigger", content.length, (long) block * blockSize, 10, fetcher);
+            }
+            LDTBlockCache.Stats stats = cache.getStats();
+            assertEquals(5, stats.misses);
+            assertEquals(2, stats.evictions);
+            assertEquals(3, stats.blockCount);
+            assertEquals(3L * blockSize, stats.diskSize);
+
+            // Block #4 is still there, block #0 was evicted (LRU)
+            cache.read("test-bigger", content.length, 4L * blockSize, 10, fetcher);
+            assertEquals(5, fetcher.fetchCount.get());
+            cache.read("test-bigger", content.length, 0, 10, fetcher);
+            assertEquals(6, fetcher.fetchCount.get());
+        } finally {
+            cache.clear();
+        }
+    }
+
+    @Test
+    public void shouldFetchABlockOnceForConcurrentMisses() throws Exception {
+
+        File file = FileUtils.getResourceFileFromContext("test-bigger.LDT");
+        byte[] content = Files.readAllBytes(file.toPath());
+        int threads = 8;
+
+        LDTBlockCache cache = new LDTBlockCache(Files.createTempDirectory("test-block-cache"),
+                LDTBlockCache.MIN_BLOCK_SIZE, 100L * 1024 * 1024);
+        // Slow fetch, so all the threads miss the block while it is fetched
+        CountDownLatch allStarted = new CountDownLatch(threads);
+        CountingFetcher fetcher = new CountingFetcher(content) {
+            @Override
+            public byte[] fetch(long position, int length) {
+                try {
+                    allStarted.await(5, TimeUnit.SECONDS);
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.fetch(position, length);
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<byte[]>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    allStarted.countDown();
+                    return cache.read("test-bigger", content.length, 0, 100, fetcher);
+                }));
+            }
+            for (Future<byte[]> future : futures) {
+                assertArrayEquals(Arrays.copyOfRange(content, 0, 100), future.get());
+            }
+            assertEquals(1, fetcher.fetchCount.get());
+        } finally {
+            executor.shutdownNow();
+            cache.clear();
+        }
+    }
+
+}
@@ -0,0 +1,171 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.ldt.parser.test.range;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.nuxeo.ecm.core.api.NuxeoException;
+
+import nuxeo.ldt.parser.service.range.LDTBulkhead;
+
+/**
+ * @since 2021
+ */
+public class TestLDTBulkhead {
+
+    protected static void awaitWaiting(LDTBulkhead bulkhead, int waiting) throws InterruptedException {
+        long timeout = System.currentTimeMillis() + 10000;
+        while (bulkhead.getStats().waiting < waiting) {
+            if (System.currentTimeMillis() > timeout) {
+                fail("Timeout waiting for " + waiting + " waiting reads");
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void shouldCapConcurrentReads() throws Exception {
+
+        LDTBulkhead bulkhead = new LDTBulkhead("test", 4, 100, 10000);
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                int value = i;
+                futures.add(executor.submit(() -> bulkhead.call(() -> {
+                    try {
+                        Thread.sleep(1);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return value;
+                })));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                assertEquals(i, futures.get(i).get(10, TimeUnit.SECONDS).intValue());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        LDTBulkhead.Stats stats = bulkhead.getStats();
+        assertEquals(200, stats.calls);
+        assertEquals(0, stats.rejected);
+        assertEquals(0, stats.timedOut);
+        assertEquals(0, stats.inFlight);
+        assertTrue(stats.maxInFlight <= 4);
+    }
+
+    @Test
+    public void shouldRejectWhenTooManyAreWaiting() throws Exception {
+
+        LDTBulkhead bulkhead = new LDTBulkhead("test", 1, 1, 10000);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            // One in flight, one waiting
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                futures.add(executor.submit(() -> bulkhead.call(() -> {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return "done";
+                })));
+            }
+            awaitWaiting(bulkhead, 1);
+
+            try {
+                bulkhead.call(() -> "rejected");
+                fail("Should have been rejected");
+            } catch (NuxeoException e) {
+                assertEquals(LDTBulkhead.SC_SERVICE_UNAVAILABLE, e.getStatusCode());
+            }
+
+            release.countDown();
+            for (Future<String> future : futures) {
+                assertEquals("done", future.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, bulkhead.getStats().rejected);
+        assertEquals("ok", bulkhead.call(() -> "ok"));
+    }
+
+    @Test
+    public void shouldFailFastAfterTimeout() throws Exception {
+
+        LDTBulkhead bulkhead = new LDTBulkhead("test", 1, 10, 50);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> future = executor.submit(() -> bulkhead.call(() -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return "done";
+            }));
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+
+            try {
+                bulkhead.call(() -> "timed out");
+                fail("Should have timed out");
+            } catch (NuxeoException e) {
+                assertEquals(LDTBulkhead.SC_SERVICE_UNAVAILABLE, e.getStatusCode());
+            }
+
+            release.countDown();
+            assertEquals("done", future.get(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        LDTBulkhead.Stats stats = bulkhead.getStats();
+        assertEquals(1, stats.timedOut);
+        assertTrue(stats.waitTimeMs >= 50);
+    }
+
+    @Test
+    public void shouldNotLimitWhenMaxConcurrentIsZero() throws Exception {
+
+        LDTBulkhead bulkhead = new LDTBulkhead("test", 0, 0, 0);
+        assertEquals("ok", bulkhead.call(() -> "ok"));
+        assertEquals(1, bulkhead.getStats().calls);
+    }
+
+}
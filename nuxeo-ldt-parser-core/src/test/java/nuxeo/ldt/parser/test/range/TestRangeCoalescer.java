@@ -0,0 +1,68 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.ldt.parser.test.range;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import nuxeo.ldt.parser.service.range.RangeCoalescer;
+import nuxeo.ldt.parser.service.range.RangeCoalescer.MergedRange;
+
+/**
+ * @since 2021
+ */
+public class TestRangeCoalescer {
+
+    @Test
+    public void shouldMergeCloseRanges() {
+
+        // Unsorted, with a duplicate. 0-100 and 150-200 are 50 bytes apart, 1000-1100 is far
+        long[] starts = { 1000, 150, 0, 150 };
+        int[] lengths = { 100, 50, 100, 50 };
+
+        List<MergedRange> reads = RangeCoalescer.coalesce(starts, lengths, 64, 1024);
+        assertEquals(2, reads.size());
+        assertEquals(0, reads.get(0).start);
+        assertEquals(200, reads.get(0).getEnd());
+        assertEquals(List.of(2, 1, 3), reads.get(0).getMembers());
+        assertEquals(1000, reads.get(1).start);
+        assertEquals(List.of(0), reads.get(1).getMembers());
+
+        // Gap too small
+        assertEquals(3, RangeCoalescer.coalesce(starts, lengths, 10, 1024).size());
+    }
+
+    @Test
+    public void shouldNotExceedMaxReadSize() {
+
+        long[] starts = { 0, 100, 200, 300 };
+        int[] lengths = { 100, 100, 100, 500 };
+
+        List<MergedRange> reads = RangeCoalescer.coalesce(starts, lengths, 0, 250);
+        assertEquals(3, reads.size());
+        assertEquals(200, reads.get(0).getLength());
+        assertEquals(100, reads.get(1).getLength());
+        // Bigger than maxReadSize: read alone
+        assertEquals(500, reads.get(2).getLength());
+    }
+
+}
@@ -0,0 +1,156 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.ldt.parser.test.range;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.inject.Inject;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.impl.blob.FileBlob;
+import org.nuxeo.ecm.core.api.impl.blob.StringBlob;
+import org.nuxeo.ecm.platform.test.PlatformFeature;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+
+import nuxeo.ldt.parser.service.LDTParser;
+import nuxeo.ldt.parser.service.LDTParserService;
+import nuxeo.ldt.parser.service.elements.Record;
+import nuxeo.ldt.parser.service.range.FileRangeReader;
+import nuxeo.ldt.parser.service.range.InMemoryRangeReader;
+import nuxeo.ldt.parser.service.range.RangeReader;
+import nuxeo.ldt.parser.service.range.RangeReaders;
+import nuxeo.ldt.parser.service.range.StreamRangeReader;
+import nuxeo.ldt.parser.test.TestUtils;
+
+/**
+ * See TestUtils for the expected values in test.LDT
+ *
+ * @since 2021
+ */
+@RunWith(FeaturesRunner.class)
+@Features({ PlatformFeature.class })
+@Deploy("nuxeo.ldt.parser.nuxeo-ldt-parser-core")
+public class TestRangeReaders {
+
+    @Inject
+    protected LDTParserService ldtParserService;
+
+    // A FileBlob that cannot be read sequentially
+    protected static class NoStreamFileBlob extends FileBlob {
+
+        private static final long serialVersionUID = 1L;
+
+        public NoStreamFileBlob(File file) {
+            super(file);
+        }
+
+        @Override
+        public InputStream getStream() throws IOException {
+            throw new IOException("The blob must be read with positional reads");
+        }
+    }
+
+    public static class FailingRangeReader implements RangeReader {
+
+        @Override
+        public Cost getCost(Blob blob) {
+            return Cost.MEMORY;
+        }
+
+        @Override
+        public byte[] read(Blob blob, long position, int length) throws IOException {
+            throw new IOException("Failing on purpose");
+        }
+    }
+
+    @Test
+    public void shouldUseTheCheapestReader() throws Exception {
+
+        File file = TestUtils.getSimpleTestFile();
+
+        Blob fileBlob = new FileBlob(file);
+        List<RangeReader> readers = RangeReaders.getDefault().getReaders(fileBlob);
+        assertTrue(readers.get(0) instanceof FileRangeReader);
+        assertEquals(RangeReader.Cost.LOCAL, readers.get(0).getCost(fileBlob));
+        // The stream reader is always the last resort
+        assertTrue(readers.get(readers.size() - 1) instanceof StreamRangeReader);
+        assertEquals(RangeReader.Cost.SEQUENTIAL, readers.get(readers.size() - 1).getCost(fileBlob));
+
+        Blob stringBlob = new StringBlob(Files.readString(file.toPath()));
+        assertTrue(RangeReaders.getDefault().getCheapest(stringBlob) instanceof InMemoryRangeReader);
+    }
+
+    @Test
+    public void shouldReadRanges() throws Exception {
+
+        File file = TestUtils.getSimpleTestFile();
+        byte[] content = Files.readAllBytes(file.toPath());
+        int start = (int) TestUtils.SIMPLELDT_RECORD3_STARTOFFSET;
+        int size = (int) TestUtils.SIMPLELDT_RECORD3_RECORDSIZE;
+        byte[] expected = Arrays.copyOfRange(content, start, start + size);
+
+        for (Blob blob : List.of(new FileBlob(file), new StringBlob(new String(content, StandardCharsets.UTF_8)))) {
+            assertArrayEquals(expected, RangeReaders.getDefault().read(blob, start, size));
+            // Past the end of the blob
+            assertEquals(10, RangeReaders.getDefault().read(blob, content.length - 10, 100).length);
+            assertEquals(0, RangeReaders.getDefault().read(blob, content.length + 10, 100).length);
+            // Nothing to read
+            assertEquals(0, RangeReaders.getDefault().read(blob, start, 0).length);
+        }
+    }
+
+    @Test
+    public void shouldGetRecordWithoutReadingTheFileSequentially() {
+
+        Blob blob = new NoStreamFileBlob(TestUtils.getSimpleTestFile());
+
+        LDTParser parser = ldtParserService.newParser(null);
+        Record record = parser.getRecord(blob, TestUtils.SIMPLELDT_RECORD3_STARTOFFSET,
+                TestUtils.SIMPLELDT_RECORD3_RECORDSIZE);
+        assertNotNull(record);
+        assertEquals(TestUtils.SIMPLELDT_RECORD3_PAGE_COUNT, record.getPageCount());
+    }
+
+    @Test
+    public void shouldFallBackToTheNextReader() throws Exception {
+
+        RangeReaders readers = RangeReaders.newInstance(List.of(FailingRangeReader.class));
+        Blob blob = new FileBlob(TestUtils.getSimpleTestFile());
+        assertTrue(readers.getCheapest(blob) instanceof FailingRangeReader);
+
+        byte[] bytes = readers.read(blob, TestUtils.SIMPLELDT_RECORD2_STARTOFFSET, 10);
+        assertEquals(10, bytes.length);
+    }
+
+}
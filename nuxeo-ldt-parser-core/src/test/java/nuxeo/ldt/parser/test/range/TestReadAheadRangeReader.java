@@ -0,0 +1,151 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.ldt.parser.test.range;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.inject.Inject;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.common.utils.FileUtils;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.impl.blob.FileBlob;
+import org.nuxeo.ecm.platform.test.PlatformFeature;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+
+import nuxeo.ldt.parser.service.LDTParser;
+import nuxeo.ldt.parser.service.LDTParserService;
+import nuxeo.ldt.parser.service.elements.Record;
+import nuxeo.ldt.parser.service.elements.RecordInfo;
+import nuxeo.ldt.parser.service.range.FileRangeReader;
+import nuxeo.ldt.parser.service.range.RangeReaders;
+import nuxeo.ldt.parser.service.range.ReadAheadRangeReader;
+import nuxeo.ldt.parser.service.utils.LDTRecordCursor;
+
+/**
+ * test-bigger.LDT has 648 records
+ *
+ * @since 2021
+ */
+@RunWith(FeaturesRunner.class)
+@Features({ PlatformFeature.class })
+@Deploy("nuxeo.ldt.parser.nuxeo-ldt-parser-core")
+public class TestReadAheadRangeReader {
+
+    protected static final int WINDOW_SIZE = 64 * 1024;
+
+    @Inject
+    protected LDTParserService ldtParserService;
+
+    // Counts the reads, used first because it is listed before the default readers
+    protected static class CountingRangeReader extends FileRangeReader {
+
+        protected AtomicInteger readCount = new AtomicInteger();
+
+        @Override
+        public byte[] read(Blob blob, long position, int length) throws IOException {
+            readCount.incrementAndGet();
+            return super.read(blob, position, length);
+        }
+    }
+
+    @Test
+    public void shouldReadAheadWhenSequential() throws Exception {
+
+        File file = FileUtils.getResourceFileFromContext("test-bigger.LDT");
+        byte[] content = Files.readAllBytes(file.toPath());
+        LDTParser parser = ldtParserService.newParser(null);
+        List<RecordInfo> records = parser.scanRecords(file, 1);
+        assertEquals(648, records.size());
+
+        CountingRangeReader counting = new CountingRangeReader();
+        RangeReaders readers = new RangeReaders(List.of(counting));
+        try (ReadAheadRangeReader reader = new ReadAheadRangeReader(new FileBlob(file), readers, WINDOW_SIZE, 4)) {
+            for (RecordInfo record : records) {
+                byte[] bytes = reader.read(record.startOffset, (int) record.size);
+                assertArrayEquals(Arrays.copyOfRange(content, (int) record.startOffset,
+                        (int) (record.startOffset + record.size)), bytes);
+            }
+            assertTrue(reader.isSequential());
+            // The first read, then the windows: not one read per record
+            int windowCount = (content.length + WINDOW_SIZE - 1) / WINDOW_SIZE;
+            assertEquals(1, reader.getDirectReads());
+            assertEquals(windowCount, reader.getWindowReads());
+            assertEquals(1 + windowCount, counting.readCount.get());
+        }
+    }
+
+    @Test
+    public void shouldReadDirectlyWhenNotSequential() throws Exception {
+
+        File file = FileUtils.getResourceFileFromContext("test-bigger.LDT");
+        byte[] content = Files.readAllBytes(file.toPath());
+        LDTParser parser = ldtParserService.newParser(null);
+        List<RecordInfo> records = parser.scanRecords(file, 1);
+
+        CountingRangeReader counting = new CountingRangeReader();
+        RangeReaders readers = new RangeReaders(List.of(counting));
+        try (ReadAheadRangeReader reader = new ReadAheadRangeReader(new FileBlob(file), readers, WINDOW_SIZE, 4)) {
+            for (int i = records.size() - 1; i >= records.size() - 10; i--) {
+                RecordInfo record = records.get(i);
+                byte[] bytes = reader.read(record.startOffset, (int) record.size);
+                assertArrayEquals(Arrays.copyOfRange(content, (int) record.startOffset,
+                        (int) (record.startOffset + record.size)), bytes);
+                assertFalse(reader.isSequential());
+            }
+            assertEquals(10, reader.getDirectReads());
+            assertEquals(0, reader.getWindowReads());
+            assertEquals(10, counting.readCount.get());
+        }
+    }
+
+    @Test
+    public void shouldGetRecordsWithACursor() throws Exception {
+
+        File file = FileUtils.getResourceFileFromContext("test-bigger.LDT");
+        Blob blob = new FileBlob(file);
+        LDTParser parser = ldtParserService.newParser(null);
+        List<RecordInfo> records = parser.scanRecords(file, 1);
+
+        try (LDTRecordCursor cursor = parser.newRecordCursor(blob)) {
+            for (RecordInfo info : records) {
+                Record record = cursor.getRecord(info.startOffset, info.size);
+                assertNotNull(record);
+                Record expected = parser.getRecord(blob, info.startOffset, info.size);
+                assertEquals(expected.toJson(), record.toJson());
+            }
+            assertTrue(cursor.getReader().isSequential());
+        }
+    }
+
+}
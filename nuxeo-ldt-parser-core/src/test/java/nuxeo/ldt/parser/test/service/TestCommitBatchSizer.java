@@ -0,0 +1,84 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.ldt.parser.test.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import nuxeo.ldt.parser.service.utils.CommitBatchSizer;
+
+/**
+ * @since 2021
+ */
+public class TestCommitBatchSizer {
+
+    @Test
+    public void shouldCommitEveryBatchSizeRecords() {
+
+        CommitBatchSizer sizer = new CommitBatchSizer(3, false, 0, 0);
+        for (int batch = 0; batch < 3; batch++) {
+            assertFalse(sizer.add());
+            assertFalse(sizer.add());
+            assertTrue(sizer.add());
+            sizer.committed(TimeUnit.SECONDS.toNanos(10));
+            assertEquals(3, sizer.getBatchSize());
+        }
+    }
+
+    @Test
+    public void shouldGrowWhenCommitIsSlow() {
+
+        CommitBatchSizer sizer = new CommitBatchSizer(20, true, 50, 60000);
+        for (int i = 0; i < 19; i++) {
+            assertFalse(sizer.add());
+        }
+        assertTrue(sizer.add());
+        // Commit is way slower than creating 20 records
+        sizer.committed(TimeUnit.MILLISECONDS.toNanos(500));
+        assertEquals(40, sizer.getBatchSize());
+
+        for (int i = 0; i < 39; i++) {
+            sizer.add();
+        }
+        sizer.committed(TimeUnit.MILLISECONDS.toNanos(500));
+        assertEquals(50, sizer.getBatchSize());
+    }
+
+    @Test
+    public void shouldShrinkToFitTheTimeBudget() throws InterruptedException {
+
+        CommitBatchSizer sizer = new CommitBatchSizer(100, true, 100, 20);
+        boolean commit = false;
+        int count = 0;
+        while (!commit) {
+            Thread.sleep(5);
+            commit = sizer.add();
+            count += 1;
+        }
+        assertTrue(count < 100);
+        sizer.committed(0);
+        assertEquals(50, sizer.getBatchSize());
+    }
+
+}
@@ -1,6 +1,8 @@
 package nuxeo.ldt.parser.test.service;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -9,6 +11,7 @@ import org.nuxeo.ecm.platform.test.PlatformFeature;
 import org.nuxeo.runtime.test.runner.Deploy;
 import org.nuxeo.runtime.test.runner.Features;
 import org.nuxeo.runtime.test.runner.FeaturesRunner;
+import org.nuxeo.runtime.test.runner.WithFrameworkProperty;
 
 import nuxeo.ldt.parser.service.LDTParser;
 import nuxeo.ldt.parser.service.LDTParserService;
@@ -35,6 +38,28 @@ public class TestLDTParserService {
         assertNotNull(parser);
     }
     
+    @Test
+    public void shouldShareTheParser() {
+        LDTParser parser = ldtParserService.newParser(null);
+        assertSame(parser, ldtParserService.newParser("default"));
+        // Patterns are compiled at registration
+        assertNotNull(parser.getDescriptor().getItems()[0].getPattern());
+    }
+    
+    @Test
+    public void shouldDeriveCommitTimeBudgetFromTransactionTimeout() {
+        LDTParserDescriptor desc = ldtParserService.newParser(null).getDescriptor();
+        // Nuxeo default transaction timeout is 300s
+        assertEquals(60000, desc.getCommitTimeBudgetMs());
+    }
+
+    @Test
+    @WithFrameworkProperty(name = LDTParserDescriptor.TRANSACTION_TIMEOUT_PARAM, value = "600")
+    public void shouldUseTheConfiguredTransactionTimeout() {
+        LDTParserDescriptor desc = ldtParserService.newParser(null).getDescriptor();
+        assertEquals(120000, desc.getCommitTimeBudgetMs());
+    }
+    
     @Test (expected = NuxeoException.class)
     @Deploy("nuxeo.ldt.parser.nuxeo-ldt-parser-core:ldt-parsers-test-contrib.xml")
     public void shouldFailOnWrongConfiguration() {
@@ -0,0 +1,112 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.ldt.parser.test.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import nuxeo.ldt.parser.service.utils.LDTRecordCache;
+import nuxeo.ldt.parser.service.utils.LDTRecordKey;
+
+/**
+ * @since 2021
+ */
+public class TestLDTRecordCache {
+
+    protected static LDTRecordKey newKey(long startOffset) {
+        return new LDTRecordKey("default", "digest", startOffset, 100, LDTRecordKey.NO_PAGE, LDTRecordKey.NO_PAGE);
+    }
+
+    protected static String newJson(int length) {
+        return "x".repeat(length);
+    }
+
+    @Test
+    public void shouldGetWhatWasPut() {
+
+        LDTRecordCache cache = new LDTRecordCache(1024, 60000);
+        assertNull(cache.get(newKey(0)));
+        cache.put(newKey(0), "{}");
+        assertEquals("{}", cache.get(newKey(0)));
+        assertNull(cache.get(new LDTRecordKey("default", "digest", 0, 100, 1, 2)));
+        assertNull(cache.get(new LDTRecordKey("other", "digest", 0, 100, LDTRecordKey.NO_PAGE, LDTRecordKey.NO_PAGE)));
+
+        LDTRecordCache.Stats stats = cache.getStats();
+        assertEquals(1, stats.hits);
+        assertEquals(3, stats.misses);
+        assertEquals(1, stats.entryCount);
+        assertEquals(4, stats.size);
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsed() {
+
+        // Room for 3 entries of 100 characters
+        LDTRecordCache cache = new LDTRecordCache(600, 60000);
+        cache.put(newKey(0), newJson(100));
+        cache.put(newKey(1), newJson(100));
+        cache.put(newKey(2), newJson(100));
+        // 0 is now the most recently used
+        cache.get(newKey(0));
+        cache.put(newKey(3), newJson(100));
+
+        assertNull(cache.get(newKey(1)));
+        assertEquals(100, cache.get(newKey(0)).length());
+        assertEquals(100, cache.get(newKey(2)).length());
+        assertEquals(100, cache.get(newKey(3)).length());
+
+        LDTRecordCache.Stats stats = cache.getStats();
+        assertEquals(1, stats.evictions);
+        assertEquals(3, stats.entryCount);
+        assertEquals(600, stats.size);
+
+        // Too big to be cached
+        cache.put(newKey(4), newJson(301));
+        assertNull(cache.get(newKey(4)));
+        assertEquals(3, cache.getStats().entryCount);
+    }
+
+    @Test
+    public void shouldExpireEntries() throws Exception {
+
+        LDTRecordCache cache = new LDTRecordCache(1024, 50);
+        cache.put(newKey(0), "{}");
+        assertEquals("{}", cache.get(newKey(0)));
+        Thread.sleep(100);
+        assertNull(cache.get(newKey(0)));
+
+        LDTRecordCache.Stats stats = cache.getStats();
+        assertEquals(1, stats.expirations);
+        assertEquals(0, stats.entryCount);
+        assertEquals(0, stats.size);
+    }
+
+    @Test
+    public void shouldClear() {
+
+        LDTRecordCache cache = new LDTRecordCache(1024, 60000);
+        cache.put(newKey(0), "{}");
+        cache.clear();
+        assertNull(cache.get(newKey(0)));
+        assertEquals(0, cache.getStats().size);
+    }
+
+}
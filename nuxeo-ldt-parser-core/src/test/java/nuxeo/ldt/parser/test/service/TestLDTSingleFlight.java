@@ -0,0 +1,149 @@
+/*
+ * (C) Copyright 2023 Hyland (http://hyland.com/)  and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package nuxeo.ldt.parser.test.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.nuxeo.ecm.core.api.NuxeoException;
+
+import nuxeo.ldt.parser.service.utils.LDTRecordKey;
+import nuxeo.ldt.parser.service.utils.LDTSingleFlight;
+
+/**
+ * @since 2021
+ */
+public class TestLDTSingleFlight {
+
+    protected static final int CALLERS = 20;
+
+    protected static LDTRecordKey newKey(long startOffset) {
+        return new LDTRecordKey("default", "digest", startOffset, 100, LDTRecordKey.NO_PAGE, LDTRecordKey.NO_PAGE);
+    }
+
+    protected static void awaitInFlight(LDTSingleFlight<?, ?> flights, long sharedCalls) throws InterruptedException {
+        long timeout = System.currentTimeMillis() + 10000;
+        while (flights.getSharedCalls() < sharedCalls) {
+            if (System.currentTimeMillis() > timeout) {
+                fail("Timeout waiting for " + sharedCalls + " shared calls");
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void shouldShareIdenticalConcurrentCalls() throws Exception {
+
+        LDTSingleFlight<LDTRecordKey, String> flights = new LDTSingleFlight<>();
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < CALLERS; i++) {
+                futures.add(executor.submit(() -> flights.execute(newKey(10), () -> {
+                    runs.incrementAndGet();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return "record";
+                })));
+            }
+            awaitInFlight(flights, CALLERS - 1);
+            release.countDown();
+
+            for (Future<String> future : futures) {
+                assertEquals("record", future.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, runs.get());
+        assertEquals(CALLERS, flights.getCalls());
+        assertEquals(CALLERS - 1, flights.getSharedCalls());
+        assertEquals(0, flights.getInFlight());
+
+        // Nothing is cached
+        assertEquals("again", flights.execute(newKey(10), () -> "again"));
+    }
+
+    @Test
+    public void shouldNotShareDifferentKeys() {
+
+        LDTSingleFlight<LDTRecordKey, String> flights = new LDTSingleFlight<>();
+        assertEquals("a", flights.execute(newKey(10), () -> "a"));
+        assertEquals("b", flights.execute(newKey(20), () -> "b"));
+        assertEquals("c", flights.execute(null, () -> "c"));
+        assertEquals(0, flights.getSharedCalls());
+    }
+
+    @Test
+    public void shouldShareTheException() throws Exception {
+
+        LDTSingleFlight<LDTRecordKey, String> flights = new LDTSingleFlight<>();
+        NuxeoException error = new NuxeoException("Simulated error");
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                futures.add(executor.submit(() -> flights.execute(newKey(10), () -> {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    throw error;
+                })));
+            }
+            awaitInFlight(flights, 1);
+            release.countDown();
+
+            for (Future<String> future : futures) {
+                try {
+                    future.get(10, TimeUnit.SECONDS);
+                    fail("Should have failed");
+                } catch (ExecutionException e) {
+                    assertSame(error, e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(0, flights.getInFlight());
+    }
+
+}